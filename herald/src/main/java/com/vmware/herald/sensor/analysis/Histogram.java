@@ -0,0 +1,78 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.analysis;
+
+/// Histogram with fixed bucket upper bounds, and sample statistics for mean and spread.
+/// Values above the last upper bound are counted in an overflow bucket.
+public class Histogram {
+    private final double[] upperBounds;
+    private final long[] counts;
+    private final Sample sample = new Sample();
+
+    /// Histogram for ascending bucket upper bounds (inclusive)
+    public Histogram(final double... upperBounds) {
+        this.upperBounds = upperBounds;
+        this.counts = new long[upperBounds.length + 1];
+    }
+
+    public synchronized void add(final double x) {
+        int bucket = 0;
+        while (bucket < upperBounds.length && x > upperBounds[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        sample.add(x);
+    }
+
+    public synchronized long count() {
+        return sample.count();
+    }
+
+    public synchronized Double mean() {
+        return sample.mean();
+    }
+
+    public synchronized Double max() {
+        return sample.max();
+    }
+
+    /// Upper bound of bucket containing the p-th percentile, where 0 < p <= 1, returns
+    /// max for overflow bucket and null for empty histogram.
+    public synchronized Double percentile(final double p) {
+        final long n = sample.count();
+        if (n == 0) {
+            return null;
+        }
+        final long rank = (long) Math.ceil(p * n);
+        long cumulative = 0;
+        for (int bucket = 0; bucket < upperBounds.length; bucket++) {
+            cumulative += counts[bucket];
+            if (cumulative >= rank) {
+                return upperBounds[bucket];
+            }
+        }
+        return sample.max();
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder s = new StringBuilder();
+        s.append("[count=").append(sample.count());
+        s.append(",mean=").append(sample.mean());
+        s.append(",p50=").append(percentile(0.5));
+        s.append(",p90=").append(percentile(0.9));
+        s.append(",max=").append(sample.max());
+        s.append(",buckets=");
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (bucket > 0) {
+                s.append(',');
+            }
+            s.append(bucket < upperBounds.length ? "<=" + upperBounds[bucket] : ">" + upperBounds[upperBounds.length - 1]);
+            s.append(':').append(counts[bucket]);
+        }
+        s.append(']');
+        return s.toString();
+    }
+}
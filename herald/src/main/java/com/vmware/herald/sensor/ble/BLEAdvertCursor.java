@@ -0,0 +1,195 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.UUID;
+
+/// Flyweight cursor for iterating advert segments in place over raw scan record bytes. The cursor
+/// holds the position of the current segment only, and typed accessors read directly from the raw
+/// bytes, thus parsing an advert does not allocate. A cursor can be reset and reused for every
+/// advert, but is not thread safe. Segment data is big endian (network order), except for
+/// manufacturer identifier and service UUIDs, which are little endian as per specification.
+public class BLEAdvertCursor {
+    /// Bluetooth base UUID 00000000-0000-1000-8000-00805F9B34FB
+    private final static long bluetoothBaseUUIDMostSignificantBits = 0x0000000000001000L;
+    private final static long bluetoothBaseUUIDLeastSignificantBits = 0x800000805F9B34FBL;
+    private byte[] raw = null;
+    private int position = 0;
+    private int typeCode = -1;
+    private int dataOffset = 0;
+    private int dataLength = 0;
+
+    /// Reset cursor to iterate segments in raw data from offset, returns this cursor
+    public BLEAdvertCursor reset(final byte[] raw, final int offset) {
+        this.raw = raw;
+        this.position = offset;
+        this.typeCode = -1;
+        this.dataOffset = 0;
+        this.dataLength = 0;
+        return this;
+    }
+
+    /// Advance to next segment, returns false at end of data, or if segment length is zero
+    /// (early termination, e.g. zero padding), or exceeds remaining data.
+    public boolean next() {
+        if (raw == null || position + 2 > raw.length) {
+            return end();
+        }
+        final int segmentLength = raw[position] & 0xff;
+        // Note: type IS INCLUDED in length
+        if (segmentLength == 0 || position + 1 + segmentLength > raw.length) {
+            return end();
+        }
+        typeCode = raw[position + 1] & 0xff;
+        dataOffset = position + 2;
+        dataLength = segmentLength - 1;
+        position += 1 + segmentLength;
+        return true;
+    }
+
+    /// Advance to next segment of type, returns false if there is no further segment of type
+    public boolean next(final BLEAdvertSegmentType type) {
+        while (next()) {
+            if (typeCode == type.code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean end() {
+        position = (raw == null ? 0 : raw.length);
+        typeCode = -1;
+        dataOffset = 0;
+        dataLength = 0;
+        return false;
+    }
+
+    // MARK:- Segment
+
+    /// Raw data being iterated
+    public byte[] raw() {
+        return raw;
+    }
+
+    /// Segment type code, -1 if cursor is not on a segment
+    public int typeCode() {
+        return typeCode;
+    }
+
+    /// Segment type, unsupported types are reported as unknown
+    public BLEAdvertSegmentType type() {
+        return BLEAdvertSegmentType.typeFor(typeCode);
+    }
+
+    /// Offset of segment data in raw data
+    public int dataOffset() {
+        return dataOffset;
+    }
+
+    /// Length of segment data, excluding type
+    public int dataLength() {
+        return dataLength;
+    }
+
+    /// Segment data byte at index
+    public byte data(final int index) {
+        return raw[dataOffset + index];
+    }
+
+    // MARK:- Typed accessors
+
+    /// TX power level in dBm, or Integer.MIN_VALUE if segment is not a valid TX power level
+    public int txPower() {
+        if (typeCode != BLEAdvertSegmentType.txPowerLevel.code || dataLength < 1) {
+            return Integer.MIN_VALUE;
+        }
+        return raw[dataOffset];
+    }
+
+    /// Manufacturer identifier, or -1 if segment is not valid manufacturer data
+    public int manufacturer() {
+        if (typeCode != BLEAdvertSegmentType.manufacturerData.code || dataLength < 2) {
+            return -1;
+        }
+        return ((raw[dataOffset + 1] & 0xff) << 8) | (raw[dataOffset] & 0xff);
+    }
+
+    /// Offset of manufacturer specific data in raw data, following manufacturer identifier
+    public int manufacturerDataOffset() {
+        return dataOffset + 2;
+    }
+
+    /// Length of manufacturer specific data, excluding manufacturer identifier
+    public int manufacturerDataLength() {
+        return (manufacturer() == -1 ? 0 : dataLength - 2);
+    }
+
+    /// Length of each service UUID in bytes, or 0 if segment is not a service UUID list
+    public int serviceUUIDLength() {
+        if (typeCode == BLEAdvertSegmentType.serviceUUID16IncompleteList.code || typeCode == BLEAdvertSegmentType.serviceUUID16CompleteList.code) {
+            return 2;
+        }
+        if (typeCode == BLEAdvertSegmentType.serviceUUID32IncompleteList.code || typeCode == BLEAdvertSegmentType.serviceUUID32CompleteList.code) {
+            return 4;
+        }
+        if (typeCode == BLEAdvertSegmentType.serviceUUID128IncompleteList.code || typeCode == BLEAdvertSegmentType.serviceUUID128CompleteList.code) {
+            return 16;
+        }
+        return 0;
+    }
+
+    /// Number of service UUIDs in segment, or 0 if segment is not a service UUID list
+    public int serviceUUIDCount() {
+        final int serviceUUIDLength = serviceUUIDLength();
+        return (serviceUUIDLength == 0 ? 0 : dataLength / serviceUUIDLength);
+    }
+
+    /// 16 or 32-bit service UUID at index, or -1 if segment is not a 16 or 32-bit service UUID list
+    public long serviceUUIDShort(final int index) {
+        final int serviceUUIDLength = serviceUUIDLength();
+        if (serviceUUIDLength != 2 && serviceUUIDLength != 4) {
+            return -1;
+        }
+        final int offset = dataOffset + index * serviceUUIDLength;
+        long value = 0;
+        for (int i = serviceUUIDLength; i-- > 0;) {
+            value = (value << 8) | (raw[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    /// Does segment list service UUID? Short service UUIDs are compared against
+    /// the Bluetooth base UUID.
+    public boolean hasServiceUUID(final UUID uuid) {
+        final int serviceUUIDLength = serviceUUIDLength();
+        final int count = serviceUUIDCount();
+        final long mostSignificantBits = uuid.getMostSignificantBits();
+        final long leastSignificantBits = uuid.getLeastSignificantBits();
+        for (int index = 0; index < count; index++) {
+            if (serviceUUIDLength == 16) {
+                final int offset = dataOffset + index * 16;
+                if (int64(offset) == leastSignificantBits && int64(offset + 8) == mostSignificantBits) {
+                    return true;
+                }
+            } else {
+                if (leastSignificantBits == bluetoothBaseUUIDLeastSignificantBits &&
+                        mostSignificantBits == ((serviceUUIDShort(index) << 32) | bluetoothBaseUUIDMostSignificantBits)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /// Little endian 64-bit value at offset
+    private long int64(final int offset) {
+        long value = 0;
+        for (int i = 8; i-- > 0;) {
+            value = (value << 8) | (raw[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
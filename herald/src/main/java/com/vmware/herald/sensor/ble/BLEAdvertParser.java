@@ -4,13 +4,14 @@
 
 package com.vmware.herald.sensor.ble;
 
-import com.vmware.herald.sensor.datatype.UInt8;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.List;
 import java.util.ArrayList;
 
+/// Advert parser, list based API for convenience. Use BLEAdvertCursor for iterating
+/// segments in place without allocation, e.g. on the scan callback path.
 public class BLEAdvertParser {
     public static BLEScanResponseData parseScanResponse(byte[] raw, int offset) {
         // Multiple segments until end of binary data
@@ -18,33 +19,12 @@ public class BLEAdvertParser {
     }
 
     public static List<BLEAdvertSegment> extractSegments(byte[] raw, int offset) {
-        int position = offset;
         ArrayList<BLEAdvertSegment> segments = new ArrayList<BLEAdvertSegment>();
-        int segmentLength;
-        int segmentType;
-        byte[] segmentData;
-        int c;
-
-        while (position < raw.length) {
-            if ((position + 2) <= raw.length) {
-                segmentLength = (byte)raw[position++] & 0xff;
-                segmentType = (byte)raw[position++] & 0xff;
-                // Note: Unsupported types are handled as 'unknown'
-                // check reported length with actual remaining data length
-                if ((position + segmentLength - 1) <= raw.length) {
-                    segmentData = subDataBigEndian(raw, position, segmentLength - 1); // Note: type IS INCLUDED in length
-                    position += segmentLength - 1;
-                    segments.add(new BLEAdvertSegment(BLEAdvertSegmentType.typeFor(segmentType), segmentLength - 1, segmentData));
-                } else {
-                    // error in data length - advance to end
-                    position = raw.length;
-                }
-            } else {
-                // invalid segment - advance to end
-                position = raw.length;
-            }
+        // Note: Unsupported types are handled as 'unknown'
+        final BLEAdvertCursor cursor = new BLEAdvertCursor().reset(raw, offset);
+        while (cursor.next()) {
+            segments.add(new BLEAdvertSegment(cursor.type(), cursor.dataLength(), subDataBigEndian(raw, cursor.dataOffset(), cursor.dataLength())));
         }
-
         return segments;
     }
 
@@ -86,11 +66,12 @@ public class BLEAdvertParser {
         return data;
     }
 
+    /// TX power level in dBm, a signed byte as per Bluetooth core specification, consistent with BLEAdvertCursor
     public static Integer extractTxPower(List<BLEAdvertSegment> segments) {
         // find the txPower code segment in the list
         for (BLEAdvertSegment segment : segments) {
-            if (segment.type == BLEAdvertSegmentType.txPowerLevel) {
-                return (new UInt8((int)segment.data[0])).value;
+            if (segment.type == BLEAdvertSegmentType.txPowerLevel && segment.data.length >= 1) {
+                return (int) segment.data[0];
             }
         }
         return null;
@@ -118,6 +99,29 @@ public class BLEAdvertParser {
         return manufacturerData;
     }
 
+    /// TX power level from segments at cursor, or null if not found
+    public static Integer extractTxPower(BLEAdvertCursor cursor) {
+        if (cursor.next(BLEAdvertSegmentType.txPowerLevel) && cursor.txPower() != Integer.MIN_VALUE) {
+            return cursor.txPower();
+        }
+        return null;
+    }
+
+    /// Apple TV check over segments at cursor, without allocation
+    public static boolean isAppleTV(BLEAdvertCursor cursor) {
+        final byte[] raw = cursor.raw();
+        while (cursor.next(BLEAdvertSegmentType.manufacturerData)) {
+            if (cursor.manufacturerDataLength() < 2) {
+                continue;
+            }
+            final int offset = cursor.manufacturerDataOffset();
+            if (16 == raw[offset] && 7 == raw[offset + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static boolean isAppleTV(List<BLEAdvertSegment> segments) {
         List<BLEAdvertManufacturerData> manufacturerData = extractManufacturerData(segments);
         if (manufacturerData.size() == 0) {
@@ -34,11 +34,12 @@ public enum BLEAdvertSegmentType {
     ;
 
     private static final Map<String, BLEAdvertSegmentType> BY_LABEL = new HashMap<>();
-    private static final Map<Integer, BLEAdvertSegmentType> BY_CODE = new HashMap<>();
+    // Lookup table by code, avoids boxing code for every segment
+    private static final BLEAdvertSegmentType[] BY_CODE = new BLEAdvertSegmentType[256];
     static {
         for (BLEAdvertSegmentType e : values()) {
             BY_LABEL.put(e.label, e);
-            BY_CODE.put(e.code, e);
+            BY_CODE[e.code] = e;
         }
     }
 
@@ -51,7 +52,7 @@ public enum BLEAdvertSegmentType {
     }
 
     public static BLEAdvertSegmentType typeFor(int code) {
-        BLEAdvertSegmentType type = BY_CODE.get(code);
+        BLEAdvertSegmentType type = (code < 0 || code >= BY_CODE.length ? null : BY_CODE[code]);
         if (null == type) {
             return BY_LABEL.get("unknown");
         }
@@ -0,0 +1,273 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.Callback;
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Event driven GATT connection pipeline. Connections are initiated on the radio without blocking,
+/// and completed by the radio callbacks radioDidConnect() and radioDidDisconnect().
+/// Connect and process timeouts are enforced by a scheduler, rather than by polling device
+/// state, and the number of concurrent connections is bounded by permits. Connections are
+/// initiated outside the pipeline lock, as connectGatt() may block, and each connection is
+/// closed by its own handle before the device is released for the next connection.
+public class BLEConnectionPipeline {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEConnectionPipeline");
+    private final static Sample timeToConnectDevice = new Sample();
+    private final static Sample timeToProcessDevice = new Sample();
+    private final static int connecting = 0, connected = 1, complete = 2;
+    private final BLERadio radio;
+    private final long connectTimeoutMillis;
+    private final long processTimeoutMillis;
+    private final int concurrency;
+    private final Semaphore permits;
+    private final BLEScheduler scheduler;
+    private final ConcurrentMap<TargetIdentifier, Connection> connections = new ConcurrentHashMap<>();
+    /// Devices waiting for a permit in current batch
+    private final Queue<BLEDevice> pending = new LinkedList<>();
+    private Callback<Boolean> batchCallback = null;
+    private BLEScheduler.Task batchDeadline = null;
+
+    private final static class Connection {
+        private final BLEDevice device;
+        private final long startedAt;
+        private final AtomicInteger phase = new AtomicInteger(connecting);
+        private volatile BLEScheduler.Task timeout = null;
+        /// Radio connection handle, null until connect has been initiated
+        private volatile Object handle = null;
+
+        private Connection(final BLEDevice device, final long startedAt) {
+            this.device = device;
+            this.startedAt = startedAt;
+        }
+    }
+
+    /// Connection pipeline for radio, allowing up to concurrency connections at a time.
+    public BLEConnectionPipeline(final BLERadio radio, final int concurrency, final long connectTimeoutMillis, final long processTimeoutMillis) {
+        this(radio, new ConcreteBLEScheduler(), concurrency, connectTimeoutMillis, processTimeoutMillis);
+    }
+
+    /// Connection pipeline for radio, using scheduler for timing connections and enforcing timeouts.
+    public BLEConnectionPipeline(final BLERadio radio, final BLEScheduler scheduler, final int concurrency, final long connectTimeoutMillis, final long processTimeoutMillis) {
+        this.radio = radio;
+        this.scheduler = scheduler;
+        this.concurrency = concurrency;
+        this.permits = new Semaphore(concurrency);
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.processTimeoutMillis = processTimeoutMillis;
+    }
+
+    /// Connect to devices as permits become available, callback is called once all connections
+    /// have completed, or when time limit has been reached. Devices that have not been connected
+    /// by then are left for the next batch.
+    public void connect(final List<BLEDevice> devices, final long timeLimitMillis, final Callback<Boolean> callback) {
+        synchronized (this) {
+            if (batchCallback != null) {
+                logger.fault("connect, previous batch incomplete (pending={})", pending.size());
+                finishBatch(false);
+            }
+            pending.addAll(devices);
+            batchCallback = callback;
+            batchDeadline = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (BLEConnectionPipeline.this) {
+                        if (batchCallback != callback) {
+                            return;
+                        }
+                        logger.debug("connect, reached time limit (pending={},active={})", pending.size(), connections.size());
+                        finishBatch(pending.isEmpty());
+                    }
+                }
+            }, timeLimitMillis);
+            logger.debug("connect (devices={},permits={})", devices.size(), permits.availablePermits());
+        }
+        pump();
+    }
+
+    /// Connect to devices in current batch while permits are available. A permit is acquired
+    /// and the device is taken from the batch under lock, thus a device is never taken without a
+    /// permit, e.g. when racing with immediate send. Devices are connected outside the lock, to
+    /// avoid blocking GATT callbacks and timeouts while the radio is initiating a connection.
+    /// A device that is already being connected by another caller is left to that connection.
+    private void pump() {
+        while (true) {
+            final BLEDevice device;
+            synchronized (this) {
+                if (pending.isEmpty() || !permits.tryAcquire()) {
+                    break;
+                }
+                device = pending.poll();
+            }
+            connectWithPermit(device);
+        }
+        synchronized (this) {
+            if (batchCallback != null && pending.isEmpty() && connections.isEmpty()) {
+                finishBatch(true);
+            }
+        }
+    }
+
+    private synchronized void finishBatch(final boolean success) {
+        if (batchDeadline != null) {
+            batchDeadline.cancel();
+            batchDeadline = null;
+        }
+        pending.clear();
+        final Callback<Boolean> callback = batchCallback;
+        batchCallback = null;
+        if (callback != null) {
+            callback.accept(success);
+        }
+    }
+
+    /// Initiate connection to device, returns true if connection has been initiated or
+    /// device is already connected, false if no permit is available or connect failed.
+    public boolean connect(final BLEDevice device) {
+        if (!permits.tryAcquire()) {
+            logger.debug("connect denied, no permit available (device={},active={})", device, connections.size());
+            return false;
+        }
+        return connectWithPermit(device);
+    }
+
+    /// Initiate connection to device, with permit already acquired by caller
+    private boolean connectWithPermit(final BLEDevice device) {
+        // Transition from .disconnected to .connecting atomically, to avoid
+        // competing with a connection initiated by the device or a prior attempt
+        if (!device.state(BLEDeviceState.disconnected, BLEDeviceState.connecting)) {
+            permits.release();
+            if (device.state() == BLEDeviceState.connected) {
+                logger.debug("connect, already connected to transmitter (device={})", device);
+                return true;
+            }
+            logger.debug("connect denied, connection in progress (device={},state={})", device, device.state());
+            return false;
+        }
+        final Connection connection = new Connection(device, scheduler.now());
+        connections.put(device.identifier, connection);
+        device.trace().mark(BLEDetectionStage.connectStart);
+        connection.timeout = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                abort(connection, connecting, "connectTimeout");
+            }
+        }, connectTimeoutMillis);
+        logger.debug("connect (device={},active={})", device, connections.size());
+        final Object handle = radio.connect(device);
+        if (handle == null) {
+            logger.fault("connect failed (device={})", device);
+            abort(connection, connecting, "connectFailed");
+            return false;
+        }
+        connection.handle = handle;
+        // Connection may have completed before radio returned the handle, e.g. connect
+        // timeout while connectGatt() was blocked, in which case finish() had no handle to close
+        if (connection.phase.get() == complete) {
+            radio.close(device, handle);
+        }
+        return true;
+    }
+
+    /// Connection established, called by radioDidConnect(). Returns false if connection
+    /// was not initiated by pipeline or has been abandoned, e.g. after connect timeout.
+    public boolean didConnect(final BLEDevice device) {
+        final Connection connection = connections.get(device.identifier);
+        if (connection == null || !connection.phase.compareAndSet(connecting, connected)) {
+            return false;
+        }
+        connection.timeout.cancel();
+        connection.device.state(BLEDeviceState.connecting, BLEDeviceState.connected);
+        connection.device.trace().mark(BLEDetectionStage.connected);
+        // Connect time informs setting of connect timeout. A previous implementation
+        // used an adaptive algorithm to adjust this parameter according to device
+        // capability, but that was deemed too unreliable for minimal gain in
+        // performance, as the target device plays a big part in determining the
+        // connection time, and that can be unpredictable due to environment factors.
+        final long connectElapsed = scheduler.now() - connection.startedAt;
+        timeToConnectDevice.add(connectElapsed);
+        logger.debug("didConnect (device={},elapsed={}ms,statistics={})", device, connectElapsed, timeToConnectDevice);
+        // Work is performed asynchronously by GATT callbacks which disconnect once all
+        // tasks have been completed. Force disconnection if connection is held too long.
+        connection.timeout = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                abort(connection, connected, "processTimeout");
+            }
+        }, processTimeoutMillis);
+        return true;
+    }
+
+    /// Connection closed, called by radioDidDisconnect(). Device is released to
+    /// .disconnected state by the pipeline, once the connection has been closed.
+    public void didDisconnect(final BLEDevice device) {
+        final Connection connection = connections.get(device.identifier);
+        if (connection == null) {
+            // Connection was not initiated by pipeline
+            device.state(BLEDeviceState.disconnected);
+            return;
+        }
+        final int phase = connection.phase.getAndSet(complete);
+        if (phase == complete) {
+            return;
+        }
+        finish(connection, phase == connected);
+    }
+
+    /// Abort connection if it is still in expected phase, to put device in a consistent default .disconnected state.
+    private void abort(final Connection connection, final int expectedPhase, final String reason) {
+        if (!connection.phase.compareAndSet(expectedPhase, complete)) {
+            return;
+        }
+        logger.fault("abort (device={},reason={})", connection.device, reason);
+        finish(connection, false);
+    }
+
+    /// Close connection by its own handle, then release device and permit for the next
+    /// connection, thus a new connection to the device cannot be closed by this connection.
+    private void finish(final Connection connection, final boolean success) {
+        final BLEScheduler.Task timeout = connection.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        final Object handle = connection.handle;
+        if (handle != null) {
+            radio.close(connection.device, handle);
+        }
+        connection.device.state(BLEDeviceState.disconnected);
+        connections.remove(connection.device.identifier, connection);
+        permits.release();
+        connection.device.registerConnection(success);
+        final long elapsed = scheduler.now() - connection.startedAt;
+        if (success) {
+            timeToProcessDevice.add(elapsed);
+            logger.debug("finish (success=true,device={},elapsed={}ms,statistics={})", connection.device, elapsed, timeToProcessDevice);
+        } else {
+            logger.fault("finish (success=false,device={},elapsed={}ms)", connection.device, elapsed);
+        }
+        pump();
+    }
+
+    /// Number of connections in progress
+    public int active() {
+        return connections.size();
+    }
+
+    /// Maximum number of concurrent connections
+    public int concurrency() {
+        return concurrency;
+    }
+}
@@ -0,0 +1,14 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Policy for ranking devices to connect to within the time budget of a scan cycle.
+public interface BLEConnectionPolicy {
+    /// Policy name for metrics
+    String name();
+
+    /// Value of connecting to device now, devices with higher value are connected first.
+    double value(BLEDeviceRecord record, long now);
+}
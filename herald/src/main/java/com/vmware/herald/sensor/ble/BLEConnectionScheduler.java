@@ -0,0 +1,115 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Rank devices discovered in a scan cycle by connection policy, so the most valuable
+/// devices are connected before the time budget runs out. Useful work achieved by each
+/// policy is measured per cycle as new payloads acquired per second. Policies are evaluated,
+/// and cycles are timed, on the clock of the scheduler.
+public class BLEConnectionScheduler {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEConnectionScheduler");
+    private final BLEScheduler scheduler;
+    /// New payloads per second for each scan cycle, by policy name
+    private final Map<String, Sample> newPayloadsPerSecond = new HashMap<>();
+    // Current cycle
+    private BLEConnectionPolicy policy = null;
+    private long cycleStartedAt = 0;
+    private int candidates = 0;
+    private int newPayloads = 0;
+    private int updatedPayloads = 0;
+
+    private final static class Candidate {
+        private final BLEDevice device;
+        private final double value;
+
+        private Candidate(final BLEDevice device, final double value) {
+            this.device = device;
+            this.value = value;
+        }
+    }
+
+    public BLEConnectionScheduler() {
+        this(new ConcreteBLEScheduler());
+    }
+
+    public BLEConnectionScheduler(final BLEScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /// Rank devices for connection by current policy, starting a new scan cycle.
+    public synchronized List<BLEDevice> schedule(final List<BLEDevice> devices) {
+        policy = BLESensorConfiguration.connectionPolicy;
+        cycleStartedAt = scheduler.now();
+        candidates = devices.size();
+        newPayloads = 0;
+        updatedPayloads = 0;
+        final List<Candidate> ranking = new ArrayList<>(devices.size());
+        for (final BLEDevice device : devices) {
+            ranking.add(new Candidate(device, policy.value(device.record(), cycleStartedAt)));
+        }
+        // Stable sort retains scan order for devices of equal value
+        Collections.sort(ranking, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate c0, Candidate c1) {
+                return Double.compare(c1.value, c0.value);
+            }
+        });
+        final List<BLEDevice> scheduled = new ArrayList<>(ranking.size());
+        for (final Candidate candidate : ranking) {
+            scheduled.add(candidate.device);
+        }
+        if (ranking.size() > 0) {
+            logger.debug("schedule (policy={},candidates={},top={},value={})", policy.name(), ranking.size(), ranking.get(0).device, ranking.get(0).value);
+        }
+        return scheduled;
+    }
+
+    /// Payload has been read from device, new if device had no payload or a different payload.
+    public synchronized void didReadPayload(final boolean isNew) {
+        if (policy == null) {
+            return;
+        }
+        if (isNew) {
+            newPayloads++;
+        } else {
+            updatedPayloads++;
+        }
+    }
+
+    /// Scan cycle connections have completed.
+    public synchronized void complete() {
+        if (policy == null) {
+            return;
+        }
+        final long elapsed = Math.max(1, scheduler.now() - cycleStartedAt);
+        final double rate = newPayloads / (elapsed / 1000d);
+        Sample sample = newPayloadsPerSecond.get(policy.name());
+        if (sample == null) {
+            sample = new Sample();
+            newPayloadsPerSecond.put(policy.name(), sample);
+        }
+        sample.add(rate);
+        logger.debug("complete (policy={},candidates={},newPayloads={},updatedPayloads={},elapsed={}ms,newPayloadsPerSecond={},statistics={})",
+                policy.name(), candidates, newPayloads, updatedPayloads, elapsed, rate, sample);
+        policy = null;
+    }
+
+    /// Distribution of new payloads acquired per second in each scan cycle for policy.
+    public synchronized Sample newPayloadsPerSecond(final String policyName) {
+        final Sample sample = newPayloadsPerSecond.get(policyName);
+        return (sample == null ? new Sample() : sample);
+    }
+}
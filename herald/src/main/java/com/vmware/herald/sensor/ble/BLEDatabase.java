@@ -5,11 +5,11 @@
 package com.vmware.herald.sensor.ble;
 
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.le.ScanResult;
 
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PayloadSharingData;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
+import com.vmware.herald.sensor.datatype.TimeInterval;
 
 import java.util.List;
 
@@ -19,7 +19,7 @@ public interface BLEDatabase {
     void add(BLEDatabaseDelegate delegate);
 
     /// Get or create device for collating information from asynchronous BLE operations.
-    BLEDevice device(ScanResult scanResult);
+    BLEDevice device(BLEScanResult scanResult);
 
     /// Get or create device for collating information from asynchronous BLE operations.
     BLEDevice device(BluetoothDevice bluetoothDevice);
@@ -33,9 +33,25 @@ public interface BLEDatabase {
     /// Get all devices
     List<BLEDevice> devices();
 
+    /// Take devices that have not been updated for longer than time interval. Devices are removed
+    /// from the expiry queue, thus each expired device is returned once and the caller must act on it.
+    List<BLEDevice> takeDevicesNotUpdatedFor(TimeInterval timeInterval);
+
+    /// Take devices that have been in connected state for longer than time interval. Devices are removed
+    /// from the expiry queue, thus each device is returned once per connection and the caller must act on it.
+    List<BLEDevice> takeDevicesConnectedFor(TimeInterval timeInterval);
+
     /// Delete
     void delete(TargetIdentifier identifier);
 
+    /// Save devices to snapshot for warm start
+    void save(BLEDatabaseSnapshot snapshot);
+
+    /// Restore devices from snapshot, devices already in database are retained. Restored
+    /// devices are published to delegates as created, but restored payload data is not
+    /// published as an update, as it was not read in this session.
+    void restore(BLEDatabaseSnapshot snapshot);
+
     /// Get payload sharing data for a peer
     PayloadSharingData payloadSharingData(BLEDevice peer);
 }
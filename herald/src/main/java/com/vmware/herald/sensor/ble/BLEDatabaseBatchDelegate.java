@@ -0,0 +1,13 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.List;
+
+/// Delegate for receiving registry create/update/delete events in batches. Events are
+/// delivered in order, and repeated updates of the same device attribute are coalesced.
+public interface BLEDatabaseBatchDelegate extends BLEDatabaseDelegate {
+    void bleDatabaseDidNotify(List<BLEDatabaseEvent> events);
+}
@@ -0,0 +1,24 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Registry create/update/delete event
+public class BLEDatabaseEvent {
+    public final BLEDatabaseEventType type;
+    public final BLEDevice device;
+    /// Updated attribute, only set for update events
+    public final BLEDeviceAttribute attribute;
+
+    public BLEDatabaseEvent(BLEDatabaseEventType type, BLEDevice device, BLEDeviceAttribute attribute) {
+        this.type = type;
+        this.device = device;
+        this.attribute = attribute;
+    }
+
+    @Override
+    public String toString() {
+        return "BLEDatabaseEvent[type=" + type + ",device=" + device.identifier + ",attribute=" + attribute + "]";
+    }
+}
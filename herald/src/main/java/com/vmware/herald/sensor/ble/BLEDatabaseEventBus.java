@@ -0,0 +1,233 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/// Coalescing notification stage between BLEDatabase and its delegates. Events are held in a
+/// bounded ring buffer and dispatched in batches once per tick. Repeated updates of the same
+/// device attribute within a tick are merged into one event, as delegates read the current
+/// attribute value from the device on dispatch. When the buffer is full, RSSI and TX power
+/// updates are dropped and counted, as they are superseded by the next measurement, rather than
+/// growing an unbounded executor queue. All other events, e.g. create, delete and payload data
+/// updates, are held in an overflow list of the same capacity until the next dispatch, as
+/// dropping them would lose contacts. When overflow is also full, the publisher is blocked until
+/// the next dispatch, thus memory is bounded even if a delegate stalls.
+public class BLEDatabaseEventBus {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEDatabaseEventBus");
+    private final Queue<BLEDatabaseDelegate> delegates;
+    private final ScheduledExecutorService queue = Executors.newSingleThreadScheduledExecutor();
+    private final long tickMillis;
+    private final BLEDatabaseEvent[] buffer;
+    private int head = 0;
+    private int count = 0;
+    private boolean dispatchScheduled = false;
+    /// Pending update attributes for each device in buffer, for coalescing
+    private final Map<BLEDevice, Set<BLEDeviceAttribute>> pendingUpdates = new HashMap<>();
+    /// Events that must be delivered, published while buffer is full
+    private final List<BLEDatabaseEvent> overflow = new ArrayList<>();
+    /// Dispatch thread, never blocked on publish as it would wait for itself
+    private volatile Thread dispatchThread = null;
+    // Counters
+    private long published = 0;
+    private long coalesced = 0;
+    private long dropped = 0;
+    private long overflowed = 0;
+    private long blocked = 0;
+    private long dispatched = 0;
+    private int maxQueueDepth = 0;
+
+    private final Runnable dispatch = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    /// Event bus for delegates, with events dispatched once per tick.
+    public BLEDatabaseEventBus(final Queue<BLEDatabaseDelegate> delegates, final long tickMillis, final int capacity) {
+        this.delegates = delegates;
+        this.tickMillis = tickMillis;
+        this.buffer = new BLEDatabaseEvent[capacity];
+    }
+
+    /// Publish event, repeated updates of the same device attribute are coalesced until dispatch.
+    public synchronized void publish(final BLEDatabaseEventType type, final BLEDevice device, final BLEDeviceAttribute attribute) {
+        published++;
+        if (type == BLEDatabaseEventType.update) {
+            Set<BLEDeviceAttribute> attributes = pendingUpdates.get(device);
+            if (attributes != null && attributes.contains(attribute)) {
+                coalesced++;
+                return;
+            }
+            if (count == buffer.length && droppable(attribute)) {
+                dropped++;
+                return;
+            }
+            if (attributes == null) {
+                attributes = EnumSet.noneOf(BLEDeviceAttribute.class);
+                pendingUpdates.put(device, attributes);
+            }
+            attributes.add(attribute);
+        }
+        final BLEDatabaseEvent event = new BLEDatabaseEvent(type, device, attribute);
+        // Block publisher until next dispatch when buffer and overflow are full
+        if (count == buffer.length && overflow.size() >= buffer.length && Thread.currentThread() != dispatchThread) {
+            blocked++;
+            logger.fault("publish, overflow full, blocking until dispatch (type={},device={})", type, device.identifier);
+            while (count == buffer.length && overflow.size() >= buffer.length) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // Deliver event regardless, rather than losing it
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (count == buffer.length) {
+            // Overflow events follow buffered events, thus order is preserved on dispatch
+            if (overflow.isEmpty()) {
+                logger.debug("publish, buffer full, holding events in overflow (type={},device={})", type, device.identifier);
+            }
+            overflow.add(event);
+            overflowed++;
+        } else {
+            buffer[(head + count) % buffer.length] = event;
+            count++;
+        }
+        if (count + overflow.size() > maxQueueDepth) {
+            maxQueueDepth = count + overflow.size();
+        }
+        if (!dispatchScheduled) {
+            dispatchScheduled = true;
+            queue.schedule(dispatch, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /// RSSI and TX power updates are superseded by the next measurement, thus can be dropped
+    private static boolean droppable(final BLEDeviceAttribute attribute) {
+        return attribute == BLEDeviceAttribute.rssi || attribute == BLEDeviceAttribute.txPower;
+    }
+
+    /// Take all events in buffer and overflow
+    private synchronized List<BLEDatabaseEvent> take() {
+        dispatchScheduled = false;
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        final List<BLEDatabaseEvent> events = new ArrayList<>(count + overflow.size());
+        for (int i=0; i<count; i++) {
+            final int index = (head + i) % buffer.length;
+            events.add(buffer[index]);
+            buffer[index] = null;
+        }
+        head = (head + count) % buffer.length;
+        count = 0;
+        events.addAll(overflow);
+        overflow.clear();
+        pendingUpdates.clear();
+        dispatched += events.size();
+        // Release publishers blocked on full overflow
+        notifyAll();
+        return events;
+    }
+
+    /// Dispatch events to delegates in batches, or individually for delegates not supporting batches
+    private void dispatch() {
+        dispatchThread = Thread.currentThread();
+        final List<BLEDatabaseEvent> events = take();
+        if (events.isEmpty()) {
+            return;
+        }
+        for (final BLEDatabaseDelegate delegate : delegates) {
+            try {
+                if (delegate instanceof BLEDatabaseBatchDelegate) {
+                    ((BLEDatabaseBatchDelegate) delegate).bleDatabaseDidNotify(events);
+                    continue;
+                }
+                for (final BLEDatabaseEvent event : events) {
+                    switch (event.type) {
+                        case create:
+                            delegate.bleDatabaseDidCreate(event.device);
+                            break;
+                        case update:
+                            delegate.bleDatabaseDidUpdate(event.device, event.attribute);
+                            break;
+                        case delete:
+                            delegate.bleDatabaseDidDelete(event.device);
+                            break;
+                    }
+                }
+            } catch (Throwable e) {
+                logger.fault("dispatch, delegate failed", e);
+            }
+        }
+        logger.debug("dispatch (events={},statistics={})", events.size(), this);
+    }
+
+    /// Number of events waiting for dispatch
+    public synchronized int queueDepth() {
+        return count + overflow.size();
+    }
+
+    /// Maximum number of events waiting for dispatch
+    public synchronized int maxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /// Number of events published
+    public synchronized long published() {
+        return published;
+    }
+
+    /// Number of events merged with a pending event
+    public synchronized long coalesced() {
+        return coalesced;
+    }
+
+    /// Number of RSSI and TX power updates dropped due to full buffer
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /// Number of events held in overflow due to full buffer
+    public synchronized long overflowed() {
+        return overflowed;
+    }
+
+    /// Number of times a publisher was blocked due to full overflow
+    public synchronized long blocked() {
+        return blocked;
+    }
+
+    /// Number of events dispatched to delegates
+    public synchronized long dispatched() {
+        return dispatched;
+    }
+
+    /// Ratio of published events that have been coalesced
+    public synchronized double coalesceRatio() {
+        return (published == 0 ? 0 : coalesced / (double) published);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[queueDepth=" + (count + overflow.size()) + ",maxQueueDepth=" + maxQueueDepth + ",published=" + published + ",coalesced=" + coalesced + ",dropped=" + dropped + ",overflowed=" + overflowed + ",blocked=" + blocked + ",dispatched=" + dispatched + "]";
+    }
+}
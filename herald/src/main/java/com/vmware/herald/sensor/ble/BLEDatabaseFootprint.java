@@ -0,0 +1,33 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Device table size and eviction statistics
+public class BLEDatabaseFootprint {
+    /// Number of devices in table
+    public final int devices;
+    /// Number of devices retaining scan record
+    public final int scanRecords;
+    /// Approximate memory held by devices, based on a fixed per-device
+    /// overhead plus retained scan record and payload data
+    public final long estimatedBytes;
+    /// Number of devices evicted to keep table within capacity
+    public final long evictions;
+    /// Number of times eviction has been triggered
+    public final long evictionRuns;
+
+    public BLEDatabaseFootprint(int devices, int scanRecords, long estimatedBytes, long evictions, long evictionRuns) {
+        this.devices = devices;
+        this.scanRecords = scanRecords;
+        this.estimatedBytes = estimatedBytes;
+        this.evictions = evictions;
+        this.evictionRuns = evictionRuns;
+    }
+
+    @Override
+    public String toString() {
+        return "[devices=" + devices + ",scanRecords=" + scanRecords + ",estimatedBytes=" + estimatedBytes + ",evictions=" + evictions + ",evictionRuns=" + evictionRuns + "]";
+    }
+}
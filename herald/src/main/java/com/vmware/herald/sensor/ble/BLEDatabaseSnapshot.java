@@ -0,0 +1,162 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/// Compact binary snapshot of the device table for warm start after process restart. Only
+/// devices with a resolved payload or ignore state are written, as these are the devices that
+/// would otherwise require connection and payload read to be repeated. Snapshot is written to
+/// a temporary file first and then renamed to avoid reading a partially written snapshot.
+public class BLEDatabaseSnapshot {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEDatabaseSnapshot");
+    private final static int magic = 0x48424C45;
+    private final static byte version = 1;
+    private final static long none = -1;
+    private final File file;
+
+    public BLEDatabaseSnapshot(final File file) {
+        this.file = file;
+    }
+
+    /// Write devices to snapshot
+    public synchronized void write(final List<BLEDevice> devices) {
+        final List<BLEDevice> snapshotDevices = new ArrayList<>(devices.size());
+        for (final BLEDevice device : devices) {
+            if (device.payloadData() != null || device.ignoreUntil() != null) {
+                snapshotDevices.add(device);
+            }
+        }
+        final File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try {
+                outputStream.writeInt(magic);
+                outputStream.writeByte(version);
+                outputStream.writeInt(snapshotDevices.size());
+                for (final BLEDevice device : snapshotDevices) {
+                    write(outputStream, device);
+                }
+            } finally {
+                outputStream.close();
+            }
+            if (!temporaryFile.renameTo(file)) {
+                logger.fault("write failed, rename failed (file={})", file);
+                return;
+            }
+            logger.debug("write (file={},devices={},bytes={})", file, snapshotDevices.size(), file.length());
+        } catch (Throwable e) {
+            logger.fault("write failed (file={})", file, e);
+        }
+    }
+
+    /// Read devices that have been updated within expiry time interval from snapshot
+    public synchronized List<BLEDevice> read(final BLEDeviceDelegate delegate, final TimeInterval expiry) {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        final long now = new Date().getTime();
+        final List<BLEDevice> devices = new ArrayList<>();
+        try {
+            final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (inputStream.readInt() != magic || inputStream.readByte() != version) {
+                    logger.fault("read failed, unsupported format (file={})", file);
+                    return Collections.emptyList();
+                }
+                final int count = inputStream.readInt();
+                for (int i=0; i<count; i++) {
+                    final BLEDevice device = read(inputStream, delegate);
+                    if (expiry == TimeInterval.never || now - device.lastUpdatedAt().getTime() <= expiry.millis()) {
+                        devices.add(device);
+                    }
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (Throwable e) {
+            logger.fault("read failed (file={})", file, e);
+            return Collections.emptyList();
+        }
+        logger.debug("read (file={},devices={})", file, devices.size());
+        return devices;
+    }
+
+    // MARK:- Encoding
+
+    private static void write(final DataOutputStream outputStream, final BLEDevice device) throws Exception {
+        outputStream.writeUTF(device.identifier.value);
+        outputStream.writeLong(device.lastUpdatedAt().getTime());
+        outputStream.writeByte(device.operatingSystem().ordinal());
+        write(outputStream, device.pseudoDeviceAddress() == null ? null : device.pseudoDeviceAddress().data);
+        write(outputStream, device.payloadData() == null ? null : device.payloadData().value);
+        write(outputStream, device.lastPayloadDataUpdate());
+        outputStream.writeLong(device.ignoreForDuration() == null ? none : device.ignoreForDuration().value);
+        write(outputStream, device.ignoreUntil());
+        outputStream.writeInt(device.ignoreRequestCount());
+    }
+
+    private static void write(final DataOutputStream outputStream, final byte[] data) throws Exception {
+        if (data == null) {
+            outputStream.writeShort((int) none);
+            return;
+        }
+        outputStream.writeShort(data.length);
+        outputStream.write(data);
+    }
+
+    private static void write(final DataOutputStream outputStream, final Date date) throws Exception {
+        outputStream.writeLong(date == null ? none : date.getTime());
+    }
+
+    private static BLEDevice read(final DataInputStream inputStream, final BLEDeviceDelegate delegate) throws Exception {
+        final TargetIdentifier identifier = new TargetIdentifier(inputStream.readUTF());
+        final Date lastUpdatedAt = new Date(inputStream.readLong());
+        final BLEDeviceOperatingSystem operatingSystem = BLEDeviceOperatingSystem.values()[inputStream.readByte()];
+        final byte[] pseudoDeviceAddressData = readData(inputStream);
+        final PseudoDeviceAddress pseudoDeviceAddress = (pseudoDeviceAddressData == null ? null : new PseudoDeviceAddress(pseudoDeviceAddressData));
+        final byte[] payloadDataValue = readData(inputStream);
+        final PayloadData payloadData = (payloadDataValue == null ? null : new PayloadData(payloadDataValue));
+        final Date lastPayloadDataUpdate = readDate(inputStream);
+        final long ignoreForDurationValue = inputStream.readLong();
+        final TimeInterval ignoreForDuration = (ignoreForDurationValue == none ? null : new TimeInterval(ignoreForDurationValue));
+        final Date ignoreUntil = readDate(inputStream);
+        final int ignoreRequestCount = inputStream.readInt();
+        return new BLEDevice(identifier, delegate, lastUpdatedAt, pseudoDeviceAddress, operatingSystem,
+                payloadData, lastPayloadDataUpdate, ignoreForDuration, ignoreUntil, ignoreRequestCount);
+    }
+
+    private static byte[] readData(final DataInputStream inputStream) throws Exception {
+        final short length = inputStream.readShort();
+        if (length == none) {
+            return null;
+        }
+        final byte[] data = new byte[length];
+        inputStream.readFully(data);
+        return data;
+    }
+
+    private static Date readDate(final DataInputStream inputStream) throws Exception {
+        final long time = inputStream.readLong();
+        return (time == none ? null : new Date(time));
+    }
+}
@@ -0,0 +1,71 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Histogram;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/// Detection latency histograms per stage and per operating system, aggregated from
+/// completed detection traces. Each stage histogram measures the time from the previous
+/// recorded stage to this stage, and the scanSeen histogram measures the total time from
+/// advert seen to delegate dispatch, to identify the stage that dominates time to first payload.
+public class BLEDetectionLatency {
+    /// Bucket upper bounds in milliseconds
+    private final static double[] buckets = {100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000, 600000};
+    private final Map<BLEDeviceOperatingSystem, Histogram[]> histograms = new EnumMap<>(BLEDeviceOperatingSystem.class);
+    private long traces = 0;
+    private long incompleteTraces = 0;
+
+    /// Add completed trace of device to histograms
+    public synchronized void add(final BLEDeviceOperatingSystem operatingSystem, final BLEDetectionTrace trace) {
+        final long start = trace.timestamp(BLEDetectionStage.scanSeen);
+        final long end = trace.timestamp(BLEDetectionStage.delegateDispatch);
+        if (start == 0 || end == 0) {
+            // Payload acquired without scan, e.g. written by or shared from peer
+            incompleteTraces++;
+            return;
+        }
+        traces++;
+        Histogram[] stages = histograms.get(operatingSystem);
+        if (stages == null) {
+            stages = new Histogram[BLEDetectionStage.values().length];
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new Histogram(buckets);
+            }
+            histograms.put(operatingSystem, stages);
+        }
+        stages[BLEDetectionStage.scanSeen.ordinal()].add(end - start);
+        long previous = start;
+        for (final BLEDetectionStage stage : BLEDetectionStage.values()) {
+            final long timestamp = trace.timestamp(stage);
+            if (stage == BLEDetectionStage.scanSeen || timestamp == 0 || timestamp < previous) {
+                continue;
+            }
+            stages[stage.ordinal()].add(timestamp - previous);
+            previous = timestamp;
+        }
+    }
+
+    /// Latency histogram for stage and operating system, null if no trace has been recorded
+    public synchronized Histogram histogram(final BLEDeviceOperatingSystem operatingSystem, final BLEDetectionStage stage) {
+        final Histogram[] stages = histograms.get(operatingSystem);
+        return (stages == null ? null : stages[stage.ordinal()]);
+    }
+
+    /// Render all histograms, one line per operating system and stage
+    public synchronized String dump() {
+        final StringBuilder s = new StringBuilder();
+        s.append("detectionLatency (traces=").append(traces).append(",incompleteTraces=").append(incompleteTraces).append(")\n");
+        for (final Map.Entry<BLEDeviceOperatingSystem, Histogram[]> entry : histograms.entrySet()) {
+            for (final BLEDetectionStage stage : BLEDetectionStage.values()) {
+                s.append(entry.getKey().name()).append('.').append(stage == BLEDetectionStage.scanSeen ? "total" : stage.name());
+                s.append('=').append(entry.getValue()[stage.ordinal()]).append('\n');
+            }
+        }
+        return s.toString();
+    }
+}
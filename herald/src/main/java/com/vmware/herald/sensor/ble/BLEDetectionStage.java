@@ -0,0 +1,23 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Trace points from first seeing a device advert to delivering sensor(didRead) to delegates, in pipeline order.
+public enum BLEDetectionStage {
+    /// Advert first seen in scan result
+    scanSeen,
+    /// Device handed to connection pipeline as connection candidate
+    queued,
+    /// Connection initiated on radio
+    connectStart,
+    /// Connection established
+    connected,
+    /// Sensor service and characteristics discovered
+    servicesDiscovered,
+    /// Payload characteristic read
+    characteristicRead,
+    /// Payload delivered to delegates as sensor(didRead)
+    delegateDispatch
+}
@@ -0,0 +1,58 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Detection trace for a device, recording when the device passed each stage towards
+/// its first sensor(didRead). Advert is recorded when first seen, other stages record
+/// the latest attempt, such that time spent on failed connections and retries is
+/// attributed to waiting for the successful attempt. Trace is frozen once complete.
+public class BLEDetectionTrace {
+    private final long[] timestamps = new long[BLEDetectionStage.values().length];
+    private boolean complete = false;
+
+    /// Record device has reached stage now
+    public void mark(final BLEDetectionStage stage) {
+        mark(stage, System.currentTimeMillis());
+    }
+
+    /// Record device has reached stage at time
+    public synchronized void mark(final BLEDetectionStage stage, final long timestamp) {
+        if (complete) {
+            return;
+        }
+        if (stage == BLEDetectionStage.scanSeen && timestamps[stage.ordinal()] != 0) {
+            return;
+        }
+        timestamps[stage.ordinal()] = timestamp;
+        if (stage == BLEDetectionStage.delegateDispatch) {
+            complete = true;
+        }
+    }
+
+    /// Trace has reached delegate dispatch
+    public synchronized boolean complete() {
+        return complete;
+    }
+
+    /// Time at which device reached stage, 0 if not reached
+    public synchronized long timestamp(final BLEDetectionStage stage) {
+        return timestamps[stage.ordinal()];
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder s = new StringBuilder("[");
+        final long start = timestamps[BLEDetectionStage.scanSeen.ordinal()];
+        for (final BLEDetectionStage stage : BLEDetectionStage.values()) {
+            if (stage.ordinal() > 0) {
+                s.append(',');
+            }
+            final long timestamp = timestamps[stage.ordinal()];
+            s.append(stage.name()).append('=').append(timestamp == 0 || start == 0 ? "-" : Long.toString(timestamp - start));
+        }
+        s.append(']');
+        return s.toString();
+    }
+}
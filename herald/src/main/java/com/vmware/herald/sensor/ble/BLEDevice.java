@@ -5,8 +5,6 @@
 package com.vmware.herald.sensor.ble;
 
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.le.ScanRecord;
 
 import com.vmware.herald.sensor.datatype.Data;
 import com.vmware.herald.sensor.datatype.PayloadData;
@@ -15,191 +13,282 @@ import com.vmware.herald.sensor.datatype.RSSI;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
 import com.vmware.herald.sensor.datatype.TimeInterval;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.List;
 import java.util.Queue;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/// Device attributes are held in an immutable versioned record that is replaced atomically
+/// on every update. Updates are applied by compare-and-set, and retried on contention, to
+/// avoid lost updates when attributes are written concurrently by GATT callbacks, the
+/// receiver and transmitter, without taking a lock. Use record() to read a consistent view
+/// of all attributes.
 public class BLEDevice {
     /// Device registration timestamp
     public final Date createdAt;
-    /// Last time anything changed, e.g. attribute update
-    public Date lastUpdatedAt = null;
     /// Ephemeral device identifier, e.g. peripheral identifier UUID
     public final TargetIdentifier identifier;
-    /// Pseudo device address for tracking Android devices that change address constantly.
-    private PseudoDeviceAddress pseudoDeviceAddress = null;
     /// Delegate for listening to attribute updates events.
     private final BLEDeviceDelegate delegate;
-    /// Android Bluetooth device object for interacting with this device.
-    private BluetoothDevice peripheral = null;
-    /// Bluetooth device connection state.
-    private BLEDeviceState state = BLEDeviceState.disconnected;
-    /// Device operating system, this is necessary for selecting different interaction procedures for each platform.
-    private BLEDeviceOperatingSystem operatingSystem = BLEDeviceOperatingSystem.unknown;
-    /// Payload data acquired from the device via payloadCharacteristic read, e.g. C19X beacon code or Sonar encrypted identifier
-    private PayloadData payloadData = null;
-    private Date lastPayloadDataUpdate = null;
-    /// Immediate Send data to send next
-    private Data immediateSendData = null;
-    /// Most recent RSSI measurement taken by readRSSI or didDiscover.
-    private RSSI rssi = null;
-    /// Transmit power data where available (only provided by Android devices)
-    private BLE_TxPower txPower = null;
-    /// Is device receive only?
-    private boolean receiveOnly = false;
-    /// Ignore logic
-    private TimeInterval ignoreForDuration = null;
-    private Date ignoreUntil = null;
-    private int ignoreRequestCount = 0;
-    private ScanRecord scanRecord = null;
+    /// Current device attributes, replaced atomically on update.
+    private final AtomicReference<BLEDeviceRecord> record;
+    /// Raw scan record bytes of most recent scan result
+    private volatile Data scanRecord = null;
+    /// Detection latency trace, from first seeing advert to first didRead
+    private final BLEDetectionTrace trace;
 
     /// BLE characteristics
-    private BluetoothGattCharacteristic signalCharacteristic = null;
-    private BluetoothGattCharacteristic payloadCharacteristic = null;
-    protected byte[] signalCharacteristicWriteValue = null;
-    protected Queue<byte[]> signalCharacteristicWriteQueue = null;
+    private volatile BLERadio.Characteristic signalCharacteristic = null;
+    private volatile BLERadio.Characteristic payloadCharacteristic = null;
+    protected volatile byte[] signalCharacteristicWriteValue = null;
+    protected volatile Queue<byte[]> signalCharacteristicWriteQueue = null;
 
-    /// Track connection timestamps
-    private Date lastDiscoveredAt = null;
-    private Date lastConnectedAt = null;
+    /// ATT MTU negotiated with device, cached across connections, null if not negotiated yet
+    private volatile Integer mtu = null;
+    /// ATT MTU in effect for current connection
+    private volatile int connectionMtu = BLESensorConfiguration.defaultMtu;
 
     /// Payload data already shared with this peer
-    protected final List<PayloadData> payloadSharingData = new ArrayList<>();
+    protected final Set<PayloadData> payloadSharingData = Collections.newSetFromMap(new ConcurrentHashMap<PayloadData, Boolean>());
+
+    /// Outcome of applying a transition to the next version of the device record
+    private enum TransitionResult {
+        /// Discard next version, leaving current record unchanged
+        abort,
+        /// Publish next version without notifying delegate
+        update,
+        /// Publish next version and notify delegate
+        notify
+    }
+
+    /// Transition from current to next version of the device record, this may be applied
+    /// more than once on contention, thus it must only modify the builder for the next version.
+    private interface Transition {
+        TransitionResult apply(BLEDeviceRecord.Builder next);
+    }
+
+    /// Apply transition atomically, returns published record, or null if transition was aborted.
+    private BLEDeviceRecord transition(final BLEDeviceAttribute attribute, final Transition transition) {
+        while (true) {
+            final BLEDeviceRecord current = record.get();
+            final BLEDeviceRecord.Builder builder = new BLEDeviceRecord.Builder(current);
+            final TransitionResult result = transition.apply(builder);
+            if (result == TransitionResult.abort) {
+                return null;
+            }
+            final BLEDeviceRecord next = builder.build();
+            if (record.compareAndSet(current, next)) {
+                if (result == TransitionResult.notify && attribute != null) {
+                    delegate.device(this, attribute);
+                }
+                return next;
+            }
+        }
+    }
+
+    /// Get consistent view of all device attributes
+    public BLEDeviceRecord record() {
+        return record.get();
+    }
+
+    /// Last time anything changed, e.g. attribute update
+    public Date lastUpdatedAt() {
+        return record.get().lastUpdatedAt;
+    }
 
-    /// Track write timestamps
-    private Date lastWritePayloadAt = null;
-    private Date lastWriteRssiAt = null;
-    private Date lastWritePayloadSharingAt = null;
+    public Date lastConnectedAt() {
+        return record.get().lastConnectedAt;
+    }
 
     public TimeInterval timeIntervalSinceConnected() {
-        if (state() != BLEDeviceState.connected) {
+        final BLEDeviceRecord record = this.record.get();
+        if (record.state != BLEDeviceState.connected) {
             return TimeInterval.zero;
         }
-        if (lastConnectedAt == null) {
+        if (record.lastConnectedAt == null) {
             return TimeInterval.zero;
         }
-        return new TimeInterval((new Date().getTime() - lastConnectedAt.getTime()) / 1000);
+        return new TimeInterval((new Date().getTime() - record.lastConnectedAt.getTime()) / 1000);
     }
 
     /// Time interval since last attribute value update, this is used to identify devices that may have expired and should be removed from the database.
     public TimeInterval timeIntervalSinceLastUpdate() {
-        return new TimeInterval((new Date().getTime() - lastUpdatedAt.getTime()) / 1000);
+        return new TimeInterval((new Date().getTime() - record.get().lastUpdatedAt().getTime()) / 1000);
     }
 
     public String description() {
-        return "BLEDevice[id=" + identifier + ",os=" + operatingSystem + ",payload=" + payloadData() + ",address=" + pseudoDeviceAddress() + "]";
+        final BLEDeviceRecord record = this.record.get();
+        return "BLEDevice[id=" + identifier + ",os=" + record.operatingSystem + ",payload=" + record.payloadData + ",address=" + record.pseudoDeviceAddress + "]";
     }
 
     public BLEDevice(TargetIdentifier identifier, BLEDeviceDelegate delegate) {
         this.createdAt = new Date();
         this.identifier = identifier;
         this.delegate = delegate;
-        this.lastUpdatedAt = createdAt;
+        this.record = new AtomicReference<>(new BLEDeviceRecord.Builder(createdAt).build());
+        this.trace = new BLEDetectionTrace();
     }
 
     /// Create a clone of an existing device
-    public BLEDevice(BLEDevice device, BluetoothDevice bluetoothDevice) {
+    public BLEDevice(BLEDevice device, TargetIdentifier identifier) {
         this.createdAt = device.createdAt;
-        this.lastUpdatedAt = new Date();
-        this.identifier = new TargetIdentifier(bluetoothDevice);
-        this.pseudoDeviceAddress = device.pseudoDeviceAddress;
+        this.identifier = identifier;
         this.delegate = device.delegate;
-        this.state = device.state;
-        this.operatingSystem = device.operatingSystem;
-        this.payloadData = device.payloadData;
-        this.lastPayloadDataUpdate = device.lastPayloadDataUpdate;
-        this.rssi = device.rssi;
-        this.txPower = device.txPower;
-        this.receiveOnly = device.receiveOnly;
-        this.ignoreForDuration = device.ignoreForDuration;
-        this.ignoreUntil = device.ignoreUntil;
-        this.ignoreRequestCount = device.ignoreRequestCount;
+        final BLEDeviceRecord.Builder record = new BLEDeviceRecord.Builder(device.record());
+        record.lastUpdatedAt = new Date();
+        this.record = new AtomicReference<>(record.build());
         this.scanRecord = device.scanRecord;
         this.signalCharacteristic = device.signalCharacteristic;
         this.payloadCharacteristic = device.payloadCharacteristic;
         this.signalCharacteristicWriteValue = device.signalCharacteristicWriteValue;
         this.signalCharacteristicWriteQueue = device.signalCharacteristicWriteQueue;
-        this.lastDiscoveredAt = device.lastDiscoveredAt;
-        this.lastConnectedAt = device.lastConnectedAt;
         this.payloadSharingData.addAll(device.payloadSharingData);
-        this.lastWritePayloadAt = device.lastWritePayloadAt;
-        this.lastWriteRssiAt = device.lastWriteRssiAt;
-        this.lastWritePayloadSharingAt = device.lastWritePayloadSharingAt;
+        this.trace = device.trace;
     }
 
-    public PseudoDeviceAddress pseudoDeviceAddress() {
-        return pseudoDeviceAddress;
+    /// Restore a device from snapshot, without peripheral or connection state
+    public BLEDevice(TargetIdentifier identifier, BLEDeviceDelegate delegate, Date lastUpdatedAt,
+                     PseudoDeviceAddress pseudoDeviceAddress, BLEDeviceOperatingSystem operatingSystem,
+                     PayloadData payloadData, Date lastPayloadDataUpdate,
+                     TimeInterval ignoreForDuration, Date ignoreUntil, int ignoreRequestCount) {
+        this.createdAt = new Date();
+        this.identifier = identifier;
+        this.delegate = delegate;
+        final BLEDeviceRecord.Builder record = new BLEDeviceRecord.Builder(lastUpdatedAt);
+        record.pseudoDeviceAddress = pseudoDeviceAddress;
+        record.operatingSystem = operatingSystem;
+        record.payloadData = payloadData;
+        record.lastPayloadDataUpdate = lastPayloadDataUpdate;
+        record.ignoreForDuration = ignoreForDuration;
+        record.ignoreUntil = ignoreUntil;
+        record.ignoreRequestCount = ignoreRequestCount;
+        this.record = new AtomicReference<>(record.build());
+        this.trace = new BLEDetectionTrace();
     }
 
-    public void pseudoDeviceAddress(PseudoDeviceAddress pseudoDeviceAddress) {
-        if (this.pseudoDeviceAddress == null || !this.pseudoDeviceAddress.equals(pseudoDeviceAddress)) {
-            this.pseudoDeviceAddress = pseudoDeviceAddress;
-            lastUpdatedAt = new Date();
-        }
+    public BLEDetectionTrace trace() {
+        return trace;
     }
 
-    public BluetoothDevice peripheral() {
-        return peripheral;
+    public PseudoDeviceAddress pseudoDeviceAddress() {
+        return record.get().pseudoDeviceAddress;
+    }
+
+    public void pseudoDeviceAddress(final PseudoDeviceAddress pseudoDeviceAddress) {
+        transition(BLEDeviceAttribute.pseudoDeviceAddress, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                if (next.pseudoDeviceAddress != null && next.pseudoDeviceAddress.equals(pseudoDeviceAddress)) {
+                    return TransitionResult.abort;
+                }
+                next.pseudoDeviceAddress = pseudoDeviceAddress;
+                next.lastUpdatedAt = new Date();
+                return TransitionResult.notify;
+            }
+        });
     }
 
-    public void peripheral(BluetoothDevice peripheral) {
-        if (this.peripheral != peripheral) {
-            this.peripheral = peripheral;
-            lastUpdatedAt = new Date();
-        }
+    public BluetoothDevice peripheral() {
+        return record.get().peripheral;
+    }
+
+    public void peripheral(final BluetoothDevice peripheral) {
+        transition(BLEDeviceAttribute.peripheral, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                if (next.peripheral == peripheral) {
+                    return TransitionResult.abort;
+                }
+                next.peripheral = peripheral;
+                next.lastUpdatedAt = new Date();
+                return TransitionResult.update;
+            }
+        });
     }
 
     public BLEDeviceState state() {
-        return state;
-    }
-
-    public void state(BLEDeviceState state) {
-        this.state = state;
-        lastUpdatedAt = new Date();
-        if (state == BLEDeviceState.connected) {
-            lastConnectedAt = lastUpdatedAt;
-        }
-        delegate.device(this, BLEDeviceAttribute.state);
+        return record.get().state;
+    }
+
+    public void state(final BLEDeviceState state) {
+        transition(BLEDeviceAttribute.state, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.state = state;
+                next.lastUpdatedAt = new Date();
+                if (state == BLEDeviceState.connected) {
+                    next.lastConnectedAt = next.lastUpdatedAt;
+                }
+                return TransitionResult.notify;
+            }
+        });
+    }
+
+    /// Change state only if current state is the expected state, e.g. disconnected to connecting.
+    /// Returns true if state has been changed.
+    public boolean state(final BLEDeviceState expected, final BLEDeviceState state) {
+        return transition(BLEDeviceAttribute.state, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                if (next.state != expected) {
+                    return TransitionResult.abort;
+                }
+                next.state = state;
+                next.lastUpdatedAt = new Date();
+                if (state == BLEDeviceState.connected) {
+                    next.lastConnectedAt = next.lastUpdatedAt;
+                }
+                return TransitionResult.notify;
+            }
+        }) != null;
     }
 
     public BLEDeviceOperatingSystem operatingSystem() {
-        return operatingSystem;
-    }
-
-    public void operatingSystem(BLEDeviceOperatingSystem operatingSystem) {
-        lastUpdatedAt = new Date();
-        // Set ignore timer
-        if (operatingSystem == BLEDeviceOperatingSystem.ignore) {
-            ignoreRequestCount++;
-            if (ignoreForDuration == null) {
-                ignoreForDuration = TimeInterval.minute;
-            } else if (ignoreForDuration.value < TimeInterval.minutes(3).value) {
-                ignoreForDuration = new TimeInterval(Math.round(ignoreForDuration.value * 1.2));
+        return record.get().operatingSystem;
+    }
+
+    public void operatingSystem(final BLEDeviceOperatingSystem operatingSystem) {
+        transition(BLEDeviceAttribute.operatingSystem, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.lastUpdatedAt = new Date();
+                // Set ignore timer
+                if (operatingSystem == BLEDeviceOperatingSystem.ignore) {
+                    next.ignoreRequestCount++;
+                    if (next.ignoreForDuration == null) {
+                        next.ignoreForDuration = TimeInterval.minute;
+                    } else if (next.ignoreForDuration.value < TimeInterval.minutes(3).value) {
+                        next.ignoreForDuration = new TimeInterval(Math.round(next.ignoreForDuration.value * 1.2));
+                    }
+                    next.ignoreUntil = new Date(next.lastUpdatedAt.getTime() + next.ignoreForDuration.millis());
+                    // Ignore permanently if ignoreRequestCount >= ignoreDevicePermanentlyAfterRetries
+                    if (BLESensorConfiguration.ignoreDevicePermanentlyAfterRetries != null
+                        && next.ignoreRequestCount >= BLESensorConfiguration.ignoreDevicePermanentlyAfterRetries) {
+                        next.ignoreUntil = new Date(Long.MAX_VALUE);
+                    }
+                } else {
+                    next.ignoreUntil = null;
+                }
+                // Reset ignore for duration and request count if operating system has been confirmed
+                if (operatingSystem == BLEDeviceOperatingSystem.ios || operatingSystem == BLEDeviceOperatingSystem.android) {
+                    next.ignoreForDuration = null;
+                    next.ignoreRequestCount = 0;
+                }
+                // Set operating system
+                if (next.operatingSystem != operatingSystem) {
+                    next.operatingSystem = operatingSystem;
+                    return TransitionResult.notify;
+                }
+                return TransitionResult.update;
             }
-            ignoreUntil = new Date(lastUpdatedAt.getTime() + ignoreForDuration.millis());
-            // Ignore permanently if ignoreRequestCount >= ignoreDevicePermanentlyAfterRetries
-            if (BLESensorConfiguration.ignoreDevicePermanentlyAfterRetries != null
-                && ignoreRequestCount >= BLESensorConfiguration.ignoreDevicePermanentlyAfterRetries) {
-                ignoreUntil = new Date(Long.MAX_VALUE);
-            }
-        } else {
-            ignoreUntil = null;
-        }
-        // Reset ignore for duration and request count if operating system has been confirmed
-        if (operatingSystem == BLEDeviceOperatingSystem.ios || operatingSystem == BLEDeviceOperatingSystem.android) {
-            ignoreForDuration = null;
-            ignoreRequestCount = 0;
-        }
-        // Set operating system
-        if (this.operatingSystem != operatingSystem) {
-            this.operatingSystem = operatingSystem;
-            delegate.device(this, BLEDeviceAttribute.operatingSystem);
-        }
+        });
     }
 
     /// Should ignore this device for now.
     public boolean ignore() {
+        final Date ignoreUntil = record.get().ignoreUntil;
         if (ignoreUntil == null) {
             return false;
         }
@@ -210,58 +299,89 @@ public class BLEDevice {
     }
 
     public PayloadData payloadData() {
-        return payloadData;
+        return record.get().payloadData;
+    }
+
+    public void payloadData(final PayloadData payloadData) {
+        transition(BLEDeviceAttribute.payloadData, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.payloadData = payloadData;
+                next.lastPayloadDataUpdate = new Date();
+                next.lastUpdatedAt = next.lastPayloadDataUpdate;
+                return TransitionResult.notify;
+            }
+        });
     }
 
-    public void payloadData(PayloadData payloadData) {
-        this.payloadData = payloadData;
-        lastPayloadDataUpdate = new Date();
-        lastUpdatedAt = lastPayloadDataUpdate;
-        delegate.device(this, BLEDeviceAttribute.payloadData);
+    public Date lastPayloadDataUpdate() {
+        return record.get().lastPayloadDataUpdate;
     }
 
     public TimeInterval timeIntervalSinceLastPayloadDataUpdate() {
-        if (lastPayloadDataUpdate == null) {
-            return TimeInterval.never;
-        }
-        return new TimeInterval((new Date().getTime() - lastPayloadDataUpdate.getTime()) / 1000);
+        return timeIntervalSince(record.get().lastPayloadDataUpdate);
     }
 
-    public void immediateSendData(Data immediateSendData) {
-        this.immediateSendData = immediateSendData;
+    public void immediateSendData(final Data immediateSendData) {
+        transition(null, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.immediateSendData = immediateSendData;
+                return TransitionResult.update;
+            }
+        });
     }
 
     public Data immediateSendData() {
-        return immediateSendData;
+        return record.get().immediateSendData;
     }
 
     public RSSI rssi() {
-        return rssi;
+        return record.get().rssi;
     }
 
-    public void rssi(RSSI rssi) {
-        this.rssi = rssi;
-        lastUpdatedAt = new Date();
-        delegate.device(this, BLEDeviceAttribute.rssi);
+    public void rssi(final RSSI rssi) {
+        transition(BLEDeviceAttribute.rssi, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.rssi = rssi;
+                next.lastUpdatedAt = new Date();
+                return TransitionResult.notify;
+            }
+        });
     }
 
     public BLE_TxPower txPower() {
-        return txPower;
+        return record.get().txPower;
     }
 
-    public void txPower(BLE_TxPower txPower) {
-        this.txPower = txPower;
-        lastUpdatedAt = new Date();
-        delegate.device(this, BLEDeviceAttribute.txPower);
+    public void txPower(final BLE_TxPower txPower) {
+        transition(BLEDeviceAttribute.txPower, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.txPower = txPower;
+                next.lastUpdatedAt = new Date();
+                return TransitionResult.notify;
+            }
+        });
     }
 
     public boolean receiveOnly() {
-        return receiveOnly;
-    }
-
-    public void receiveOnly(boolean receiveOnly) {
-        this.receiveOnly = receiveOnly;
-        lastUpdatedAt = new Date();
+        return record.get().receiveOnly;
+    }
+
+    public void receiveOnly(final boolean receiveOnly) {
+        transition(BLEDeviceAttribute.receiveOnly, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.lastUpdatedAt = new Date();
+                if (next.receiveOnly != receiveOnly) {
+                    next.receiveOnly = receiveOnly;
+                    return TransitionResult.notify;
+                }
+                return TransitionResult.update;
+            }
+        });
     }
 
     public void invalidateCharacteristics() {
@@ -269,66 +389,136 @@ public class BLEDevice {
         payloadCharacteristic = null;
     }
 
-    public BluetoothGattCharacteristic signalCharacteristic() {
+    public BLERadio.Characteristic signalCharacteristic() {
         return signalCharacteristic;
     }
 
-    public void signalCharacteristic(BluetoothGattCharacteristic characteristic) {
+    public void signalCharacteristic(BLERadio.Characteristic characteristic) {
         this.signalCharacteristic = characteristic;
-        lastUpdatedAt = new Date();
+        touch();
     }
 
-    public BluetoothGattCharacteristic payloadCharacteristic() {
+    public BLERadio.Characteristic payloadCharacteristic() {
         return payloadCharacteristic;
     }
 
-    public void payloadCharacteristic(BluetoothGattCharacteristic characteristic) {
+    /// ATT MTU negotiated in a previous or current connection, null if not negotiated yet
+    public Integer mtu() {
+        return mtu;
+    }
+
+    /// ATT MTU negotiated for current connection, also cached for subsequent connections
+    public void mtu(final int mtu) {
+        this.mtu = mtu;
+        this.connectionMtu = mtu;
+    }
+
+    /// ATT MTU in effect for current connection
+    public int connectionMtu() {
+        return connectionMtu;
+    }
+
+    /// Reset ATT MTU to default on new connection, as MTU is negotiated per connection
+    public void resetConnectionMtu() {
+        this.connectionMtu = BLESensorConfiguration.defaultMtu;
+    }
+
+    public void payloadCharacteristic(BLERadio.Characteristic characteristic) {
         this.payloadCharacteristic = characteristic;
-        lastUpdatedAt = new Date();
+        touch();
+    }
+
+    /// Update last updated timestamp only
+    private void touch() {
+        transition(null, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.lastUpdatedAt = new Date();
+                return TransitionResult.update;
+            }
+        });
     }
 
     public void registerDiscovery() {
-        lastDiscoveredAt = new Date();
-        lastUpdatedAt = lastDiscoveredAt;
+        transition(null, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.lastDiscoveredAt = new Date();
+                next.lastUpdatedAt = next.lastDiscoveredAt;
+                return TransitionResult.update;
+            }
+        });
     }
 
     public void registerWritePayload() {
-        lastUpdatedAt = new Date();
-        lastWritePayloadAt = lastUpdatedAt;
+        transition(null, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.lastUpdatedAt = new Date();
+                next.lastWritePayloadAt = next.lastUpdatedAt;
+                return TransitionResult.update;
+            }
+        });
     }
 
     public TimeInterval timeIntervalSinceLastWritePayload() {
-        if (lastWritePayloadAt == null) {
-            return TimeInterval.never;
-        }
-        return new TimeInterval((new Date().getTime() - lastWritePayloadAt.getTime()) / 1000);
+        return timeIntervalSince(record.get().lastWritePayloadAt);
     }
 
     public void registerWriteRssi() {
-        lastUpdatedAt = new Date();
-        lastWriteRssiAt = lastUpdatedAt;
+        transition(null, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.lastUpdatedAt = new Date();
+                next.lastWriteRssiAt = next.lastUpdatedAt;
+                return TransitionResult.update;
+            }
+        });
     }
 
     public TimeInterval timeIntervalSinceLastWriteRssi() {
-        if (lastWriteRssiAt == null) {
-            return TimeInterval.never;
-        }
-        return new TimeInterval((new Date().getTime() - lastWriteRssiAt.getTime()) / 1000);
+        return timeIntervalSince(record.get().lastWriteRssiAt);
     }
 
     public void registerWritePayloadSharing() {
-        lastUpdatedAt = new Date();
-        lastWritePayloadSharingAt = lastUpdatedAt;
+        transition(null, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.lastUpdatedAt = new Date();
+                next.lastWritePayloadSharingAt = next.lastUpdatedAt;
+                return TransitionResult.update;
+            }
+        });
     }
 
     public TimeInterval timeIntervalSinceLastWritePayloadSharing() {
-        if (lastWritePayloadSharingAt == null) {
+        return timeIntervalSince(record.get().lastWritePayloadSharingAt);
+    }
+
+    /// Register outcome of connection attempt, for estimating connection success rate
+    public void registerConnection(final boolean success) {
+        transition(null, new Transition() {
+            @Override
+            public TransitionResult apply(BLEDeviceRecord.Builder next) {
+                next.connectionAttempts++;
+                if (success) {
+                    next.connectionSuccesses++;
+                }
+                return TransitionResult.update;
+            }
+        });
+    }
+
+    /// Time interval since date, or never if date is null
+    private static TimeInterval timeIntervalSince(final Date date) {
+        if (date == null) {
             return TimeInterval.never;
         }
-        return new TimeInterval((new Date().getTime() - lastWritePayloadSharingAt.getTime()) / 1000);
+        return new TimeInterval((new Date().getTime() - date.getTime()) / 1000);
     }
 
     public TimeInterval timeIntervalUntilIgnoreExpires() {
+        final Date ignoreUntil = record.get().ignoreUntil;
         if (ignoreUntil == null) {
             return TimeInterval.zero;
         }
@@ -338,15 +528,23 @@ public class BLEDevice {
         return new TimeInterval((ignoreUntil.getTime() - new Date().getTime()) / 1000);
     }
 
+    public TimeInterval ignoreForDuration() {
+        return record.get().ignoreForDuration;
+    }
+
+    public Date ignoreUntil() {
+        return record.get().ignoreUntil;
+    }
+
     public int ignoreRequestCount() {
-        return ignoreRequestCount;
+        return record.get().ignoreRequestCount;
     }
 
-    public void scanRecord(ScanRecord scanRecord) {
+    public void scanRecord(Data scanRecord) {
         this.scanRecord = scanRecord;
     }
 
-    public ScanRecord scanRecord() {
+    public Data scanRecord() {
         return scanRecord;
     }
 
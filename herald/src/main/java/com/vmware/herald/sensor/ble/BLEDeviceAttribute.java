@@ -5,5 +5,5 @@
 package com.vmware.herald.sensor.ble;
 
 public enum BLEDeviceAttribute {
-    peripheral, state, operatingSystem, payloadData, rssi, txPower
+    peripheral, pseudoDeviceAddress, state, operatingSystem, payloadData, rssi, txPower, receiveOnly
 }
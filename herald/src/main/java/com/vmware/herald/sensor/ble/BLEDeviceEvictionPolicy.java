@@ -0,0 +1,85 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.RSSI;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/// Eviction policy for bounding the device table. Devices that would cost the least to
+/// rediscover are evicted first, i.e. devices without payload, then devices that have never
+/// been connected, then devices with the weakest signal, and finally the least recently
+/// updated devices. Devices that are connecting or connected are never evicted.
+public class BLEDeviceEvictionPolicy {
+    /// Order devices by eviction priority, first device is evicted first
+    public final static Comparator<BLEDeviceRecord> evictionOrder = new Comparator<BLEDeviceRecord>() {
+        @Override
+        public int compare(BLEDeviceRecord r0, BLEDeviceRecord r1) {
+            // Devices without payload first
+            final int payloadData = Boolean.compare(r0.payloadData != null, r1.payloadData != null);
+            if (payloadData != 0) {
+                return payloadData;
+            }
+            // Devices that have never been connected next
+            final int connected = Boolean.compare(r0.lastConnectedAt != null, r1.lastConnectedAt != null);
+            if (connected != 0) {
+                return connected;
+            }
+            // Devices with weakest signal next
+            final int rssi = Integer.compare(rssi(r0.rssi), rssi(r1.rssi));
+            if (rssi != 0) {
+                return rssi;
+            }
+            // Least recently updated devices last
+            return r0.lastUpdatedAt.compareTo(r1.lastUpdatedAt);
+        }
+    };
+
+    /// Select devices to evict in eviction order.
+    public List<BLEDevice> victims(final Collection<BLEDevice> devices, final int count) {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        // Rank consistent view of each device, as attributes may change during sorting
+        final List<Candidate> candidates = new ArrayList<>(devices.size());
+        for (final BLEDevice device : devices) {
+            final BLEDeviceRecord record = device.record();
+            if (record.state != BLEDeviceState.disconnected) {
+                continue;
+            }
+            candidates.add(new Candidate(device, record));
+        }
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate c0, Candidate c1) {
+                return evictionOrder.compare(c0.record, c1.record);
+            }
+        });
+        final List<BLEDevice> victims = new ArrayList<>(Math.min(count, candidates.size()));
+        for (int i=0; i<count && i<candidates.size(); i++) {
+            victims.add(candidates.get(i).device);
+        }
+        return victims;
+    }
+
+    /// Unknown RSSI is treated as weakest signal
+    private static int rssi(final RSSI rssi) {
+        return (rssi == null ? Integer.MIN_VALUE : rssi.value);
+    }
+
+    private final static class Candidate {
+        private final BLEDevice device;
+        private final BLEDeviceRecord record;
+
+        private Candidate(final BLEDevice device, final BLEDeviceRecord record) {
+            this.device = device;
+            this.record = record;
+        }
+    }
+}
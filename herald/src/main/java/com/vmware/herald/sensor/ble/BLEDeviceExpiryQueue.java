@@ -0,0 +1,86 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/// Deadline ordered queue for identifying expired devices in O(expired) time, rather than
+/// checking every device in the database. Devices are ordered by a timestamp that is read
+/// on insertion, and re-read lazily when the device reaches the head of the queue, so
+/// timestamp updates do not require any notification. Each device is queued at most once.
+public abstract class BLEDeviceExpiryQueue {
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(64, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e0, Entry e1) {
+            return Long.compare(e0.time, e1.time);
+        }
+    });
+    private final Set<BLEDevice> queued = new HashSet<>();
+
+    private final static class Entry {
+        public final long time;
+        public final BLEDevice device;
+
+        private Entry(long time, BLEDevice device) {
+            this.time = time;
+            this.device = device;
+        }
+    }
+
+    /// Current timestamp of device for ordering, or null if the device should no longer be tracked.
+    protected abstract Date timestamp(BLEDevice device);
+
+    /// Add device to queue, if it is not already queued.
+    public synchronized void add(final BLEDevice device) {
+        if (queued.contains(device)) {
+            return;
+        }
+        final Date timestamp = timestamp(device);
+        if (timestamp == null) {
+            return;
+        }
+        queue.add(new Entry(timestamp.getTime(), device));
+        queued.add(device);
+    }
+
+    /// Remove and return all devices with timestamp before time limit. Devices that have been
+    /// updated since insertion are re-queued with their current timestamp.
+    public synchronized List<BLEDevice> takeExpired(final long before) {
+        List<BLEDevice> expired = null;
+        while (!queue.isEmpty() && queue.peek().time < before) {
+            final BLEDevice device = queue.poll().device;
+            queued.remove(device);
+            final Date timestamp = timestamp(device);
+            if (timestamp == null) {
+                continue;
+            }
+            if (timestamp.getTime() < before) {
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(device);
+            } else {
+                queue.add(new Entry(timestamp.getTime(), device));
+                queued.add(device);
+            }
+        }
+        if (expired == null) {
+            return Collections.emptyList();
+        }
+        return expired;
+    }
+
+    /// Number of queued devices.
+    public synchronized int size() {
+        return queue.size();
+    }
+}
@@ -4,84 +4,120 @@
 
 package com.vmware.herald.sensor.ble;
 
-import android.bluetooth.le.ScanRecord;
 import android.content.Context;
 
 import com.vmware.herald.sensor.data.ConcreteSensorLogger;
 import com.vmware.herald.sensor.data.SensorLogger;
 import com.vmware.herald.sensor.data.TextFile;
 import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.TimeInterval;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
 
 /// Adaptive filter to ignoring devices that have repeatedly failed connection or does
-/// not advertise sensor services.
+/// not advertise sensor services. Training counts are held in a bounded model that is
+/// persisted and restored on start, such that known devices are ignored from the first scan.
+/// Training counts are keyed by feature pattern rather than exact feature data, such that
+/// devices that only differ in rotating nonce bytes share the same training counts.
 public class BLEDeviceFilter {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEDeviceFilter");
+    private final BLEDeviceFilterModel model = new BLEDeviceFilterModel(BLESensorConfiguration.deviceFilterCapacity);
+    private final BLEDeviceFilterMatcher matcher = new BLEDeviceFilterMatcher();
+    private final File modelFile;
     private final TextFile textFile;
-    private final Map<Data, ShouldIgnore> samples = new HashMap<>();
+    /// Incremented on every training example, for invalidating cached ignore decisions
+    private long version = 0;
+    /// Training data version when model was last written
+    private long savedVersion = 0;
+    private long lastSaved = 0;
 
-    // Counter for training samples
-    private final static class ShouldIgnore {
-        public long yes = 0;
-        public long no = 0;
-    }
-
-    /// BLE device filter with in-memory lookup table
+    /// BLE device filter with in-memory model
     public BLEDeviceFilter() {
+        modelFile = null;
         textFile = null;
+        compile();
     }
 
-    /// BLE device filter with in-memory lookup table and persisted training data file
+    /// BLE device filter with in-memory model restored from and persisted to model file,
+    /// and optional training data log file for analysis
     public BLEDeviceFilter(final Context context, final String file) {
-        textFile = new TextFile(context, file);
-        if (textFile.empty()) {
-            textFile.write("ignore,featureData,scanRecordRawData,identifier");
+        modelFile = new File(context.getFilesDir(), file);
+        model.read(modelFile);
+        compile();
+        lastSaved = System.currentTimeMillis();
+        if (BLESensorConfiguration.deviceFilterTrainingLog) {
+            textFile = new TextFile(context, "filter.csv");
+            if (textFile.empty()) {
+                textFile.write("ignore,featureData,scanRecordRawData,identifier");
+            }
+        } else {
+            textFile = null;
+        }
+    }
+
+    /// Compile configured patterns and learned patterns in model into matcher
+    private synchronized void compile() {
+        matcher.clear();
+        for (final String pattern : BLESensorConfiguration.deviceFilterFeaturePatterns) {
+            if (!matcher.add(pattern)) {
+                logger.fault("compile, invalid pattern (pattern={})", pattern);
+            }
+        }
+        for (final Data feature : model.features()) {
+            matcher.add(new String(feature.value));
         }
+        logger.debug("compile (matcher={})", matcher);
     }
 
     /// Extract feature data from scan record
-    private Data extractFeatures(final ScanRecord scanRecord) {
-        if (scanRecord == null) {
+    public Data extractFeatures(final Data scanRecord) {
+        if (scanRecord == null || scanRecord.value == null) {
             return null;
         }
         // Get manufacturer data
-        final byte[] manufacturerSpecificData = scanRecord.getManufacturerSpecificData(BLESensorConfiguration.manufacturerIdForApple);
-        if (manufacturerSpecificData == null) {
-            return null;
+        final BLEAdvertCursor cursor = new BLEAdvertCursor().reset(scanRecord.value, 0);
+        while (cursor.next(BLEAdvertSegmentType.manufacturerData)) {
+            if (cursor.manufacturer() == BLESensorConfiguration.manufacturerIdForApple) {
+                final byte[] manufacturerSpecificData = new byte[cursor.manufacturerDataLength()];
+                System.arraycopy(scanRecord.value, cursor.manufacturerDataOffset(), manufacturerSpecificData, 0, manufacturerSpecificData.length);
+                return new Data(manufacturerSpecificData);
+            }
         }
-        final Data featureData = new Data(manufacturerSpecificData);
-        return featureData;
+        return null;
     }
 
     /// Add training example to adaptive filter.
     public synchronized void train(final BLEDevice device, final boolean ignore) {
-        final ScanRecord scanRecord = device.scanRecord();
+        final Data scanRecordData = device.scanRecord();
         // Get feature data from scan record
-        if (scanRecord == null) {
+        if (scanRecordData == null || scanRecordData.value == null) {
             return;
         }
-        final Data scanRecordData = (scanRecord.getBytes() == null ? null : new Data(scanRecord.getBytes()));
-        if (scanRecordData == null) {
-            return;
-        }
-        final Data featureData = extractFeatures(scanRecord);
+        final Data featureData = extractFeatures(scanRecordData);
         if (featureData == null) {
             return;
         }
-        // Update ignore yes/no counts for feature data
-        ShouldIgnore shouldIgnore = samples.get(featureData);
-        if (shouldIgnore == null) {
-            shouldIgnore = new ShouldIgnore();
-            samples.put(featureData, shouldIgnore);
+        // Update ignore yes/no counts for feature pattern, learning a new pattern if feature
+        // data does not match any configured or learned pattern
+        String pattern = matcher.match(featureData.value);
+        if (pattern == null) {
+            pattern = BLEDeviceFilterMatcher.pattern(featureData.value, BLESensorConfiguration.deviceFilterFeaturePrefixLength);
+            if (!matcher.add(pattern)) {
+                return;
+            }
         }
-        if (ignore) {
-            shouldIgnore.yes++;
-        } else {
-            shouldIgnore.no++;
+        model.train(new Data(pattern.getBytes()), ignore);
+        version++;
+        // Remove patterns evicted from model
+        if (matcher.size() > BLESensorConfiguration.deviceFilterFeaturePatterns.length + 2 * model.size()) {
+            compile();
+        }
+        logger.debug("train (ignore={},feature={},pattern={},scanRecord={},identifier={},model={},matcher={})", (ignore ? "Y" : "N"), featureData.hexEncodedString(), pattern, scanRecordData.hexEncodedString(), device.identifier, model, matcher);
+        // Write model periodically, rather than on every training example
+        if (BLESensorConfiguration.deviceFilterSnapshotTimeInterval != TimeInterval.never &&
+                System.currentTimeMillis() - lastSaved >= BLESensorConfiguration.deviceFilterSnapshotTimeInterval.millis()) {
+            save();
         }
-        logger.debug("train (ignore={},feature={},scanRecord={},identifier={})", (ignore ? "Y" : "N"), featureData.hexEncodedString(), scanRecordData.hexEncodedString(), device.identifier);
         // Write sample to text file for analysis
         if (textFile == null) {
             return;
@@ -99,19 +135,43 @@ public class BLEDeviceFilter {
 
     /// Should the device be ignored based on scan record data?
     public boolean ignore(final BLEDevice device) {
-        final ScanRecord scanRecord = device.scanRecord();
+        final Data scanRecord = device.scanRecord();
         // Do not ignore device without any scan record data
         if (scanRecord == null) {
             return false;
         }
         // Extract feature data from scan record
+        return ignore(extractFeatures(scanRecord));
+    }
+
+    /// Training data version, changes whenever ignore decisions may have changed
+    public synchronized long version() {
+        return version;
+    }
+
+    /// Write model to file if training data has changed since last write
+    public synchronized void save() {
+        if (modelFile == null || version == savedVersion) {
+            return;
+        }
+        if (model.write(modelFile)) {
+            savedVersion = version;
+        }
+        lastSaved = System.currentTimeMillis();
+    }
+
+    /// Should the device be ignored based on feature data?
+    public synchronized boolean ignore(final Data featureData) {
         // Do not ignore device without any feature data
-        final Data featureData = extractFeatures(scanRecord);
         if (featureData == null) {
             return false;
         }
-        // Get training example statistics
-        final ShouldIgnore shouldIgnore = samples.get(featureData);
+        // Get training example statistics in a single pass over feature data
+        final String pattern = matcher.match(featureData.value);
+        if (pattern == null) {
+            return false;
+        }
+        final BLEDeviceFilterModel.Counts shouldIgnore = model.get(new Data(pattern.getBytes()));
         // Do not ignore device based on unknown feature data
         if (shouldIgnore == null) {
             return false;
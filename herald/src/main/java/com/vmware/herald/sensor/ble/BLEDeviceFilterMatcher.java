@@ -0,0 +1,171 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Sample;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Matcher for device filter feature patterns, compiled into a prefix trie. A pattern is a hex
+/// string where ".." matches any byte, e.g. "1005011c......" for Apple nearby info type 0x10 and
+/// length 5 with flags 01 1c, ignoring the rotating authentication tag. Patterns match a prefix
+/// of the data, unless terminated by "$", in which case the pattern must match the entire data.
+/// All patterns are matched in a single pass over the data, returning the longest matching
+/// pattern, where a pattern matching the entire data is preferred.
+public class BLEDeviceFilterMatcher {
+    private final static String wildcard = "..";
+    private final static String end = "$";
+    private Node root = new Node();
+    private int patterns = 0;
+    private int nodes = 1;
+    // Reused for matching
+    private List<Node> active = new ArrayList<>();
+    private List<Node> next = new ArrayList<>();
+    /// Match latency in microseconds
+    private final Sample matchLatency = new Sample();
+
+    private final static class Node {
+        private final Map<Byte, Node> children = new HashMap<>(4);
+        private Node any = null;
+        private String pattern = null;
+        private String exactPattern = null;
+    }
+
+    /// Add pattern to matcher, returns false if pattern is invalid
+    public synchronized boolean add(final String pattern) {
+        if (pattern == null) {
+            return false;
+        }
+        final boolean exact = pattern.endsWith(end);
+        final int length = pattern.length() - (exact ? end.length() : 0);
+        if (length == 0 || length % 2 != 0) {
+            return false;
+        }
+        Node node = root;
+        for (int i = 0; i < length; i += 2) {
+            final String token = pattern.substring(i, i + 2);
+            Node child;
+            if (wildcard.equals(token)) {
+                child = node.any;
+                if (child == null) {
+                    child = new Node();
+                    node.any = child;
+                    nodes++;
+                }
+            } else {
+                final Byte key;
+                try {
+                    key = (byte) Integer.parseInt(token, 16);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                child = node.children.get(key);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(key, child);
+                    nodes++;
+                }
+            }
+            node = child;
+        }
+        if (exact && node.exactPattern == null) {
+            node.exactPattern = pattern;
+            patterns++;
+        } else if (!exact && node.pattern == null) {
+            node.pattern = pattern;
+            patterns++;
+        }
+        return true;
+    }
+
+    /// Pattern matching entire data, else longest pattern matching a prefix of data, or null if
+    /// no pattern matches
+    public synchronized String match(final byte[] data) {
+        final long start = System.nanoTime();
+        String match = null;
+        active.clear();
+        active.add(root);
+        int i = 0;
+        for (; i < data.length && !active.isEmpty(); i++) {
+            next.clear();
+            for (final Node node : active) {
+                final Node child = node.children.get(data[i]);
+                if (child != null) {
+                    next.add(child);
+                    if (child.pattern != null) {
+                        match = child.pattern;
+                    }
+                }
+                if (node.any != null) {
+                    next.add(node.any);
+                    if (node.any.pattern != null && (child == null || child.pattern == null)) {
+                        match = node.any.pattern;
+                    }
+                }
+            }
+            final List<Node> swap = active;
+            active = next;
+            next = swap;
+        }
+        if (i == data.length) {
+            for (final Node node : active) {
+                if (node.exactPattern != null) {
+                    match = node.exactPattern;
+                    break;
+                }
+            }
+        }
+        matchLatency.add((System.nanoTime() - start) / 1000d);
+        return match;
+    }
+
+    /// Remove all patterns
+    public synchronized void clear() {
+        root = new Node();
+        patterns = 0;
+        nodes = 1;
+    }
+
+    /// Number of patterns in matcher
+    public synchronized int size() {
+        return patterns;
+    }
+
+    /// Generalize feature data into a pattern for learning. Apple manufacturer data is a sequence
+    /// of type, length, value segments. Pattern retains type, length and the first prefixLength
+    /// bytes of the value of every segment, and matches any byte for the remaining value bytes
+    /// which are typically rotating nonces. Pattern must match the entire data, thus devices
+    /// advertising different segments, e.g. a Mac and an iPhone that both advertise nearby info,
+    /// are learned as different patterns. Bytes that are not a well formed segment are matched
+    /// exactly.
+    public static String pattern(final byte[] data, final int prefixLength) {
+        final StringBuilder stringBuilder = new StringBuilder(data.length * 2 + end.length());
+        int i = 0;
+        while (i + 2 <= data.length && i + 2 + (data[i + 1] & 0xff) <= data.length) {
+            final int length = 2 + (data[i + 1] & 0xff);
+            for (int j = 0; j < length; j++) {
+                if (j < 2 + prefixLength) {
+                    stringBuilder.append(String.format("%02x", data[i + j]));
+                } else {
+                    stringBuilder.append(wildcard);
+                }
+            }
+            i += length;
+        }
+        for (; i < data.length; i++) {
+            stringBuilder.append(String.format("%02x", data[i]));
+        }
+        stringBuilder.append(end);
+        return stringBuilder.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[patterns=" + patterns + ",nodes=" + nodes + ",matchLatency=" + matchLatency + "]";
+    }
+}
@@ -0,0 +1,215 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.Data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Bounded table of ignore yes/no training counts for device filter, keyed by feature pattern.
+/// Least trained features are evicted, with scores aged and evicted features remembered, such
+/// that a new feature can still be learned when full. Persisted as a compact binary file.
+public class BLEDeviceFilterModel {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEDeviceFilterModel");
+    private final static int magic = 0x48444646;
+    private final static byte version = 2;
+    /// Training score saturates at maximum, thus an unused feature ages out within a few aging periods
+    private final static int maxScore = 64;
+    /// Scores are halved every agingPeriod * capacity trainings
+    private final static int agingPeriod = 8;
+    private final int capacity;
+    private final Map<Data, Counts> counts;
+    /// Recently evicted features, least recently evicted first, such that a recurring feature
+    /// resumes its counts rather than being evicted by every new feature before it is learned
+    private final Map<Data, Counts> history;
+    private long evictions = 0;
+    private long trainings = 0;
+
+    /// Training counts for feature
+    public final static class Counts {
+        public int yes = 0;
+        public int no = 0;
+        /// Training frequency with aging, for eviction
+        private int score = 0;
+        /// Training sequence number of last training, for eviction
+        private long trainedAt = 0;
+    }
+
+    /// Model holding up to capacity features
+    public BLEDeviceFilterModel(final int capacity) {
+        this.capacity = capacity;
+        this.counts = new HashMap<>(capacity * 4 / 3 + 1);
+        this.history = new LinkedHashMap<Data, Counts>(capacity * 4 / 3 + 1) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Data, Counts> eldest) {
+                return size() > BLEDeviceFilterModel.this.capacity;
+            }
+        };
+    }
+
+    /// Training counts for feature, including recently evicted features, or null if feature is unknown
+    public synchronized Counts get(final Data feature) {
+        final Counts entry = counts.get(feature);
+        return (entry != null ? entry : history.get(feature));
+    }
+
+    /// Add training example for feature
+    public synchronized void train(final Data feature, final boolean ignore) {
+        Counts entry = counts.get(feature);
+        if (entry == null) {
+            if (counts.size() >= capacity) {
+                evict();
+            }
+            entry = history.remove(feature);
+            if (entry == null) {
+                entry = new Counts();
+            }
+            counts.put(feature, entry);
+        }
+        trainings++;
+        entry.trainedAt = trainings;
+        if (entry.score < maxScore) {
+            entry.score++;
+        }
+        if (trainings % ((long) agingPeriod * capacity) == 0) {
+            age();
+        }
+        if (ignore) {
+            if (entry.yes < Integer.MAX_VALUE) {
+                entry.yes++;
+            }
+        } else {
+            if (entry.no < Integer.MAX_VALUE) {
+                entry.no++;
+            }
+        }
+    }
+
+    /// Halve training score of all features
+    private void age() {
+        for (final Counts entry : counts.values()) {
+            entry.score >>= 1;
+        }
+        for (final Counts entry : history.values()) {
+            entry.score >>= 1;
+        }
+    }
+
+    /// Evict feature with lowest training score, or least recently trained feature of equal score.
+    /// Scanning the table is acceptable as it is small and new features are rare.
+    private void evict() {
+        Data victimKey = null;
+        Counts victim = null;
+        for (final Map.Entry<Data, Counts> entry : counts.entrySet()) {
+            final Counts candidate = entry.getValue();
+            if (victim == null || candidate.score < victim.score || (candidate.score == victim.score && candidate.trainedAt < victim.trainedAt)) {
+                victimKey = entry.getKey();
+                victim = candidate;
+            }
+        }
+        if (victimKey != null) {
+            counts.remove(victimKey);
+            history.put(victimKey, victim);
+            evictions++;
+        }
+    }
+
+    /// Number of features in model
+    public synchronized int size() {
+        return counts.size();
+    }
+
+    /// Features in model
+    public synchronized List<Data> features() {
+        return new ArrayList<>(counts.keySet());
+    }
+
+    /// Write model table to file, via temporary file and rename to avoid reading a partial model
+    public synchronized boolean write(final File file) {
+        final File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try {
+                outputStream.writeInt(magic);
+                outputStream.writeByte(version);
+                outputStream.writeInt(counts.size());
+                for (final Map.Entry<Data, Counts> entry : counts.entrySet()) {
+                    outputStream.writeShort(entry.getKey().value.length);
+                    outputStream.write(entry.getKey().value);
+                    outputStream.writeInt(entry.getValue().yes);
+                    outputStream.writeInt(entry.getValue().no);
+                }
+            } finally {
+                outputStream.close();
+            }
+            if (!temporaryFile.renameTo(file)) {
+                logger.fault("write failed, rename failed (file={})", file);
+                return false;
+            }
+            logger.debug("write (file={},features={},bytes={})", file, counts.size(), file.length());
+            return true;
+        } catch (Throwable e) {
+            logger.fault("write failed (file={})", file, e);
+            return false;
+        }
+    }
+
+    /// Read model from file, replacing current counts. Features beyond capacity are discarded.
+    public synchronized boolean read(final File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (inputStream.readInt() != magic || inputStream.readByte() != version) {
+                    logger.fault("read failed, unsupported format (file={})", file);
+                    return false;
+                }
+                final int count = inputStream.readInt();
+                counts.clear();
+                history.clear();
+                for (int i=0; i<count; i++) {
+                    final byte[] key = new byte[inputStream.readShort()];
+                    inputStream.readFully(key);
+                    final Counts entry = new Counts();
+                    entry.yes = inputStream.readInt();
+                    entry.no = inputStream.readInt();
+                    entry.score = (int) Math.min(maxScore, (long) entry.yes + entry.no);
+                    if (counts.size() < capacity) {
+                        counts.put(new Data(key), entry);
+                    }
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (Throwable e) {
+            logger.fault("read failed (file={})", file, e);
+            counts.clear();
+            history.clear();
+            return false;
+        }
+        logger.debug("read (file={},features={})", file, counts.size());
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[features=" + counts.size() + ",history=" + history.size() + ",capacity=" + capacity + ",evictions=" + evictions + "]";
+    }
+}
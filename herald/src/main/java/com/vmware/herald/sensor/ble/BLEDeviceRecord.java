@@ -0,0 +1,220 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+import com.vmware.herald.sensor.datatype.RSSI;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import java.util.Date;
+
+/// Versioned record of device attributes. A record is immutable, thus readers can obtain a
+/// consistent view of all attributes without locking by reading BLEDevice.record(). BLEDevice
+/// prepares a transition by modifying a Builder for the next version of the record.
+public class BLEDeviceRecord {
+    /// Record version, incremented on every transition
+    final long version;
+    /// Last time anything changed, e.g. attribute update
+    final Date lastUpdatedAt;
+    final PseudoDeviceAddress pseudoDeviceAddress;
+    final BluetoothDevice peripheral;
+    final BLEDeviceState state;
+    final BLEDeviceOperatingSystem operatingSystem;
+    final PayloadData payloadData;
+    final Date lastPayloadDataUpdate;
+    final Data immediateSendData;
+    final RSSI rssi;
+    final BLE_TxPower txPower;
+    final boolean receiveOnly;
+    final TimeInterval ignoreForDuration;
+    final Date ignoreUntil;
+    final int ignoreRequestCount;
+    final Date lastDiscoveredAt;
+    final Date lastConnectedAt;
+    final Date lastWritePayloadAt;
+    final Date lastWriteRssiAt;
+    final Date lastWritePayloadSharingAt;
+    final int connectionAttempts;
+    final int connectionSuccesses;
+
+    private BLEDeviceRecord(final Builder builder) {
+        this.version = builder.version;
+        this.lastUpdatedAt = builder.lastUpdatedAt;
+        this.pseudoDeviceAddress = builder.pseudoDeviceAddress;
+        this.peripheral = builder.peripheral;
+        this.state = builder.state;
+        this.operatingSystem = builder.operatingSystem;
+        this.payloadData = builder.payloadData;
+        this.lastPayloadDataUpdate = builder.lastPayloadDataUpdate;
+        this.immediateSendData = builder.immediateSendData;
+        this.rssi = builder.rssi;
+        this.txPower = builder.txPower;
+        this.receiveOnly = builder.receiveOnly;
+        this.ignoreForDuration = builder.ignoreForDuration;
+        this.ignoreUntil = builder.ignoreUntil;
+        this.ignoreRequestCount = builder.ignoreRequestCount;
+        this.lastDiscoveredAt = builder.lastDiscoveredAt;
+        this.lastConnectedAt = builder.lastConnectedAt;
+        this.lastWritePayloadAt = builder.lastWritePayloadAt;
+        this.lastWriteRssiAt = builder.lastWriteRssiAt;
+        this.lastWritePayloadSharingAt = builder.lastWritePayloadSharingAt;
+        this.connectionAttempts = builder.connectionAttempts;
+        this.connectionSuccesses = builder.connectionSuccesses;
+    }
+
+    /// Builder for preparing the next version of a record
+    final static class Builder {
+        final long version;
+        Date lastUpdatedAt;
+        PseudoDeviceAddress pseudoDeviceAddress = null;
+        BluetoothDevice peripheral = null;
+        BLEDeviceState state = BLEDeviceState.disconnected;
+        BLEDeviceOperatingSystem operatingSystem = BLEDeviceOperatingSystem.unknown;
+        PayloadData payloadData = null;
+        Date lastPayloadDataUpdate = null;
+        Data immediateSendData = null;
+        RSSI rssi = null;
+        BLE_TxPower txPower = null;
+        boolean receiveOnly = false;
+        TimeInterval ignoreForDuration = null;
+        Date ignoreUntil = null;
+        int ignoreRequestCount = 0;
+        Date lastDiscoveredAt = null;
+        Date lastConnectedAt = null;
+        Date lastWritePayloadAt = null;
+        Date lastWriteRssiAt = null;
+        Date lastWritePayloadSharingAt = null;
+        int connectionAttempts = 0;
+        int connectionSuccesses = 0;
+
+        /// Builder for initial record of new device
+        Builder(final Date lastUpdatedAt) {
+            this.version = 0;
+            this.lastUpdatedAt = lastUpdatedAt;
+        }
+
+        /// Builder for next version of record
+        Builder(final BLEDeviceRecord record) {
+            this.version = record.version + 1;
+            this.lastUpdatedAt = record.lastUpdatedAt;
+            this.pseudoDeviceAddress = record.pseudoDeviceAddress;
+            this.peripheral = record.peripheral;
+            this.state = record.state;
+            this.operatingSystem = record.operatingSystem;
+            this.payloadData = record.payloadData;
+            this.lastPayloadDataUpdate = record.lastPayloadDataUpdate;
+            this.immediateSendData = record.immediateSendData;
+            this.rssi = record.rssi;
+            this.txPower = record.txPower;
+            this.receiveOnly = record.receiveOnly;
+            this.ignoreForDuration = record.ignoreForDuration;
+            this.ignoreUntil = record.ignoreUntil;
+            this.ignoreRequestCount = record.ignoreRequestCount;
+            this.lastDiscoveredAt = record.lastDiscoveredAt;
+            this.lastConnectedAt = record.lastConnectedAt;
+            this.lastWritePayloadAt = record.lastWritePayloadAt;
+            this.lastWriteRssiAt = record.lastWriteRssiAt;
+            this.lastWritePayloadSharingAt = record.lastWritePayloadSharingAt;
+            this.connectionAttempts = record.connectionAttempts;
+            this.connectionSuccesses = record.connectionSuccesses;
+        }
+
+        BLEDeviceRecord build() {
+            return new BLEDeviceRecord(this);
+        }
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public Date lastUpdatedAt() {
+        return lastUpdatedAt;
+    }
+
+    public PseudoDeviceAddress pseudoDeviceAddress() {
+        return pseudoDeviceAddress;
+    }
+
+    public BluetoothDevice peripheral() {
+        return peripheral;
+    }
+
+    public BLEDeviceState state() {
+        return state;
+    }
+
+    public BLEDeviceOperatingSystem operatingSystem() {
+        return operatingSystem;
+    }
+
+    public PayloadData payloadData() {
+        return payloadData;
+    }
+
+    public Date lastPayloadDataUpdate() {
+        return lastPayloadDataUpdate;
+    }
+
+    public Data immediateSendData() {
+        return immediateSendData;
+    }
+
+    public RSSI rssi() {
+        return rssi;
+    }
+
+    public BLE_TxPower txPower() {
+        return txPower;
+    }
+
+    public boolean receiveOnly() {
+        return receiveOnly;
+    }
+
+    public TimeInterval ignoreForDuration() {
+        return ignoreForDuration;
+    }
+
+    public Date ignoreUntil() {
+        return ignoreUntil;
+    }
+
+    public int ignoreRequestCount() {
+        return ignoreRequestCount;
+    }
+
+    public Date lastDiscoveredAt() {
+        return lastDiscoveredAt;
+    }
+
+    public Date lastConnectedAt() {
+        return lastConnectedAt;
+    }
+
+    public Date lastWritePayloadAt() {
+        return lastWritePayloadAt;
+    }
+
+    public Date lastWriteRssiAt() {
+        return lastWriteRssiAt;
+    }
+
+    public Date lastWritePayloadSharingAt() {
+        return lastWritePayloadSharingAt;
+    }
+
+    public int connectionAttempts() {
+        return connectionAttempts;
+    }
+
+    public int connectionSuccesses() {
+        return connectionSuccesses;
+    }
+}
@@ -0,0 +1,193 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.PayloadDataSupplier;
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadTimestamp;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/// Pre-serialized payload cache for the GATT server. Payload is generated once per validity
+/// window, aligned to epoch, and the payload for the next window is generated ahead of the
+/// window boundary by refresh(), such that read requests are served from prebuilt byte arrays
+/// without calling the payload data supplier on the binder thread. A central reading the payload
+/// in several parts is pinned to the payload it started reading, until the pin expires or is
+/// evicted by newer centrals. Caching is opt-in, as the window must not exceed the validity
+/// period of the payload, which only the payload data supplier knows. Without a window, payload
+/// is generated for every read at the time of the read, and only pinning applies.
+public class BLEPayloadCache {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEPayloadCache");
+    private final PayloadDataSupplier payloadDataSupplier;
+    private final long windowMillis;
+    private final long refreshAheadMillis;
+    private final long pinExpiryMillis;
+    private final Map<String, Pin> pins;
+    private Entry current = null;
+    private Entry next = null;
+    // Statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long refreshes = 0;
+
+    /// Payload for a validity window, with lazily built slices for reads at offset
+    public final static class Entry {
+        public final long window;
+        public final PayloadData payloadData;
+        private final ConcurrentMap<Integer, byte[]> slices = new ConcurrentHashMap<>();
+
+        private Entry(final long window, final PayloadData payloadData) {
+            this.window = window;
+            this.payloadData = payloadData;
+        }
+
+        /// Payload bytes from offset, returns null if offset is beyond payload length
+        public byte[] value(final int offset) {
+            final byte[] value = payloadData.value;
+            if (offset == 0) {
+                return value;
+            }
+            if (offset < 0 || offset > value.length) {
+                return null;
+            }
+            byte[] slice = slices.get(offset);
+            if (slice == null) {
+                slice = new byte[value.length - offset];
+                System.arraycopy(value, offset, slice, 0, slice.length);
+                slices.put(offset, slice);
+            }
+            return slice;
+        }
+    }
+
+    /// Payload pinned for central, reused in place to avoid allocation on repeat reads
+    private final static class Pin {
+        private Entry entry;
+        private long pinnedAt;
+
+        private Pin(final Entry entry, final long pinnedAt) {
+            this.entry = entry;
+            this.pinnedAt = pinnedAt;
+        }
+    }
+
+    /// Payload cache for payload validity window, payload for next window is built refreshAhead
+    /// before window boundary, and up to centralCapacity centrals are pinned for pinExpiry.
+    public BLEPayloadCache(final PayloadDataSupplier payloadDataSupplier, final long windowMillis, final long refreshAheadMillis, final long pinExpiryMillis, final int centralCapacity) {
+        this.payloadDataSupplier = payloadDataSupplier;
+        this.windowMillis = windowMillis;
+        this.refreshAheadMillis = refreshAheadMillis;
+        this.pinExpiryMillis = pinExpiryMillis;
+        this.pins = new LinkedHashMap<String, Pin>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pin> eldest) {
+                return size() > centralCapacity;
+            }
+        };
+    }
+
+    /// Validity window for time, each window has a distinct payload
+    private long window(final long time) {
+        return (windowMillis > 0 ? time / windowMillis : time);
+    }
+
+    /// Build payload for window by calling payload data supplier, with timestamp at time now,
+    /// or start of window if building ahead of window
+    private Entry build(final long window, final long now) {
+        final long time = (windowMillis > 0 ? Math.max(window * windowMillis, now) : now);
+        return new Entry(window, payloadDataSupplier.payload(new PayloadTimestamp(new Date(time))));
+    }
+
+    /// Build payload for current and next window ahead of time, and expire pins.
+    /// Call periodically, e.g. on timer, away from the binder thread.
+    public void refresh(final long now) {
+        if (windowMillis <= 0) {
+            return;
+        }
+        final long window = window(now);
+        final boolean refreshAhead = (now >= (window + 1) * windowMillis - refreshAheadMillis);
+        Entry current, next;
+        synchronized (this) {
+            current = this.current;
+            next = this.next;
+        }
+        // Payload data supplier is called outside lock, as it may be slow
+        if (current == null || current.window != window) {
+            current = (next != null && next.window == window ? next : build(window, now));
+        }
+        if (refreshAhead && (next == null || next.window != window + 1)) {
+            next = build(window + 1, now);
+            logger.debug("refresh, built next payload (window={})", window + 1);
+        }
+        synchronized (this) {
+            if (this.current != current) {
+                refreshes++;
+            }
+            this.current = current;
+            this.next = next;
+            final Iterator<Pin> iterator = pins.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().pinnedAt > pinExpiryMillis) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /// Current payload, building payload on demand if it has not been refreshed in time
+    public synchronized Entry payload(final long now) {
+        final long window = window(now);
+        if (current != null && current.window == window) {
+            hits++;
+            return current;
+        }
+        if (next != null && next.window == window) {
+            hits++;
+            current = next;
+            next = null;
+            refreshes++;
+            return current;
+        }
+        misses++;
+        current = build(window, now);
+        return current;
+    }
+
+    /// Payload for read request from central. Read from offset 0 pins the current payload
+    /// for the central, and subsequent reads at an offset are served from the same payload.
+    public synchronized Entry payload(final String central, final int offset, final long now) {
+        Pin pin = pins.get(central);
+        if (pin != null && offset > 0 && now - pin.pinnedAt <= pinExpiryMillis) {
+            hits++;
+            return pin.entry;
+        }
+        final Entry entry = payload(now);
+        if (pin == null) {
+            pins.put(central, new Pin(entry, now));
+        } else {
+            pin.entry = entry;
+            pin.pinnedAt = now;
+        }
+        return entry;
+    }
+
+    /// Release pin for central, e.g. on disconnect
+    public synchronized void remove(final String central) {
+        pins.remove(central);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[window=" + (current == null ? "-" : current.window) + ",next=" + (next == null ? "-" : next.window) +
+                ",pins=" + pins.size() + ",hits=" + hits + ",misses=" + misses + ",refreshes=" + refreshes + "]";
+    }
+}
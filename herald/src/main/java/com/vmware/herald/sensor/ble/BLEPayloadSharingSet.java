@@ -0,0 +1,168 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadSharingData;
+import com.vmware.herald.sensor.datatype.RSSI;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// Shareable devices (iOS or receive only devices with payload) ranked by most recent update,
+/// maintained incrementally as device attributes change. The encoded payload sharing data is
+/// cached and reused for all peers until membership of the shared set changes, thus payload
+/// sharing does not require a scan and sort of all devices on every connection. When shareable
+/// payloads exceed the transfer limit, the cached data holds the most recent payloads that fit,
+/// and the next payload is kept as a spare to replace the peer's own payload when excluded.
+public class BLEPayloadSharingSet {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEPayloadSharingSet");
+    /// Limit how much to share to avoid oversized data transfers over BLE
+    /// (512 bytes limit according to spec, 510 with response, iOS requires response)
+    private final static int payloadSharingDataLimit = 510;
+    /// Shareable devices in order of last update, least recent first
+    private final Map<BLEDevice, PayloadData> devices = new LinkedHashMap<>();
+    /// Version is incremented on change of membership or payload
+    private long version = 0;
+    /// Cached encoded payload sharing data, common to all peers
+    private long encodedVersion = -1;
+    private long encodedExpiresAt = 0;
+    private Data encoded = null;
+    /// Most recent payload that did not fit in cached data, or null if all payloads fit
+    private PayloadData spare = null;
+    private final Set<PayloadData> encodedPayloads = new HashSet<>();
+    private final List<PayloadData> encodedPayloadsInOrder = new ArrayList<>();
+
+    /// Get version of shared set, this is incremented on change of membership.
+    public synchronized long version() {
+        return version;
+    }
+
+    /// Update device ranking and membership on device attribute change.
+    public synchronized void update(final BLEDevice device) {
+        final BLEDeviceRecord record = device.record();
+        final PayloadData payloadData = record.payloadData();
+        final boolean shareable = (payloadData != null && (record.operatingSystem() == BLEDeviceOperatingSystem.ios || record.receiveOnly()));
+        final PayloadData previous = devices.remove(device);
+        if (!shareable) {
+            if (previous != null) {
+                version++;
+            }
+            return;
+        }
+        // Most recently updated device is last
+        devices.put(device, payloadData);
+        if (previous == null || !previous.equals(payloadData) || !encodedPayloads.contains(payloadData)) {
+            // Cached data is no longer valid if membership has changed, or an expired
+            // or previously excluded device has been updated
+            version++;
+        }
+    }
+
+    /// Remove device from shared set.
+    public synchronized void remove(final BLEDevice device) {
+        if (devices.remove(device) != null) {
+            version++;
+        }
+    }
+
+    /// Get payload sharing data for a peer.
+    public synchronized PayloadSharingData payloadSharingData(final BLEDevice peer) {
+        final RSSI rssi = peer.rssi();
+        if (rssi == null) {
+            return new PayloadSharingData(new RSSI(127), new Data(new byte[0]));
+        }
+        final long now = new Date().getTime();
+        if (encodedVersion != version || now >= encodedExpiresAt) {
+            encode(now);
+        }
+        // Cached data is shared with any peer as is, unless it contains the peer's own payload,
+        // in which case the payload is excluded and replaced by the spare
+        final PayloadData peerPayloadData = peer.payloadData();
+        final boolean excluded = (peerPayloadData != null && encodedPayloads.contains(peerPayloadData));
+        final Data data = (excluded ? exclude(peerPayloadData) : encoded);
+        if (data.value.length == 0) {
+            return new PayloadSharingData(new RSSI(127), data);
+        }
+        peer.payloadSharingData.addAll(encodedPayloads);
+        if (excluded && spare != null) {
+            peer.payloadSharingData.add(spare);
+        }
+        return new PayloadSharingData(rssi, data);
+    }
+
+    /// Shareable devices that were seen recently, most recent first
+    private List<BLEDevice> recentDevices(final long now) {
+        final long seenAfter = now - BLESensorConfiguration.payloadSharingExpiryTimeInterval.millis();
+        final List<BLEDevice> leastRecentFirst = new ArrayList<>(devices.keySet());
+        final List<BLEDevice> recentDevices = new ArrayList<>(leastRecentFirst.size());
+        for (int i=leastRecentFirst.size(); i-->0;) {
+            final BLEDevice device = leastRecentFirst.get(i);
+            if (device.lastUpdatedAt().getTime() <= seenAfter) {
+                continue;
+            }
+            recentDevices.add(device);
+        }
+        return recentDevices;
+    }
+
+    /// Encode payload sharing data common to all peers
+    private void encode(final long now) {
+        final long expiry = BLESensorConfiguration.payloadSharingExpiryTimeInterval.millis();
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        encodedPayloads.clear();
+        encodedPayloadsInOrder.clear();
+        spare = null;
+        encodedExpiresAt = Long.MAX_VALUE;
+        for (BLEDevice device : recentDevices(now)) {
+            final PayloadData payloadData = devices.get(device);
+            // Eliminate duplicates (this happens when the same device has changed address but the old version has not expired yet)
+            if (encodedPayloads.contains(payloadData)) {
+                continue;
+            }
+            // Limit payload sharing by BLE transfer limit, keeping next payload as spare
+            if (payloadData.value.length + byteArrayOutputStream.size() > payloadSharingDataLimit) {
+                spare = payloadData;
+                encodedExpiresAt = Math.min(encodedExpiresAt, device.lastUpdatedAt().getTime() + expiry);
+                break;
+            }
+            byteArrayOutputStream.write(payloadData.value, 0, payloadData.value.length);
+            encodedPayloads.add(payloadData);
+            encodedPayloadsInOrder.add(payloadData);
+            encodedExpiresAt = Math.min(encodedExpiresAt, device.lastUpdatedAt().getTime() + expiry);
+        }
+        encoded = new Data(byteArrayOutputStream.toByteArray());
+        encodedVersion = version;
+        logger.debug("encode (version={},devices={},payloads={},spare={})", version, devices.size(), encodedPayloads.size(), spare != null);
+    }
+
+    /// Copy cached payload sharing data, excluding a payload and appending the spare if it fits
+    private Data exclude(final PayloadData excludePayloadData) {
+        final int length = encoded.value.length - excludePayloadData.value.length;
+        final boolean withSpare = (spare != null && length + spare.value.length <= payloadSharingDataLimit);
+        final byte[] data = new byte[length + (withSpare ? spare.value.length : 0)];
+        int offset = 0;
+        for (PayloadData payloadData : encodedPayloadsInOrder) {
+            if (payloadData.equals(excludePayloadData)) {
+                continue;
+            }
+            System.arraycopy(payloadData.value, 0, data, offset, payloadData.value.length);
+            offset += payloadData.value.length;
+        }
+        if (withSpare) {
+            System.arraycopy(spare.value, 0, data, offset, spare.value.length);
+        }
+        return new Data(data);
+    }
+}
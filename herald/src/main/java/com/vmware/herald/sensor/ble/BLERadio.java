@@ -0,0 +1,68 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+
+/// Bluetooth radio operations used by the receiver, separating scan processing, connection
+/// scheduling and GATT tasks from the platform scanner and GATT client, e.g. for simulating
+/// crowds off-device. Scan results and outcome of connection and GATT operations are reported
+/// to delegates asynchronously, see BLERadioDelegate. Each connection is identified by an opaque
+/// handle, such that closing a connection can never affect a later connection to the same device.
+public interface BLERadio {
+
+    /// Characteristic of sensor service discovered on device
+    final class Characteristic {
+        public final UUID uuid;
+        /// Descriptors of characteristic, e.g. write bundle descriptor of signal characteristic
+        private final Set<UUID> descriptors;
+
+        public Characteristic(final UUID uuid, final Set<UUID> descriptors) {
+            this.uuid = uuid;
+            this.descriptors = (descriptors == null ? Collections.<UUID>emptySet() : descriptors);
+        }
+
+        public boolean hasDescriptor(final UUID uuid) {
+            return descriptors.contains(uuid);
+        }
+
+        @Override
+        public String toString() {
+            return uuid.toString();
+        }
+    }
+
+    /// Add delegate for receiving scan results and connection events.
+    void add(BLERadioDelegate delegate);
+
+    /// Start scan for devices advertising sensor service and Apple devices, returns false if scan could not be started.
+    boolean startScan(); // => radioDidScan
+
+    /// Stop scan, safe to call if scan has not been started.
+    void stopScan();
+
+    /// Initiate connection to device, returns connection handle, or null if connection could not be initiated.
+    Object connect(BLEDevice device); // => radioDidConnect | radioDidDisconnect
+
+    /// Disconnect from device, resources are released by close() once disconnected.
+    void disconnect(Object connection); // => radioDidDisconnect
+
+    /// Close connection to device and release its resources, safe to call for closed connections.
+    void close(BLEDevice device, Object connection);
+
+    /// Request ATT MTU for connection, returns false if request could not be made.
+    boolean requestMtu(Object connection, int mtu); // => radioDidChangeMtu
+
+    /// Discover services of connected device, returns false if discovery could not be started.
+    boolean discoverServices(Object connection); // => radioDidDiscoverServices
+
+    /// Read characteristic of sensor service, returns false if read could not be started.
+    boolean readCharacteristic(Object connection, UUID characteristic); // => radioDidRead
+
+    /// Write value to characteristic of sensor service, returns false if write could not be started.
+    boolean writeCharacteristic(Object connection, UUID characteristic, byte[] value); // => radioDidWrite
+}
@@ -0,0 +1,36 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.List;
+import java.util.UUID;
+
+/// Delegate for receiving scan results and outcome of connection and GATT operations from radio.
+/// Connection events are reported with the connection handle returned by BLERadio.connect().
+public interface BLERadioDelegate {
+
+    /// Scan result received during scan
+    void radioDidScan(BLEScanResult scanResult);
+
+    /// Connection to device has been established
+    void radioDidConnect(BLEDevice device, Object connection);
+
+    /// Connection to device has been closed by either side, or connection attempt failed.
+    /// Success is false if disconnection was caused by an error.
+    void radioDidDisconnect(BLEDevice device, Object connection, boolean success);
+
+    /// ATT MTU for connection has been negotiated
+    void radioDidChangeMtu(BLEDevice device, Object connection, int mtu, boolean success);
+
+    /// Services of connected device have been discovered, characteristics of sensor service
+    /// are listed, or null if device does not offer sensor service.
+    void radioDidDiscoverServices(BLEDevice device, Object connection, List<BLERadio.Characteristic> characteristics);
+
+    /// Characteristic value has been read, value is null on failure
+    void radioDidRead(BLEDevice device, Object connection, UUID characteristic, byte[] value, boolean success);
+
+    /// Characteristic value has been written
+    void radioDidWrite(BLEDevice device, Object connection, UUID characteristic, boolean success);
+}
@@ -0,0 +1,182 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+/// Scan duty cycle controller for scan loop, tuning scan on, process and off durations
+/// at the end of each cycle from the observed discovery rate, ratio of new devices in
+/// scan results, and whether connections were left pending at the end of processing.
+/// - Scan on is extended while many new devices are being discovered, and shortened otherwise
+/// - Scan off is extended in an empty environment, up to the latency budget
+/// - Process time limit is extended when there is a backlog, and shortened otherwise
+/// - Scan off is extended further if the scan on time exceeds the battery budget
+/// Fixed mode uses the default durations for comparison.
+public class BLEScanDutyCycle {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEScanDutyCycle");
+    public final static long defaultScanOnMillis = TimeInterval.seconds(4).millis();
+    public final static long defaultScanRestMillis = TimeInterval.seconds(1).millis();
+    public final static long defaultProcessMillis = TimeInterval.seconds(60).millis();
+    public final static long defaultScanOffMillis = TimeInterval.seconds(2).millis();
+    private final static long minScanOnMillis = TimeInterval.seconds(2).millis();
+    private final static long maxScanOnMillis = TimeInterval.seconds(8).millis();
+    private final static long minProcessMillis = TimeInterval.seconds(10).millis();
+    private final static long minScanOffMillis = defaultScanOffMillis;
+    // Current durations
+    private long scanOnMillis = defaultScanOnMillis;
+    private long processMillis = defaultProcessMillis;
+    private long scanOffMillis = defaultScanOffMillis;
+    // Current cycle observations
+    private long scanStartedAt = 0;
+    private long scanStoppedAt = 0;
+    private long processStartedAt = 0;
+    private int discovered = 0;
+    private int newDevices = 0;
+    // Cycle statistics
+    private long cycles = 0;
+    private long backlogCycles = 0;
+    private final Sample discoveryRate = new Sample();
+    private final Sample newDeviceRatio = new Sample();
+    private final Sample processElapsed = new Sample();
+    private final Sample scanDutyCycle = new Sample();
+
+    public synchronized long scanOnMillis() {
+        return scanOnMillis;
+    }
+
+    public long scanRestMillis() {
+        return defaultScanRestMillis;
+    }
+
+    public synchronized long processMillis() {
+        return processMillis;
+    }
+
+    public synchronized long scanOffMillis() {
+        return scanOffMillis;
+    }
+
+    public synchronized void scanStarted(final long now) {
+        scanStartedAt = now;
+        discovered = 0;
+        newDevices = 0;
+    }
+
+    public synchronized void scanStopped(final long now) {
+        scanStoppedAt = now;
+    }
+
+    public synchronized void processStarted(final long now) {
+        processStartedAt = now;
+    }
+
+    /// Devices discovered in scan results, new devices are devices created during this cycle.
+    public synchronized void discovered(final int devices, final int newDevices) {
+        this.discovered = devices;
+        this.newDevices = newDevices;
+    }
+
+    /// Time of scan start for current cycle, for identifying new devices
+    public synchronized long scanStartedAt() {
+        return scanStartedAt;
+    }
+
+    /// Processing complete, backlog is true if connections were left pending at process time limit.
+    public synchronized void processed(final long now, final boolean backlog) {
+        cycles++;
+        if (backlog) {
+            backlogCycles++;
+        }
+        final long scanElapsed = Math.max(1, scanStoppedAt - scanStartedAt);
+        final long processed = Math.max(0, now - processStartedAt);
+        final double rate = discovered / (scanElapsed / 1000d);
+        final double ratio = (discovered == 0 ? 0 : newDevices / (double) discovered);
+        discoveryRate.add(rate);
+        newDeviceRatio.add(ratio);
+        processElapsed.add(processed);
+        if (BLESensorConfiguration.scanDutyCycleMode == BLEScanDutyCycleMode.fixed) {
+            scanOnMillis = defaultScanOnMillis;
+            processMillis = defaultProcessMillis;
+            scanOffMillis = defaultScanOffMillis;
+        } else {
+            adapt(ratio, processed, backlog);
+        }
+        final long cycle = scanOnMillis + defaultScanRestMillis + processed + scanOffMillis;
+        scanDutyCycle.add(scanOnMillis / (double) cycle);
+        logger.debug("processed (mode={},discovered={},newDevices={},backlog={},scanOn={}ms,process={}ms,scanOff={}ms,statistics={})",
+                BLESensorConfiguration.scanDutyCycleMode, discovered, newDevices, backlog, scanOnMillis, processMillis, scanOffMillis, this);
+    }
+
+    private void adapt(final double newDeviceRatio, final long processed, final boolean backlog) {
+        // Scan for longer while new devices are still being discovered
+        if (newDeviceRatio >= 0.5) {
+            scanOnMillis = Math.round(scanOnMillis * 1.25);
+        } else if (newDeviceRatio < 0.2) {
+            scanOnMillis = Math.round(scanOnMillis * 0.8);
+        }
+        scanOnMillis = Math.max(minScanOnMillis, Math.min(maxScanOnMillis, scanOnMillis));
+        // Back off in empty environment, up to latency budget
+        final long maxScanOffMillis = Math.max(minScanOffMillis, BLESensorConfiguration.scanDutyCycleLatencyBudget.millis());
+        if (discovered == 0) {
+            scanOffMillis = Math.round(scanOffMillis * 1.5);
+        } else {
+            scanOffMillis = minScanOffMillis;
+        }
+        // Allow more time for processing when there is a backlog
+        if (backlog) {
+            processMillis = Math.round(processMillis * 1.5);
+        } else {
+            processMillis = Math.min(processMillis, 2 * processed);
+        }
+        processMillis = Math.max(minProcessMillis, Math.min(defaultProcessMillis, processMillis));
+        // Extend scan off to keep scan on within battery budget
+        final double budget = BLESensorConfiguration.scanDutyCycleBatteryBudget;
+        final long otherMillis = defaultScanRestMillis + processed;
+        if (scanOnMillis / (double) (scanOnMillis + otherMillis + scanOffMillis) > budget) {
+            scanOffMillis = Math.round(scanOnMillis / budget) - scanOnMillis - otherMillis;
+        }
+        scanOffMillis = Math.max(minScanOffMillis, Math.min(maxScanOffMillis, scanOffMillis));
+        // Shorten scan on if battery budget cannot be met within latency budget
+        if (scanOnMillis / (double) (scanOnMillis + otherMillis + scanOffMillis) > budget) {
+            scanOnMillis = Math.max(minScanOnMillis, Math.round(budget * (otherMillis + scanOffMillis) / (1 - budget)));
+        }
+    }
+
+    public synchronized long cycles() {
+        return cycles;
+    }
+
+    public synchronized long backlogCycles() {
+        return backlogCycles;
+    }
+
+    /// Devices discovered per second of scan
+    public synchronized Sample discoveryRate() {
+        return discoveryRate;
+    }
+
+    /// Ratio of discovered devices that are new
+    public synchronized Sample newDeviceRatio() {
+        return newDeviceRatio;
+    }
+
+    /// Time spent processing scan results and connections
+    public synchronized Sample processElapsed() {
+        return processElapsed;
+    }
+
+    /// Ratio of cycle time spent scanning
+    public synchronized Sample scanDutyCycle() {
+        return scanDutyCycle;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[cycles=" + cycles + ",backlogCycles=" + backlogCycles + ",discoveryRate=" + discoveryRate + ",newDeviceRatio=" + newDeviceRatio + ",processElapsed=" + processElapsed + ",scanDutyCycle=" + scanDutyCycle + "]";
+    }
+}
@@ -0,0 +1,9 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+public enum BLEScanDutyCycleMode {
+    fixed, adaptive
+}
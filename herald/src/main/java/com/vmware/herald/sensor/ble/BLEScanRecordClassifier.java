@@ -0,0 +1,163 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Data;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/// Memoized classification of scan records. The same advert is received from a device many
+/// times per minute, thus classification results are cached by a hash of the raw scan record
+/// bytes, and repeat adverts skip parsing entirely. Raw bytes are compared on hit to guard
+/// against hash collisions. Cache size is bounded, evicting least recently used entries.
+/// Ignore decisions are recomputed from cached feature data when the device filter changes.
+public class BLEScanRecordClassifier {
+    private final BLEDeviceFilter deviceFilter;
+    private final Map<Long, Classification> cache;
+    private final BLEAdvertCursor cursor = new BLEAdvertCursor();
+    // Statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /// Classification of scan record
+    public final static class Classification {
+        /// Scan record includes advert for sensor service
+        public final boolean hasSensorService;
+        /// Scan record indicates device was manufactured by Apple
+        public final boolean isAppleDevice;
+        /// Operating system hint derived from sensor service and manufacturer
+        /// - ios : sensor service found, manufacturer is Apple (iOS foreground)
+        /// - android_tbc : sensor service found, manufacturer not Apple
+        /// - ios_tbc : sensor service not found, manufacturer is Apple (iOS background or other Apple device)
+        /// - unknown : sensor service not found, manufacturer not Apple
+        public final BLEDeviceOperatingSystem operatingSystemHint;
+        private final byte[] bytes;
+        private final Data featureData;
+        private long filterVersion = -1;
+        private boolean ignore = false;
+
+        private Classification(final byte[] bytes, final boolean hasSensorService, final boolean isAppleDevice, final Data featureData) {
+            this.bytes = bytes;
+            this.hasSensorService = hasSensorService;
+            this.isAppleDevice = isAppleDevice;
+            this.featureData = featureData;
+            if (hasSensorService && isAppleDevice) {
+                operatingSystemHint = BLEDeviceOperatingSystem.ios;
+            } else if (hasSensorService) {
+                operatingSystemHint = BLEDeviceOperatingSystem.android_tbc;
+            } else if (isAppleDevice) {
+                operatingSystemHint = BLEDeviceOperatingSystem.ios_tbc;
+            } else {
+                operatingSystemHint = BLEDeviceOperatingSystem.unknown;
+            }
+        }
+    }
+
+    public BLEScanRecordClassifier(final BLEDeviceFilter deviceFilter, final int capacity) {
+        this.deviceFilter = deviceFilter;
+        this.cache = new LinkedHashMap<Long, Classification>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Classification> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /// Classify scan record, using cached classification for repeat adverts.
+    public synchronized Classification classify(final Data scanRecord) {
+        if (scanRecord == null || scanRecord.value == null) {
+            misses++;
+            return new Classification(null, false, false, null);
+        }
+        final byte[] bytes = scanRecord.value;
+        final Long key = hash(bytes);
+        final Classification cached = cache.get(key);
+        if (cached != null && Arrays.equals(cached.bytes, bytes)) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        final Classification classification = classify(bytes, scanRecord);
+        cache.put(key, classification);
+        return classification;
+    }
+
+    /// Should device be ignored according to device filter, using cached decision if filter has not changed.
+    public synchronized boolean ignore(final Classification classification) {
+        if (classification.featureData == null) {
+            return false;
+        }
+        final long filterVersion = deviceFilter.version();
+        if (classification.filterVersion != filterVersion) {
+            classification.ignore = deviceFilter.ignore(classification.featureData);
+            classification.filterVersion = filterVersion;
+        }
+        return classification.ignore;
+    }
+
+    private Classification classify(final byte[] bytes, final Data scanRecord) {
+        return new Classification(bytes, hasSensorService(bytes), isAppleDevice(bytes), deviceFilter.extractFeatures(scanRecord));
+    }
+
+    /// Does scan record include advert for sensor service?
+    private boolean hasSensorService(final byte[] bytes) {
+        cursor.reset(bytes, 0);
+        while (cursor.next()) {
+            if (cursor.hasServiceUUID(BLESensorConfiguration.serviceUUID)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// Does scan record indicate device was manufactured by Apple?
+    private boolean isAppleDevice(final byte[] bytes) {
+        cursor.reset(bytes, 0);
+        while (cursor.next(BLEAdvertSegmentType.manufacturerData)) {
+            if (cursor.manufacturer() == BLESensorConfiguration.manufacturerIdForApple) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// FNV-1a 64-bit hash of raw scan record bytes
+    private static long hash(final byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : bytes) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[size=" + cache.size() + ",hits=" + hits + ",misses=" + misses + ",evictions=" + evictions + "]";
+    }
+}
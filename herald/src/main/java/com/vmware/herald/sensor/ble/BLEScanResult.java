@@ -0,0 +1,36 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+
+/// Scan result reported by radio. Scan record is held as raw bytes, and parsed with
+/// BLEAdvertCursor where required, rather than as a platform scan record, such that
+/// scan results can be processed and simulated off-device.
+public class BLEScanResult {
+    /// Device identifier, i.e. device address
+    public final TargetIdentifier identifier;
+    /// Platform device for connecting to peripheral, null if not available, e.g. in simulation
+    public final BluetoothDevice peripheral;
+    /// Received signal strength in dBm
+    public final int rssi;
+    /// Raw scan record bytes (advert and scan response), null if not available
+    public final Data scanRecord;
+
+    public BLEScanResult(final TargetIdentifier identifier, final BluetoothDevice peripheral, final int rssi, final Data scanRecord) {
+        this.identifier = identifier;
+        this.peripheral = peripheral;
+        this.rssi = rssi;
+        this.scanRecord = scanRecord;
+    }
+
+    @Override
+    public String toString() {
+        return "[identifier=" + identifier + ",rssi=" + rssi + ",scanRecord=" + (scanRecord == null ? null : scanRecord.hexEncodedString()) + "]";
+    }
+}
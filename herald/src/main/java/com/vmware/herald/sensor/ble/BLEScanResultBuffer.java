@@ -0,0 +1,95 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Bounded ingestion buffer for scan results. Duplicate adverts from the same device address
+/// are collapsed in place, keeping the latest scan result (RSSI and scan record) in the order
+/// the device was first seen. Results from new device addresses are dropped and counted once
+/// the buffer is full, until the buffer has been drained.
+public class BLEScanResultBuffer {
+    /// Outcome of offering a scan result to the buffer
+    public enum Offer {
+        /// First result for device address since last drain
+        added,
+        /// Replaced earlier result for device address
+        collapsed,
+        /// Buffer is full
+        dropped
+    }
+
+    private final int capacity;
+    private final Map<TargetIdentifier, BLEScanResult> buffer = new LinkedHashMap<>();
+    // Counters
+    private long received = 0;
+    private long collapsed = 0;
+    private long dropped = 0;
+    private long drained = 0;
+
+    public BLEScanResultBuffer(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    /// Add scan result to buffer, replacing earlier result for the same device address.
+    public synchronized Offer offer(final BLEScanResult scanResult) {
+        received++;
+        final TargetIdentifier address = scanResult.identifier;
+        if (buffer.containsKey(address)) {
+            buffer.put(address, scanResult);
+            collapsed++;
+            return Offer.collapsed;
+        }
+        if (buffer.size() >= capacity) {
+            dropped++;
+            return Offer.dropped;
+        }
+        buffer.put(address, scanResult);
+        return Offer.added;
+    }
+
+    /// Take all scan results in buffer, one per device address.
+    public synchronized List<BLEScanResult> drain() {
+        if (buffer.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<BLEScanResult> scanResults = new ArrayList<>(buffer.values());
+        buffer.clear();
+        drained += scanResults.size();
+        return scanResults;
+    }
+
+    /// Number of scan results waiting to be drained
+    public synchronized int size() {
+        return buffer.size();
+    }
+
+    public synchronized long received() {
+        return received;
+    }
+
+    public synchronized long collapsed() {
+        return collapsed;
+    }
+
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    public synchronized long drained() {
+        return drained;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[size=" + buffer.size() + ",capacity=" + capacity + ",received=" + received + ",collapsed=" + collapsed + ",dropped=" + dropped + ",drained=" + drained + "]";
+    }
+}
@@ -0,0 +1,23 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Clock and scheduler for time dependent connection components, i.e. the connection pipeline,
+/// connection scheduler and the policies it evaluates, separating them from the system clock
+/// and executor, e.g. for simulating crowds off-device in virtual time.
+public interface BLEScheduler {
+
+    /// Scheduled task that can be cancelled
+    interface Task {
+        /// Cancel task if it has not been run yet
+        void cancel();
+    }
+
+    /// Current time in millis
+    long now();
+
+    /// Run task once after delay, returns scheduled task
+    Task schedule(Runnable runnable, long delayMillis);
+}
@@ -28,6 +28,9 @@ public class BLESensorConfiguration {
     /// Primary payload characteristic (read) for distributing payload data from peripheral to central, e.g. identity data
     /// - Characteristic UUID is randomly generated V4 UUIDs that has been tested for uniqueness by conducting web searches to ensure it returns no results.
     public final static UUID payloadCharacteristicUUID = UUID.fromString("3e98c0f8-8f05-4829-a121-43e38f8933e7");
+    /// Descriptor on signal characteristic for indicating the GATT server accepts signal characteristic write bundles
+    /// - Peers without this descriptor are only sent single action writes, for backward compatibility
+    public final static UUID signalCharacteristicBundleDescriptorUUID = UUID.fromString("b3a9e6d4-2c71-4f0e-9a85-61d0c7e4f2a8");
     /// Manufacturer data is being used on Android to store pseudo device address
     /// - Pending update to dedicated ID
     public final static int manufacturerIdForSensor = 65530;
@@ -44,6 +47,17 @@ public class BLESensorConfiguration {
     public final static byte signalCharacteristicActionWritePayloadSharing = (byte) 3;
     /// Arbitrary immediate write
     public final static byte signalCharacteristicActionWriteImmediate = (byte) 4;
+    /// Signal characteristic action code for write bundle, expect 1 byte action code followed by 2 byte little-endian Int16 integer value for bundle data length, then a sequence of signal characteristic data, each with its own action code
+    public final static byte signalCharacteristicActionWriteBundle = (byte) 5;
+
+    // MARK:- BLE ATT MTU
+
+    /// Default ATT MTU before negotiation, allowing 20 bytes of data per write after the 3 byte ATT header
+    public final static int defaultMtu = 23;
+    /// ATT header length in bytes, to be deducted from MTU for maximum data length per write
+    public final static int attHeaderLength = 3;
+    /// Maximum length of characteristic value in bytes, regardless of MTU
+    public final static int maxAttributeValueLength = 512;
 
     // MARK:- App configurable BLE features
 
@@ -77,4 +91,94 @@ public class BLESensorConfiguration {
 
     /// Advert refresh time interval
     public static TimeInterval advertRefreshTimeInterval = TimeInterval.minutes(15);
+    /// Advert refresh swaps advertise data and pseudo device address only, keeping GATT server running
+    /// - Avoids closing GATT server and re-registering service, which drops in-flight reads from centrals
+    /// - Set to false to restart GATT server and advert on every refresh, as before
+    public static boolean advertRefreshHot = true;
+    /// Maximum wait for advert rotation to complete, before falling back to restarting GATT server and advert
+    public static TimeInterval advertRotateTimeout = TimeInterval.seconds(10);
+
+    /// Device table snapshot for warm start after process restart
+    /// - Snapshot is written at regular intervals and on BLESensor stop
+    /// - Devices in snapshot that have not been updated for longer than expiry are not restored
+    /// - Set snapshot time interval to .never to disable periodic snapshots
+    public static TimeInterval deviceSnapshotTimeInterval = TimeInterval.minute;
+    public static TimeInterval deviceSnapshotExpiryTimeInterval = TimeInterval.minutes(15);
+
+    /// Device filter model holds training counts for up to capacity distinct features, evicting least frequently trained
+    /// - Model is written at most once per snapshot time interval when training data has changed, and on stop
+    /// - Set snapshot time interval to .never to only write model on stop
+    public static int deviceFilterCapacity = 256;
+    public static TimeInterval deviceFilterSnapshotTimeInterval = TimeInterval.minute;
+    /// Log every device filter training example to filter.csv for analysis, file grows without bound
+    public static boolean deviceFilterTrainingLog = false;
+    /// Device filter feature patterns, hex strings where ".." matches any byte, e.g. "1005011c......"
+    /// - Patterns are matched against a prefix of Apple manufacturer data, longest match wins
+    /// - Patterns terminated by "$" must match the entire data, and are preferred over prefix matches
+    /// - Feature data that does not match any pattern is learned as a new pattern, retaining type, length and
+    ///   the first prefix length bytes of the value of every segment, matching any byte for the remaining nonce
+    ///   bytes, and matching the entire data
+    public static String[] deviceFilterFeaturePatterns = new String[0];
+    public static int deviceFilterFeaturePrefixLength = 2;
+
+    /// Maximum number of devices held in BLE database, to bound memory usage in crowded
+    /// environments where devices change address frequently.
+    /// - Set to null to disable this feature, devices are then only removed on expiry
+    /// - Set to N to evict devices once the database exceeds N devices, down to 90% of N
+    /// - Devices without payload, never connected, and with weak signal are evicted first
+    public static Integer deviceTableCapacity = null;
+
+    /// Maximum number of concurrent GATT connections initiated by BLE receiver
+    /// - Devices discovered in a scan are connected concurrently up to this limit
+    /// - Set to 1 to process devices one at a time
+    public static int concurrentConnections = 3;
+
+    /// Policy for ranking devices to connect to within the time budget of a scan cycle
+    /// - Default policy prioritises devices with missing or stale payload that are likely to connect
+    /// - Use ScanOrderConnectionPolicy to connect to devices in scan order
+    /// - Setting takes effect from the next scan cycle
+    public static BLEConnectionPolicy connectionPolicy = new ValueBasedConnectionPolicy();
+
+    /// Scan duty cycle for scan-wait-process-wait loop
+    /// - Use .fixed for 4s scan, 1s rest, up to 60s processing, and 2s off
+    /// - Use .adaptive to tune scan on, process and off durations according to discovery rate, new devices and processing backlog
+    /// - Battery budget is the maximum ratio of cycle time spent scanning
+    /// - Latency budget is the maximum scan off time, bounding time to discover new devices
+    public static BLEScanDutyCycleMode scanDutyCycleMode = BLEScanDutyCycleMode.adaptive;
+    public static double scanDutyCycleBatteryBudget = 0.5;
+    public static TimeInterval scanDutyCycleLatencyBudget = TimeInterval.seconds(10);
+
+    /// Maximum number of distinct devices held in scan result buffer between processing steps
+    /// - Duplicate scan results for the same device address are collapsed to the latest result
+    /// - Scan results for new device addresses are dropped and counted once buffer is full
+    public static int scanResultBufferCapacity = 512;
+
+    /// Maximum number of distinct scan records held in classification cache
+    /// - Repeat adverts with identical raw bytes reuse cached operating system hint and ignore decision
+    /// - Least recently used scan records are evicted once cache is full
+    public static int scanRecordClassifierCapacity = 256;
+
+    /// ATT MTU to request after connecting to a device, for sizing signal characteristic write fragments
+    /// - iOS accepts up to 185, Android up to 517, the lower of the two sides is used
+    /// - Negotiated MTU is cached per device, devices that only support the default MTU are not asked again
+    /// - Set to defaultMtu to disable negotiation, and write 20 byte fragments
+    public static int requestMtu = 517;
+
+    /// Payload validity window for GATT server payload cache, disabled by default
+    /// - Payload is generated for every read when zero, as the validity period of the payload is only known by the payload data supplier
+    /// - Payload is generated once per window, aligned to epoch, when set to the validity period declared by the payload data supplier,
+    ///   e.g. TimeInterval.minutes(6) for the 6 minute contact identifier period of the simple payload
+    /// - Window must not exceed the payload rotation period of the payload data supplier
+    public static TimeInterval payloadCacheWindow = TimeInterval.zero;
+    /// Maximum number of centrals pinned to the payload they are reading, pins expire after a minute
+    public static int payloadCacheCentralCapacity = 64;
+
+    /// Timer holds wake lock while sleeping until next tick, if next tick is due within threshold,
+    /// otherwise wake lock is released and the timer is woken by an elapsed realtime alarm
+    /// - Scan and advert loops tick on their next state change, thus wake lock is released during
+    ///   scan windows and between advert refreshes, but held while processing scan results, and while
+    ///   scan is off for the default 2 seconds
+    /// - Alarms are deferred in Doze, deferring execution of delegates until the next maintenance window
+    /// - Set to TimeInterval.never to hold wake lock for process lifetime, as before
+    public static TimeInterval timerWakeLockThreshold = TimeInterval.seconds(2);
 }
@@ -0,0 +1,154 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/// Reassembly of fragmented signal characteristic writes. Fragments from each central are
+/// appended to a growable buffer drawn from a small pool, and completion is detected from the
+/// expected length in the signal data header, rather than by decoding the data on every
+/// fragment. Data that arrives in a single fragment is handed off without copying, and buffers
+/// that have been grown to the exact frame length are handed off as the frame itself.
+public class BLESignalDataAssembler {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLESignalDataAssembler");
+    private final int poolCapacity;
+    private final int bufferCapacity;
+    private final Queue<byte[]> pool;
+    private final Map<String, Assembly> assemblies = new HashMap<>();
+    // Statistics
+    private long frames = 0;
+    private long allocations = 0;
+
+    /// Partial signal data from central
+    private final static class Assembly {
+        private byte[] buffer;
+        private int length = 0;
+        /// Expected length once header has been received, 0 if header is incomplete
+        private int signalDataLength = 0;
+
+        private Assembly(final byte[] buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /// Reassembly with up to poolCapacity idle buffers of bufferCapacity bytes, buffers
+    /// are grown as required for signal data larger than bufferCapacity.
+    public BLESignalDataAssembler(final int poolCapacity, final int bufferCapacity) {
+        this.poolCapacity = poolCapacity;
+        this.bufferCapacity = bufferCapacity;
+        this.pool = new ArrayDeque<>(poolCapacity);
+    }
+
+    /// Append fragment from central, returns complete signal data once all fragments have
+    /// been received, or null if more fragments are expected. Data with an unknown action
+    /// code or invalid length is returned as is, for the caller to reject.
+    public synchronized Data append(final String central, final byte[] value) {
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        Assembly assembly = assemblies.get(central);
+        if (assembly == null) {
+            // Single fragment signal data, the most common case, is handed off without copying
+            final int signalDataLength = SignalCharacteristicData.signalDataLength(value, value.length);
+            if (signalDataLength < 0 || signalDataLength == value.length) {
+                frames++;
+                return new Data(value);
+            }
+            if (signalDataLength > 0 && signalDataLength < value.length) {
+                frames++;
+                logger.fault("append, discarded excess data (central={},signalDataLength={},length={})", central, signalDataLength, value.length);
+                return new Data(Arrays.copyOf(value, signalDataLength));
+            }
+            assembly = new Assembly(acquire(signalDataLength));
+            assembly.signalDataLength = signalDataLength;
+            assemblies.put(central, assembly);
+        }
+        // Grow buffer to fit fragment, to exact length if signal data length is known
+        final int length = assembly.length + value.length;
+        if (length > assembly.buffer.length) {
+            final byte[] buffer = new byte[assembly.signalDataLength > 0 ? Math.max(length, assembly.signalDataLength) : Math.max(length, assembly.buffer.length * 2)];
+            allocations++;
+            System.arraycopy(assembly.buffer, 0, buffer, 0, assembly.length);
+            release(assembly.buffer);
+            assembly.buffer = buffer;
+        }
+        System.arraycopy(value, 0, assembly.buffer, assembly.length, value.length);
+        assembly.length = length;
+        // Header may span fragments
+        if (assembly.signalDataLength == 0) {
+            assembly.signalDataLength = SignalCharacteristicData.signalDataLength(assembly.buffer, assembly.length);
+        }
+        if (assembly.signalDataLength < 0) {
+            return complete(central, assembly, assembly.length);
+        }
+        if (assembly.signalDataLength > 0 && assembly.length >= assembly.signalDataLength) {
+            if (assembly.length > assembly.signalDataLength) {
+                logger.fault("append, discarded excess data (central={},signalDataLength={},length={})", central, assembly.signalDataLength, assembly.length);
+            }
+            return complete(central, assembly, assembly.signalDataLength);
+        }
+        return null;
+    }
+
+    /// Hand off signal data in buffer and return buffer to pool if it is still required
+    private Data complete(final String central, final Assembly assembly, final int length) {
+        assemblies.remove(central);
+        frames++;
+        if (assembly.buffer.length == length) {
+            return new Data(assembly.buffer);
+        }
+        final byte[] signalData = Arrays.copyOf(assembly.buffer, length);
+        release(assembly.buffer);
+        return new Data(signalData);
+    }
+
+    /// Discard partial signal data from central, e.g. on disconnect
+    public synchronized void remove(final String central) {
+        final Assembly assembly = assemblies.remove(central);
+        if (assembly != null) {
+            release(assembly.buffer);
+        }
+    }
+
+    /// Buffer for signal data of expected length, 0 if length is unknown
+    private byte[] acquire(final int signalDataLength) {
+        if (signalDataLength > bufferCapacity) {
+            allocations++;
+            return new byte[signalDataLength];
+        }
+        final byte[] buffer = pool.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        allocations++;
+        return new byte[bufferCapacity];
+    }
+
+    /// Return buffer to pool, buffers with non-standard capacity are left for garbage collection
+    private void release(final byte[] buffer) {
+        if (buffer.length == bufferCapacity && pool.size() < poolCapacity) {
+            pool.offer(buffer);
+        }
+    }
+
+    /// Number of centrals with partial signal data
+    public synchronized int pending() {
+        return assemblies.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[pending=" + assemblies.size() + ",pooled=" + pool.size() + ",frames=" + frames + ",allocations=" + allocations + "]";
+    }
+}
@@ -4,21 +4,28 @@
 
 package com.vmware.herald.sensor.ble;
 
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
 import android.os.PowerManager;
+import android.os.SystemClock;
 
 import com.vmware.herald.sensor.data.ConcreteSensorLogger;
 import com.vmware.herald.sensor.data.SensorLogger;
-import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.datatype.TimeInterval;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Steady one second timer for controlling BLE operations. Having a reliable timer for starting
+ * Steady timer for controlling BLE operations. Having a reliable timer for starting
  * and stopping scans is fundamental for reliable detection and tracking. Methods that have been
  * tested and failed included :
  * 1. Handler.postDelayed loop backed by MainLooper
@@ -28,6 +35,21 @@ import java.util.concurrent.atomic.AtomicLong;
  * 3. Timer scheduled task loop
  * - Timer can drift
  * <p>
+ * Each delegate is executed at its own period, scheduled on the elapsed realtime clock by a
+ * dedicated thread that sleeps until the next tick is due. Due time is derived from the previous
+ * due time to compensate for drift, and lateness of each execution is collected as jitter
+ * statistics per delegate. The wake lock is only held while delegates are executing, or while
+ * the next tick is due within timerWakeLockThreshold. Otherwise the wake lock is released and
+ * an elapsed realtime wakeup alarm is set for the next tick, as Object.wait() does not advance
+ * while the device is in deep sleep. Delegates that know when their next state change is due,
+ * such as the scan and advert loops, set their next tick accordingly rather than ticking every
+ * period, such that the wake lock can be released in between. Alarms are deferred to
+ * maintenance windows in Doze, which is reported as jitter.
+ * Each delegate is executed in its own lane, such that a slow delegate cannot delay other
+ * delegates. Ticks that are due while the delegate is still executing the previous tick are
+ * skipped rather than queued, and executions that take longer than the deadline are reported
+ * as overruns, with execution time statistics collected per delegate.
+ * <p>
  * Test impact of power management by ...
  * <p>
  * 1. Run app on device
@@ -61,45 +83,90 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class BLETimer {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLETimer");
-    private final Sample sample = new Sample();
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    /// Default period and deadline for delegates
+    private final static long defaultPeriodMillis = 1000;
+    /// Period for reporting jitter statistics
+    private final static long reportPeriodMillis = TimeInterval.minute.millis();
+    /// Execution lane for each delegate
+    private final Map<BLETimerDelegate, ExecutorService> lanes = new ConcurrentHashMap<>();
+    /// Schedule entry for each delegate
+    private final Map<BLETimerDelegate, BLETimerSchedule.Entry> entries = new ConcurrentHashMap<>();
     private final PowerManager.WakeLock wakeLock;
-    private final AtomicLong now = new AtomicLong(0);
-    private final Queue<BLETimerDelegate> delegates = new ConcurrentLinkedQueue<>();
-    private final Runnable runnable = new Runnable() {
-        @Override
-        public void run() {
-            for (BLETimerDelegate delegate : delegates) {
-                try {
-                    delegate.bleTimer(now.get());
-                } catch (Throwable e) {
-                    logger.fault("delegate execution failed", e);
-                }
-            }
-        }
-    };
+    private final static String wakeupAction = "com.vmware.herald.sensor.ble.BLETimer.wakeup";
+    private final AlarmManager alarmManager;
+    private final PendingIntent wakeupIntent;
+    /// Alarm is set for waking timer thread after wake lock has been released
+    private long wakeupAt = 0;
+    private final BLETimerSchedule schedule = new BLETimerSchedule();
+    private final Object monitor = new Object();
+    /// Number of ticks waiting for or in execution
+    private final AtomicInteger running = new AtomicInteger(0);
+    /// Timer thread is sleeping beyond wake lock threshold
+    private volatile boolean idle = false;
 
     public BLETimer(Context context) {
         final PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
         wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Sensor:BLETimer");
-        wakeLock.acquire();
+        wakeLock.setReferenceCounted(false);
+        wakeLock(true);
+        alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        wakeupIntent = PendingIntent.getBroadcast(context, 0, new Intent(wakeupAction).setPackage(context.getPackageName()), PendingIntent.FLAG_UPDATE_CURRENT);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                // Device is only kept awake for the duration of onReceive, hold
+                // wake lock until timer thread has decided whether to sleep again
+                wakeLock(true);
+                synchronized (monitor) {
+                    wakeupAt = 0;
+                    monitor.notifyAll();
+                }
+            }
+        }, new IntentFilter(wakeupAction));
         final Thread timerThread = new Thread(new Runnable() {
-            private long last = 0;
+            private long lastReport = now();
 
             @Override
             public void run() {
                 while (true) {
-                    now.set(System.currentTimeMillis());
-                    final long elapsed = now.get() - last;
-                    if (elapsed >= 1000) {
-                        if (last != 0) {
-                            sample.add(elapsed);
-                            executorService.execute(runnable);
+                    final long now = now();
+                    for (final BLETimerSchedule.Tick tick : schedule.due(now)) {
+                        if (!tick.entry.claim()) {
+                            logger.fault("overrun, skipped tick as previous tick is still executing (entry={})", tick.entry);
+                            continue;
+                        }
+                        wakeLock(true);
+                        running.incrementAndGet();
+                        lanes.get(tick.entry.delegate).execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                execute(tick);
+                            }
+                        });
+                    }
+                    if (now - lastReport >= reportPeriodMillis) {
+                        for (final BLETimerSchedule.Entry entry : schedule.entries()) {
+                            logger.debug("statistics (entry={})", entry);
+                        }
+                        lastReport = now;
+                    }
+                    final long sleep = Math.max(0, schedule.next() - now());
+                    idle = schedule.idle(now(), BLESensorConfiguration.timerWakeLockThreshold);
+                    if (!idle) {
+                        wakeLock(true);
+                    } else {
+                        // Wake lock is released now or once running ticks complete
+                        wakeup(now() + sleep);
+                        if (running.get() == 0) {
+                            wakeLock(false);
                         }
-                        last = now.get();
                     }
                     try {
-                        Thread.sleep(500);
+                        synchronized (monitor) {
+                            if (sleep > 0) {
+                                monitor.wait(sleep);
+                            }
+                        }
                     } catch (Throwable e) {
                         logger.fault("Timer interrupted", e);
                     }
@@ -111,13 +178,92 @@ public class BLETimer {
         timerThread.start();
     }
 
+    /// Monotonic time in millis, unaffected by changes to wall clock time, and including
+    /// time spent in deep sleep, unlike System.nanoTime()
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /// Set alarm to wake timer thread at elapsed realtime, as the device may sleep once
+    /// the wake lock has been released
+    private void wakeup(final long at) {
+        synchronized (monitor) {
+            if (wakeupAt == at || alarmManager == null) {
+                return;
+            }
+            wakeupAt = at;
+        }
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, at, wakeupIntent);
+            } else {
+                alarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, at, wakeupIntent);
+            }
+        } catch (Throwable e) {
+            logger.fault("wakeup alarm failed", e);
+        }
+    }
+
+    /// Execute due delegate, and release wake lock if nothing else is due soon
+    private void execute(final BLETimerSchedule.Tick tick) {
+        final long start = now();
+        tick.entry.executed(tick.due, start);
+        try {
+            tick.entry.delegate.bleTimer(System.currentTimeMillis());
+        } catch (Throwable e) {
+            logger.fault("delegate execution failed", e);
+        } finally {
+            final long elapsed = now() - start;
+            if (!tick.entry.completed(elapsed)) {
+                logger.fault("overrun, execution exceeded deadline (elapsed={}ms,entry={})", elapsed, tick.entry);
+            }
+            if (running.decrementAndGet() == 0 && idle) {
+                wakeLock(false);
+            }
+        }
+    }
+
+    private synchronized void wakeLock(final boolean hold) {
+        if (hold && !wakeLock.isHeld()) {
+            wakeLock.acquire();
+        } else if (!hold && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+
     @Override
     protected void finalize() {
-        wakeLock.release();
+        wakeLock(false);
     }
 
-    /// Add delegate for time notification
+    /// Add delegate for time notification every second
     public void add(BLETimerDelegate delegate) {
-        delegates.add(delegate);
+        add(delegate, defaultPeriodMillis, defaultPeriodMillis);
+    }
+
+    /// Add delegate for time notification every period, execution starting later than
+    /// deadline after due time is reported as a missed deadline.
+    public void add(BLETimerDelegate delegate, long periodMillis, long deadlineMillis) {
+        if (!lanes.containsKey(delegate)) {
+            lanes.put(delegate, Executors.newSingleThreadExecutor());
+        }
+        entries.put(delegate, schedule.add(delegate, periodMillis, deadlineMillis, now()));
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /// Set next tick of delegate to delay after now, in place of its next periodic tick, for
+    /// delegates that know when their next state change is due. Ticks are resumed at period
+    /// from now if delay is zero or less, e.g. while waiting for a callback.
+    public void next(BLETimerDelegate delegate, long delayMillis) {
+        final BLETimerSchedule.Entry entry = entries.get(delegate);
+        if (entry == null) {
+            return;
+        }
+        schedule.reschedule(entry, now() + (delayMillis > 0 ? delayMillis : entry.periodMillis));
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
     }
 }
@@ -0,0 +1,173 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Histogram;
+import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// Schedule of timer delegates, each with its own period and deadline, on a monotonic clock.
+/// The next due time of each delegate is derived from its previous due time, rather than the
+/// time it was actually executed, such that execution delays do not accumulate as drift.
+/// Ticks that have been missed entirely are skipped, keeping delegates aligned to their period.
+/// Ticks that are due while the previous tick of the delegate is still executing are skipped
+/// as overruns, rather than queued behind it.
+public class BLETimerSchedule {
+    /// Execution time histogram bucket upper bounds in millis
+    private final static double[] executionTimeBuckets = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+    private final List<Entry> entries = new ArrayList<>();
+
+    /// Scheduled delegate
+    public final static class Entry {
+        public final BLETimerDelegate delegate;
+        public final long periodMillis;
+        public final long deadlineMillis;
+        /// Lateness of execution relative to due time
+        public final Sample jitter = new Sample();
+        /// Execution time of delegate
+        public final Histogram executionTime = new Histogram(executionTimeBuckets);
+        private long due;
+        private boolean executing = false;
+        private long executions = 0;
+        private long missedDeadlines = 0;
+        private long skipped = 0;
+        private long overruns = 0;
+
+        private Entry(final BLETimerDelegate delegate, final long periodMillis, final long deadlineMillis, final long due) {
+            this.delegate = delegate;
+            this.periodMillis = periodMillis;
+            this.deadlineMillis = deadlineMillis;
+            this.due = due;
+        }
+
+        /// Number of executions that started after due time plus deadline
+        public synchronized long missedDeadlines() {
+            return missedDeadlines;
+        }
+
+        /// Number of ticks that were skipped as execution fell more than a period behind,
+        /// or the previous tick was still executing
+        public synchronized long skipped() {
+            return skipped;
+        }
+
+        /// Number of executions that took longer than deadline
+        public synchronized long overruns() {
+            return overruns;
+        }
+
+        /// Claim delegate for execution of tick, returns false and skips tick
+        /// if previous tick is still executing.
+        public synchronized boolean claim() {
+            if (executing) {
+                skipped++;
+                return false;
+            }
+            executing = true;
+            return true;
+        }
+
+        /// Record start of execution for tick that was due at time
+        public synchronized void executed(final long due, final long now) {
+            final long lateness = Math.max(0, now - due);
+            executions++;
+            jitter.add(lateness);
+            if (lateness > deadlineMillis) {
+                missedDeadlines++;
+            }
+        }
+
+        /// Record completion of execution that took elapsed time, releasing claim.
+        /// Returns false if execution overran deadline.
+        public synchronized boolean completed(final long elapsed) {
+            executing = false;
+            executionTime.add(elapsed);
+            if (elapsed > deadlineMillis) {
+                overruns++;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "[delegate=" + delegate.getClass().getName() + ",period=" + periodMillis + "ms,executions=" + executions +
+                    ",missedDeadlines=" + missedDeadlines + ",skipped=" + skipped + ",overruns=" + overruns +
+                    ",jitter=" + jitter + ",executionTime=" + executionTime + "]";
+        }
+    }
+
+    /// Tick that is due for execution
+    public final static class Tick {
+        public final Entry entry;
+        public final long due;
+
+        private Tick(final Entry entry, final long due) {
+            this.entry = entry;
+            this.due = due;
+        }
+    }
+
+    /// Add delegate for execution every period, first due one period after now. Execution
+    /// that starts later than deadline after due time is counted as a missed deadline.
+    public synchronized Entry add(final BLETimerDelegate delegate, final long periodMillis, final long deadlineMillis, final long now) {
+        final Entry entry = new Entry(delegate, periodMillis, deadlineMillis, now + periodMillis);
+        entries.add(entry);
+        return entry;
+    }
+
+    /// Set next tick of delegate to due time, in place of its next periodic tick, for delegates
+    /// that know when their next state change is due. Subsequent ticks follow at period from due time.
+    public synchronized void reschedule(final Entry entry, final long due) {
+        entry.due = due;
+    }
+
+    /// Ticks due at time now, in order of registration. Due time of each delegate is advanced
+    /// by its period, skipping ticks that are already in the past.
+    public synchronized List<Tick> due(final long now) {
+        final List<Tick> ticks = new ArrayList<>(entries.size());
+        for (final Entry entry : entries) {
+            if (entry.due > now) {
+                continue;
+            }
+            ticks.add(new Tick(entry, entry.due));
+            long due = entry.due + entry.periodMillis;
+            if (due <= now) {
+                final long behind = (now - due) / entry.periodMillis + 1;
+                due += behind * entry.periodMillis;
+                synchronized (entry) {
+                    entry.skipped += behind;
+                }
+            }
+            entry.due = due;
+        }
+        return ticks;
+    }
+
+    /// Time of next tick, or Long.MAX_VALUE if there are no delegates
+    public synchronized long next() {
+        long next = Long.MAX_VALUE;
+        for (final Entry entry : entries) {
+            if (entry.due < next) {
+                next = entry.due;
+            }
+        }
+        return next;
+    }
+
+    /// Wake lock may be released at time now if no tick is due within threshold, as timer can
+    /// then be woken by an alarm. Threshold of TimeInterval.never holds wake lock at all times.
+    public synchronized boolean idle(final long now, final TimeInterval threshold) {
+        return threshold != TimeInterval.never && next() - now > threshold.millis();
+    }
+
+    /// Scheduled delegates
+    public synchronized List<Entry> entries() {
+        return new ArrayList<>(entries);
+    }
+}
@@ -5,39 +5,68 @@
 package com.vmware.herald.sensor.ble;
 
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.le.ScanRecord;
-import android.bluetooth.le.ScanResult;
 
 import com.vmware.herald.sensor.data.ConcreteSensorLogger;
 import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.data.SensorLoggerLevel;
 import com.vmware.herald.sensor.datatype.Data;
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PayloadSharingData;
 import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
-import com.vmware.herald.sensor.datatype.RSSI;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
+import com.vmware.herald.sensor.datatype.TimeInterval;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.ConcreteBLEDatabase");
     private final Queue<BLEDatabaseDelegate> delegates = new ConcurrentLinkedQueue<>();
     private final Map<TargetIdentifier, BLEDevice> database = new ConcurrentHashMap<>();
-    private final ExecutorService queue = Executors.newSingleThreadExecutor();
+    /// Eviction of devices when database exceeds capacity
+    private final BLEDeviceEvictionPolicy evictionPolicy = new BLEDeviceEvictionPolicy();
+    private long evictions = 0;
+    private long evictionRuns = 0;
+    /// Delegate notifications are coalesced and dispatched in batches once per tick
+    private final BLEDatabaseEventBus eventBus = new BLEDatabaseEventBus(delegates, 100, 1024);
+    /// Secondary indexes for payload and pseudo device address lookups, kept consistent
+    /// with device attributes via BLEDeviceDelegate. Devices are keyed by TargetIdentifier
+    /// in the primary table, which is already the Bluetooth device address for peripherals.
+    private final Map<PayloadData, Set<BLEDevice>> payloadDataIndex = new ConcurrentHashMap<>();
+    private final Map<PseudoDeviceAddress, Set<BLEDevice>> pseudoDeviceAddressIndex = new ConcurrentHashMap<>();
+    private final Map<BLEDevice, PayloadData> indexedPayloadData = new ConcurrentHashMap<>();
+    private final Map<BLEDevice, PseudoDeviceAddress> indexedPseudoDeviceAddress = new ConcurrentHashMap<>();
+    /// Shareable devices ranked by most recent update, with cached payload sharing data
+    private final BLEPayloadSharingSet payloadSharingSet = new BLEPayloadSharingSet();
+    /// Expiry queues for house keeping, ordered by last update and connection time
+    private final BLEDeviceExpiryQueue lastUpdatedAtQueue = new BLEDeviceExpiryQueue() {
+        @Override
+        protected Date timestamp(BLEDevice device) {
+            // Stop tracking deleted devices
+            if (database.get(device.identifier) != device) {
+                return null;
+            }
+            return device.lastUpdatedAt();
+        }
+    };
+    private final BLEDeviceExpiryQueue lastConnectedAtQueue = new BLEDeviceExpiryQueue() {
+        @Override
+        protected Date timestamp(BLEDevice device) {
+            // Stop tracking deleted and disconnected devices
+            if (database.get(device.identifier) != device || device.state() != BLEDeviceState.connected) {
+                return null;
+            }
+            return device.lastConnectedAt();
+        }
+    };
 
     @Override
     public void add(BLEDatabaseDelegate delegate) {
@@ -45,32 +74,24 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
     }
 
     @Override
-    public BLEDevice device(ScanResult scanResult) {
-        final BluetoothDevice bluetoothDevice = scanResult.getDevice();
+    public BLEDevice device(BLEScanResult scanResult) {
+        final BluetoothDevice bluetoothDevice = scanResult.peripheral;
+        final TargetIdentifier targetIdentifier = scanResult.identifier;
         // Get pseudo device address
-        final PseudoDeviceAddress pseudoDeviceAddress = pseudoDeviceAddress(scanResult);
+        final PseudoDeviceAddress pseudoDeviceAddress = pseudoDeviceAddress(scanResult.scanRecord);
         if (pseudoDeviceAddress == null) {
             // Get device based on peripheral only
-            return device(bluetoothDevice);
+            return device(targetIdentifier, bluetoothDevice);
         }
         // Identify all existing devices with the same pseudo device address
-        final List<BLEDevice> candidates = new ArrayList<>();
-        for (final BLEDevice device : database.values()) {
-            if (device.pseudoDeviceAddress() == null) {
-                continue;
-            }
-            if (device.pseudoDeviceAddress().equals(pseudoDeviceAddress)) {
-                candidates.add(device);
-            }
-        }
+        final List<BLEDevice> candidates = devices(pseudoDeviceAddress);
         // No existing device matching pseudo device address, create new device
         if (candidates.size() == 0) {
-            final BLEDevice device = device(bluetoothDevice);
+            final BLEDevice device = device(targetIdentifier, bluetoothDevice);
             device.pseudoDeviceAddress(pseudoDeviceAddress);
             return device;
         }
         // Find device with the same target identifier
-        final TargetIdentifier targetIdentifier = new TargetIdentifier(bluetoothDevice);
         final BLEDevice existingDevice = database.get(targetIdentifier);
         if (existingDevice != null) {
             existingDevice.pseudoDeviceAddress(pseudoDeviceAddress);
@@ -81,22 +102,27 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
         Collections.sort(candidates, new Comparator<BLEDevice>() {
             @Override
             public int compare(BLEDevice d0, BLEDevice d1) {
-                return Long.compare(d1.lastUpdatedAt.getTime(), d0.lastUpdatedAt.getTime());
+                return Long.compare(d1.lastUpdatedAt().getTime(), d0.lastUpdatedAt().getTime());
             }
         });
         final BLEDevice cloneSource = candidates.get(0);
-        final BLEDevice newDevice = new BLEDevice(cloneSource, scanResult.getDevice());
-        database.put(newDevice.identifier, newDevice);
-        queue.execute(new Runnable() {
-            @Override
-            public void run() {
-                logger.debug("create (device={},pseudoAddress={})", newDevice.identifier, pseudoDeviceAddress);
-                for (BLEDatabaseDelegate delegate : delegates) {
-                    delegate.bleDatabaseDidCreate(newDevice);
-                }
-            }
-        });
-        newDevice.peripheral(scanResult.getDevice());
+        final BLEDevice newDevice = new BLEDevice(cloneSource, targetIdentifier);
+        final BLEDevice insertedDevice = insert(newDevice);
+        if (insertedDevice != newDevice) {
+            // Device for peripheral was created concurrently
+            insertedDevice.pseudoDeviceAddress(pseudoDeviceAddress);
+            shareDataAcrossDevices(pseudoDeviceAddress);
+            return insertedDevice;
+        }
+        index(newDevice);
+        lastUpdatedAtQueue.add(newDevice);
+        lastConnectedAtQueue.add(newDevice);
+        payloadSharingSet.update(newDevice);
+        logger.debug("create (device={},pseudoAddress={})", newDevice.identifier, pseudoDeviceAddress);
+        eventBus.publish(BLEDatabaseEventType.create, newDevice, null);
+        if (bluetoothDevice != null) {
+            newDevice.peripheral(bluetoothDevice);
+        }
         final PayloadData payloadData = shareDataAcrossDevices(pseudoDeviceAddress);
         if (payloadData != null) {
             newDevice.payloadData(payloadData);
@@ -105,35 +131,33 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
     }
 
     /// Get pseudo device address for Android devices
-    private PseudoDeviceAddress pseudoDeviceAddress(final ScanResult scanResult) {
-        final ScanRecord scanRecord = scanResult.getScanRecord();
-        if (scanRecord == null) {
+    private static PseudoDeviceAddress pseudoDeviceAddress(final Data scanRecord) {
+        if (scanRecord == null || scanRecord.value == null) {
             return null;
         }
-        final byte[] data = scanRecord.getManufacturerSpecificData(BLESensorConfiguration.manufacturerIdForSensor);
-        if (data == null || data.length != 6) {
-            return null;
+        final BLEAdvertCursor cursor = new BLEAdvertCursor().reset(scanRecord.value, 0);
+        while (cursor.next(BLEAdvertSegmentType.manufacturerData)) {
+            if (cursor.manufacturer() == BLESensorConfiguration.manufacturerIdForSensor) {
+                if (cursor.manufacturerDataLength() != 6) {
+                    return null;
+                }
+                final byte[] data = new byte[6];
+                System.arraycopy(scanRecord.value, cursor.manufacturerDataOffset(), data, 0, data.length);
+                return new PseudoDeviceAddress(data);
+            }
         }
-        return new PseudoDeviceAddress(data);
+        return null;
     }
 
     /// Share information across devices with the same pseudo device address
     private PayloadData shareDataAcrossDevices(final PseudoDeviceAddress pseudoDeviceAddress) {
         // Get all devices with the same pseudo device address
-        final List<BLEDevice> devices = new ArrayList<>();
-        for (final BLEDevice device : database.values()) {
-            if (device.pseudoDeviceAddress() == null) {
-                continue;
-            }
-            if (device.pseudoDeviceAddress().equals(pseudoDeviceAddress)) {
-                devices.add(device);
-            }
-        }
+        final List<BLEDevice> devices = devices(pseudoDeviceAddress);
         // Get most recent version of payload data
         Collections.sort(devices, new Comparator<BLEDevice>() {
             @Override
             public int compare(BLEDevice d0, BLEDevice d1) {
-                return Long.compare(d1.lastUpdatedAt.getTime(), d0.lastUpdatedAt.getTime());
+                return Long.compare(d1.lastUpdatedAt().getTime(), d0.lastUpdatedAt().getTime());
             }
         });
         PayloadData payloadData = null;
@@ -181,49 +205,37 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
 
     @Override
     public BLEDevice device(BluetoothDevice bluetoothDevice) {
-        final TargetIdentifier identifier = new TargetIdentifier(bluetoothDevice);
+        return device(new TargetIdentifier(bluetoothDevice), bluetoothDevice);
+    }
+
+    /// Get or create device for identifier, attaching peripheral if available
+    private BLEDevice device(final TargetIdentifier identifier, final BluetoothDevice bluetoothDevice) {
         BLEDevice device = database.get(identifier);
         if (device == null) {
             final BLEDevice newDevice = new BLEDevice(identifier, this);
-            device = newDevice;
-            database.put(identifier, newDevice);
-            queue.execute(new Runnable() {
-                @Override
-                public void run() {
-                    logger.debug("create (device={})", identifier);
-                    for (BLEDatabaseDelegate delegate : delegates) {
-                        delegate.bleDatabaseDidCreate(newDevice);
-                    }
-                }
-            });
+            device = insert(newDevice);
+            if (device == newDevice) {
+                lastUpdatedAtQueue.add(newDevice);
+                logger.debug("create (device={})", identifier);
+                eventBus.publish(BLEDatabaseEventType.create, newDevice, null);
+            }
+        }
+        if (bluetoothDevice != null) {
+            device.peripheral(bluetoothDevice);
         }
-        device.peripheral(bluetoothDevice);
         return device;
     }
 
     @Override
     public BLEDevice device(PayloadData payloadData) {
-        BLEDevice device = null;
-        for (BLEDevice candidate : database.values()) {
-            if (payloadData.equals(candidate.payloadData())) {
-                device = candidate;
-                break;
-            }
-        }
+        BLEDevice device = indexedDevice(payloadData);
         if (device == null) {
             final TargetIdentifier identifier = new TargetIdentifier();
             final BLEDevice newDevice = new BLEDevice(identifier, this);
-            device = newDevice;
-            database.put(identifier, newDevice);
-            queue.execute(new Runnable() {
-                @Override
-                public void run() {
-                    logger.debug("create (device={})", identifier);
-                    for (BLEDatabaseDelegate delegate : delegates) {
-                        delegate.bleDatabaseDidCreate(newDevice);
-                    }
-                }
-            });
+            device = insert(newDevice);
+            lastUpdatedAtQueue.add(newDevice);
+            logger.debug("create (device={})", identifier);
+            eventBus.publish(BLEDatabaseEventType.create, newDevice, null);
         }
         device.payloadData(payloadData);
         return device;
@@ -234,115 +246,240 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
         return new ArrayList<>(database.values());
     }
 
+    @Override
+    public List<BLEDevice> takeDevicesNotUpdatedFor(final TimeInterval timeInterval) {
+        return lastUpdatedAtQueue.takeExpired(new Date().getTime() - timeInterval.millis());
+    }
+
+    @Override
+    public List<BLEDevice> takeDevicesConnectedFor(final TimeInterval timeInterval) {
+        return lastConnectedAtQueue.takeExpired(new Date().getTime() - timeInterval.millis());
+    }
+
     @Override
     public void delete(final TargetIdentifier identifier) {
+        final BLEDevice device = remove(identifier);
+        if (device != null) {
+            eventBus.publish(BLEDatabaseEventType.delete, device, null);
+        }
+    }
+
+    /// Remove device from database and indexes without publishing, returns removed device or null
+    private BLEDevice remove(final TargetIdentifier identifier) {
         final BLEDevice device = database.remove(identifier);
         if (device != null) {
-            queue.execute(new Runnable() {
-                @Override
-                public void run() {
-                    logger.debug("delete (device={})", identifier);
-                    for (final BLEDatabaseDelegate delegate : delegates) {
-                        delegate.bleDatabaseDidDelete(device);
-                    }
-                }
-            });
+            unindex(device);
+            payloadSharingSet.remove(device);
+            logger.debug("delete (device={})", identifier);
         }
+        return device;
     }
 
     @Override
-    public PayloadSharingData payloadSharingData(final BLEDevice peer) {
-        final RSSI rssi = peer.rssi();
-        if (rssi == null) {
-            return new PayloadSharingData(new RSSI(127), new Data(new byte[0]));
-        }
-        // Get other devices that were seen recently by this device
-        final List<BLEDevice> unknownDevices = new ArrayList<>();
-        final List<BLEDevice> knownDevices = new ArrayList<>();
-        for (BLEDevice device : database.values()) {
-            // Device was seen recently
-            if (device.timeIntervalSinceLastUpdate().value >= BLESensorConfiguration.payloadSharingExpiryTimeInterval.value) {
-                continue;
-            }
-            // Device has payload
-            if (device.payloadData() == null) {
-                continue;
-            }
-            // Device is iOS or receive only (Samsung J6)
-            if (!(device.operatingSystem() == BLEDeviceOperatingSystem.ios || device.receiveOnly())) {
-                continue;
-            }
-            // Payload is not the peer itself
-            if (peer.payloadData() != null && (Arrays.equals(device.payloadData().value, peer.payloadData().value))) {
+    public void save(final BLEDatabaseSnapshot snapshot) {
+        snapshot.write(devices());
+    }
+
+    @Override
+    public void restore(final BLEDatabaseSnapshot snapshot) {
+        int restored = 0;
+        for (final BLEDevice device : snapshot.read(this, BLESensorConfiguration.deviceSnapshotExpiryTimeInterval)) {
+            if (insert(device) != device) {
                 continue;
             }
-            // Payload is new to peer
-            if (peer.payloadSharingData.contains(device.payloadData())) {
-                knownDevices.add(device);
-            } else {
-                unknownDevices.add(device);
-            }
+            index(device);
+            lastUpdatedAtQueue.add(device);
+            payloadSharingSet.update(device);
+            restored++;
+            // Payload is restored silently, as it was read in a previous session and publishing
+            // it as an update would report an old encounter as a new read
+            eventBus.publish(BLEDatabaseEventType.create, device, null);
         }
-        // Most recently seen unknown devices first
-        final List<BLEDevice> devices = new ArrayList<>();
-        Collections.sort(unknownDevices, new Comparator<BLEDevice>() {
-            @Override
-            public int compare(BLEDevice d0, BLEDevice d1) {
-                return Long.compare(d1.lastUpdatedAt.getTime(), d0.lastUpdatedAt.getTime());
+        logger.debug("restore (restored={},devices={})", restored, database.size());
+    }
+
+    // MARK:- Capacity
+
+    /// Insert device, evicting devices if database is at capacity, unless a device with the same
+    /// identifier already exists. Check, eviction and insert are atomic, such that concurrent
+    /// inserts cannot exceed capacity or replace each other. Returns the device in the database.
+    /// Evicted devices are published after releasing the lock, as publish may block on a full
+    /// event bus until delegates, which may call the database, have been notified.
+    private BLEDevice insert(final BLEDevice device) {
+        final List<BLEDevice> evicted;
+        synchronized (this) {
+            final BLEDevice existingDevice = database.get(device.identifier);
+            if (existingDevice != null) {
+                return existingDevice;
             }
-        });
-        Collections.sort(knownDevices, new Comparator<BLEDevice>() {
-            @Override
-            public int compare(BLEDevice d0, BLEDevice d1) {
-                return Long.compare(d1.lastUpdatedAt.getTime(), d0.lastUpdatedAt.getTime());
+            evicted = evictIfRequired();
+            database.put(device.identifier, device);
+        }
+        for (final BLEDevice evictedDevice : evicted) {
+            eventBus.publish(BLEDatabaseEventType.delete, evictedDevice, null);
+        }
+        return device;
+    }
+
+    /// Evict devices to make room for a new device if database is at capacity. Devices are
+    /// evicted down to 90% of capacity, to amortise the cost of ranking all devices.
+    /// Returns evicted devices for publishing.
+    private synchronized List<BLEDevice> evictIfRequired() {
+        final Integer capacity = BLESensorConfiguration.deviceTableCapacity;
+        if (capacity == null || database.size() < capacity) {
+            return Collections.emptyList();
+        }
+        final int target = (int) (capacity * 0.9);
+        final List<BLEDevice> victims = evictionPolicy.victims(database.values(), database.size() - target);
+        for (final BLEDevice device : victims) {
+            remove(device.identifier);
+        }
+        evictions += victims.size();
+        evictionRuns++;
+        // Footprint scans all devices, only compute it when debug output is logged
+        if (BLESensorConfiguration.logLevel == SensorLoggerLevel.debug) {
+            logger.debug("evict (capacity={},evicted={},footprint={})", capacity, victims.size(), footprint());
+        }
+        return victims;
+    }
+
+    /// Device table size and eviction statistics
+    public synchronized BLEDatabaseFootprint footprint() {
+        int devices = 0;
+        int scanRecords = 0;
+        long estimatedBytes = 0;
+        for (final BLEDevice device : database.values()) {
+            devices++;
+            // Fixed overhead for device, record, dates and identifiers
+            estimatedBytes += 512;
+            final Data scanRecord = device.scanRecord();
+            if (scanRecord != null) {
+                scanRecords++;
+                estimatedBytes += (scanRecord.value == null ? 0 : scanRecord.value.length);
             }
-        });
-        devices.addAll(unknownDevices);
-        devices.addAll(knownDevices);
-        if (devices.size() == 0) {
-            return new PayloadSharingData(new RSSI(127), new Data(new byte[0]));
-        }
-        // Limit how much to share to avoid oversized data transfers over BLE
-        // (512 bytes limit according to spec, 510 with response, iOS requires response)
-        final Set<PayloadData> sharedPayloads = new HashSet<>(devices.size());
-        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        for (BLEDevice device : devices) {
             final PayloadData payloadData = device.payloadData();
-            if (payloadData == null) {
-                continue;
-            }
-            // Eliminate duplicates (this happens when the same device has changed address but the old version has not expired yet)
-            if (sharedPayloads.contains(payloadData)) {
-                continue;
-            }
-            // Limit payload sharing by BLE transfer limit
-            if (payloadData.value.length + byteArrayOutputStream.toByteArray().length > 510) {
-                break;
-            }
-            try {
-                byteArrayOutputStream.write(payloadData.value);
-                peer.payloadSharingData.add(payloadData);
-                sharedPayloads.add(payloadData);
-            } catch (Throwable e) {
-                logger.fault("Failed to append payload sharing data", e);
+            if (payloadData != null && payloadData.value != null) {
+                estimatedBytes += payloadData.value.length;
             }
         }
-        final Data data = new Data(byteArrayOutputStream.toByteArray());
-        return new PayloadSharingData(rssi, data);
+        return new BLEDatabaseFootprint(devices, scanRecords, estimatedBytes, evictions, evictionRuns);
+    }
+
+    /// Delegate notification statistics
+    public BLEDatabaseEventBus eventBus() {
+        return eventBus;
+    }
+
+    @Override
+    public PayloadSharingData payloadSharingData(final BLEDevice peer) {
+        return payloadSharingSet.payloadSharingData(peer);
+    }
+
+    // MARK:- Indexes
+
+    /// Get all devices with the same pseudo device address
+    private List<BLEDevice> devices(final PseudoDeviceAddress pseudoDeviceAddress) {
+        final Set<BLEDevice> devices = pseudoDeviceAddressIndex.get(pseudoDeviceAddress);
+        if (devices == null) {
+            return new ArrayList<>(0);
+        }
+        return new ArrayList<>(devices);
+    }
+
+    /// Get any device with the same payload data
+    private BLEDevice indexedDevice(final PayloadData payloadData) {
+        final Set<BLEDevice> devices = payloadDataIndex.get(payloadData);
+        if (devices == null) {
+            return null;
+        }
+        for (final BLEDevice device : devices) {
+            return device;
+        }
+        return null;
+    }
+
+    /// Update payload and pseudo device address indexes for device, replacing previously indexed values.
+    private synchronized void index(final BLEDevice device) {
+        // Ignore updates from devices that have been deleted
+        if (database.get(device.identifier) != device) {
+            return;
+        }
+        // Payload data index
+        final PayloadData payloadData = device.payloadData();
+        final PayloadData indexedPayloadData = this.indexedPayloadData.get(device);
+        if (indexedPayloadData != null && !indexedPayloadData.equals(payloadData)) {
+            removeFromIndex(payloadDataIndex, indexedPayloadData, device);
+            this.indexedPayloadData.remove(device);
+        }
+        if (payloadData != null) {
+            addToIndex(payloadDataIndex, payloadData, device);
+            this.indexedPayloadData.put(device, payloadData);
+        }
+        // Pseudo device address index
+        final PseudoDeviceAddress pseudoDeviceAddress = device.pseudoDeviceAddress();
+        final PseudoDeviceAddress indexedPseudoDeviceAddress = this.indexedPseudoDeviceAddress.get(device);
+        if (indexedPseudoDeviceAddress != null && !indexedPseudoDeviceAddress.equals(pseudoDeviceAddress)) {
+            removeFromIndex(pseudoDeviceAddressIndex, indexedPseudoDeviceAddress, device);
+            this.indexedPseudoDeviceAddress.remove(device);
+        }
+        if (pseudoDeviceAddress != null) {
+            addToIndex(pseudoDeviceAddressIndex, pseudoDeviceAddress, device);
+            this.indexedPseudoDeviceAddress.put(device, pseudoDeviceAddress);
+        }
+    }
+
+    /// Remove device from payload and pseudo device address indexes.
+    private synchronized void unindex(final BLEDevice device) {
+        final PayloadData indexedPayloadData = this.indexedPayloadData.remove(device);
+        if (indexedPayloadData != null) {
+            removeFromIndex(payloadDataIndex, indexedPayloadData, device);
+        }
+        final PseudoDeviceAddress indexedPseudoDeviceAddress = this.indexedPseudoDeviceAddress.remove(device);
+        if (indexedPseudoDeviceAddress != null) {
+            removeFromIndex(pseudoDeviceAddressIndex, indexedPseudoDeviceAddress, device);
+        }
+    }
+
+    private static <K> void addToIndex(final Map<K, Set<BLEDevice>> index, final K key, final BLEDevice device) {
+        Set<BLEDevice> devices = index.get(key);
+        if (devices == null) {
+            devices = Collections.newSetFromMap(new ConcurrentHashMap<BLEDevice, Boolean>());
+            index.put(key, devices);
+        }
+        devices.add(device);
+    }
+
+    private static <K> void removeFromIndex(final Map<K, Set<BLEDevice>> index, final K key, final BLEDevice device) {
+        final Set<BLEDevice> devices = index.get(key);
+        if (devices == null) {
+            return;
+        }
+        devices.remove(device);
+        if (devices.isEmpty()) {
+            index.remove(key);
+        }
     }
 
     // MARK:- BLEDeviceDelegate
 
     @Override
     public void device(final BLEDevice device, final BLEDeviceAttribute didUpdate) {
-        queue.execute(new Runnable() {
-            @Override
-            public void run() {
-                logger.debug("update (device={},attribute={})", device.identifier, didUpdate.name());
-                for (BLEDatabaseDelegate delegate : delegates) {
-                    delegate.bleDatabaseDidUpdate(device, didUpdate);
+        // Update indexes synchronously to ensure lookups are consistent with attribute values
+        if (didUpdate == BLEDeviceAttribute.payloadData || didUpdate == BLEDeviceAttribute.pseudoDeviceAddress) {
+            index(device);
+        } else if (didUpdate == BLEDeviceAttribute.state && device.state() == BLEDeviceState.connected) {
+            lastConnectedAtQueue.add(device);
+        }
+        switch (didUpdate) {
+            case payloadData:
+            case operatingSystem:
+            case receiveOnly:
+            case rssi:
+                if (database.get(device.identifier) == device) {
+                    payloadSharingSet.update(device);
                 }
-            }
-        });
+                break;
+        }
+        eventBus.publish(BLEDatabaseEventType.update, device, didUpdate);
     }
 }
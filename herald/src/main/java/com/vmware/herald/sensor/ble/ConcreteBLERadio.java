@@ -0,0 +1,334 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.os.ParcelUuid;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/// Bluetooth radio backed by Android LE scanner and GATT client. Scan results and GATT callbacks
+/// are translated and reported to delegates. Connection handle is the BluetoothGatt instance of
+/// the connection.
+public class ConcreteBLERadio implements BLERadio {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.ConcreteBLERadio");
+    private final Context context;
+    private final BLEDatabase database;
+    private final Queue<BLERadioDelegate> delegates = new ConcurrentLinkedQueue<>();
+
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult scanResult) {
+            final BluetoothDevice peripheral = scanResult.getDevice();
+            final ScanRecord scanRecord = scanResult.getScanRecord();
+            final Data scanRecordData = (scanRecord == null || scanRecord.getBytes() == null ? null : new Data(scanRecord.getBytes()));
+            final BLEScanResult result = new BLEScanResult(new TargetIdentifier(peripheral), peripheral, scanResult.getRssi(), scanRecordData);
+            for (final BLERadioDelegate delegate : delegates) {
+                delegate.radioDidScan(result);
+            }
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult scanResult : results) {
+                onScanResult(0, scanResult);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            logger.fault("onScanFailed (error={})", onScanFailedErrorCodeToString(errorCode));
+            super.onScanFailed(errorCode);
+        }
+    };
+
+    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            final BLEDevice device = database.device(gatt.getDevice());
+            logger.debug("onConnectionStateChange (device={},status={},state={})", device, bleStatus(status), bleState(newState));
+            if (newState == BluetoothProfile.STATE_CONNECTED) {
+                for (final BLERadioDelegate delegate : delegates) {
+                    delegate.radioDidConnect(device, gatt);
+                }
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                for (final BLERadioDelegate delegate : delegates) {
+                    delegate.radioDidDisconnect(device, gatt, status == BluetoothGatt.GATT_SUCCESS);
+                }
+            }
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            final BLEDevice device = database.device(gatt.getDevice());
+            for (final BLERadioDelegate delegate : delegates) {
+                delegate.radioDidChangeMtu(device, gatt, mtu, status == BluetoothGatt.GATT_SUCCESS);
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            final BLEDevice device = database.device(gatt.getDevice());
+            logger.debug("onServicesDiscovered (device={},status={})", device, bleStatus(status));
+            List<Characteristic> characteristics = null;
+            final BluetoothGattService service = gatt.getService(BLESensorConfiguration.serviceUUID);
+            if (service != null) {
+                characteristics = new ArrayList<>(service.getCharacteristics().size());
+                for (final BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                    final Set<UUID> descriptors = new HashSet<>();
+                    for (final BluetoothGattDescriptor descriptor : characteristic.getDescriptors()) {
+                        descriptors.add(descriptor.getUuid());
+                    }
+                    characteristics.add(new Characteristic(characteristic.getUuid(), descriptors));
+                }
+            }
+            for (final BLERadioDelegate delegate : delegates) {
+                delegate.radioDidDiscoverServices(device, gatt, characteristics);
+            }
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            final BLEDevice device = database.device(gatt.getDevice());
+            for (final BLERadioDelegate delegate : delegates) {
+                delegate.radioDidRead(device, gatt, characteristic.getUuid(), characteristic.getValue(), status == BluetoothGatt.GATT_SUCCESS);
+            }
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            final BLEDevice device = database.device(gatt.getDevice());
+            characteristic.setValue(new byte[0]);
+            for (final BLERadioDelegate delegate : delegates) {
+                delegate.radioDidWrite(device, gatt, characteristic.getUuid(), status == BluetoothGatt.GATT_SUCCESS);
+            }
+        }
+    };
+
+    public ConcreteBLERadio(final Context context, final BLEDatabase database) {
+        this.context = context;
+        this.database = database;
+    }
+
+    @Override
+    public void add(final BLERadioDelegate delegate) {
+        delegates.add(delegate);
+    }
+
+    private BluetoothLeScanner bluetoothLeScanner() {
+        final BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        if (bluetoothAdapter == null) {
+            logger.fault("ScanLoop denied, Bluetooth adapter unavailable");
+            return null;
+        }
+        final BluetoothLeScanner bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (bluetoothLeScanner == null) {
+            logger.fault("ScanLoop denied, Bluetooth LE scanner unavailable");
+            return null;
+        }
+        return bluetoothLeScanner;
+    }
+
+    /// Scan for devices advertising sensor service and all Apple devices as
+    // iOS background advert does not include service UUID. There is a risk
+    // that the sensor will spend time communicating with Apple devices that
+    // are not running the sensor code repeatedly, but there is no reliable
+    // way of filtering this as the service may be absent only because of
+    // transient issues. This will be handled in taskConnect.
+    @Override
+    public boolean startScan() {
+        final BluetoothLeScanner bluetoothLeScanner = bluetoothLeScanner();
+        if (bluetoothLeScanner == null) {
+            logger.fault("startScan denied, Bluetooth LE scanner unavailable");
+            return false;
+        }
+        final List<ScanFilter> filter = new ArrayList<>(2);
+        filter.add(new ScanFilter.Builder().setManufacturerData(
+                BLESensorConfiguration.manufacturerIdForApple, new byte[0], new byte[0]).build());
+        filter.add(new ScanFilter.Builder().setServiceUuid(
+                new ParcelUuid(BLESensorConfiguration.serviceUUID),
+                new ParcelUuid(new UUID(0xFFFFFFFFFFFFFFFFL, 0)))
+                .build());
+        final ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+                .setReportDelay(0)
+                .build();
+        try {
+            bluetoothLeScanner.startScan(filter, settings, scanCallback);
+            return true;
+        } catch (Throwable e) {
+            logger.fault("startScan failed", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void stopScan() {
+        final BluetoothLeScanner bluetoothLeScanner = bluetoothLeScanner();
+        if (bluetoothLeScanner == null) {
+            logger.fault("stopScan denied, Bluetooth LE scanner unavailable");
+        } else {
+            try {
+                bluetoothLeScanner.stopScan(scanCallback);
+                logger.debug("stopScan, stopped scanner");
+            } catch (Throwable e) {
+                logger.fault("stopScan warning, bluetoothLeScanner.stopScan error", e);
+            }
+        }
+        try {
+            final BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+            if (bluetoothAdapter != null) {
+                bluetoothAdapter.cancelDiscovery();
+            }
+            logger.debug("stopScan, cancelled discovery");
+        } catch (Throwable e) {
+            logger.fault("stopScan warning, bluetoothAdapter.cancelDiscovery error", e);
+        }
+    }
+
+    @Override
+    public Object connect(final BLEDevice device) {
+        final BluetoothDevice peripheral = device.peripheral();
+        if (peripheral == null) {
+            logger.fault("connect failed (device={},reason=missingPeripheral)", device);
+            return null;
+        }
+        final BluetoothGatt gatt = peripheral.connectGatt(context, false, gattCallback);
+        if (gatt == null) {
+            logger.fault("connect failed (device={},reason=connectGattFailed)", device);
+            return null;
+        }
+        return gatt;
+    }
+
+    @Override
+    public void disconnect(final Object connection) {
+        if (!(connection instanceof BluetoothGatt)) {
+            return;
+        }
+        ((BluetoothGatt) connection).disconnect();
+    }
+
+    @Override
+    public void close(final BLEDevice device, final Object connection) {
+        if (!(connection instanceof BluetoothGatt)) {
+            return;
+        }
+        try {
+            ((BluetoothGatt) connection).close();
+        } catch (Throwable e) {
+            logger.fault("close failed (device={})", device, e);
+        }
+    }
+
+    @Override
+    public boolean requestMtu(final Object connection, final int mtu) {
+        if (!(connection instanceof BluetoothGatt)) {
+            return false;
+        }
+        return ((BluetoothGatt) connection).requestMtu(mtu);
+    }
+
+    @Override
+    public boolean discoverServices(final Object connection) {
+        if (!(connection instanceof BluetoothGatt)) {
+            return false;
+        }
+        return ((BluetoothGatt) connection).discoverServices();
+    }
+
+    @Override
+    public boolean readCharacteristic(final Object connection, final UUID characteristic) {
+        final BluetoothGattCharacteristic gattCharacteristic = characteristic(connection, characteristic);
+        if (gattCharacteristic == null) {
+            return false;
+        }
+        return ((BluetoothGatt) connection).readCharacteristic(gattCharacteristic);
+    }
+
+    @Override
+    public boolean writeCharacteristic(final Object connection, final UUID characteristic, final byte[] value) {
+        final BluetoothGattCharacteristic gattCharacteristic = characteristic(connection, characteristic);
+        if (gattCharacteristic == null) {
+            return false;
+        }
+        gattCharacteristic.setValue(value);
+        gattCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+        return ((BluetoothGatt) connection).writeCharacteristic(gattCharacteristic);
+    }
+
+    /// Get discovered characteristic of sensor service for connection
+    private static BluetoothGattCharacteristic characteristic(final Object connection, final UUID characteristic) {
+        if (!(connection instanceof BluetoothGatt)) {
+            return null;
+        }
+        final BluetoothGattService service = ((BluetoothGatt) connection).getService(BLESensorConfiguration.serviceUUID);
+        if (service == null) {
+            return null;
+        }
+        return service.getCharacteristic(characteristic);
+    }
+
+    // MARK:- Bluetooth code transformers
+
+    private static String bleStatus(final int status) {
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            return "GATT_SUCCESS";
+        } else {
+            return "GATT_FAILURE";
+        }
+    }
+
+    private static String bleState(final int state) {
+        switch (state) {
+            case BluetoothProfile.STATE_CONNECTED:
+                return "STATE_CONNECTED";
+            case BluetoothProfile.STATE_DISCONNECTED:
+                return "STATE_DISCONNECTED";
+            default:
+                return "UNKNOWN_STATE_" + state;
+        }
+    }
+
+    private static String onScanFailedErrorCodeToString(final int errorCode) {
+        switch (errorCode) {
+            case ScanCallback.SCAN_FAILED_ALREADY_STARTED:
+                return "SCAN_FAILED_ALREADY_STARTED";
+            case ScanCallback.SCAN_FAILED_APPLICATION_REGISTRATION_FAILED:
+                return "SCAN_FAILED_APPLICATION_REGISTRATION_FAILED";
+            case ScanCallback.SCAN_FAILED_INTERNAL_ERROR:
+                return "SCAN_FAILED_INTERNAL_ERROR";
+            case ScanCallback.SCAN_FAILED_FEATURE_UNSUPPORTED:
+                return "SCAN_FAILED_FEATURE_UNSUPPORTED";
+            default:
+                return "UNKNOWN_ERROR_CODE_" + errorCode;
+        }
+    }
+}
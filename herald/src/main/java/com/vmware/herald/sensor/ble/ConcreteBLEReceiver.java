@@ -4,21 +4,9 @@
 
 package com.vmware.herald.sensor.ble;
 
-import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
-import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanFilter;
-import android.bluetooth.le.ScanRecord;
-import android.bluetooth.le.ScanResult;
-import android.bluetooth.le.ScanSettings;
 import android.content.Context;
-import android.os.ParcelUuid;
 
+import com.vmware.herald.sensor.analysis.Sample;
 import com.vmware.herald.sensor.data.ConcreteSensorLogger;
 import com.vmware.herald.sensor.data.SensorLogger;
 import com.vmware.herald.sensor.datatype.Base64;
@@ -29,7 +17,6 @@ import com.vmware.herald.sensor.datatype.ImmediateSendData;
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PayloadSharingData;
 import com.vmware.herald.sensor.datatype.RSSI;
-import com.vmware.herald.sensor.analysis.Sample;
 import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
 import com.vmware.herald.sensor.datatype.SignalCharacteristicDataType;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
@@ -37,75 +24,95 @@ import com.vmware.herald.sensor.datatype.TimeInterval;
 import com.vmware.herald.sensor.SensorDelegate;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
-public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLEReceiver {
+/// Receiver for scanning, connecting and exchanging data with devices via radio. Scan results
+/// and outcome of GATT operations are received from the radio as BLERadioDelegate callbacks.
+public class ConcreteBLEReceiver implements BLEReceiver, BLERadioDelegate {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.ConcreteBLEReceiver");
     // Scan ON/OFF/PROCESS durations
-    private final static long scanOnDurationMillis = TimeInterval.seconds(4).millis();
-    private final static long scanRestDurationMillis = TimeInterval.seconds(1).millis();
     private final static long scanProcessDurationMillis = TimeInterval.seconds(60).millis();
-    private final static long scanOffDurationMillis = TimeInterval.seconds(2).millis();
     private final static long timeToConnectDeviceLimitMillis = TimeInterval.seconds(12).millis();
-    private final static Sample timeToConnectDevice = new Sample();
-    private final static Sample timeToProcessDevice = new Sample();
-    private final static int defaultMTU = 20;
-    private final Context context;
+    // Signal characteristic write statistics, for assessing MTU negotiation
+    private final static Sample bytesPerSignalWrite = new Sample();
+    private final static Sample writesPerSignalTask = new Sample();
     private final BluetoothStateManager bluetoothStateManager;
+    private final BLETimer timer;
     private final BLEDatabase database;
     private final BLETransmitter transmitter;
+    private final BLERadio radio;
     private final BLEDeviceFilter deviceFilter;
-    private final ExecutorService operationQueue = Executors.newSingleThreadExecutor();
-    private final Queue<ScanResult> scanResults = new ConcurrentLinkedQueue<>();
+    /// Clock and scheduler shared by scan loop, connection pipeline and connection scheduler
+    private final BLEScheduler scheduler;
+    private final BLEConnectionPipeline connectionPipeline;
+    private final BLEConnectionScheduler connectionScheduler;
+    private final BLEScanDutyCycle scanDutyCycle = new BLEScanDutyCycle();
+    private final Executor operationQueue;
+    private final BLEScanResultBuffer scanResults = new BLEScanResultBuffer(BLESensorConfiguration.scanResultBufferCapacity);
+    private final BLEScanRecordClassifier scanRecordClassifier;
+    private final ScanLoopTask scanLoopTask;
+    /// Devices discovered in current scan cycle, only accessed on operation queue
+    private final Set<BLEDevice> discoveredDevices = new LinkedHashSet<>();
+    /// Number of devices discovered for the first time in current scan cycle, only accessed on operation queue
+    private int discoveredNewDevices = 0;
 
     private enum NextTask {
-        nothing, readPayload, writePayload, writeRSSI, writePayloadSharing, immediateSend
+        nothing, readPayload, writePayload, writeRSSI, writePayloadSharing, immediateSend, writeBundle
     }
 
-    private final ScanCallback scanCallback = new ScanCallback() {
-        @Override
-        public void onScanResult(int callbackType, ScanResult scanResult) {
-            logger.debug("onScanResult (result={})", scanResult);
-
-            scanResults.add(scanResult);
-            // Create or update device in database
-            final BLEDevice device = database.device(scanResult);
-            device.registerDiscovery();
-            // Read RSSI from scan result
-            device.rssi(new RSSI(scanResult.getRssi()));
-        }
-
-        @Override
-        public void onBatchScanResults(List<ScanResult> results) {
-            for (ScanResult scanResult : results) {
-                onScanResult(0, scanResult);
-            }
-        }
-
-        @Override
-        public void onScanFailed(int errorCode) {
-            logger.fault("onScanFailed (error={})", onScanFailedErrorCodeToString(errorCode));
-            super.onScanFailed(errorCode);
-        }
-    };
-
     /**
      * Receiver starts automatically when Bluetooth is enabled.
      */
     public ConcreteBLEReceiver(Context context, BluetoothStateManager bluetoothStateManager, BLETimer timer, BLEDatabase database, BLETransmitter transmitter) {
-        this.context = context;
+        this(bluetoothStateManager, timer, database, transmitter, new ConcreteBLERadio(context, database),
+                new ConcreteBLEScheduler(), Executors.newSingleThreadExecutor(), new BLEDeviceFilter(context, "ble_filter.bin"));
+    }
+
+    /**
+     * Receiver using radio for scan and GATT operations, and scheduler as clock for scan loop and
+     * connections, e.g. for simulating crowds off-device. Scan loop is ticked by timer, or by the
+     * caller via scanLoop() if timer is null.
+     */
+    public ConcreteBLEReceiver(BluetoothStateManager bluetoothStateManager, BLETimer timer, BLEDatabase database, BLETransmitter transmitter,
+                               BLERadio radio, BLEScheduler scheduler, Executor operationQueue, BLEDeviceFilter deviceFilter) {
         this.bluetoothStateManager = bluetoothStateManager;
+        this.timer = timer;
         this.database = database;
         this.transmitter = transmitter;
-        this.deviceFilter = new BLEDeviceFilter(context, "filter.csv");
-        timer.add(new ScanLoopTask());
+        this.radio = radio;
+        this.scheduler = scheduler;
+        this.operationQueue = operationQueue;
+        this.deviceFilter = deviceFilter;
+        this.scanRecordClassifier = new BLEScanRecordClassifier(deviceFilter, BLESensorConfiguration.scanRecordClassifierCapacity);
+        this.connectionPipeline = new BLEConnectionPipeline(radio, scheduler, BLESensorConfiguration.concurrentConnections, timeToConnectDeviceLimitMillis, scanProcessDurationMillis);
+        this.connectionScheduler = new BLEConnectionScheduler(scheduler);
+        this.scanLoopTask = new ScanLoopTask();
+        radio.add(this);
+        if (timer != null) {
+            timer.add(scanLoopTask);
+        }
+    }
+
+    /// Scan loop, ticked by timer, or by the caller if receiver has no timer
+    public BLETimerDelegate scanLoop() {
+        return scanLoopTask;
+    }
+
+    /// Connection scheduler, for inspecting new payloads per second
+    public BLEConnectionScheduler connectionScheduler() {
+        return connectionScheduler;
+    }
+
+    /// Scan duty cycle, for inspecting scan and process durations
+    public BLEScanDutyCycle scanDutyCycle() {
+        return scanDutyCycle;
     }
 
     // MARK:- BLEReceiver
@@ -125,6 +132,7 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     public void stop() {
         logger.debug("stop");
         // scanLoop is stopped by Bluetooth state
+        deviceFilter.save();
     }
 
     @Override
@@ -143,15 +151,16 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         // Immediate send process
         // 1. Set immediate send data for device
         // 2. Initiate connection to device
-        // 3. onConnectionStateChange() will trigger service and characteristic discovery
+        // 3. radioDidConnect() will trigger service and characteristic discovery
         // 4. signalCharacteristic discovery will trigger nextTask()
         // 5. nextTask() will be .immediateSend if immediate send data has been set for device
         // 6. writeSignalCharacteristic() will be called to perform immediate send to signalCharacteristic
-        // 7. onCharacteristicWrite() will be triggered when signal data has been written
+        // 7. radioDidWrite() will be triggered when signal data has been written
         // 8. Immediate send data for device will be set to null upon completion of write
         // 9. Connection is closed immediately
+        // Returns true once connection has been initiated, as the process is asynchronous
         device.immediateSendData(dataToSend);
-        return taskConnectDevice(device);
+        return connectionPipeline.connect(device);
     }
 
     // MARK:- Scan loop for startScan-wait-stopScan-processScanResults-wait-repeat
@@ -162,48 +171,60 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
 
     private class ScanLoopTask implements BLETimerDelegate {
         private ScanLoopState scanLoopState = ScanLoopState.processed;
-        private long lastStateChangeAt = System.currentTimeMillis();
+        private long lastStateChangeAt = scheduler.now();
 
         private void state(final long now, ScanLoopState state) {
             final long elapsed = now - lastStateChangeAt;
             logger.debug("scanLoopTask, state change (from={},to={},elapsed={}ms)", scanLoopState, state, elapsed);
             this.scanLoopState = state;
             lastStateChangeAt = now;
+            tickOnStateChange();
+        }
+
+        /// Tick scan loop when next state change is due
+        private void tickOnStateChange() {
+            if (timer != null) {
+                timer.next(this, untilStateChange(scheduler.now()));
+            }
         }
 
         private long timeSincelastStateChange(final long now) {
             return now - lastStateChangeAt;
         }
 
-        private BluetoothLeScanner bluetoothLeScanner() {
-            final BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-            if (bluetoothAdapter == null) {
-                logger.fault("ScanLoop denied, Bluetooth adapter unavailable");
-                return null;
-            }
-            final BluetoothLeScanner bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
-            if (bluetoothLeScanner == null) {
-                logger.fault("ScanLoop denied, Bluetooth LE scanner unavailable");
-                return null;
+        /// Time until next state change is due, for ticking scan loop on state change rather
+        /// than every second. Zero while waiting for a callback, or when the state change is
+        /// overdue as it has been blocked, e.g. by Bluetooth being off.
+        private long untilStateChange(final long now) {
+            final long elapsed = timeSincelastStateChange(now);
+            switch (scanLoopState) {
+                case processed:
+                    return scanDutyCycle.scanOffMillis() - elapsed;
+                case scanStarted:
+                    return scanDutyCycle.scanOnMillis() - elapsed;
+                case scanStopped:
+                    return scanDutyCycle.scanRestMillis() - elapsed;
+                default:
+                    return 0;
             }
-            return bluetoothLeScanner;
         }
 
         @Override
         public void bleTimer(final long now) {
+            loop(now);
+            tickOnStateChange();
+        }
+
+        private void loop(final long now) {
             switch (scanLoopState) {
                 case processed: {
                     if (bluetoothStateManager.state() == BluetoothState.poweredOn) {
                         final long period = timeSincelastStateChange(now);
-                        if (period >= scanOffDurationMillis) {
+                        if (period >= scanDutyCycle.scanOffMillis()) {
                             logger.debug("scanLoopTask, start scan (process={}ms)", period);
-                            final BluetoothLeScanner bluetoothLeScanner = bluetoothLeScanner();
-                            if (bluetoothLeScanner == null) {
-                                logger.fault("scanLoopTask, start scan denied, Bluetooth LE scanner unavailable");
-                                return;
-                            }
                             state(now, ScanLoopState.scanStarting);
-                            startScan(bluetoothLeScanner, new Callback<Boolean>() {
+                            scanDutyCycle.scanStarted(now);
+                            startScan(new Callback<Boolean>() {
                                 @Override
                                 public void accept(Boolean value) {
                                     state(now, value ? ScanLoopState.scanStarted : ScanLoopState.scanStopped);
@@ -215,17 +236,13 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 }
                 case scanStarted: {
                     final long period = timeSincelastStateChange(now);
-                    if (period >= scanOnDurationMillis) {
+                    if (period >= scanDutyCycle.scanOnMillis()) {
                         logger.debug("scanLoopTask, stop scan (scan={}ms)", period);
-                        final BluetoothLeScanner bluetoothLeScanner = bluetoothLeScanner();
-                        if (bluetoothLeScanner == null) {
-                            logger.fault("scanLoopTask, stop scan denied, Bluetooth LE scanner unavailable");
-                            return;
-                        }
                         state(now, ScanLoopState.scanStopping);
-                        stopScan(bluetoothLeScanner, new Callback<Boolean>() {
+                        stopScan(new Callback<Boolean>() {
                             @Override
                             public void accept(Boolean value) {
+                                scanDutyCycle.scanStopped(scheduler.now());
                                 state(now, ScanLoopState.scanStopped);
                             }
                         });
@@ -235,13 +252,16 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 case scanStopped: {
                     if (bluetoothStateManager.state() == BluetoothState.poweredOn) {
                         final long period = timeSincelastStateChange(now);
-                        if (period >= scanRestDurationMillis) {
+                        if (period >= scanDutyCycle.scanRestMillis()) {
                             logger.debug("scanLoopTask, start processing (stop={}ms)", period);
                             state(now, ScanLoopState.processing);
+                            scanDutyCycle.processStarted(now);
                             processScanResults(new Callback<Boolean>() {
                                 @Override
                                 public void accept(Boolean value) {
-                                    state(now, ScanLoopState.processed);
+                                    final long processed = scheduler.now();
+                                    scanDutyCycle.processed(processed, !value);
+                                    state(processed, ScanLoopState.processed);
                                 }
                             });
                         }
@@ -253,91 +273,58 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     }
 
 
-    /// Get BLE scanner and start scan
-    private void startScan(final BluetoothLeScanner bluetoothLeScanner, final Callback<Boolean> callback) {
+    /// Start scan on radio
+    private void startScan(final Callback<Boolean> callback) {
         logger.debug("startScan");
         operationQueue.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    scanForPeripherals(bluetoothLeScanner);
-                    logger.debug("startScan successful");
-                    if (callback != null) {
-                        callback.accept(true);
-                    }
+                    final boolean success = radio.startScan();
+                    logger.debug("startScan (success={})", success);
+                    callback.accept(success);
                 } catch (Throwable e) {
                     logger.fault("startScan failed", e);
-                    if (callback != null) {
-                        callback.accept(false);
-                    }
+                    callback.accept(false);
                 }
             }
         });
     }
 
-
-    /// Scan for devices advertising sensor service and all Apple devices as
-    // iOS background advert does not include service UUID. There is a risk
-    // that the sensor will spend time communicating with Apple devices that
-    // are not running the sensor code repeatedly, but there is no reliable
-    // way of filtering this as the service may be absent only because of
-    // transient issues. This will be handled in taskConnect.
-    private void scanForPeripherals(final BluetoothLeScanner bluetoothLeScanner) {
-        logger.debug("scanForPeripherals");
-        final List<ScanFilter> filter = new ArrayList<>(2);
-        filter.add(new ScanFilter.Builder().setManufacturerData(
-                BLESensorConfiguration.manufacturerIdForApple, new byte[0], new byte[0]).build());
-        filter.add(new ScanFilter.Builder().setServiceUuid(
-                new ParcelUuid(BLESensorConfiguration.serviceUUID),
-                new ParcelUuid(new UUID(0xFFFFFFFFFFFFFFFFL, 0)))
-                .build());
-        final ScanSettings settings = new ScanSettings.Builder()
-                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-                .setReportDelay(0)
-                .build();
-        bluetoothLeScanner.startScan(filter, settings, scanCallback);
-    }
-
     private void processScanResults(final Callback<Boolean> callback) {
         logger.debug("processScanResults");
         operationQueue.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    processScanResults();
+                    processScanResultsTasks(new Callback<Boolean>() {
+                        @Override
+                        public void accept(Boolean value) {
+                            logger.debug("processScanResults, connections complete (success={})", value);
+                            callback.accept(value);
+                        }
+                    });
                     logger.debug("processScanResults, processed scan results");
                 } catch (Throwable e) {
                     logger.fault("processScanResults warning, processScanResults error", e);
                     callback.accept(false);
                 }
-                logger.debug("processScanResults successful");
-                callback.accept(true);
             }
         });
     }
 
-    /// Get BLE scanner and stop scan
-    private void stopScan(final BluetoothLeScanner bluetoothLeScanner, final Callback<Boolean> callback) {
+    /// Stop scan on radio
+    private void stopScan(final Callback<Boolean> callback) {
         logger.debug("stopScan");
         operationQueue.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    bluetoothLeScanner.stopScan(scanCallback);
-                    logger.debug("stopScan, stopped scanner");
-                } catch (Throwable e) {
-                    logger.fault("stopScan warning, bluetoothLeScanner.stopScan error", e);
-                }
-                try {
-                    final BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-                    if (bluetoothAdapter != null) {
-                        bluetoothAdapter.cancelDiscovery();
-                    }
-                    logger.debug("stopScan, cancelled discovery");
+                    radio.stopScan();
+                    logger.debug("stopScan successful");
                 } catch (Throwable e) {
-                    logger.fault("stopScan warning, bluetoothAdapter.cancelDiscovery error", e);
+                    logger.fault("stopScan warning, stopScan error", e);
                 }
-                logger.debug("stopScan successful");
                 callback.accept(true);
             }
         });
@@ -345,17 +332,53 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
 
     // MARK:- Process scan results
 
-    /// Process scan results.
-    private void processScanResults() {
+    @Override
+    public void radioDidScan(final BLEScanResult scanResult) {
+        logger.debug("radioDidScan (result={})", scanResult);
+        // Drop scan result when buffer is saturated, until it is drained. Duplicate
+        // results are collapsed in buffer, and the latest result is applied on drain.
+        if (scanResults.offer(scanResult) != BLEScanResultBuffer.Offer.added) {
+            return;
+        }
+        // Create device in database on first sight, for detection latency trace
+        final BLEDevice device = database.device(scanResult);
+        device.trace().mark(BLEDetectionStage.scanSeen);
+        // Drain buffer incrementally during scan once half full, to bound process phase
+        // without ticking the scan loop during scan
+        if (scanResults.size() == BLESensorConfiguration.scanResultBufferCapacity / 2) {
+            discoverScanResults();
+        }
+    }
+
+    /// Process scan results received so far during scan.
+    private void discoverScanResults() {
+        operationQueue.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    didDiscover();
+                } catch (Throwable e) {
+                    logger.fault("discoverScanResults warning, didDiscover error", e);
+                }
+            }
+        });
+    }
+
+    /// Process scan results, callback is called once connections to discovered devices have completed.
+    private void processScanResultsTasks(final Callback<Boolean> callback) {
         final long t0 = System.currentTimeMillis();
-        logger.debug("processScanResults (results={})", scanResults.size());
+        logger.debug("processScanResults (results={},classifier={})", scanResults, scanRecordClassifier);
         // Identify devices discovered in last scan
-        final List<BLEDevice> didDiscover = didDiscover();
+        didDiscover();
+        final List<BLEDevice> didDiscover = new ArrayList<>(discoveredDevices);
+        discoveredDevices.clear();
+        scanDutyCycle.discovered(didDiscover.size(), discoveredNewDevices);
+        discoveredNewDevices = 0;
         taskRemoveExpiredDevices();
         taskCorrectConnectionStatus();
-        taskConnect(didDiscover);
+        taskConnect(didDiscover, callback);
         final long t1 = System.currentTimeMillis();
-        logger.debug("processScanResults (results={},devices={},elapsed={}ms)", scanResults.size(), didDiscover.size(), (t1 - t0));
+        logger.debug("processScanResults (results={},devices={},elapsed={}ms)", scanResults, didDiscover.size(), (t1 - t0));
     }
 
     // MARK:- didDiscover
@@ -363,34 +386,40 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     /**
      * Process scan results to ...
      * 1. Create BLEDevice from scan result for new devices
-     * 2. Read RSSI
+     * 2. Read RSSI from latest scan result for device
      * 3. Identify operating system where possible
+     * Devices created/updated in scan results are added to discovered devices for current cycle.
      */
-    private List<BLEDevice> didDiscover() {
-        // Take current copy of concurrently modifiable scan results
-        final List<ScanResult> scanResultList = new ArrayList<>(scanResults.size());
-        while (scanResults.size() > 0) {
-            scanResultList.add(scanResults.poll());
+    private void didDiscover() {
+        // Take current scan results, with duplicates collapsed to latest result per device
+        final List<BLEScanResult> scanResultList = scanResults.drain();
+        if (scanResultList.isEmpty()) {
+            return;
         }
 
-        // Process scan results and return devices created/updated in scan results
+        // Process scan results
         logger.debug("didDiscover (scanResults={})", scanResultList.size());
-        final Set<BLEDevice> deviceSet = new HashSet<>();
-        final List<BLEDevice> devices = new ArrayList<>();
-        for (ScanResult scanResult : scanResultList) {
+        for (BLEScanResult scanResult : scanResultList) {
+            // Apply latest of the collapsed scan results for device
             final BLEDevice device = database.device(scanResult);
-            device.scanRecord(scanResult.getScanRecord());
-            if (deviceSet.add(device)) {
+            if (device.record().lastDiscoveredAt() == null) {
+                discoveredNewDevices++;
+            }
+            device.registerDiscovery();
+            device.rssi(new RSSI(scanResult.rssi));
+            device.scanRecord(scanResult.scanRecord);
+            if (discoveredDevices.add(device)) {
                 logger.debug("didDiscover (device={})", device);
-                devices.add(device);
             }
             // Identify operating system from scan record where possible
             // - Sensor service found + Manufacturer is Apple -> iOS (Foreground)
             // - Sensor service found + Manufacturer not Apple -> Android
             // - Sensor service not found + Manufacturer is Apple -> iOS (Background) or Apple device not advertising sensor service, to be resolved later
             // - Sensor service not found + Manufacturer not Apple -> Ignore (shouldn't be possible as we are scanning for Apple or with service)
-            final boolean hasSensorService = hasSensorService(scanResult);
-            final boolean isAppleDevice = isAppleDevice(scanResult);
+            // Classification is cached by raw scan record bytes, as repeat adverts are identical
+            final BLEScanRecordClassifier.Classification classification = scanRecordClassifier.classify(scanResult.scanRecord);
+            final boolean hasSensorService = classification.hasSensorService;
+            final boolean isAppleDevice = classification.isAppleDevice;
             if (hasSensorService && isAppleDevice) {
                 // Definitely iOS device offering sensor service in foreground mode
                 device.operatingSystem(BLEDeviceOperatingSystem.ios);
@@ -409,7 +438,7 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 // Use scan record data as hint to determine whether the device
                 // should be ignored, to avoid reconnecting to devices that have
                 // previously failed or doesn't advertise sensor service
-                if (deviceFilter.ignore(device)) {
+                if (scanRecordClassifier.ignore(classification)) {
                     device.operatingSystem(BLEDeviceOperatingSystem.ignore);
                     logger.debug("didDiscover, ignoring device (device={},scanRecord={})", device, device.scanRecord());
                 }
@@ -422,35 +451,6 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 }
             }
         }
-        return devices;
-    }
-
-    /// Does scan result include advert for sensor service?
-    private static boolean hasSensorService(final ScanResult scanResult) {
-        final ScanRecord scanRecord = scanResult.getScanRecord();
-        if (scanRecord == null) {
-            return false;
-        }
-        final List<ParcelUuid> serviceUuids = scanRecord.getServiceUuids();
-        if (serviceUuids == null || serviceUuids.size() == 0) {
-            return false;
-        }
-        for (ParcelUuid serviceUuid : serviceUuids) {
-            if (serviceUuid.getUuid().equals(BLESensorConfiguration.serviceUUID)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /// Does scan result indicate device was manufactured by Apple?
-    private static boolean isAppleDevice(final ScanResult scanResult) {
-        final ScanRecord scanRecord = scanResult.getScanRecord();
-        if (scanRecord == null) {
-            return false;
-        }
-        final byte[] data = scanRecord.getManufacturerSpecificData(BLESensorConfiguration.manufacturerIdForApple);
-        return data != null;
     }
 
     // MARK:- House keeping tasks
@@ -459,220 +459,156 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     // is likely to have changed after being out of range for over 20 minutes,
     // so it will require discovery. Discovery is fast and cheap on Android.
     private void taskRemoveExpiredDevices() {
-        final List<BLEDevice> devicesToRemove = new ArrayList<>();
-        for (BLEDevice device : database.devices()) {
-            if (device.timeIntervalSinceLastUpdate().value > TimeInterval.minutes(15).value) {
-                devicesToRemove.add(device);
-            }
-        }
-        for (BLEDevice device : devicesToRemove) {
+        for (BLEDevice device : database.takeDevicesNotUpdatedFor(TimeInterval.minutes(15))) {
             logger.debug("taskRemoveExpiredDevices (remove={})", device);
             database.delete(device.identifier);
         }
     }
 
-    /// Connections should not be held for more than 1 minute, likely to have not received onConnectionStateChange callback.
+    /// Connections should not be held for more than 1 minute, likely to have not received radioDidDisconnect callback.
     private void taskCorrectConnectionStatus() {
-        for (BLEDevice device : database.devices()) {
-            if (device.state() == BLEDeviceState.connected && device.timeIntervalSinceConnected().value > TimeInterval.minute.value) {
-                logger.debug("taskCorrectConnectionStatus (device={})", device);
-                device.state(BLEDeviceState.disconnected);
-            }
+        for (BLEDevice device : database.takeDevicesConnectedFor(TimeInterval.minute)) {
+            logger.debug("taskCorrectConnectionStatus (device={})", device);
+            device.state(BLEDeviceState.disconnected);
         }
     }
 
 
     // MARK:- Connect task
 
-    private void taskConnect(final List<BLEDevice> discovered) {
-        // Clever connection prioritisation is pointless here as devices
-        // like the Samsung A10 and A20 changes mac address on every scan
-        // call, so optimising new device handling is more effective.
-        final long timeStart = System.currentTimeMillis();
-        int devicesProcessed = 0;
+    private void taskConnect(final List<BLEDevice> discovered, final Callback<Boolean> callback) {
+        final List<BLEDevice> devices = new ArrayList<>(discovered.size());
         for (BLEDevice device : discovered) {
-            // Stop process if exceeded time limit
-            final long elapsedTime = System.currentTimeMillis() - timeStart;
-            if (elapsedTime >= scanProcessDurationMillis) {
-                logger.debug("taskConnect, reached time limit (elapsed={}ms,limit={}ms)", elapsedTime, scanProcessDurationMillis);
-                break;
-            }
-            if (devicesProcessed > 0) {
-                final long predictedElapsedTime = Math.round((elapsedTime / (double) devicesProcessed) * (devicesProcessed + 1));
-                if (predictedElapsedTime > scanProcessDurationMillis) {
-                    logger.debug("taskConnect, likely to exceed time limit soon (elapsed={}ms,devicesProcessed={},predicted={}ms,limit={}ms)", elapsedTime, devicesProcessed, predictedElapsedTime, scanProcessDurationMillis);
-                    break;
-                }
-            }
             if (nextTaskForDevice(device) == NextTask.nothing) {
                 logger.debug("taskConnect, no pending action (device={})", device);
                 continue;
             }
-            taskConnectDevice(device);
-            devicesProcessed++;
+            device.trace().mark(BLEDetectionStage.queued);
+            devices.add(device);
         }
+        // Rank devices by connection policy to connect to the most valuable devices
+        // before reaching the time limit. Connections are processed concurrently by the
+        // connection pipeline, bounded by number of permits, and completed asynchronously
+        // by radioDidDisconnect()
+        connectionPipeline.connect(connectionScheduler.schedule(devices), scanDutyCycle.processMillis(), new Callback<Boolean>() {
+            @Override
+            public void accept(Boolean value) {
+                connectionScheduler.complete();
+                callback.accept(value);
+            }
+        });
     }
 
-    private boolean taskConnectDevice(final BLEDevice device) {
-        if (device.state() == BLEDeviceState.connected) {
-            logger.debug("taskConnectDevice, already connected to transmitter (device={})", device);
-            return true;
+    // MARK:- BLERadioDelegate
+
+    @Override
+    public void radioDidConnect(final BLEDevice device, final Object connection) {
+        logger.debug("radioDidConnect (device={})", device);
+        // Connection may have been abandoned after connect timeout
+        if (!connectionPipeline.didConnect(device)) {
+            logger.fault("radioDidConnect, connection abandoned (device={},state={})", device, device.state());
+            radio.close(device, connection);
+            return;
         }
-        // Connect (timeout at 95% = 2 SD)
-        final long timeConnect = System.currentTimeMillis();
-        logger.debug("taskConnectDevice, connect (device={})", device);
-        device.state(BLEDeviceState.connecting);
-        final BluetoothGatt gatt = device.peripheral().connectGatt(context, false, this);
-        if (gatt == null) {
-            logger.fault("taskConnectDevice, connect failed (device={})", device);
-            device.state(BLEDeviceState.disconnected);
-            return false;
+        // Negotiate MTU before service discovery, as only one GATT operation can be pending
+        if (!requestMtu(device, connection)) {
+            discoverServices(device, connection);
         }
-        // Wait for connection
-        // A connect request should normally result in .connected or .disconnected state which is
-        // set asynchronously by the callback function onConnectionStateChange(). However, some
-        // connections may get stuck in a .connecting state indefinitely due to BLE issues, and
-        // therefore the callback function is never called, leaving the device in a limbo state.
-        // As such, the follow loop runs for a fixed duration (established through experimentation)
-        // to check if connection was successful, else abort the connection to put the device in
-        // a consistent default .disconnected state.
-        while (device.state() != BLEDeviceState.connected && device.state() != BLEDeviceState.disconnected && (System.currentTimeMillis() - timeConnect) < timeToConnectDeviceLimitMillis) {
-            try {
-                Thread.sleep(200);
-            } catch (Throwable e) {
-                logger.fault("Timer interrupted", e);
+    }
+
+    @Override
+    public void radioDidDisconnect(final BLEDevice device, final Object connection, final boolean success) {
+        logger.debug("radioDidDisconnect (device={},success={})", device, success);
+        radio.close(device, connection);
+        connectionPipeline.didDisconnect(device);
+        if (!success) {
+            if (!(device.operatingSystem() == BLEDeviceOperatingSystem.ios || device.operatingSystem() == BLEDeviceOperatingSystem.android)) {
+                device.operatingSystem(BLEDeviceOperatingSystem.ignore);
+                // Add training example to device filter for device to be ignored
+                deviceFilter.train(device, true);
             }
         }
-        if (device.state() != BLEDeviceState.connected) {
-            // Failed to establish connection within time limit, assume connection failure
-            // and disconnect device to put it in a consistent default .disconnected state
-            logger.fault("taskConnectDevice, connect timeout (device={})", device);
-            try {
-                gatt.close();
-            } catch (Throwable e) {
-                logger.fault("taskConnectDevice, close failed (device={})", device, e);
-            }
+    }
+
+    /// Request larger MTU for current connection, to reduce the number of writes for
+    /// fragmented signal characteristic data. Request is skipped if negotiation is
+    /// disabled, or device has previously negotiated the default MTU only. Returns
+    /// true if request has been made, and service discovery should wait for radioDidChangeMtu.
+    private boolean requestMtu(final BLEDevice device, final Object connection) {
+        device.resetConnectionMtu();
+        final Integer cachedMtu = device.mtu();
+        if (BLESensorConfiguration.requestMtu <= BLESensorConfiguration.defaultMtu) {
             return false;
-        } else {
-            // Connection was successful, make note of time to establish connection to
-            // inform setting of timeToConnectDeviceLimitMillis. A previous implementation
-            // used an adaptive algorithm to adjust this parameter according to device
-            // capability, but that was deemed too unreliable for minimal gain in
-            // performance, as the target device plays a big part in determining the
-            // connection time, and that can be unpredictable due to environment factors.
-            final long connectElapsed = System.currentTimeMillis() - timeConnect;
-            // Add sample to adaptive connection timeout
-            timeToConnectDevice.add(connectElapsed);
-            logger.debug("taskConnectDevice, connected (device={},elapsed={}ms,statistics={})", device, connectElapsed, timeToConnectDevice);
-        }
-        // Wait for disconnection
-        // Device is connected at this point, and all the actual work is being
-        // performed asynchronously by callback methods outside of this function.
-        // As such, the only work required here at this point is to keep track
-        // of connection time, to ensure a connection is not held for too long
-        // e.g. due to BLE issues. The following code waits for device state change
-        // from .connected to .disconnected, which is normally set asynchronously
-        // by the callback function onConnectionStateChange(), once all the tasks
-        // for the device have been completed. If the connection has been held
-        // too long, then this function will force a disconnection by calling
-        // gatt.close() to disconnect device to put it in a consistent default
-        // .disconnected state.
-        while (device.state() != BLEDeviceState.disconnected && (System.currentTimeMillis() - timeConnect) < scanProcessDurationMillis) {
-            try {
-                Thread.sleep(500);
-            } catch (Throwable e) {
-                logger.fault("Timer interrupted", e);
-            }
         }
-        boolean success = true;
-        // Timeout connection if required, and always set state to disconnected
-        if (device.state() != BLEDeviceState.disconnected) {
-            // Failed to complete tasks and disconnect within time limit, assume failure
-            // and disconnect device to put it in a consistent default .disconnected state
-            logger.fault("taskConnectDevice, disconnect timeout (device={})", device);
-            try {
-                gatt.close();
-            } catch (Throwable e) {
-                logger.fault("taskConnectDevice, close failed (device={})", device, e);
-            }
-            success = false;
+        if (cachedMtu != null && cachedMtu <= BLESensorConfiguration.defaultMtu) {
+            logger.debug("requestMtu, skipped (device={},cachedMtu={})", device, cachedMtu);
+            return false;
         }
-        // Always set state to .disconnected at the end
-        device.state(BLEDeviceState.disconnected);
-        final long timeDisconnect = System.currentTimeMillis();
-        final long timeElapsed = (timeDisconnect - timeConnect);
-        if (success) {
-            timeToProcessDevice.add(timeElapsed);
-            logger.debug("taskConnectDevice, complete (success=true,device={},elapsed={}ms,statistics={})", device, timeElapsed, timeToProcessDevice);
-        } else {
-            logger.fault("taskConnectDevice, complete (success=false,device={},elapsed={}ms)", device, timeElapsed);
+        final int mtu = (cachedMtu != null ? cachedMtu : BLESensorConfiguration.requestMtu);
+        if (!radio.requestMtu(connection, mtu)) {
+            logger.fault("requestMtu failed (device={},mtu={})", device, mtu);
+            return false;
         }
-        return success;
+        logger.debug("requestMtu (device={},mtu={})", device, mtu);
+        return true; // => radioDidChangeMtu
     }
 
-    // MARK:- BluetoothStateManagerDelegate
-
     @Override
-    public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-        final BLEDevice device = database.device(gatt.getDevice());
-        logger.debug("onConnectionStateChange (device={},status={},state={})", device, bleStatus(status), bleState(newState));
-        if (newState == BluetoothProfile.STATE_CONNECTED) {
-            device.state(BLEDeviceState.connected);
-            gatt.discoverServices();
-        } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-            gatt.close();
-            device.state(BLEDeviceState.disconnected);
-            if (status != 0) {
-                if (!(device.operatingSystem() == BLEDeviceOperatingSystem.ios || device.operatingSystem() == BLEDeviceOperatingSystem.android)) {
-                    device.operatingSystem(BLEDeviceOperatingSystem.ignore);
-                    // Add training example to device filter for device to be ignored
-                    deviceFilter.train(device, true);
-                }
-            }
+    public void radioDidChangeMtu(final BLEDevice device, final Object connection, final int mtu, final boolean success) {
+        if (success) {
+            logger.debug("radioDidChangeMtu (device={},mtu={})", device, mtu);
+            device.mtu(mtu);
         } else {
-            logger.debug("onConnectionStateChange (device={},status={},state={})", device, bleStatus(status), bleState(newState));
+            logger.fault("radioDidChangeMtu failed (device={})", device);
+            device.mtu(BLESensorConfiguration.defaultMtu);
         }
+        discoverServices(device, connection);
     }
 
-    @Override
-    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-        final BLEDevice device = database.device(gatt.getDevice());
-        logger.debug("onServicesDiscovered (device={},status={})", device, bleStatus(status));
+    private void discoverServices(final BLEDevice device, final Object connection) {
+        if (!radio.discoverServices(connection)) {
+            logger.fault("discoverServices failed (device={})", device);
+            radio.disconnect(connection);
+        } // => radioDidDiscoverServices
+    }
 
-        final BluetoothGattService service = gatt.getService(BLESensorConfiguration.serviceUUID);
-        if (service == null) {
-            logger.fault("onServicesDiscovered, missing sensor service (device={})", device);
+    @Override
+    public void radioDidDiscoverServices(final BLEDevice device, final Object connection, final List<BLERadio.Characteristic> characteristics) {
+        logger.debug("radioDidDiscoverServices (device={})", device);
+        if (characteristics == null) {
+            logger.fault("radioDidDiscoverServices, missing sensor service (device={})", device);
             // Ignore device for a while unless it is a confirmed iOS or Android device
             if (!(device.operatingSystem() == BLEDeviceOperatingSystem.ios || device.operatingSystem() == BLEDeviceOperatingSystem.android)) {
                 device.operatingSystem(BLEDeviceOperatingSystem.ignore);
                 // Add training example to device filter for device to be ignored
                 deviceFilter.train(device, true);
             }
-            gatt.disconnect();
+            radio.disconnect(connection);
             return;
         }
 
-        logger.debug("onServicesDiscovered, found sensor service (device={})", device);
+        logger.debug("radioDidDiscoverServices, found sensor service (device={})", device);
+        device.trace().mark(BLEDetectionStage.servicesDiscovered);
         // Add training example to device filter for device not to be ignored
         deviceFilter.train(device, false);
 
         device.invalidateCharacteristics();
-        for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+        for (BLERadio.Characteristic characteristic : characteristics) {
             // Confirm operating system with signal characteristic
-            if (characteristic.getUuid().equals(BLESensorConfiguration.androidSignalCharacteristicUUID)) {
-                logger.debug("onServicesDiscovered, found Android signal characteristic (device={})", device);
+            if (characteristic.uuid.equals(BLESensorConfiguration.androidSignalCharacteristicUUID)) {
+                logger.debug("radioDidDiscoverServices, found Android signal characteristic (device={})", device);
                 device.operatingSystem(BLEDeviceOperatingSystem.android);
                 device.signalCharacteristic(characteristic);
-            } else if (characteristic.getUuid().equals(BLESensorConfiguration.iosSignalCharacteristicUUID)) {
-                logger.debug("onServicesDiscovered, found iOS signal characteristic (device={})", device);
+            } else if (characteristic.uuid.equals(BLESensorConfiguration.iosSignalCharacteristicUUID)) {
+                logger.debug("radioDidDiscoverServices, found iOS signal characteristic (device={})", device);
                 device.operatingSystem(BLEDeviceOperatingSystem.ios);
                 device.signalCharacteristic(characteristic);
-            } else if (characteristic.getUuid().equals(BLESensorConfiguration.payloadCharacteristicUUID)) {
-                logger.debug("onServicesDiscovered, found payload characteristic (device={})", device);
+            } else if (characteristic.uuid.equals(BLESensorConfiguration.payloadCharacteristicUUID)) {
+                logger.debug("radioDidDiscoverServices, found payload characteristic (device={})", device);
                 device.payloadCharacteristic(characteristic);
             }
         }
-        nextTask(gatt);
+        nextTask(device, connection);
     }
 
     /// Establish the next task for a device, given its current state.
@@ -696,24 +632,26 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             logger.debug("nextTaskForDevice, switching ignore to unknown (device={},reason=ignoreExpired)", device);
             device.operatingSystem(BLEDeviceOperatingSystem.unknown);
         }
+        // Consistent view of device attributes for selecting next task
+        final BLEDeviceRecord record = device.record();
         // No task for devices marked as receive only (no advert to connect to)
-        if (device.receiveOnly()) {
+        if (record.receiveOnly()) {
             return NextTask.nothing;
         }
         // Resolve or confirm operating system by reading payload which
         // triggers characteristic discovery to confirm the operating system
-        if (device.operatingSystem() == BLEDeviceOperatingSystem.unknown ||
-                device.operatingSystem() == BLEDeviceOperatingSystem.ios_tbc) {
+        if (record.operatingSystem() == BLEDeviceOperatingSystem.unknown ||
+                record.operatingSystem() == BLEDeviceOperatingSystem.ios_tbc) {
             logger.debug("nextTaskForDevice (device={},task=readPayload|OS)", device);
             return NextTask.readPayload;
         }
         // Immediate send is supported only if service and characteristics
         // have been discovered, and operating system has been confirmed
-        if (device.immediateSendData() != null) {
+        if (record.immediateSendData() != null) {
             return NextTask.immediateSend;
         }
         // Get payload as top priority
-        if (device.payloadData() == null) {
+        if (record.payloadData() == null) {
             logger.debug("nextTaskForDevice (device={},task=readPayload)", device);
             return NextTask.readPayload;
         }
@@ -724,6 +662,13 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         }
         // Write payload, rssi and payload sharing data if this device cannot transmit
         if (!transmitter.isSupported()) {
+            // Combine due writes into one write bundle if the peer accepts bundles,
+            // rather than alternating between single writes over several round trips
+            final List<NextTask> writeBundleTasks = writeBundleTasks(device, record);
+            if (writeBundleTasks.size() > 1) {
+                logger.debug("nextTaskForDevice (device={},task=writeBundle,tasks={})", device, writeBundleTasks);
+                return NextTask.writeBundle;
+            }
             // Write payload data as top priority
             if (device.timeIntervalSinceLastWritePayload().value > TimeInterval.minutes(5).value) {
                 logger.debug("nextTaskForDevice (device={},task=writePayload,elapsed={})", device, device.timeIntervalSinceLastWritePayload());
@@ -731,7 +676,7 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             }
             // Write payload sharing data to iOS device if there is data to be shared (alternate between payload sharing and write RSSI)
             final PayloadSharingData payloadSharingData = database.payloadSharingData(device);
-            if (device.operatingSystem() == BLEDeviceOperatingSystem.ios
+            if (record.operatingSystem() == BLEDeviceOperatingSystem.ios
                     && payloadSharingData.data.value.length > 0
                     && device.timeIntervalSinceLastWritePayloadSharing().value >= TimeInterval.seconds(15).value
                     && device.timeIntervalSinceLastWritePayloadSharing().value >= device.timeIntervalSinceLastWriteRssi().value) {
@@ -739,7 +684,7 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 return NextTask.writePayloadSharing;
             }
             // Write RSSI as frequently as reasonable (alternate between write RSSI and write payload)
-            if (device.rssi() != null
+            if (record.rssi() != null
                     && device.timeIntervalSinceLastWriteRssi().value >= TimeInterval.seconds(15).value
                     && (device.timeIntervalSinceLastWritePayload().value < BLESensorConfiguration.payloadDataUpdateTimeInterval.value
                         || device.timeIntervalSinceLastWriteRssi().value >= device.timeIntervalSinceLastWritePayload().value)) {
@@ -753,10 +698,10 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             }
         }
         // Write payload sharing data to iOS
-        if (device.operatingSystem() == BLEDeviceOperatingSystem.ios) {
+        if (record.operatingSystem() == BLEDeviceOperatingSystem.ios) {
             // Write payload sharing data to iOS device if there is data to be shared
             final PayloadSharingData payloadSharingData = database.payloadSharingData(device);
-            if (device.operatingSystem() == BLEDeviceOperatingSystem.ios
+            if (record.operatingSystem() == BLEDeviceOperatingSystem.ios
                     && payloadSharingData.data.value.length > 0
                     && device.timeIntervalSinceLastWritePayloadSharing().value >= TimeInterval.seconds(15).value) {
                 logger.debug("nextTaskForDevice (device={},task=writePayloadSharing,dataLength={},elapsed={})", device, payloadSharingData.data.value.length, device.timeIntervalSinceLastWritePayloadSharing());
@@ -766,130 +711,188 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         return NextTask.nothing;
     }
 
+    /// Writes that are due for a device that accepts signal characteristic write bundles, as
+    /// indicated by a descriptor on its signal characteristic. Returns an empty list for devices
+    /// that only accept single action writes, for backward compatibility.
+    private List<NextTask> writeBundleTasks(final BLEDevice device, final BLEDeviceRecord record) {
+        final List<NextTask> tasks = new ArrayList<>(3);
+        final BLERadio.Characteristic signalCharacteristic = device.signalCharacteristic();
+        if (signalCharacteristic == null || !signalCharacteristic.hasDescriptor(BLESensorConfiguration.signalCharacteristicBundleDescriptorUUID)) {
+            return tasks;
+        }
+        if (device.timeIntervalSinceLastWritePayload().value > TimeInterval.minutes(5).value
+                || device.timeIntervalSinceLastWritePayload().value > BLESensorConfiguration.payloadDataUpdateTimeInterval.value) {
+            tasks.add(NextTask.writePayload);
+        }
+        if (record.operatingSystem() == BLEDeviceOperatingSystem.ios
+                && database.payloadSharingData(device).data.value.length > 0
+                && device.timeIntervalSinceLastWritePayloadSharing().value >= TimeInterval.seconds(15).value) {
+            tasks.add(NextTask.writePayloadSharing);
+        }
+        if (record.rssi() != null
+                && device.timeIntervalSinceLastWriteRssi().value >= TimeInterval.seconds(15).value) {
+            tasks.add(NextTask.writeRSSI);
+        }
+        return tasks;
+    }
+
     /// Given an open connection, perform the next task for the device.
     /// Use this function to define the actual code for implementing
     /// a task on the device (e.g. readPayload). The actual priority
     /// of tasks is defined in the function nextTaskForDevice().
     /// See function nextTaskForDevice() for additional design details.
-    private void nextTask(BluetoothGatt gatt) {
-        final BLEDevice device = database.device(gatt.getDevice());
+    private void nextTask(final BLEDevice device, final Object connection) {
         final NextTask nextTask = nextTaskForDevice(device);
         switch (nextTask) {
             case readPayload: {
-                final BluetoothGattCharacteristic payloadCharacteristic = device.payloadCharacteristic();
+                final BLERadio.Characteristic payloadCharacteristic = device.payloadCharacteristic();
                 if (payloadCharacteristic == null) {
                     logger.fault("nextTask failed (task=readPayload,device={},reason=missingPayloadCharacteristic)", device);
-                    gatt.disconnect();
-                    return; // => onConnectionStateChange
+                    radio.disconnect(connection);
+                    return; // => radioDidDisconnect
                 }
-                if (!gatt.readCharacteristic(payloadCharacteristic)) {
+                if (!radio.readCharacteristic(connection, payloadCharacteristic.uuid)) {
                     logger.fault("nextTask failed (task=readPayload,device={},reason=readCharacteristicFailed)", device);
-                    gatt.disconnect();
-                    return; // => onConnectionStateChange
+                    radio.disconnect(connection);
+                    return; // => radioDidDisconnect
                 }
                 logger.debug("nextTask (task=readPayload,device={})", device);
-                return; // => onCharacteristicRead | timeout
+                return; // => radioDidRead | timeout
             }
             case writePayload: {
                 final PayloadData payloadData = transmitter.payloadData();
                 if (payloadData == null || payloadData.value == null || payloadData.value.length == 0) {
                     logger.fault("nextTask failed (task=writePayload,device={},reason=missingPayloadData)", device);
-                    gatt.disconnect();
-                    return; // => onConnectionStateChange
+                    radio.disconnect(connection);
+                    return; // => radioDidDisconnect
                 }
                 final Data data = SignalCharacteristicData.encodeWritePayload(transmitter.payloadData());
                 logger.debug("nextTask (task=writePayload,device={},dataLength={})", device, data.value.length);
-                writeSignalCharacteristic(gatt, NextTask.writePayload, data.value);
+                writeSignalCharacteristic(device, connection, NextTask.writePayload, data.value);
                 return;
             }
             case writePayloadSharing: {
                 final PayloadSharingData payloadSharingData = database.payloadSharingData(device);
                 if (payloadSharingData == null) {
                     logger.fault("nextTask failed (task=writePayloadSharing,device={},reason=missingPayloadSharingData)", device);
-                    gatt.disconnect();
+                    radio.disconnect(connection);
                     return;
                 }
                 final Data data = SignalCharacteristicData.encodeWritePayloadSharing(payloadSharingData);
                 logger.debug("nextTask (task=writePayloadSharing,device={},dataLength={})", device, data.value.length);
-                writeSignalCharacteristic(gatt, NextTask.writePayloadSharing, data.value);
+                writeSignalCharacteristic(device, connection, NextTask.writePayloadSharing, data.value);
                 return;
             }
             case writeRSSI: {
-                final BluetoothGattCharacteristic signalCharacteristic = device.signalCharacteristic();
+                final BLERadio.Characteristic signalCharacteristic = device.signalCharacteristic();
                 if (signalCharacteristic == null) {
                     logger.fault("nextTask failed (task=writeRSSI,device={},reason=missingSignalCharacteristic)", device);
-                    gatt.disconnect();
+                    radio.disconnect(connection);
                     return;
                 }
                 final RSSI rssi = device.rssi();
                 if (rssi == null) {
                     logger.fault("nextTask failed (task=writeRSSI,device={},reason=missingRssiData)", device);
-                    gatt.disconnect();
+                    radio.disconnect(connection);
                     return;
                 }
                 final Data data = SignalCharacteristicData.encodeWriteRssi(rssi);
                 logger.debug("nextTask (task=writeRSSI,device={},dataLength={})", device, data.value.length);
-                writeSignalCharacteristic(gatt, NextTask.writeRSSI, data.value);
+                writeSignalCharacteristic(device, connection, NextTask.writeRSSI, data.value);
                 return;
             }
             case immediateSend: {
-                final BluetoothGattCharacteristic signalCharacteristic = device.signalCharacteristic();
+                final BLERadio.Characteristic signalCharacteristic = device.signalCharacteristic();
                 if (signalCharacteristic == null) {
                     logger.fault("nextTask failed (task=immediateSend,device={},reason=missingSignalCharacteristic)", device);
-                    gatt.disconnect();
+                    radio.disconnect(connection);
                     return;
                 }
                 final Data data = device.immediateSendData(); // already encoded (arbitrary data with header)
                 if (data == null) {
                     logger.fault("nextTask failed (task=immediateSend,device={},reason=missingImmediateSendData)", device);
-                    gatt.disconnect();
+                    radio.disconnect(connection);
                     return;
                 }
                 logger.debug("nextTask (task=immediateSend,device={},dataLength={})", device, data.value.length);
-                writeSignalCharacteristic(gatt, NextTask.immediateSend, data.value);
+                writeSignalCharacteristic(device, connection, NextTask.immediateSend, data.value);
+                return;
+            }
+            case writeBundle: {
+                final List<Data> bundles = new ArrayList<>(3);
+                for (final NextTask task : writeBundleTasks(device, device.record())) {
+                    switch (task) {
+                        case writePayload: {
+                            final PayloadData payloadData = transmitter.payloadData();
+                            if (payloadData != null && payloadData.value != null && payloadData.value.length > 0) {
+                                bundles.add(SignalCharacteristicData.encodeWritePayload(payloadData));
+                            }
+                            break;
+                        }
+                        case writePayloadSharing: {
+                            bundles.add(SignalCharacteristicData.encodeWritePayloadSharing(database.payloadSharingData(device)));
+                            break;
+                        }
+                        case writeRSSI: {
+                            final RSSI rssi = device.rssi();
+                            if (rssi != null) {
+                                bundles.add(SignalCharacteristicData.encodeWriteRssi(rssi));
+                            }
+                            break;
+                        }
+                    }
+                }
+                if (bundles.isEmpty()) {
+                    logger.fault("nextTask failed (task=writeBundle,device={},reason=missingData)", device);
+                    radio.disconnect(connection);
+                    return;
+                }
+                final Data data = SignalCharacteristicData.encodeWriteBundle(bundles);
+                logger.debug("nextTask (task=writeBundle,device={},count={},dataLength={})", device, bundles.size(), data.value.length);
+                writeSignalCharacteristic(device, connection, NextTask.writeBundle, data.value);
                 return;
             }
         }
         logger.debug("nextTask (task=nothing,device={})", device);
-        gatt.disconnect();
+        radio.disconnect(connection);
     }
 
-    private void writeSignalCharacteristic(BluetoothGatt gatt, NextTask task, byte[] data) {
-        final BLEDevice device = database.device(gatt.getDevice());
-        final BluetoothGattCharacteristic signalCharacteristic = device.signalCharacteristic();
+    private void writeSignalCharacteristic(final BLEDevice device, final Object connection, final NextTask task, final byte[] data) {
+        final BLERadio.Characteristic signalCharacteristic = device.signalCharacteristic();
         if (signalCharacteristic == null) {
             logger.fault("writeSignalCharacteristic failed (task={},device={},reason=missingSignalCharacteristic)", task, device);
-            gatt.disconnect();
+            radio.disconnect(connection);
             return;
         }
         if (data == null || data.length == 0) {
             logger.fault("writeSignalCharacteristic failed (task={},device={},reason=missingData)", task, device);
-            gatt.disconnect();
+            radio.disconnect(connection);
             return;
         }
-        if (signalCharacteristic.getUuid().equals(BLESensorConfiguration.iosSignalCharacteristicUUID)) {
+        if (signalCharacteristic.uuid.equals(BLESensorConfiguration.iosSignalCharacteristicUUID)) {
             device.signalCharacteristicWriteValue = data;
             device.signalCharacteristicWriteQueue = null;
-            signalCharacteristic.setValue(data);
-            signalCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
-            if (!gatt.writeCharacteristic(signalCharacteristic)) {
+            if (!radio.writeCharacteristic(connection, signalCharacteristic.uuid, data)) {
                 logger.fault("writeSignalCharacteristic to iOS failed (task={},device={},reason=writeCharacteristicFailed)", task, device);
-                gatt.disconnect();
+                radio.disconnect(connection);
             } else {
+                bytesPerSignalWrite.add(data.length);
+                writesPerSignalTask.add(1);
                 logger.debug("writeSignalCharacteristic to iOS (task={},dataLength={},device={})", task, data.length, device);
-                // => onCharacteristicWrite
+                // => radioDidWrite
             }
             return;
         }
-        if (signalCharacteristic.getUuid().equals(BLESensorConfiguration.androidSignalCharacteristicUUID)) {
+        if (signalCharacteristic.uuid.equals(BLESensorConfiguration.androidSignalCharacteristicUUID)) {
             device.signalCharacteristicWriteValue = data;
-            device.signalCharacteristicWriteQueue = fragmentDataByMtu(data);
-            if (writeAndroidSignalCharacteristic(gatt) == WriteAndroidSignalCharacteristicResult.failed) {
+            device.signalCharacteristicWriteQueue = fragmentDataByMtu(data, device.connectionMtu());
+            writesPerSignalTask.add(device.signalCharacteristicWriteQueue.size());
+            if (writeAndroidSignalCharacteristic(device, connection) == WriteAndroidSignalCharacteristicResult.failed) {
                 logger.fault("writeSignalCharacteristic to Android failed (task={},device={},reason=writeCharacteristicFailed)", task, device);
-                gatt.disconnect();
+                radio.disconnect(connection);
             } else {
-                logger.debug("writeSignalCharacteristic to Android (task={},dataLength={},device={})", task, data.length, device);
-                // => onCharacteristicWrite
+                logger.debug("writeSignalCharacteristic to Android (task={},dataLength={},mtu={},device={})", task, data.length, device.connectionMtu(), device);
+                // => radioDidWrite
             }
         }
     }
@@ -898,9 +901,8 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         moreToWrite, complete, failed
     }
 
-    private WriteAndroidSignalCharacteristicResult writeAndroidSignalCharacteristic(BluetoothGatt gatt) {
-        final BLEDevice device = database.device(gatt.getDevice());
-        final BluetoothGattCharacteristic signalCharacteristic = device.signalCharacteristic();
+    private WriteAndroidSignalCharacteristicResult writeAndroidSignalCharacteristic(final BLEDevice device, final Object connection) {
+        final BLERadio.Characteristic signalCharacteristic = device.signalCharacteristic();
         if (signalCharacteristic == null) {
             logger.fault("writeAndroidSignalCharacteristic failed (device={},reason=missingSignalCharacteristic)", device);
             return WriteAndroidSignalCharacteristicResult.failed;
@@ -911,22 +913,22 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         }
         logger.debug("writeAndroidSignalCharacteristic (device={},queue={})", device, device.signalCharacteristicWriteQueue.size());
         final byte[] data = device.signalCharacteristicWriteQueue.poll();
-        signalCharacteristic.setValue(data);
-        signalCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
-        if (!gatt.writeCharacteristic(signalCharacteristic)) {
+        if (!radio.writeCharacteristic(connection, signalCharacteristic.uuid, data)) {
             logger.fault("writeAndroidSignalCharacteristic failed (device={},reason=writeCharacteristicFailed)", device);
             return WriteAndroidSignalCharacteristicResult.failed;
         } else {
+            bytesPerSignalWrite.add(data.length);
             logger.debug("writeAndroidSignalCharacteristic (device={},remaining={})", device, device.signalCharacteristicWriteQueue.size());
             return WriteAndroidSignalCharacteristicResult.moreToWrite;
         }
     }
 
-    /// Split data into fragments, where each fragment has length <= mtu
-    private Queue<byte[]> fragmentDataByMtu(byte[] data) {
+    /// Split data into fragments, where each fragment fits in a single write for the given MTU
+    private static Queue<byte[]> fragmentDataByMtu(byte[] data, int mtu) {
+        final int fragmentLength = Math.min(mtu - BLESensorConfiguration.attHeaderLength, BLESensorConfiguration.maxAttributeValueLength);
         final Queue<byte[]> fragments = new ConcurrentLinkedQueue<>();
-        for (int i = 0; i < data.length; i += ConcreteBLEReceiver.defaultMTU) {
-            final byte[] fragment = new byte[Math.min(ConcreteBLEReceiver.defaultMTU, data.length - i)];
+        for (int i = 0; i < data.length; i += fragmentLength) {
+            final byte[] fragment = new byte[Math.min(fragmentLength, data.length - i)];
             System.arraycopy(data, i, fragment, 0, fragment.length);
             fragments.add(fragment);
         }
@@ -934,119 +936,103 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     }
 
     @Override
-    public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-        final BLEDevice device = database.device(gatt.getDevice());
-        final boolean success = (status == BluetoothGatt.GATT_SUCCESS);
-        logger.debug("onCharacteristicRead (device={},status={})", device, bleStatus(status));
-        if (characteristic.getUuid().equals(BLESensorConfiguration.payloadCharacteristicUUID)) {
-            final PayloadData payloadData = (characteristic.getValue() != null ? new PayloadData(characteristic.getValue()) : null);
+    public void radioDidRead(final BLEDevice device, final Object connection, final UUID characteristic, final byte[] value, final boolean success) {
+        logger.debug("radioDidRead (device={},success={})", device, success);
+        if (characteristic.equals(BLESensorConfiguration.payloadCharacteristicUUID)) {
+            final PayloadData payloadData = (value != null ? new PayloadData(value) : null);
             if (success) {
                 if (payloadData != null) {
-                    logger.debug("onCharacteristicRead, read payload data success (device={},payload={})", device, payloadData.shortName());
+                    logger.debug("radioDidRead, read payload data success (device={},payload={})", device, payloadData.shortName());
+                    device.trace().mark(BLEDetectionStage.characteristicRead);
+                    connectionScheduler.didReadPayload(!payloadData.equals(device.payloadData()));
                     device.payloadData(payloadData);
                 } else {
-                    logger.fault("onCharacteristicRead, read payload data failed, no data (device={})", device);
+                    logger.fault("radioDidRead, read payload data failed, no data (device={})", device);
                 }
             } else {
-                logger.fault("onCharacteristicRead, read payload data failed (device={})", device);
+                logger.fault("radioDidRead, read payload data failed (device={})", device);
             }
         }
-        nextTask(gatt);
+        nextTask(device, connection);
     }
 
     @Override
-    public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-        final BLEDevice device = database.device(gatt.getDevice());
-        logger.debug("onCharacteristicWrite (device={},status={})", device, bleStatus(status));
-        final BluetoothGattCharacteristic signalCharacteristic = device.signalCharacteristic();
-        final boolean success = (status == BluetoothGatt.GATT_SUCCESS);
-        if (signalCharacteristic.getUuid().equals(BLESensorConfiguration.androidSignalCharacteristicUUID)) {
-            if (success && writeAndroidSignalCharacteristic(gatt) == WriteAndroidSignalCharacteristicResult.moreToWrite) {
+    public void radioDidWrite(final BLEDevice device, final Object connection, final UUID characteristic, final boolean success) {
+        logger.debug("radioDidWrite (device={},success={})", device, success);
+        if (characteristic.equals(BLESensorConfiguration.androidSignalCharacteristicUUID)) {
+            if (success && writeAndroidSignalCharacteristic(device, connection) == WriteAndroidSignalCharacteristicResult.moreToWrite) {
                 return;
             }
         }
-        final SignalCharacteristicDataType signalCharacteristicDataType = SignalCharacteristicData.detect(new Data(device.signalCharacteristicWriteValue));
-        signalCharacteristic.setValue(new byte[0]);
+        final Data signalCharacteristicWriteValue = new Data(device.signalCharacteristicWriteValue);
+        logger.debug("radioDidWrite, signal write statistics (device={},mtu={},writesPerTask={},bytesPerWrite={})", device, device.connectionMtu(), writesPerSignalTask, bytesPerSignalWrite);
+        final SignalCharacteristicDataType signalCharacteristicDataType = SignalCharacteristicData.detect(signalCharacteristicWriteValue);
         device.signalCharacteristicWriteValue = null;
         device.signalCharacteristicWriteQueue = null;
         switch (signalCharacteristicDataType) {
             case payload:
                 if (success) {
-                    logger.debug("onCharacteristicWrite, write payload success (device={})", device);
+                    logger.debug("radioDidWrite, write payload success (device={})", device);
                     device.registerWritePayload();
                 } else {
-                    logger.fault("onCharacteristicWrite, write payload failed (device={})", device);
+                    logger.fault("radioDidWrite, write payload failed (device={})", device);
                 }
                 break;
             case rssi:
                 if (success) {
-                    logger.debug("onCharacteristicWrite, write RSSI success (device={})", device);
+                    logger.debug("radioDidWrite, write RSSI success (device={})", device);
                     device.registerWriteRssi();
                 } else {
-                    logger.fault("onCharacteristicWrite, write RSSI failed (device={})", device);
+                    logger.fault("radioDidWrite, write RSSI failed (device={})", device);
                 }
                 break;
             case payloadSharing:
                 if (success) {
-                    logger.debug("onCharacteristicWrite, write payload sharing success (device={})", device);
+                    logger.debug("radioDidWrite, write payload sharing success (device={})", device);
                     device.registerWritePayloadSharing();
                 } else {
-                    logger.fault("onCharacteristicWrite, write payload sharing failed (device={})", device);
+                    logger.fault("radioDidWrite, write payload sharing failed (device={})", device);
                 }
                 break;
             case immediateSend:
                 if (success) {
-                    logger.debug("onCharacteristicWrite, write immediate send data success (device={})", device);
+                    logger.debug("radioDidWrite, write immediate send data success (device={})", device);
                     device.immediateSendData(null);
                 } else {
-                    logger.fault("onCharacteristicWrite, write immediate send data failed (device={})", device);
+                    logger.fault("radioDidWrite, write immediate send data failed (device={})", device);
                     // No retry for immediate send
                     device.immediateSendData(null);
                 }
                 // Close connection immediately upon completion of immediate send
-                gatt.disconnect();
+                radio.disconnect(connection);
                 // Do not perform any other tasks
                 return;
-            default:
-                logger.fault("onCharacteristicWrite, write unknown data (device={},success={})", device, success);
+            case bundle: {
+                final List<Data> bundles = SignalCharacteristicData.decodeWriteBundle(signalCharacteristicWriteValue);
+                if (success && bundles != null) {
+                    logger.debug("radioDidWrite, write bundle success (device={},count={})", device, bundles.size());
+                    for (final Data bundle : bundles) {
+                        switch (SignalCharacteristicData.detect(bundle)) {
+                            case payload:
+                                device.registerWritePayload();
+                                break;
+                            case rssi:
+                                device.registerWriteRssi();
+                                break;
+                            case payloadSharing:
+                                device.registerWritePayloadSharing();
+                                break;
+                        }
+                    }
+                } else {
+                    logger.fault("radioDidWrite, write bundle failed (device={})", device);
+                }
                 break;
-        }
-        nextTask(gatt);
-    }
-
-    // MARK:- Bluetooth code transformers
-
-    private static String bleStatus(final int status) {
-        if (status == BluetoothGatt.GATT_SUCCESS) {
-            return "GATT_SUCCESS";
-        } else {
-            return "GATT_FAILURE";
-        }
-    }
-
-    private static String bleState(final int state) {
-        switch (state) {
-            case BluetoothProfile.STATE_CONNECTED:
-                return "STATE_CONNECTED";
-            case BluetoothProfile.STATE_DISCONNECTED:
-                return "STATE_DISCONNECTED";
-            default:
-                return "UNKNOWN_STATE_" + state;
-        }
-    }
-
-    private static String onScanFailedErrorCodeToString(final int errorCode) {
-        switch (errorCode) {
-            case ScanCallback.SCAN_FAILED_ALREADY_STARTED:
-                return "SCAN_FAILED_ALREADY_STARTED";
-            case ScanCallback.SCAN_FAILED_APPLICATION_REGISTRATION_FAILED:
-                return "SCAN_FAILED_APPLICATION_REGISTRATION_FAILED";
-            case ScanCallback.SCAN_FAILED_INTERNAL_ERROR:
-                return "SCAN_FAILED_INTERNAL_ERROR";
-            case ScanCallback.SCAN_FAILED_FEATURE_UNSUPPORTED:
-                return "SCAN_FAILED_FEATURE_UNSUPPORTED";
+            }
             default:
-                return "UNKNOWN_ERROR_CODE_" + errorCode;
+                logger.fault("radioDidWrite, write unknown data (device={},success={})", device, success);
+                break;
         }
+        nextTask(device, connection);
     }
 }
@@ -0,0 +1,39 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/// Scheduler backed by system clock and a single thread scheduled executor.
+public class ConcreteBLEScheduler implements BLEScheduler {
+    private final ScheduledExecutorService executor;
+
+    public ConcreteBLEScheduler() {
+        this(Executors.newSingleThreadScheduledExecutor());
+    }
+
+    public ConcreteBLEScheduler(final ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public Task schedule(final Runnable runnable, final long delayMillis) {
+        final ScheduledFuture<?> future = executor.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+        return new Task() {
+            @Override
+            public void cancel() {
+                future.cancel(false);
+            }
+        };
+    }
+}
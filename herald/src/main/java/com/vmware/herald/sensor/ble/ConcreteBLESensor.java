@@ -21,6 +21,7 @@ import com.vmware.herald.sensor.SensorDelegate;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
 import com.vmware.herald.sensor.datatype.TimeInterval;
 
+import java.io.File;
 import java.util.Date;
 import java.util.Map;
 import java.util.Queue;
@@ -34,14 +35,35 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
     private final Queue<SensorDelegate> delegates = new ConcurrentLinkedQueue<>();
     private final BLETransmitter transmitter;
     private final BLEReceiver receiver;
+    private final BLEDatabase database;
+    private final BLEDatabaseSnapshot databaseSnapshot;
+    private boolean databaseRestored = false;
     private final ExecutorService operationQueue = Executors.newSingleThreadExecutor();
     // Record payload data to enable de-duplication
     private final Map<PayloadData, Date> didReadPayloadData = new ConcurrentHashMap<>();
+    // Time from first seeing advert to first didRead, by stage and operating system
+    private final BLEDetectionLatency detectionLatency = new BLEDetectionLatency();
 
     public ConcreteBLESensor(Context context, PayloadDataSupplier payloadDataSupplier) {
         final BluetoothStateManager bluetoothStateManager = new ConcreteBluetoothStateManager(context);
-        final BLEDatabase database = new ConcreteBLEDatabase();
+        database = new ConcreteBLEDatabase();
+        // Devices are restored from snapshot on start, once delegates have been added
+        databaseSnapshot = new BLEDatabaseSnapshot(new File(context.getFilesDir(), "ble_devices.bin"));
         final BLETimer timer = new BLETimer(context);
+        timer.add(new BLETimerDelegate() {
+            private long lastSnapshot = System.currentTimeMillis();
+
+            @Override
+            public void bleTimer(long currentTimeMillis) {
+                if (BLESensorConfiguration.deviceSnapshotTimeInterval == TimeInterval.never) {
+                    return;
+                }
+                if (currentTimeMillis - lastSnapshot >= BLESensorConfiguration.deviceSnapshotTimeInterval.millis()) {
+                    database.save(databaseSnapshot);
+                    lastSnapshot = currentTimeMillis;
+                }
+            }
+        }, TimeInterval.seconds(10).millis(), TimeInterval.minute.millis());
         bluetoothStateManager.delegates.add(this);
         transmitter = new ConcreteBLETransmitter(context, bluetoothStateManager, timer, payloadDataSupplier, database);
         receiver = new ConcreteBLEReceiver(context, bluetoothStateManager, timer, database, transmitter);
@@ -58,6 +80,15 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
     @Override
     public void start() {
         logger.debug("start");
+        // Restore devices from snapshot to avoid repeating payload read after process restart.
+        // Restored devices are published as created, thus delegates are notified via didDetect,
+        // but not didRead, as restored payloads were read in a previous session.
+        synchronized (this) {
+            if (!databaseRestored) {
+                databaseRestored = true;
+                database.restore(databaseSnapshot);
+            }
+        }
         // BLE transmitter and receivers start on powerOn event
         transmitter.start();
         receiver.start();
@@ -69,6 +100,13 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
         // BLE transmitter and receivers stops on powerOff event
         transmitter.stop();
         receiver.stop();
+        database.save(databaseSnapshot);
+        logger.debug("stop, {}", detectionLatency.dump());
+    }
+
+    /// Detection latency histograms, for dumping on demand
+    public BLEDetectionLatency detectionLatency() {
+        return detectionLatency;
     }
 
     public boolean immediateSend(Data data, TargetIdentifier targetIdentifier) {
@@ -150,6 +188,12 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
                         for (SensorDelegate delegate : delegates) {
                             delegate.sensor(SensorType.BLE, payloadData, device.identifier);
                         }
+                        final BLEDetectionTrace trace = device.trace();
+                        if (!trace.complete()) {
+                            trace.mark(BLEDetectionStage.delegateDispatch);
+                            detectionLatency.add(device.operatingSystem(), trace);
+                            logger.debug("didRead, detection trace (device={},trace={})", device, trace);
+                        }
                     }
                 });
                 break;
@@ -8,6 +8,7 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattServer;
 import android.bluetooth.BluetoothGattServerCallback;
 import android.bluetooth.BluetoothGattService;
@@ -20,6 +21,7 @@ import android.bluetooth.le.BluetoothLeAdvertiser;
 import android.content.Context;
 import android.os.ParcelUuid;
 
+import com.vmware.herald.sensor.analysis.Sample;
 import com.vmware.herald.sensor.data.ConcreteSensorLogger;
 import com.vmware.herald.sensor.data.SensorLogger;
 import com.vmware.herald.sensor.datatype.BluetoothState;
@@ -28,23 +30,19 @@ import com.vmware.herald.sensor.datatype.Data;
 import com.vmware.herald.sensor.datatype.ImmediateSendData;
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PayloadSharingData;
-import com.vmware.herald.sensor.datatype.PayloadTimestamp;
 import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
 import com.vmware.herald.sensor.datatype.RSSI;
 import com.vmware.herald.sensor.datatype.SensorType;
 import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
+import com.vmware.herald.sensor.datatype.SignalCharacteristicDataType;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
 import com.vmware.herald.sensor.datatype.TimeInterval;
 import com.vmware.herald.sensor.datatype.Triple;
+import com.vmware.herald.sensor.datatype.Tuple;
 import com.vmware.herald.sensor.PayloadDataSupplier;
 import com.vmware.herald.sensor.SensorDelegate;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
@@ -60,9 +58,15 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
     private final static long advertOffDurationMillis = TimeInterval.seconds(4).millis();
     private final Context context;
     private final BluetoothStateManager bluetoothStateManager;
+    private final BLETimer timer;
+    private final AdvertLoopTask advertLoopTask = new AdvertLoopTask();
     private final PayloadDataSupplier payloadDataSupplier;
     private final BLEDatabase database;
+    private final BLEPayloadCache payloadCache;
     private final ExecutorService operationQueue = Executors.newSingleThreadExecutor();
+    /// Time device is unreachable during advert refresh, by restart and rotation
+    private final static Sample advertRestartGap = new Sample();
+    private final static Sample advertRotationGap = new Sample();
 
     /**
      * Transmitter starts automatically when Bluetooth is enabled.
@@ -70,11 +74,24 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
     public ConcreteBLETransmitter(Context context, BluetoothStateManager bluetoothStateManager, BLETimer timer, PayloadDataSupplier payloadDataSupplier, BLEDatabase database) {
         this.context = context;
         this.bluetoothStateManager = bluetoothStateManager;
+        this.timer = timer;
         this.payloadDataSupplier = payloadDataSupplier;
         this.database = database;
+        this.payloadCache = new BLEPayloadCache(payloadDataSupplier,
+                BLESensorConfiguration.payloadCacheWindow.millis(),
+                TimeInterval.seconds(30).millis(),
+                TimeInterval.minute.millis(),
+                BLESensorConfiguration.payloadCacheCentralCapacity);
         bluetoothStateManager.delegates.add(this);
         bluetoothStateManager(bluetoothStateManager.state());
-        timer.add(new AdvertLoopTask());
+        timer.add(advertLoopTask);
+        // Build payload ahead of window boundary on timer thread, rather than on read request
+        timer.add(new BLETimerDelegate() {
+            @Override
+            public void bleTimer(final long now) {
+                payloadCache.refresh(now);
+            }
+        }, TimeInterval.seconds(5).millis(), TimeInterval.seconds(10).millis());
     }
 
     @Override
@@ -97,7 +114,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
     // MARK:- Advert loop
 
     private enum AdvertLoopState {
-        starting, started, stopping, stopped
+        starting, started, rotating, stopping, stopped
     }
 
     /// Get Bluetooth LE advertiser
@@ -124,24 +141,61 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         private long lastStateChangeAt = System.currentTimeMillis();
         private BluetoothGattServer bluetoothGattServer;
         private AdvertiseCallback advertiseCallback;
+        /// Time advert was stopped for refresh, 0 if advert is not being refreshed
+        private long unreachableSince = 0;
+        /// Incremented on every advert rotation, such that a late rotation callback is ignored
+        private long rotation = 0;
 
         private void state(final long now, AdvertLoopState state) {
             final long elapsed = now - lastStateChangeAt;
             logger.debug("advertLoopTask, state change (from={},to={},elapsed={}ms)", advertLoopState, state, elapsed);
+            if (state == AdvertLoopState.started && unreachableSince > 0) {
+                final long gap = System.currentTimeMillis() - unreachableSince;
+                final Sample sample = (advertLoopState == AdvertLoopState.rotating ? advertRotationGap : advertRestartGap);
+                sample.add(gap);
+                logger.debug("advertLoopTask, advert refreshed (mode={},gap={}ms,statistics={})", advertLoopState == AdvertLoopState.rotating ? "rotate" : "restart", gap, sample);
+                unreachableSince = 0;
+            }
             this.advertLoopState = state;
             lastStateChangeAt = now;
+            timer.next(this, untilStateChange(System.currentTimeMillis()));
         }
 
         private long timeSincelastStateChange(final long now) {
             return now - lastStateChangeAt;
         }
 
+        /// Time until next state change is due, for ticking advert loop on state change rather
+        /// than every second. Zero while waiting for a callback, or when the state change is
+        /// overdue as it has been blocked, e.g. by Bluetooth being off. Bluetooth state changes
+        /// resume ticking every second, see bluetoothStateManager().
+        private long untilStateChange(final long now) {
+            final long elapsed = timeSincelastStateChange(now);
+            switch (advertLoopState) {
+                case stopped:
+                    return advertOffDurationMillis - elapsed;
+                case started:
+                    return BLESensorConfiguration.advertRefreshTimeInterval.millis() - elapsed;
+                case rotating:
+                    return BLESensorConfiguration.advertRotateTimeout.millis() - elapsed;
+                default:
+                    return 0;
+            }
+        }
+
         @Override
         public void bleTimer(final long now) {
+            loop(now);
+            timer.next(this, untilStateChange(System.currentTimeMillis()));
+        }
+
+        private void loop(final long now) {
             if (!isSupported() || bluetoothStateManager.state() == BluetoothState.poweredOff) {
                 if (advertLoopState != AdvertLoopState.stopped) {
                     advertiseCallback = null;
                     bluetoothGattServer = null;
+                    // Stopped by Bluetooth state, rather than advert refresh
+                    unreachableSince = 0;
                     state(now, AdvertLoopState.stopped);
                     logger.debug("advertLoopTask, stop advert (advert={}ms)", timeSincelastStateChange(now));
                 }
@@ -180,6 +234,67 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                             logger.fault("advertLoopTask, stop advert denied, Bluetooth LE advertiser unavailable");
                             return;
                         }
+                        unreachableSince = System.currentTimeMillis();
+                        if (BLESensorConfiguration.advertRefreshHot && bluetoothGattServer != null) {
+                            final long attempt = ++rotation;
+                            state(now, AdvertLoopState.rotating);
+                            rotateAdvert(bluetoothLeAdvertiser, advertiseCallback, new Callback<Tuple<Boolean, AdvertiseCallback>>() {
+                                @Override
+                                public void accept(Tuple<Boolean, AdvertiseCallback> value) {
+                                    // Rotation has timed out, stop advert that may have started late
+                                    if (attempt != rotation || advertLoopState != AdvertLoopState.rotating) {
+                                        logger.fault("advertLoopTask, rotate advert completed after timeout (success={})", value.a);
+                                        if (value.b != null) {
+                                            stopAdvert(bluetoothLeAdvertiser, value.b, null, new Callback<Boolean>() {
+                                                @Override
+                                                public void accept(Boolean value) {
+                                                }
+                                            });
+                                        }
+                                        return;
+                                    }
+                                    advertiseCallback = value.b;
+                                    if (value.a) {
+                                        state(now, AdvertLoopState.started);
+                                        return;
+                                    }
+                                    // Fall back to restarting GATT server and advert
+                                    state(now, AdvertLoopState.stopping);
+                                    stopAdvert(bluetoothLeAdvertiser, advertiseCallback, bluetoothGattServer, new Callback<Boolean>() {
+                                        @Override
+                                        public void accept(Boolean value) {
+                                            advertiseCallback = null;
+                                            bluetoothGattServer = null;
+                                            state(now, AdvertLoopState.stopped);
+                                        }
+                                    });
+                                }
+                            });
+                            return;
+                        }
+                        state(now, AdvertLoopState.stopping);
+                        stopAdvert(bluetoothLeAdvertiser, advertiseCallback, bluetoothGattServer, new Callback<Boolean>() {
+                            @Override
+                            public void accept(Boolean value) {
+                                advertiseCallback = null;
+                                bluetoothGattServer = null;
+                                state(now, AdvertLoopState.stopped);
+                            }
+                        });
+                    }
+                    break;
+                }
+                case rotating: {
+                    // Rotation callback may never arrive, fall back to restarting GATT server and advert
+                    final long period = timeSincelastStateChange(now);
+                    if (period >= BLESensorConfiguration.advertRotateTimeout.millis()) {
+                        logger.fault("advertLoopTask, rotate advert timeout, restarting advert (rotating={}ms)", period);
+                        rotation++;
+                        final BluetoothLeAdvertiser bluetoothLeAdvertiser = bluetoothLeAdvertiser();
+                        if (bluetoothLeAdvertiser == null) {
+                            logger.fault("advertLoopTask, stop advert denied, Bluetooth LE advertiser unavailable");
+                            return;
+                        }
                         state(now, AdvertLoopState.stopping);
                         stopAdvert(bluetoothLeAdvertiser, advertiseCallback, bluetoothGattServer, new Callback<Boolean>() {
                             @Override
@@ -206,7 +321,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                 boolean result = true;
                 BluetoothGattServer bluetoothGattServer = null;
                 try {
-                    bluetoothGattServer = startGattServer(logger, context, payloadDataSupplier, database);
+                    bluetoothGattServer = startGattServer(logger, context, payloadDataSupplier, payloadCache, database);
                 } catch (Throwable e) {
                     logger.fault("startAdvert failed to start GATT server", e);
                     result = false;
@@ -258,6 +373,44 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         });
     }
 
+    /// Stop and restart advertising with new pseudo device address, keeping GATT server and
+    /// service registered, such that centrals can continue to read and write while the
+    /// advertise data is being replaced.
+    private void rotateAdvert(final BluetoothLeAdvertiser bluetoothLeAdvertiser, final AdvertiseCallback advertiseCallback, final Callback<Tuple<Boolean, AdvertiseCallback>> callback) {
+        logger.debug("rotateAdvert");
+        operationQueue.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (advertiseCallback != null) {
+                        bluetoothLeAdvertiser.stopAdvertising(advertiseCallback);
+                    }
+                } catch (Throwable e) {
+                    logger.fault("rotateAdvert failed to stop advertising", e);
+                }
+                try {
+                    final AdvertiseCallback rotatedAdvertiseCallback = new AdvertiseCallback() {
+                        @Override
+                        public void onStartSuccess(AdvertiseSettings settingsInEffect) {
+                            logger.debug("rotateAdvert successful");
+                            callback.accept(new Tuple<Boolean, AdvertiseCallback>(true, this));
+                        }
+
+                        @Override
+                        public void onStartFailure(int errorCode) {
+                            logger.fault("rotateAdvert failed (errorCode={})", onStartFailureErrorCodeToString(errorCode));
+                            callback.accept(new Tuple<Boolean, AdvertiseCallback>(false, this));
+                        }
+                    };
+                    startAdvertising(bluetoothLeAdvertiser, rotatedAdvertiseCallback);
+                } catch (Throwable e) {
+                    logger.fault("rotateAdvert failed", e);
+                    callback.accept(new Tuple<Boolean, AdvertiseCallback>(false, null));
+                }
+            }
+        });
+    }
+
     private void stopAdvert(final BluetoothLeAdvertiser bluetoothLeAdvertiser, final AdvertiseCallback advertiseCallback, final BluetoothGattServer bluetoothGattServer, final Callback<Boolean> callback) {
         logger.debug("stopAdvert");
         operationQueue.execute(new Runnable() {
@@ -294,7 +447,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
 
     @Override
     public PayloadData payloadData() {
-        return payloadDataSupplier.payload(new PayloadTimestamp(new Date()));
+        return payloadCache.payload(System.currentTimeMillis()).payloadData;
     }
 
     @Override
@@ -305,6 +458,8 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
     @Override
     public void bluetoothStateManager(BluetoothState didUpdateState) {
         logger.debug("didUpdateState (state={})", didUpdateState);
+        // Advert loop may be waiting for advert refresh, resume ticking every second to follow Bluetooth state
+        timer.next(advertLoopTask, 0);
         if (didUpdateState == BluetoothState.poweredOn) {
             start();
         } else if (didUpdateState == BluetoothState.poweredOff) {
@@ -332,7 +487,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         logger.debug("startAdvertising successful (pseudoDeviceAddress={},settings={})", pseudoDeviceAddress, settings);
     }
 
-    private static BluetoothGattServer startGattServer(final SensorLogger logger, final Context context, final PayloadDataSupplier payloadDataSupplier, final BLEDatabase database) {
+    private static BluetoothGattServer startGattServer(final SensorLogger logger, final Context context, final PayloadDataSupplier payloadDataSupplier, final BLEPayloadCache payloadCache, final BLEDatabase database) {
         logger.debug("startGattServer");
         final BluetoothManager bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
         if (bluetoothManager == null) {
@@ -342,46 +497,12 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         // Data = rssi (4 bytes int) + payload (remaining bytes)
         final AtomicReference<BluetoothGattServer> server = new AtomicReference<>(null);
         final BluetoothGattServerCallback callback = new BluetoothGattServerCallback() {
-            private final Map<String, PayloadData> onCharacteristicReadPayloadData = new ConcurrentHashMap<>();
-            private final Map<String, byte[]> onCharacteristicWriteSignalData = new ConcurrentHashMap<>();
-
-            private PayloadData onCharacteristicReadPayloadData(BluetoothDevice device) {
-                final String key = device.getAddress();
-                if (onCharacteristicReadPayloadData.containsKey(key)) {
-                    return onCharacteristicReadPayloadData.get(key);
-                }
-                final PayloadData payloadData = payloadDataSupplier.payload(new PayloadTimestamp());
-                onCharacteristicReadPayloadData.put(key, payloadData);
-                return payloadData;
-            }
-
-            private byte[] onCharacteristicWriteSignalData(BluetoothDevice device, byte[] value) {
-                final String key = device.getAddress();
-                byte[] partialData = onCharacteristicWriteSignalData.get(key);
-                if (partialData == null) {
-                    partialData = new byte[0];
-                }
-                byte[] data = new byte[partialData.length + (value == null ? 0 : value.length)];
-                System.arraycopy(partialData, 0, data, 0, partialData.length);
-                if (value != null) {
-                    System.arraycopy(value, 0, data, partialData.length, value.length);
-                }
-                onCharacteristicWriteSignalData.put(key, data);
-                return data;
-            }
+            private final BLESignalDataAssembler onCharacteristicWriteSignalData = new BLESignalDataAssembler(4, BLESensorConfiguration.maxAttributeValueLength);
 
             private void removeData(BluetoothDevice device) {
                 final String deviceAddress = device.getAddress();
-                for (String deviceRequestId : new ArrayList<>(onCharacteristicReadPayloadData.keySet())) {
-                    if (deviceRequestId.startsWith(deviceAddress)) {
-                        onCharacteristicReadPayloadData.remove(deviceRequestId);
-                    }
-                }
-                for (String deviceRequestId : new ArrayList<>(onCharacteristicWriteSignalData.keySet())) {
-                    if (deviceRequestId.startsWith(deviceAddress)) {
-                        onCharacteristicWriteSignalData.remove(deviceRequestId);
-                    }
-                }
+                payloadCache.remove(deviceAddress);
+                onCharacteristicWriteSignalData.remove(deviceAddress);
             }
 
             @Override
@@ -397,55 +518,41 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                 }
             }
 
-            @Override
-            public void onCharacteristicWriteRequest(BluetoothDevice device, int requestId, BluetoothGattCharacteristic characteristic, boolean preparedWrite, boolean responseNeeded, int offset, byte[] value) {
-                final BLEDevice targetDevice = database.device(device);
+            /// Process complete signal characteristic data, returns false if data is invalid.
+            private boolean didReceiveWrite(final BLEDevice targetDevice, final Data data) {
                 final TargetIdentifier targetIdentifier = targetDevice.identifier;
-                logger.debug("didReceiveWrite (central={},requestId={},offset={},characteristic={},value={})",
-                        targetDevice, requestId, offset,
-                        (characteristic.getUuid().equals(BLESensorConfiguration.androidSignalCharacteristicUUID) ? "signal" : "unknown"),
-                        (value != null ? value.length : "null")
-                );
-                if (characteristic.getUuid() != BLESensorConfiguration.androidSignalCharacteristicUUID) {
-                    if (responseNeeded) {
-                        server.get().sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, value);
-                    }
-                    return;
-                }
-                final Data data = new Data(onCharacteristicWriteSignalData(device, value));
                 switch (SignalCharacteristicData.detect(data)) {
                     case rssi: {
                         final RSSI rssi = SignalCharacteristicData.decodeWriteRSSI(data);
                         if (rssi == null) {
                             logger.fault("didReceiveWrite, invalid request (central={},action=writeRSSI)", targetDevice);
-                            break;
+                            return false;
                         }
                         logger.debug("didReceiveWrite (dataType=rssi,central={},rssi={})", targetDevice, rssi);
                         // Only receive-only Android devices write RSSI
                         targetDevice.operatingSystem(BLEDeviceOperatingSystem.android);
                         targetDevice.receiveOnly(true);
                         targetDevice.rssi(rssi);
-                        break;
+                        return true;
                     }
                     case payload: {
                         final PayloadData payloadData = SignalCharacteristicData.decodeWritePayload(data);
                         if (payloadData == null) {
-                            // Fragmented payload data may be incomplete
-                            break;
+                            logger.fault("didReceiveWrite, invalid request (central={},action=writePayload)", targetDevice);
+                            return false;
                         }
                         logger.debug("didReceiveWrite (dataType=payload,central={},payload={})", targetDevice, payloadData);
                         // Only receive-only Android devices write payload
                         targetDevice.operatingSystem(BLEDeviceOperatingSystem.android);
                         targetDevice.receiveOnly(true);
                         targetDevice.payloadData(payloadData);
-                        onCharacteristicWriteSignalData.remove(device.getAddress());
-                        break;
+                        return true;
                     }
                     case payloadSharing: {
                         final PayloadSharingData payloadSharingData = SignalCharacteristicData.decodeWritePayloadSharing(data);
                         if (payloadSharingData == null) {
-                            // Fragmented payload sharing data may be incomplete
-                            break;
+                            logger.fault("didReceiveWrite, invalid request (central={},action=writePayloadSharing)", targetDevice);
+                            return false;
                         }
                         final List<PayloadData> didSharePayloadData = payloadDataSupplier.payload(payloadSharingData.data);
                         for (SensorDelegate delegate : delegates) {
@@ -460,21 +567,57 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                             sharedDevice.operatingSystem(BLEDeviceOperatingSystem.shared);
                             sharedDevice.rssi(payloadSharingData.rssi);
                         }
-                        break;
+                        return true;
                     }
                     case immediateSend: {
                         final ImmediateSendData immediateSendData = SignalCharacteristicData.decodeImmediateSend(data);
                         if (immediateSendData == null) {
-                            // Fragmented immediate send data may be incomplete
-                            break;
+                            logger.fault("didReceiveWrite, invalid request (central={},action=writeImmediate)", targetDevice);
+                            return false;
                         }
                         for (SensorDelegate delegate : delegates) {
                             delegate.sensor(SensorType.BLE, immediateSendData, targetIdentifier);
                         }
                         logger.debug("didReceiveWrite (dataType=immediateSend,central={},immediateSendData={})", targetDevice, immediateSendData.data);
-                        break;
+                        return true;
                     }
                 }
+                logger.fault("didReceiveWrite, unknown request (central={},dataType={})", targetDevice, SignalCharacteristicData.detect(data));
+                return false;
+            }
+
+            @Override
+            public void onCharacteristicWriteRequest(BluetoothDevice device, int requestId, BluetoothGattCharacteristic characteristic, boolean preparedWrite, boolean responseNeeded, int offset, byte[] value) {
+                final BLEDevice targetDevice = database.device(device);
+                logger.debug("didReceiveWrite (central={},requestId={},offset={},characteristic={},value={})",
+                        targetDevice, requestId, offset,
+                        (characteristic.getUuid().equals(BLESensorConfiguration.androidSignalCharacteristicUUID) ? "signal" : "unknown"),
+                        (value != null ? value.length : "null")
+                );
+                if (characteristic.getUuid() != BLESensorConfiguration.androidSignalCharacteristicUUID) {
+                    if (responseNeeded) {
+                        server.get().sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, value);
+                    }
+                    return;
+                }
+                // Signal data is only decoded once all fragments have been received
+                final Data data = onCharacteristicWriteSignalData.append(device.getAddress(), value);
+                if (data == null) {
+                    logger.debug("didReceiveWrite, awaiting fragments (central={},assembler={})", targetDevice, onCharacteristicWriteSignalData);
+                } else if (SignalCharacteristicData.detect(data) == SignalCharacteristicDataType.bundle) {
+                    // Write bundle carries several signal characteristic data in one write
+                    final List<Data> bundles = SignalCharacteristicData.decodeWriteBundle(data);
+                    if (bundles == null) {
+                        logger.fault("didReceiveWrite, invalid request (central={},action=writeBundle)", targetDevice);
+                    } else {
+                        logger.debug("didReceiveWrite (dataType=bundle,central={},count={})", targetDevice, bundles.size());
+                        for (final Data bundle : bundles) {
+                            didReceiveWrite(targetDevice, bundle);
+                        }
+                    }
+                } else {
+                    didReceiveWrite(targetDevice, data);
+                }
                 if (responseNeeded) {
                     server.get().sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
                 }
@@ -484,12 +627,13 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
             public void onCharacteristicReadRequest(BluetoothDevice device, int requestId, int offset, BluetoothGattCharacteristic characteristic) {
                 final BLEDevice targetDevice = database.device(device);
                 if (characteristic.getUuid() == BLESensorConfiguration.payloadCharacteristicUUID) {
-                    final PayloadData payloadData = onCharacteristicReadPayloadData(device);
-                    if (offset > payloadData.value.length) {
-                        logger.fault("didReceiveRead, invalid offset (central={},requestId={},offset={},characteristic=payload,dataLength={})", targetDevice, requestId, offset, payloadData.value.length);
+                    // Served from prebuilt payload, pinned to central for reads at offset
+                    final BLEPayloadCache.Entry payload = payloadCache.payload(device.getAddress(), offset, System.currentTimeMillis());
+                    final byte[] value = payload.value(offset);
+                    if (value == null) {
+                        logger.fault("didReceiveRead, invalid offset (central={},requestId={},offset={},characteristic=payload,dataLength={})", targetDevice, requestId, offset, payload.payloadData.value.length);
                         server.get().sendResponse(device, requestId, BluetoothGatt.GATT_INVALID_OFFSET, offset, null);
                     } else {
-                        final byte[] value = Arrays.copyOfRange(payloadData.value, offset, payloadData.value.length);
                         server.get().sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
                         logger.debug("didReceiveRead (central={},requestId={},offset={},characteristic=payload)", targetDevice, requestId, offset);
                     }
@@ -528,6 +672,10 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                 BluetoothGattCharacteristic.PROPERTY_WRITE,
                 BluetoothGattCharacteristic.PERMISSION_WRITE);
         signalCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+        // Declare support for signal characteristic write bundles
+        signalCharacteristic.addDescriptor(new BluetoothGattDescriptor(
+                BLESensorConfiguration.signalCharacteristicBundleDescriptorUUID,
+                BluetoothGattDescriptor.PERMISSION_READ));
         final BluetoothGattCharacteristic payloadCharacteristic = new BluetoothGattCharacteristic(
                 BLESensorConfiguration.payloadCharacteristicUUID,
                 BluetoothGattCharacteristic.PROPERTY_READ,
@@ -0,0 +1,19 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Connect to devices in scan order, as a baseline for comparing policies.
+public class ScanOrderConnectionPolicy implements BLEConnectionPolicy {
+
+    @Override
+    public String name() {
+        return "scanOrder";
+    }
+
+    @Override
+    public double value(BLEDeviceRecord record, long now) {
+        return 0;
+    }
+}
@@ -0,0 +1,60 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+/// Rank devices by expected value of a connection. Devices without payload are the most
+/// valuable, followed by devices with stale payload. Among these, devices that are likely to
+/// complete the connection are preferred, i.e. devices with strong signal, confirmed operating
+/// system and a history of successful connections. Devices with recent ignore backoff are
+/// penalised as they have recently failed to connect or offer the sensor service.
+public class ValueBasedConnectionPolicy implements BLEConnectionPolicy {
+    public final static double missingPayloadValue = 100;
+    public final static double stalePayloadValue = 50;
+    public final static double operatingSystemValue = 20;
+    public final static double rssiValue = 30;
+    public final static double successRateValue = 40;
+    public final static double ignoreBackoffPenalty = 10;
+
+    @Override
+    public String name() {
+        return "valueBased";
+    }
+
+    @Override
+    public double value(BLEDeviceRecord record, long now) {
+        double value = 0;
+        // Payload is missing or stale
+        if (record.payloadData == null) {
+            value += missingPayloadValue;
+        } else if (BLESensorConfiguration.payloadDataUpdateTimeInterval != TimeInterval.never && record.lastPayloadDataUpdate != null
+                && now - record.lastPayloadDataUpdate.getTime() > BLESensorConfiguration.payloadDataUpdateTimeInterval.millis()) {
+            value += stalePayloadValue;
+        }
+        // Operating system confidence
+        switch (record.operatingSystem) {
+            case ios:
+            case android:
+                value += operatingSystemValue;
+                break;
+            case ios_tbc:
+            case android_tbc:
+                value += operatingSystemValue / 2;
+                break;
+            default:
+                break;
+        }
+        // Signal strength, normalised over typical range of -100 to -30 dBm
+        if (record.rssi != null) {
+            value += rssiValue * Math.max(0, Math.min(1, (record.rssi.value + 100) / 70d));
+        }
+        // Connection success rate, with prior of 50% for devices without history
+        value += successRateValue * (record.connectionSuccesses + 1) / (double) (record.connectionAttempts + 2);
+        // Recent ignore backoff
+        value -= ignoreBackoffPenalty * record.ignoreRequestCount;
+        return value;
+    }
+}
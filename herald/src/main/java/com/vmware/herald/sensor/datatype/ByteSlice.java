@@ -0,0 +1,233 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.datatype;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/// Immutable view of a range of bytes in a backing array. Slicing shares the backing array
+/// rather than copying, thus payloads can be split and signal data decoded without intermediate
+/// copies. A slice never modifies its backing array, and a wrapped array must not be modified
+/// by the caller while it is in use by slices. Conversion to Data always copies, as Data value is
+/// mutable. Use Builder to assemble data of known length in a single allocation, rather than
+/// appending Data, which reallocates on every append.
+public class ByteSlice {
+    private final static char[] hexChars = "0123456789ABCDEF".toCharArray();
+    private final static byte[] empty = new byte[0];
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+
+    private ByteSlice(final byte[] array, final int offset, final int length) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /// Slice of entire array, sharing array
+    public static ByteSlice wrap(final byte[] array) {
+        return new ByteSlice(array == null ? empty : array, 0, array == null ? 0 : array.length);
+    }
+
+    /// Slice of array from offset to offset + length, sharing array, or null if out of range
+    public static ByteSlice wrap(final byte[] array, final int offset, final int length) {
+        if (array == null || offset < 0 || length < 0 || offset + length > array.length) {
+            return null;
+        }
+        return new ByteSlice(array, offset, length);
+    }
+
+    /// Slice of entire data, sharing data value
+    public static ByteSlice of(final Data data) {
+        return wrap(data == null ? null : data.value);
+    }
+
+    /// Number of bytes in slice
+    public int length() {
+        return length;
+    }
+
+    /// Byte at index
+    public byte get(final int index) {
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return array[offset + index];
+    }
+
+    /// Little endian Int16 at index, as per signal characteristic data format
+    public short int16(final int index) {
+        if (index < 0 || index + 1 >= length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return (short) ((array[offset + index] & 0xFF) | (array[offset + index + 1] << 8));
+    }
+
+    /// Get slice from offset to end, sharing backing array, or null if out of range
+    public ByteSlice slice(final int offset) {
+        return slice(offset, length - offset);
+    }
+
+    /// Get slice from offset to offset + length, sharing backing array, or null if out of range
+    public ByteSlice slice(final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > this.length) {
+            return null;
+        }
+        if (offset == 0 && length == this.length) {
+            return this;
+        }
+        return new ByteSlice(array, this.offset + offset, length);
+    }
+
+    /// Copy slice into destination array at offset
+    public void copyTo(final byte[] destination, final int destinationOffset) {
+        System.arraycopy(array, offset, destination, destinationOffset, length);
+    }
+
+    /// Copy of bytes in slice
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(array, offset, offset + length);
+    }
+
+    /// Copy of slice as data, use Builder.data() to assemble data without copying
+    public Data data() {
+        return new Data(toByteArray());
+    }
+
+    /// Update message digest with bytes in slice, without copying
+    public void update(final MessageDigest messageDigest) {
+        messageDigest.update(array, offset, length);
+    }
+
+    public String hexEncodedString() {
+        final StringBuilder stringBuilder = new StringBuilder(length * 2);
+        for (int i = offset; i < offset + length; i++) {
+            final int v = array[i] & 0xFF;
+            stringBuilder.append(hexChars[v >>> 4]);
+            stringBuilder.append(hexChars[v & 0x0F]);
+        }
+        return stringBuilder.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final ByteSlice slice = (ByteSlice) o;
+        if (length != slice.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (array[offset + i] != slice.array[slice.offset + i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Same as Arrays.hashCode for the bytes in slice
+        int result = 1;
+        for (int i = offset; i < offset + length; i++) {
+            result = 31 * result + array[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return hexEncodedString();
+    }
+
+    /// Builder for assembling data in a single allocation. The buffer is allocated at the given
+    /// capacity and grown only if appended data exceeds it. Building hands off the buffer without
+    /// copying when it has been filled exactly, after which the builder can no longer be used.
+    public final static class Builder {
+        private byte[] buffer;
+        private int length = 0;
+
+        /// Builder for data of expected length in bytes
+        public Builder(final int capacity) {
+            this.buffer = new byte[Math.max(0, capacity)];
+        }
+
+        /// Number of bytes appended so far
+        public int length() {
+            return length;
+        }
+
+        /// Append byte
+        public Builder append(final byte value) {
+            reserve(1);
+            buffer[length++] = value;
+            return this;
+        }
+
+        /// Append count repeating bytes
+        public Builder append(final byte repeating, final int count) {
+            reserve(count);
+            for (int i = count; i-- > 0;) {
+                buffer[length++] = repeating;
+            }
+            return this;
+        }
+
+        /// Append little endian Int16, as per signal characteristic data format
+        public Builder appendInt16(final int value) {
+            reserve(2);
+            buffer[length++] = (byte) value;
+            buffer[length++] = (byte) (value >> 8);
+            return this;
+        }
+
+        /// Append bytes
+        public Builder append(final byte[] value) {
+            reserve(value.length);
+            System.arraycopy(value, 0, buffer, length, value.length);
+            length += value.length;
+            return this;
+        }
+
+        /// Append data
+        public Builder append(final Data data) {
+            return append(data.value);
+        }
+
+        /// Append slice
+        public Builder append(final ByteSlice slice) {
+            reserve(slice.length);
+            slice.copyTo(buffer, length);
+            length += slice.length;
+            return this;
+        }
+
+        /// Ensure buffer can hold count more bytes, growing buffer if required
+        private void reserve(final int count) {
+            if (buffer == null) {
+                throw new IllegalStateException("builder has been built");
+            }
+            if (length + count > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(length + count, buffer.length * 2));
+            }
+        }
+
+        /// Bytes appended, handing off buffer without copying if it has been filled exactly
+        public byte[] toByteArray() {
+            if (buffer == null) {
+                throw new IllegalStateException("builder has been built");
+            }
+            final byte[] value = (length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+            buffer = null;
+            return value;
+        }
+
+        /// Slice of bytes appended, handing off buffer without copying if it has been filled exactly
+        public ByteSlice build() {
+            return wrap(toByteArray());
+        }
+
+        /// Data of bytes appended, handing off buffer without copying if it has been filled exactly
+        public Data data() {
+            return new Data(toByteArray());
+        }
+    }
+}
@@ -6,10 +6,11 @@ package com.vmware.herald.sensor.datatype;
 
 import com.vmware.herald.sensor.ble.BLESensorConfiguration;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 
-/// Codec for signal characteristic data bundles
+/// Codec for signal characteristic data bundles. Bundles are assembled in a single allocation
+/// and decoded from slices of the signal data, rather than via intermediate copies.
 public class SignalCharacteristicData {
 
     /// Encode write RSSI data bundle
@@ -17,11 +18,10 @@ public class SignalCharacteristicData {
     // 0-0 : actionCode
     // 1-2 : rssi value (Int16)
     public static Data encodeWriteRssi(final RSSI rssi) {
-        final ByteBuffer byteBuffer = ByteBuffer.allocate(3);
-        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        byteBuffer.put(0, BLESensorConfiguration.signalCharacteristicActionWriteRSSI);
-        byteBuffer.putShort(1, (short) rssi.value);
-        return new Data(byteBuffer.array());
+        final ByteSlice.Builder builder = new ByteSlice.Builder(3);
+        builder.append(BLESensorConfiguration.signalCharacteristicActionWriteRSSI);
+        builder.appendInt16(rssi.value);
+        return builder.data();
     }
 
     /// Decode write RSSI data bundle
@@ -45,13 +45,11 @@ public class SignalCharacteristicData {
     // 1-2 : payload data count in bytes (Int16)
     // 3.. : payload data
     public static Data encodeWritePayload(final PayloadData payloadData) {
-        final ByteBuffer byteBuffer = ByteBuffer.allocate(3 + payloadData.value.length);
-        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        byteBuffer.put(0, BLESensorConfiguration.signalCharacteristicActionWritePayload);
-        byteBuffer.putShort(1, (short) payloadData.value.length);
-        byteBuffer.position(3);
-        byteBuffer.put(payloadData.value);
-        return new Data(byteBuffer.array());
+        final ByteSlice.Builder builder = new ByteSlice.Builder(3 + payloadData.value.length);
+        builder.append(BLESensorConfiguration.signalCharacteristicActionWritePayload);
+        builder.appendInt16(payloadData.value.length);
+        builder.append(payloadData);
+        return builder.data();
     }
 
     /// Decode write payload data bundle
@@ -69,11 +67,11 @@ public class SignalCharacteristicData {
         if (data.value.length != (3 + payloadDataCount.intValue())) {
             return null;
         }
-        final Data payloadDataBytes = new Data(data.value).subdata(3);
-        if (payloadDataBytes == null) {
+        final ByteSlice payloadDataBytes = ByteSlice.of(data).slice(3);
+        if (payloadDataBytes == null || payloadDataBytes.length() == 0) {
             return null;
         }
-        return new PayloadData(payloadDataBytes.value);
+        return new PayloadData(payloadDataBytes.toByteArray());
     }
 
     /// Encode write payload sharing data bundle
@@ -83,14 +81,12 @@ public class SignalCharacteristicData {
     // 3-4 : payload sharing data count in bytes (Int16)
     // 5.. : payload sharing data
     public static Data encodeWritePayloadSharing(final PayloadSharingData payloadSharingData) {
-        final ByteBuffer byteBuffer = ByteBuffer.allocate(5 + payloadSharingData.data.value.length);
-        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        byteBuffer.put(0, BLESensorConfiguration.signalCharacteristicActionWritePayloadSharing);
-        byteBuffer.putShort(1, (short) payloadSharingData.rssi.value);
-        byteBuffer.putShort(3, (short) payloadSharingData.data.value.length);
-        byteBuffer.position(5);
-        byteBuffer.put(payloadSharingData.data.value);
-        return new Data(byteBuffer.array());
+        final ByteSlice.Builder builder = new ByteSlice.Builder(5 + payloadSharingData.data.value.length);
+        builder.append(BLESensorConfiguration.signalCharacteristicActionWritePayloadSharing);
+        builder.appendInt16(payloadSharingData.rssi.value);
+        builder.appendInt16(payloadSharingData.data.value.length);
+        builder.append(payloadSharingData.data);
+        return builder.data();
     }
 
     /// Decode write payload data bundle
@@ -112,11 +108,11 @@ public class SignalCharacteristicData {
         if (data.value.length != (5 + payloadSharingDataCount.intValue())) {
             return null;
         }
-        final Data payloadSharingDataBytes = new Data(data.value).subdata(5);
-        if (payloadSharingDataBytes == null) {
+        final ByteSlice payloadSharingDataBytes = ByteSlice.of(data).slice(5);
+        if (payloadSharingDataBytes == null || payloadSharingDataBytes.length() == 0) {
             return null;
         }
-        return new PayloadSharingData(new RSSI(rssiValue.intValue()), payloadSharingDataBytes);
+        return new PayloadSharingData(new RSSI(rssiValue.intValue()), new Data(payloadSharingDataBytes.toByteArray()));
     }
 
     /// Encode immediate send data bundle
@@ -125,13 +121,11 @@ public class SignalCharacteristicData {
     // 1-2 : payload data count in bytes (Int16)
     // 3.. : payload data
     public static Data encodeImmediateSend(final ImmediateSendData immediateSendData) {
-        final ByteBuffer byteBuffer = ByteBuffer.allocate(3 + immediateSendData.data.value.length);
-        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        byteBuffer.put(0, BLESensorConfiguration.signalCharacteristicActionWriteImmediate);
-        byteBuffer.putShort(1, (short) immediateSendData.data.value.length);
-        byteBuffer.position(3);
-        byteBuffer.put(immediateSendData.data.value);
-        return new Data(byteBuffer.array());
+        final ByteSlice.Builder builder = new ByteSlice.Builder(3 + immediateSendData.data.value.length);
+        builder.append(BLESensorConfiguration.signalCharacteristicActionWriteImmediate);
+        builder.appendInt16(immediateSendData.data.value.length);
+        builder.append(immediateSendData.data);
+        return builder.data();
     }
 
     /// Decode immediate send data bundle
@@ -149,11 +143,99 @@ public class SignalCharacteristicData {
         if (data.value.length != (3 + immediateSendDataCount.intValue())) {
             return null;
         }
-        final Data immediateSendDataBytes = new Data(data.value).subdata(3);
-        if (immediateSendDataBytes == null) {
+        final ByteSlice immediateSendDataBytes = ByteSlice.of(data).slice(3);
+        if (immediateSendDataBytes == null || immediateSendDataBytes.length() == 0) {
             return null;
         }
-        return new ImmediateSendData(immediateSendDataBytes);
+        return new ImmediateSendData(new Data(immediateSendDataBytes.toByteArray()));
+    }
+
+    /// Encode write bundle, combining several signal characteristic data bundles in a single write
+    // writeBundle data format
+    // 0-0 : actionCode
+    // 1-2 : bundle data count in bytes (Int16)
+    // 3.. : signal characteristic data bundles (e.g. writePayload, writeRSSI), each with its own action code
+    public static Data encodeWriteBundle(final List<Data> bundles) {
+        int count = 0;
+        for (final Data bundle : bundles) {
+            count += bundle.value.length;
+        }
+        final ByteSlice.Builder builder = new ByteSlice.Builder(3 + count);
+        builder.append(BLESensorConfiguration.signalCharacteristicActionWriteBundle);
+        builder.appendInt16(count);
+        for (final Data bundle : bundles) {
+            builder.append(bundle);
+        }
+        return builder.data();
+    }
+
+    /// Decode write bundle into signal characteristic data bundles, returns null
+    /// if data is incomplete, or contains unknown or nested write bundles.
+    public static List<Data> decodeWriteBundle(final Data data) {
+        if (signalDataActionCode(data.value) != BLESensorConfiguration.signalCharacteristicActionWriteBundle) {
+            return null;
+        }
+        if (data.value.length < 3) {
+            return null;
+        }
+        final Short bundleDataCount = int16(data.value, 1);
+        if (bundleDataCount == null) {
+            return null;
+        }
+        if (data.value.length != (3 + bundleDataCount.intValue())) {
+            return null;
+        }
+        final ByteSlice signalData = ByteSlice.of(data);
+        final List<Data> bundles = new ArrayList<>(3);
+        int index = 3;
+        while (index < data.value.length) {
+            // Nested write bundles are not allowed
+            final int length = signalDataLength(data.value, index, data.value.length, false);
+            if (length <= 0 || index + length > data.value.length) {
+                return null;
+            }
+            bundles.add(signalData.slice(index, length).data());
+            index += length;
+        }
+        return bundles;
+    }
+
+    /// Expected length of signal characteristic data in bytes, derived from the header in
+    /// the first length bytes of data, for detecting completion of fragmented writes
+    /// without decoding. Returns 0 if header is incomplete, -1 if action code is unknown
+    /// or length field is invalid.
+    public static int signalDataLength(final byte[] data, final int length) {
+        if (data == null || length <= 0) {
+            return 0;
+        }
+        return signalDataLength(data, 0, length, true);
+    }
+
+    /// Length of signal characteristic data bundle starting at index, derived from its action
+    /// code and length field in the first length bytes, optionally accepting write bundles.
+    private static int signalDataLength(final byte[] signalData, final int index, final int length, final boolean bundle) {
+        switch (signalData[index]) {
+            case BLESensorConfiguration.signalCharacteristicActionWriteRSSI:
+                return 3;
+            case BLESensorConfiguration.signalCharacteristicActionWritePayload:
+            case BLESensorConfiguration.signalCharacteristicActionWriteImmediate:
+                return signalDataLength(signalData, index + 1, length, 3);
+            case BLESensorConfiguration.signalCharacteristicActionWritePayloadSharing:
+                return signalDataLength(signalData, index + 3, length, 5);
+            case BLESensorConfiguration.signalCharacteristicActionWriteBundle:
+                return (bundle ? signalDataLength(signalData, index + 1, length, 3) : -1);
+            default:
+                return -1;
+        }
+    }
+
+    /// Header length plus count in Int16 at index, returns 0 if count is beyond length
+    private static int signalDataLength(final byte[] signalData, final int index, final int length, final int headerLength) {
+        if (index + 1 >= length) {
+            return 0;
+        }
+        final int count = (signalData[index] & 0xFF) | (signalData[index + 1] << 8);
+        return (count < 0 ? -1 : headerLength + count);
     }
 
     /// Detect signal characteristic data bundle type
@@ -167,6 +249,8 @@ public class SignalCharacteristicData {
                 return SignalCharacteristicDataType.payloadSharing;
             case BLESensorConfiguration.signalCharacteristicActionWriteImmediate:
                 return SignalCharacteristicDataType.immediateSend;
+            case BLESensorConfiguration.signalCharacteristicActionWriteBundle:
+                return SignalCharacteristicDataType.bundle;
             default:
                 return SignalCharacteristicDataType.unknown;
         }
@@ -181,9 +265,7 @@ public class SignalCharacteristicData {
 
     private static Short int16(byte[] data, int index) {
         if (index < data.length - 1) {
-            final ByteBuffer byteBuffer = ByteBuffer.wrap(data);
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            return byteBuffer.getShort(index);
+            return ByteSlice.wrap(data).int16(index);
         } else {
             return null;
         }
@@ -19,6 +19,11 @@ public class TargetIdentifier {
         this.value = bluetoothDevice.getAddress();
     }
 
+    /// Create target identifier from value, e.g. restored from snapshot
+    public TargetIdentifier(String value) {
+        this.value = value;
+    }
+
     /// Create random target identifier
     public TargetIdentifier() {
         this.value = UUID.randomUUID().toString();
@@ -2,6 +2,7 @@ package com.vmware.herald.sensor.payload.simple;
 
 import com.vmware.herald.sensor.data.ConcreteSensorLogger;
 import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.ByteSlice;
 import com.vmware.herald.sensor.datatype.Data;
 import com.vmware.herald.sensor.datatype.Float16;
 import com.vmware.herald.sensor.datatype.PayloadData;
@@ -17,7 +18,7 @@ import java.util.List;
 public class ConcreteSimplePayloadDataSupplier implements SimplePayloadDataSupplier {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Payload.SimplePayloadDataSupplier");
     private final static int payloadLength = 23;
-    private final Data commonPayload = new Data();
+    private final ByteSlice commonPayload;
     private final MatchingKey[] matchingKeys;
     // Cache contact identifiers for the day
     private Integer day = null;
@@ -32,10 +33,13 @@ public class ConcreteSimplePayloadDataSupplier implements SimplePayloadDataSuppl
     public ConcreteSimplePayloadDataSupplier(UInt8 protocolAndVersion, UInt16 countryCode, UInt16 stateCode, Float16 transmitPower, SecretKey secretKey) {
         // Generate common header
         // All data is big endian
-        commonPayload.append(protocolAndVersion.bigEndian);
-        commonPayload.append(countryCode.bigEndian);
-        commonPayload.append(stateCode.bigEndian);
-        commonPayload.append(transmitPower.bigEndian);
+        final ByteSlice.Builder builder = new ByteSlice.Builder(protocolAndVersion.bigEndian.value.length +
+                countryCode.bigEndian.value.length + stateCode.bigEndian.value.length + transmitPower.bigEndian.value.length);
+        builder.append(protocolAndVersion.bigEndian);
+        builder.append(countryCode.bigEndian);
+        builder.append(stateCode.bigEndian);
+        builder.append(transmitPower.bigEndian);
+        commonPayload = builder.build();
 
         // Generate matching keys from secret key
         matchingKeys = K.matchingKeys(secretKey);
@@ -95,26 +99,25 @@ public class ConcreteSimplePayloadDataSupplier implements SimplePayloadDataSuppl
 
     @Override
     public PayloadData payload(PayloadTimestamp timestamp) {
-        final PayloadData payloadData = new PayloadData();
-        payloadData.append(commonPayload);
+        // Assemble payload in a single allocation
+        final ByteSlice.Builder builder = new ByteSlice.Builder(commonPayload.length() + 16);
+        builder.append(commonPayload);
         final ContactIdentifier contactIdentifier = contactIdentifier(timestamp.value);
         if (contactIdentifier != null) {
-            payloadData.append(contactIdentifier);
+            builder.append(contactIdentifier);
         } else {
-            payloadData.append(new ContactIdentifier((byte) 0, 16));
+            builder.append((byte) 0, 16);
         }
-        return payloadData;
+        return new PayloadData(builder.toByteArray());
     }
 
     @Override
     public List<PayloadData> payload(Data data) {
         // Split raw data comprising of concatenated payloads into individual payloads
         final List<PayloadData> payloads = new ArrayList<>();
-        final byte[] bytes = data.value;
-        for (int index = 0; (index + payloadLength) <= bytes.length; index += payloadLength) {
-            final byte[] payloadBytes = new byte[payloadLength];
-            System.arraycopy(bytes, index, payloadBytes, 0, payloadLength);
-            payloads.add(new PayloadData(payloadBytes));
+        final ByteSlice bytes = ByteSlice.of(data);
+        for (int index = 0; (index + payloadLength) <= bytes.length(); index += payloadLength) {
+            payloads.add(new PayloadData(bytes.slice(index, payloadLength).toByteArray()));
         }
         return payloads;
     }
@@ -2,6 +2,7 @@ package com.vmware.herald.sensor.payload.simple;
 
 import com.vmware.herald.sensor.data.ConcreteSensorLogger;
 import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.ByteSlice;
 import com.vmware.herald.sensor.datatype.Data;
 
 import java.security.MessageDigest;
@@ -12,9 +13,15 @@ public class F {
 
     /// Cryptographic hash function : SHA256
     protected static Data h(Data data) {
+        return h(ByteSlice.of(data));
+    }
+
+    /// Cryptographic hash function : SHA256 of slice, hashed in place without copying
+    protected static Data h(ByteSlice data) {
         try {
             final MessageDigest sha = MessageDigest.getInstance("SHA-256");
-            final byte[] hash = sha.digest(data.value);
+            data.update(sha);
+            final byte[] hash = sha.digest();
             return new Data(hash);
         } catch (Throwable e) {
             logger.fault("SHA-256 unavailable", e);
@@ -22,14 +29,14 @@ public class F {
         }
     }
 
-    /// Truncation function : Delete second half of data
-    protected static Data t(Data data) {
+    /// Truncation function : Delete second half of data, sharing data value
+    protected static ByteSlice t(Data data) {
         return t(data, data.value.length / 2);
     }
 
-    /// Truncation function : Retain first n bytes of data
-    protected static Data t(Data data, int n) {
-        return data.subdata(0, n);
+    /// Truncation function : Retain first n bytes of data, sharing data value
+    protected static ByteSlice t(Data data, int n) {
+        return ByteSlice.of(data).slice(0, n);
     }
 
     /// XOR function : Compute left xor right, assumes left and right are the same length
@@ -113,6 +113,6 @@ public class K {
 
     /// Generate contact identifer I_{c}
     protected static ContactIdentifier contactIdentifier(ContactKey contactKey) {
-        return new ContactIdentifier(F.t(contactKey, 16));
+        return new ContactIdentifier(F.t(contactKey, 16).data());
     }
 }
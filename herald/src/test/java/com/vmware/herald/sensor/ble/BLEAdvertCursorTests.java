@@ -0,0 +1,116 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BLEAdvertCursorTests {
+    // Flags, TX power, Apple manufacturer data (Apple TV), 16-bit service UUID 0xFD6F, zero padding
+    private final static byte[] advert = new byte[]{2, 1, 26, 2, 10, 8,
+            (byte) 0x0c, (byte) 0xff, (byte) 0x4c, (byte) 0x00,
+            (byte) 0x10, (byte) 0x07, (byte) 0x33, (byte) 0x1f, (byte) 0x2c, (byte) 0x30, (byte) 0x2f, (byte) 0x92, (byte) 0x58,
+            3, 3, (byte) 0x6f, (byte) 0xfd,
+            0, 0, 0, 0};
+
+    @Test
+    public void testSegments() throws Exception {
+        final BLEAdvertCursor cursor = new BLEAdvertCursor().reset(advert, 0);
+        assertTrue(cursor.next());
+        assertEquals(BLEAdvertSegmentType.unknown, cursor.type());
+        assertEquals(1, cursor.typeCode());
+        assertEquals(26, cursor.data(0));
+        assertTrue(cursor.next());
+        assertEquals(8, cursor.txPower());
+        assertTrue(cursor.next());
+        assertEquals(BLESensorConfiguration.manufacturerIdForApple, cursor.manufacturer());
+        assertEquals(9, cursor.manufacturerDataLength());
+        assertEquals(0x10, advert[cursor.manufacturerDataOffset()]);
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.serviceUUIDCount());
+        assertEquals(0xfd6f, cursor.serviceUUIDShort(0));
+        assertTrue(cursor.hasServiceUUID(UUID.fromString("0000fd6f-0000-1000-8000-00805f9b34fb")));
+        assertFalse(cursor.hasServiceUUID(BLESensorConfiguration.serviceUUID));
+        // Zero padding terminates data
+        assertFalse(cursor.next());
+        assertFalse(cursor.next());
+        // Wrapper returns the same segments
+        final List<BLEAdvertSegment> segments = BLEAdvertParser.extractSegments(advert, 0);
+        assertEquals(4, segments.size());
+        assertEquals(8, (int) BLEAdvertParser.extractTxPower(segments));
+        assertEquals(8, (int) BLEAdvertParser.extractTxPower(cursor.reset(advert, 0)));
+        assertTrue(BLEAdvertParser.isAppleTV(cursor.reset(advert, 0)));
+    }
+
+    @Test
+    public void testNegativeTxPower() throws Exception {
+        final byte[] data = new byte[]{2, 10, (byte) -12};
+        final BLEAdvertCursor cursor = new BLEAdvertCursor().reset(data, 0);
+        assertTrue(cursor.next());
+        assertEquals(-12, cursor.txPower());
+        assertEquals(-12, (int) BLEAdvertParser.extractTxPower(BLEAdvertParser.extractSegments(data, 0)));
+        assertEquals(-12, (int) BLEAdvertParser.extractTxPower(cursor.reset(data, 0)));
+    }
+
+    @Test
+    public void test128BitServiceUUID() throws Exception {
+        final UUID uuid = BLESensorConfiguration.serviceUUID;
+        final byte[] data = new byte[18];
+        data[0] = 17;
+        data[1] = 7;
+        for (int i = 0; i < 8; i++) {
+            data[2 + i] = (byte) (uuid.getLeastSignificantBits() >>> (8 * i));
+            data[10 + i] = (byte) (uuid.getMostSignificantBits() >>> (8 * i));
+        }
+        final BLEAdvertCursor cursor = new BLEAdvertCursor().reset(data, 0);
+        assertTrue(cursor.next(BLEAdvertSegmentType.serviceUUID128CompleteList));
+        assertTrue(cursor.hasServiceUUID(uuid));
+    }
+
+    @Test
+    public void testAllocationBenchmark() throws Exception {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threadMXBean;
+        final long thread = Thread.currentThread().getId();
+        final int adverts = 100000;
+        // Warm up
+        final BLEAdvertCursor cursor = new BLEAdvertCursor();
+        for (int i = 0; i < adverts; i++) {
+            BLEAdvertParser.isAppleTV(BLEAdvertParser.extractSegments(advert, 0));
+            BLEAdvertParser.isAppleTV(cursor.reset(advert, 0));
+        }
+        long start = allocation.getThreadAllocatedBytes(thread);
+        int count = 0;
+        for (int i = 0; i < adverts; i++) {
+            final List<BLEAdvertSegment> segments = BLEAdvertParser.extractSegments(advert, 0);
+            if (BLEAdvertParser.isAppleTV(segments) && BLEAdvertParser.extractTxPower(segments) != null) {
+                count++;
+            }
+        }
+        final double listBytesPerAdvert = (allocation.getThreadAllocatedBytes(thread) - start) / (double) adverts;
+        start = allocation.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < adverts; i++) {
+            if (BLEAdvertParser.isAppleTV(cursor.reset(advert, 0)) && BLEAdvertParser.extractTxPower(cursor.reset(advert, 0)) != null) {
+                count++;
+            }
+        }
+        final double cursorBytesPerAdvert = (allocation.getThreadAllocatedBytes(thread) - start) / (double) adverts;
+        System.err.println("advertParser (list=" + listBytesPerAdvert + "B/advert,cursor=" + cursorBytesPerAdvert + "B/advert)");
+        assertEquals(2 * adverts, count);
+        assertTrue(cursorBytesPerAdvert < 16);
+        assertTrue(listBytesPerAdvert > cursorBytesPerAdvert);
+    }
+}
@@ -0,0 +1,219 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.PayloadData;
+
+import com.vmware.herald.sensor.datatype.Callback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BLEConnectionPipelineTests {
+
+    /// Radio recording connections, connection events are triggered by test
+    private final static class FakeRadio implements BLERadio {
+        private final List<Object> opened = new ArrayList<>();
+        private final List<Object> closed = new ArrayList<>();
+        private Runnable onClose = null;
+
+        @Override
+        public synchronized Object connect(BLEDevice device) {
+            final Object connection = new Object();
+            opened.add(connection);
+            return connection;
+        }
+
+        @Override
+        public void close(BLEDevice device, Object connection) {
+            synchronized (this) {
+                closed.add(connection);
+            }
+            final Runnable runnable = onClose;
+            if (runnable != null) {
+                onClose = null;
+                runnable.run();
+            }
+        }
+
+        private synchronized int closedCount() {
+            return closed.size();
+        }
+
+        // Scan and GATT operations are not used by pipeline
+
+        @Override
+        public void add(BLERadioDelegate delegate) {
+        }
+
+        @Override
+        public boolean startScan() {
+            return false;
+        }
+
+        @Override
+        public void stopScan() {
+        }
+
+        @Override
+        public void disconnect(Object connection) {
+        }
+
+        @Override
+        public boolean requestMtu(Object connection, int mtu) {
+            return false;
+        }
+
+        @Override
+        public boolean discoverServices(Object connection) {
+            return false;
+        }
+
+        @Override
+        public boolean readCharacteristic(Object connection, UUID characteristic) {
+            return false;
+        }
+
+        @Override
+        public boolean writeCharacteristic(Object connection, UUID characteristic, byte[] value) {
+            return false;
+        }
+    }
+
+    /// Scheduler in virtual time, tasks are run by advancing the clock
+    private final static class ManualScheduler implements BLEScheduler {
+        private final List<ManualTask> tasks = new ArrayList<>();
+        private long now = 0;
+
+        private final static class ManualTask implements Task {
+            private final Runnable runnable;
+            private final long dueAt;
+            private boolean cancelled = false;
+
+            private ManualTask(final Runnable runnable, final long dueAt) {
+                this.runnable = runnable;
+                this.dueAt = dueAt;
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+        }
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public Task schedule(Runnable runnable, long delayMillis) {
+            final ManualTask task = new ManualTask(runnable, now + delayMillis);
+            tasks.add(task);
+            return task;
+        }
+
+        /// Advance clock, running tasks that are due in order
+        private void advance(final long millis) {
+            final long until = now + millis;
+            while (true) {
+                ManualTask next = null;
+                for (final ManualTask task : tasks) {
+                    if (!task.cancelled && task.dueAt <= until && (next == null || task.dueAt < next.dueAt)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                tasks.remove(next);
+                now = next.dueAt;
+                next.runnable.run();
+            }
+            now = until;
+        }
+    }
+
+    @Test
+    public void testTimeoutThenReconnect() throws Exception {
+        final FakeRadio radio = new FakeRadio();
+        final ManualScheduler scheduler = new ManualScheduler();
+        final BLEConnectionPipeline pipeline = new BLEConnectionPipeline(radio, scheduler, 1, 50, 1000);
+        final BLEDevice device = new ConcreteBLEDatabase().device(new PayloadData((byte) 1, 23));
+        final List<Boolean> reconnectDuringClose = new ArrayList<>();
+        // Attempt to reconnect while timed out connection is being closed
+        radio.onClose = new Runnable() {
+            @Override
+            public void run() {
+                reconnectDuringClose.add(pipeline.connect(device));
+            }
+        };
+        assertTrue(pipeline.connect(device));
+        assertEquals(BLEDeviceState.connecting, device.state());
+        // Connect timeout
+        scheduler.advance(49);
+        assertEquals(1, pipeline.active());
+        scheduler.advance(1);
+        assertEquals(0, pipeline.active());
+        assertEquals(1, radio.closedCount());
+        assertSame(radio.opened.get(0), radio.closed.get(0));
+        // Device is only released once connection has been closed
+        assertEquals(1, reconnectDuringClose.size());
+        assertFalse(reconnectDuringClose.get(0));
+        assertEquals(BLEDeviceState.disconnected, device.state());
+
+        // Reconnect is not affected by timed out connection
+        assertTrue(pipeline.connect(device));
+        assertEquals(2, radio.opened.size());
+        assertEquals(1, radio.closedCount());
+        assertTrue(pipeline.didConnect(device));
+        assertEquals(BLEDeviceState.connected, device.state());
+        pipeline.didDisconnect(device);
+        assertEquals(2, radio.closedCount());
+        assertSame(radio.opened.get(1), radio.closed.get(1));
+        assertEquals(BLEDeviceState.disconnected, device.state());
+        assertEquals(0, pipeline.active());
+    }
+
+    @Test
+    public void testBatchWaitsForPermit() throws Exception {
+        final FakeRadio radio = new FakeRadio();
+        final ManualScheduler scheduler = new ManualScheduler();
+        final BLEConnectionPipeline pipeline = new BLEConnectionPipeline(radio, scheduler, 1, 50, 1000);
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice immediate = database.device(new PayloadData((byte) 1, 23));
+        final BLEDevice batched = database.device(new PayloadData((byte) 2, 23));
+        final List<Boolean> results = new ArrayList<>();
+        // Immediate send holds the only permit
+        assertTrue(pipeline.connect(immediate));
+        pipeline.connect(Arrays.asList(batched), 5000, new Callback<Boolean>() {
+            @Override
+            public void accept(Boolean value) {
+                results.add(value);
+            }
+        });
+        // Batched device is retained until permit is released, rather than dropped
+        assertEquals(BLEDeviceState.disconnected, batched.state());
+        assertEquals(1, radio.opened.size());
+        assertTrue(pipeline.didConnect(immediate));
+        pipeline.didDisconnect(immediate);
+        assertEquals(BLEDeviceState.connecting, batched.state());
+        assertEquals(2, radio.opened.size());
+        assertTrue(pipeline.didConnect(batched));
+        pipeline.didDisconnect(batched);
+        assertEquals(1, results.size());
+        assertTrue(results.get(0));
+        assertEquals(0, pipeline.active());
+    }
+}
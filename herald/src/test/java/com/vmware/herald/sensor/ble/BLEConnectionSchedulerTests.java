@@ -0,0 +1,67 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.RSSI;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BLEConnectionSchedulerTests {
+
+    @Test
+    public void testValueBasedPolicy() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        // Confirmed device with payload
+        final BLEDevice known = database.device(new PayloadData((byte) 1, 23));
+        known.operatingSystem(BLEDeviceOperatingSystem.android);
+        known.rssi(new RSSI(-40));
+        // Devices without payload, with weak and strong signal
+        final BLEDevice weak = database.device(new PayloadData((byte) 2, 23));
+        weak.payloadData(null);
+        weak.rssi(new RSSI(-95));
+        final BLEDevice strong = database.device(new PayloadData((byte) 3, 23));
+        strong.payloadData(null);
+        strong.rssi(new RSSI(-50));
+        // Device without payload that has failed to connect
+        final BLEDevice failing = database.device(new PayloadData((byte) 4, 23));
+        failing.payloadData(null);
+        failing.rssi(new RSSI(-50));
+        failing.registerConnection(false);
+        failing.registerConnection(false);
+
+        final List<BLEDevice> devices = new ArrayList<>();
+        devices.add(known);
+        devices.add(weak);
+        devices.add(failing);
+        devices.add(strong);
+
+        BLESensorConfiguration.connectionPolicy = new ValueBasedConnectionPolicy();
+        final BLEConnectionScheduler scheduler = new BLEConnectionScheduler();
+        final List<BLEDevice> scheduled = scheduler.schedule(devices);
+        assertSame(strong, scheduled.get(0));
+        assertSame(failing, scheduled.get(1));
+        assertSame(weak, scheduled.get(2));
+        assertSame(known, scheduled.get(3));
+        scheduler.didReadPayload(true);
+        scheduler.didReadPayload(false);
+        scheduler.complete();
+        assertEquals(1, scheduler.newPayloadsPerSecond("valueBased").count());
+
+        // Scan order policy retains order
+        BLESensorConfiguration.connectionPolicy = new ScanOrderConnectionPolicy();
+        try {
+            assertEquals(devices, scheduler.schedule(devices));
+        } finally {
+            BLESensorConfiguration.connectionPolicy = new ValueBasedConnectionPolicy();
+        }
+    }
+}
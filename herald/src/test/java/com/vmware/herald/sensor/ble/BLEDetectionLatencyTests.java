@@ -0,0 +1,60 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Histogram;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BLEDetectionLatencyTests {
+
+    @Test
+    public void testStageLatency() throws Exception {
+        final BLEDetectionTrace trace = new BLEDetectionTrace();
+        trace.mark(BLEDetectionStage.scanSeen, 1000);
+        // Advert is recorded when first seen
+        trace.mark(BLEDetectionStage.scanSeen, 2000);
+        trace.mark(BLEDetectionStage.queued, 5000);
+        // Latest connection attempt is recorded
+        trace.mark(BLEDetectionStage.connectStart, 6000);
+        trace.mark(BLEDetectionStage.connectStart, 9000);
+        trace.mark(BLEDetectionStage.connected, 9800);
+        trace.mark(BLEDetectionStage.servicesDiscovered, 10000);
+        trace.mark(BLEDetectionStage.characteristicRead, 10200);
+        trace.mark(BLEDetectionStage.delegateDispatch, 10250);
+        assertTrue(trace.complete());
+        // Trace is frozen once complete
+        trace.mark(BLEDetectionStage.queued, 20000);
+        assertEquals(5000, trace.timestamp(BLEDetectionStage.queued));
+
+        final BLEDetectionLatency detectionLatency = new BLEDetectionLatency();
+        detectionLatency.add(BLEDeviceOperatingSystem.ios, trace);
+        assertEquals(9250, detectionLatency.histogram(BLEDeviceOperatingSystem.ios, BLEDetectionStage.scanSeen).mean(), 0);
+        assertEquals(4000, detectionLatency.histogram(BLEDeviceOperatingSystem.ios, BLEDetectionStage.queued).mean(), 0);
+        assertEquals(4000, detectionLatency.histogram(BLEDeviceOperatingSystem.ios, BLEDetectionStage.connectStart).mean(), 0);
+        assertEquals(800, detectionLatency.histogram(BLEDeviceOperatingSystem.ios, BLEDetectionStage.connected).mean(), 0);
+        assertEquals(50, detectionLatency.histogram(BLEDeviceOperatingSystem.ios, BLEDetectionStage.delegateDispatch).mean(), 0);
+        assertNull(detectionLatency.histogram(BLEDeviceOperatingSystem.android, BLEDetectionStage.scanSeen));
+        System.err.println(detectionLatency.dump());
+    }
+
+    @Test
+    public void testHistogramPercentile() throws Exception {
+        final Histogram histogram = new Histogram(10, 20, 50);
+        assertNull(histogram.percentile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.add(i);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(10, histogram.percentile(0.1), 0);
+        assertEquals(50, histogram.percentile(0.5), 0);
+        // Overflow bucket reports max
+        assertEquals(100, histogram.percentile(0.9), 0);
+    }
+}
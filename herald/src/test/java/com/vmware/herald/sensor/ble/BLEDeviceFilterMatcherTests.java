@@ -0,0 +1,73 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BLEDeviceFilterMatcherTests {
+
+    @Test
+    public void testPattern() throws Exception {
+        // Nearby info with rotating authentication tag
+        assertEquals("1005011c......$", BLEDeviceFilterMatcher.pattern(new byte[]{0x10, 0x05, 0x01, 0x1c, 0x7a, 0x3b, 0x22}, 2));
+        // Type and length of every segment is retained
+        assertEquals("100201..0c00$", BLEDeviceFilterMatcher.pattern(new byte[]{0x10, 0x02, 0x01, 0x1c, 0x0c, 0x00}, 1));
+        // Malformed segment is matched exactly
+        assertEquals("10090102$", BLEDeviceFilterMatcher.pattern(new byte[]{0x10, 0x09, 0x01, 0x02}, 2));
+        assertEquals("100201..0c0e$", BLEDeviceFilterMatcher.pattern(new byte[]{0x10, 0x02, 0x01, 0x1c, 0x0c, 0x0e}, 1));
+    }
+
+    @Test
+    public void testMatch() throws Exception {
+        final BLEDeviceFilterMatcher matcher = new BLEDeviceFilterMatcher();
+        assertTrue(matcher.add("1005011c......"));
+        assertTrue(matcher.add("10........"));
+        assertTrue(matcher.add("0c0e"));
+        assertFalse(matcher.add("0c0"));
+        assertFalse(matcher.add("0cxx"));
+        assertEquals(3, matcher.size());
+        // Devices differing only in nonce match same pattern
+        assertEquals("1005011c......", matcher.match(new byte[]{0x10, 0x05, 0x01, 0x1c, 0x7a, 0x3b, 0x22}));
+        assertEquals("1005011c......", matcher.match(new byte[]{0x10, 0x05, 0x01, 0x1c, 0x01, 0x02, 0x03, 0x04}));
+        // Less specific pattern matches other flags
+        assertEquals("10........", matcher.match(new byte[]{0x10, 0x05, 0x03, 0x1c, 0x7a, 0x3b, 0x22}));
+        assertEquals("0c0e", matcher.match(new byte[]{0x0c, 0x0e, 0x00}));
+        assertNull(matcher.match(new byte[]{0x10, 0x05, 0x01}));
+        assertNull(matcher.match(new byte[]{0x09, 0x06}));
+        assertFalse(matcher.add("$"));
+        assertFalse(matcher.add("0c0$"));
+    }
+
+    @Test
+    public void testLearnedPatterns() throws Exception {
+        // Mac advertises handoff and nearby info, iPhone advertises nearby info with the same flags
+        final byte[] mac = new byte[]{0x0c, 0x0e, 0x00, 0x51, 0x2a, 0x3b, 0x4c, 0x5d, 0x6e, 0x7f, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06,
+                0x10, 0x05, 0x01, 0x1c, 0x7a, 0x3b, 0x22};
+        final byte[] iPhone = new byte[]{0x10, 0x05, 0x01, 0x1c, 0x11, 0x22, 0x33};
+        final byte[] iPhoneHandoff = new byte[]{0x0c, 0x0e, 0x00, 0x51, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0a, 0x0b, 0x0c};
+        final BLEDeviceFilterMatcher matcher = new BLEDeviceFilterMatcher();
+        final String macPattern = BLEDeviceFilterMatcher.pattern(mac, 2);
+        assertEquals("0c0e0051........................1005011c......$", macPattern);
+        assertTrue(matcher.add(macPattern));
+        // Mac pattern does not capture iPhone advert, or an advert with only the same first segment
+        assertNull(matcher.match(iPhone));
+        assertNull(matcher.match(iPhoneHandoff));
+        // iPhone pattern does not capture Mac advert
+        final String iPhonePattern = BLEDeviceFilterMatcher.pattern(iPhone, 2);
+        assertTrue(matcher.add(iPhonePattern));
+        assertEquals(2, matcher.size());
+        assertEquals(iPhonePattern, matcher.match(iPhone));
+        assertEquals(macPattern, matcher.match(mac));
+        // Exact match is preferred over prefix match
+        assertTrue(matcher.add("0c0e0051"));
+        assertEquals(macPattern, matcher.match(mac));
+        assertEquals("0c0e0051", matcher.match(iPhoneHandoff));
+    }
+}
@@ -0,0 +1,83 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Data;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BLEDeviceFilterModelTests {
+
+    @Test
+    public void testEviction() throws Exception {
+        final BLEDeviceFilterModel model = new BLEDeviceFilterModel(2);
+        final Data appleTV = new Data(new byte[]{0x10, 0x05, 0x01});
+        final Data mac = new Data(new byte[]{0x10, 0x05, 0x02});
+        final Data phone = new Data(new byte[]{0x10, 0x05, 0x03});
+        model.train(appleTV, true);
+        model.train(appleTV, true);
+        model.train(mac, true);
+        model.train(phone, false);
+        // Least frequently trained feature is evicted
+        assertEquals(2, model.size());
+        assertEquals(2, model.get(appleTV).yes);
+        assertFalse(model.features().contains(mac));
+        assertEquals(1, model.get(phone).no);
+        // Evicted feature is remembered and resumes its counts when trained again
+        assertEquals(1, model.get(mac).yes);
+        model.train(mac, true);
+        assertTrue(model.features().contains(mac));
+        assertEquals(2, model.get(mac).yes);
+        assertNull(model.get(new Data(new byte[]{0x10, 0x05, 0x04})));
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        final BLEDeviceFilterModel model = new BLEDeviceFilterModel(4);
+        // Table is saturated by frequently trained features
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 10; j++) {
+                model.train(new Data(new byte[]{0x10, 0x05, (byte) i}), false);
+            }
+        }
+        // Recurring feature interleaved with a stream of new features that are only seen once
+        final Data mac = new Data(new byte[]{0x10, 0x05, 0x7f});
+        for (int i = 0; i < 20; i++) {
+            model.train(mac, true);
+            model.train(new Data(new byte[]{0x0c, 0x0e, (byte) i}), false);
+        }
+        // Recurring feature displaces aged features and accumulates training
+        assertNotNull(model.get(mac));
+        assertTrue(model.get(mac).yes > 2);
+        assertEquals(4, model.size());
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        final File file = File.createTempFile("ble_filter", ".bin");
+        file.deleteOnExit();
+        final BLEDeviceFilterModel model = new BLEDeviceFilterModel(256);
+        for (int i = 0; i < 100; i++) {
+            model.train(new Data(new byte[]{(byte) i}), (i % 2 == 0));
+        }
+        assertTrue(model.write(file));
+        // Length prefixed feature and counts
+        assertEquals(9 + 100 * 11, file.length());
+        final BLEDeviceFilterModel restored = new BLEDeviceFilterModel(256);
+        assertTrue(restored.read(file));
+        assertEquals(100, restored.size());
+        assertNotNull(restored.get(new Data(new byte[]{4})));
+        assertEquals(1, restored.get(new Data(new byte[]{4})).yes);
+        assertEquals(1, restored.get(new Data(new byte[]{5})).no);
+    }
+}
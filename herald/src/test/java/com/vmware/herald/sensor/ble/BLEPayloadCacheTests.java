@@ -0,0 +1,95 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.PayloadDataSupplier;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadTimestamp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BLEPayloadCacheTests {
+
+    /// Payload is timestamp in seconds, counting calls
+    private final static class CountingPayloadDataSupplier implements PayloadDataSupplier {
+        private int calls = 0;
+
+        @Override
+        public PayloadData payload(PayloadTimestamp timestamp) {
+            calls++;
+            final long seconds = timestamp.value.getTime() / 1000;
+            return new PayloadData(new byte[]{(byte) (seconds >> 8), (byte) seconds, 1, 2, 3});
+        }
+
+        @Override
+        public List<PayloadData> payload(Data data) {
+            return new ArrayList<>();
+        }
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        final CountingPayloadDataSupplier supplier = new CountingPayloadDataSupplier();
+        final BLEPayloadCache cache = new BLEPayloadCache(supplier, 60000, 5000, 10000, 4);
+        cache.refresh(0);
+        assertEquals(1, supplier.calls);
+        // Reads within window are served from cache
+        final BLEPayloadCache.Entry entry = cache.payload(1000);
+        assertSame(entry, cache.payload(59999));
+        assertEquals(1, supplier.calls);
+        // Next window is built ahead of boundary
+        cache.refresh(56000);
+        assertEquals(2, supplier.calls);
+        final BLEPayloadCache.Entry next = cache.payload(60000);
+        assertEquals(1, next.window);
+        assertEquals(2, supplier.calls);
+    }
+
+    @Test
+    public void testPin() throws Exception {
+        final CountingPayloadDataSupplier supplier = new CountingPayloadDataSupplier();
+        final BLEPayloadCache cache = new BLEPayloadCache(supplier, 60000, 5000, 10000, 4);
+        final BLEPayloadCache.Entry entry = cache.payload("central", 0, 59000);
+        assertArrayEquals(new byte[]{1, 2, 3}, entry.value(2));
+        assertSame(entry.value(2), entry.value(2));
+        assertNull(entry.value(6));
+        // Read at offset after window boundary continues with pinned payload
+        assertSame(entry, cache.payload("central", 2, 61000));
+        // Other centrals get payload for current window
+        assertEquals(1, cache.payload("other", 0, 61000).window);
+        // Pin expires
+        assertEquals(1, cache.payload("central", 2, 70000).window);
+        // Pin is released on disconnect
+        cache.remove("other");
+        assertEquals(2, cache.payload("other", 3, 120000).window);
+    }
+
+    @Test
+    public void testTimestamp() throws Exception {
+        // Payload is generated for every read at time of read without window
+        final CountingPayloadDataSupplier supplier = new CountingPayloadDataSupplier();
+        final BLEPayloadCache uncached = new BLEPayloadCache(supplier, 0, 5000, 10000, 4);
+        uncached.refresh(0);
+        assertEquals(0, supplier.calls);
+        assertArrayEquals(new byte[]{0, 1, 1, 2, 3}, uncached.payload(1000).payloadData.value);
+        assertArrayEquals(new byte[]{0, 2, 1, 2, 3}, uncached.payload(2000).payloadData.value);
+        assertEquals(2, supplier.calls);
+        // Payload built on demand within window is timestamped at time of read, rather than window start
+        final BLEPayloadCache cached = new BLEPayloadCache(supplier, 60000, 5000, 10000, 4);
+        assertArrayEquals(new byte[]{0, 70, 1, 2, 3}, cached.payload(70000).payloadData.value);
+        // Payload built ahead of window is timestamped at window start
+        cached.refresh(116000);
+        assertArrayEquals(new byte[]{0, 120, 1, 2, 3}, cached.payload(121000).payloadData.value);
+    }
+}
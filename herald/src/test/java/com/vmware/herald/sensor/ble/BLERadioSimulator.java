@@ -0,0 +1,651 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.SensorDelegate;
+import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.data.SensorLoggerLevel;
+import com.vmware.herald.sensor.datatype.BluetoothState;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
+import com.vmware.herald.sensor.datatype.SignalCharacteristicDataType;
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/// Deterministic in-process BLE radio simulator for load testing the receiver off-device. Models
+/// a crowd of virtual phones with configurable operating system mix, address rotation, RSSI
+/// traces, connect latency and failure rate. Scan results with raw scan records and GATT events
+/// are fed into a real ConcreteBLEReceiver, thus scan processing, connection scheduling, next task
+/// selection, payload sharing and write bundles are all exercised. Simulation runs in virtual time,
+/// driven by a discrete event queue, such that the same parameters and seed always produce the
+/// same result. The simulator is the scheduler of the receiver, thus the scan loop, connect and
+/// process timeouts, batch time limits and policy evaluation all run on the virtual clock.
+/// - Device timestamps are wall clock, thus payload updates, repeat writes, ignore periods after
+/// connection failure and device expiry are not reached within a simulation run.
+public class BLERadioSimulator implements BLERadio, BLEScheduler {
+    private final Parameters parameters;
+    private final Random random;
+    private final Queue<BLERadioDelegate> delegates = new ConcurrentLinkedQueue<>();
+    private final ConcreteBLEReceiver receiver;
+    private final List<Phone> phones = new ArrayList<>();
+    private final Map<TargetIdentifier, Phone> phoneByAddress = new HashMap<>();
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final BLESignalDataAssembler signalDataAssembler = new BLESignalDataAssembler(4, BLESensorConfiguration.maxAttributeValueLength);
+    private long now = 0;
+    private long sequence = 0;
+    private long addresses = 0;
+    private long connections = 0;
+    /// Incremented on start and stop scan, for discarding adverts scheduled for an earlier scan
+    private long scan = 0;
+    private boolean scanning = false;
+    // Statistics
+    private long connectAttempts = 0;
+    private long connectFailures = 0;
+    private long timeouts = 0;
+    private long completed = 0;
+    private long payloadReads = 0;
+    private long payloadsAcquired = 0;
+    private long timeToFirstPayloadMillis = 0;
+    private long connectionBusyMillis = 0;
+    private long signalWrites = 0;
+    private long bundleWrites = 0;
+    private long payloadSharingWrites = 0;
+
+    /// Simulation parameters
+    public final static class Parameters {
+        /// Number of virtual phones in range
+        public int phones = 100;
+        /// Fraction of virtual phones running iOS, the remainder are Android
+        public double iosFraction = 0.5;
+        /// Fraction of iOS phones in background, advertising Apple manufacturer data without sensor service
+        public double iosBackgroundFraction = 0.5;
+        /// Fraction of phones accepting signal characteristic write bundles
+        public double writeBundleFraction = 0.5;
+        /// Mean time between address rotation for each phone. Android phones advertise the same
+        /// pseudo device address across rotations, iOS phones are discovered as new devices.
+        public long addressRotationMillis = TimeInterval.minutes(15).millis();
+        /// Mean and standard deviation of RSSI across the crowd, each phone follows a random walk around its mean
+        public double rssiMean = -75;
+        public double rssiStandardDeviation = 10;
+        /// Random walk step per scan
+        public double rssiStep = 3;
+        /// Phones below this RSSI are not discovered
+        public double rssiThreshold = -95;
+        /// Maximum time from start of scan to receiving advert, actual latency is uniformly distributed
+        public long advertLatencyMillis = 1000;
+        /// Mean connect latency by operating system, actual latency is uniformly distributed between half and one and a half of the mean
+        public long iosConnectLatencyMillis = 1200;
+        public long androidConnectLatencyMillis = 800;
+        /// Time to read payload once connected
+        public long readLatencyMillis = 300;
+        /// Time for MTU negotiation, service discovery, each write and disconnection
+        public long gattLatencyMillis = 50;
+        /// ATT MTU supported by phones
+        public int mtu = 185;
+        /// Probability of connection failing
+        public double connectFailureRate = 0.1;
+        /// Probability of connection never reporting an outcome, leaving the pipeline to time out
+        public double connectHangRate = 0.02;
+        /// Is transmitter of receiving phone supported, otherwise payload and RSSI are written to peers
+        public boolean transmitterSupported = true;
+        /// Maximum number of concurrent connections
+        public int concurrentConnections = BLESensorConfiguration.concurrentConnections;
+        /// Connection policy for ranking connection candidates
+        public BLEConnectionPolicy connectionPolicy = BLESensorConfiguration.connectionPolicy;
+        /// Random seed
+        public long seed = 0;
+    }
+
+    /// Simulation result
+    public final static class Result {
+        public final int phones;
+        public final long elapsedMillis;
+        public final long cycles;
+        public final long connectAttempts;
+        public final long connectFailures;
+        /// Number of connections closed by the pipeline on connect or process timeout
+        public final long timeouts;
+        /// Number of connections established and disconnected once all tasks were complete
+        public final long completed;
+        public final long payloadReads;
+        /// Number of distinct phones whose payload has been acquired
+        public final long payloadsAcquired;
+        /// Distinct payloads acquired per minute
+        public final double payloadAcquisitionRate;
+        /// Mean time from start of simulation to first payload acquisition, for acquired payloads
+        public final double meanTimeToFirstPayloadMillis;
+        /// Fraction of connection capacity in use over the simulation, as connections may overlap scans
+        public final double connectionUtilization;
+        /// Number of complete signal characteristic writes, of which write bundles, and writes including payload sharing data
+        public final long signalWrites;
+        public final long bundleWrites;
+        public final long payloadSharingWrites;
+        /// Distribution of new payloads per second in each scan cycle, as measured by connection scheduler
+        public final Sample newPayloadsPerSecond;
+
+        private Result(final BLERadioSimulator simulator) {
+            this.phones = simulator.phones.size();
+            this.elapsedMillis = simulator.now;
+            this.cycles = simulator.receiver.scanDutyCycle().cycles();
+            this.connectAttempts = simulator.connectAttempts;
+            this.connectFailures = simulator.connectFailures;
+            this.timeouts = simulator.timeouts;
+            this.completed = simulator.completed;
+            this.payloadReads = simulator.payloadReads;
+            this.payloadsAcquired = simulator.payloadsAcquired;
+            this.payloadAcquisitionRate = (simulator.now == 0 ? 0 : simulator.payloadsAcquired / (simulator.now / 60000d));
+            this.meanTimeToFirstPayloadMillis = (simulator.payloadsAcquired == 0 ? 0 : simulator.timeToFirstPayloadMillis / (double) simulator.payloadsAcquired);
+            this.connectionUtilization = (simulator.now == 0 ? 0 : simulator.connectionBusyMillis / (double) (simulator.now * simulator.parameters.concurrentConnections));
+            this.signalWrites = simulator.signalWrites;
+            this.bundleWrites = simulator.bundleWrites;
+            this.payloadSharingWrites = simulator.payloadSharingWrites;
+            this.newPayloadsPerSecond = simulator.receiver.connectionScheduler().newPayloadsPerSecond(simulator.parameters.connectionPolicy.name());
+        }
+
+        @Override
+        public String toString() {
+            return "[phones=" + phones + ",elapsed=" + elapsedMillis + "ms,cycles=" + cycles +
+                    ",connectAttempts=" + connectAttempts + ",connectFailures=" + connectFailures + ",timeouts=" + timeouts + ",completed=" + completed +
+                    ",payloadReads=" + payloadReads + ",payloadsAcquired=" + payloadsAcquired +
+                    ",payloadAcquisitionRate=" + String.format("%.2f", payloadAcquisitionRate) + "/min" +
+                    ",meanTimeToFirstPayload=" + String.format("%.0f", meanTimeToFirstPayloadMillis) + "ms" +
+                    ",connectionUtilization=" + String.format("%.3f", connectionUtilization) +
+                    ",signalWrites=" + signalWrites + ",bundleWrites=" + bundleWrites + ",payloadSharingWrites=" + payloadSharingWrites + "]";
+        }
+    }
+
+    /// Virtual phone
+    private final static class Phone {
+        private final int index;
+        private final BLEDeviceOperatingSystem operatingSystem;
+        private final boolean background;
+        private final boolean writeBundle;
+        private final PayloadData payloadData;
+        private final double rssiMean;
+        private double rssi;
+        private TargetIdentifier address;
+        private long rotateAt;
+        private Data scanRecord;
+        private boolean acquired = false;
+
+        private Phone(final int index, final BLEDeviceOperatingSystem operatingSystem, final boolean background, final boolean writeBundle, final double rssiMean) {
+            this.index = index;
+            this.operatingSystem = operatingSystem;
+            this.background = background;
+            this.writeBundle = writeBundle;
+            this.payloadData = new PayloadData((byte) 0, 16 + (index % 16));
+            this.payloadData.value[0] = (byte) index;
+            this.payloadData.value[1] = (byte) (index >> 8);
+            this.payloadData.value[2] = (byte) (index >> 16);
+            this.rssiMean = rssiMean;
+            this.rssi = rssiMean;
+        }
+    }
+
+    /// Simulated connection handle
+    private final static class Connection {
+        private final String identifier;
+        private final BLEDevice device;
+        private final Phone phone;
+        private final long startedAt;
+        private boolean connected = false;
+        private boolean closed = false;
+        /// Disconnection has been reported to receiver
+        private boolean disconnected = false;
+
+        private Connection(final String identifier, final BLEDevice device, final Phone phone, final long startedAt) {
+            this.identifier = identifier;
+            this.device = device;
+            this.phone = phone;
+            this.startedAt = startedAt;
+        }
+    }
+
+    /// Simulation event at a point in virtual time, ordered by time then by creation sequence
+    private final static class Event implements Comparable<Event>, Task {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+        private boolean cancelled = false;
+
+        private Event(final long time, final long sequence, final Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return (time < other.time ? -1 : 1);
+            }
+            return (sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0));
+        }
+    }
+
+    /// Bluetooth is always on
+    private final static class PoweredOn implements BluetoothStateManager {
+        @Override
+        public BluetoothState state() {
+            return BluetoothState.poweredOn;
+        }
+    }
+
+    /// Transmitter providing payload of receiving phone
+    private final static class Transmitter implements BLETransmitter {
+        private final PayloadData payloadData = new PayloadData((byte) 1, 16);
+        private final boolean supported;
+
+        private Transmitter(final boolean supported) {
+            this.supported = supported;
+        }
+
+        @Override
+        public void add(SensorDelegate delegate) {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public PayloadData payloadData() {
+            return payloadData;
+        }
+
+        @Override
+        public boolean isSupported() {
+            return supported;
+        }
+    }
+
+    public BLERadioSimulator(final Parameters parameters) {
+        this.parameters = parameters;
+        this.random = new Random(parameters.seed);
+        final int concurrentConnections = BLESensorConfiguration.concurrentConnections;
+        BLESensorConfiguration.concurrentConnections = parameters.concurrentConnections;
+        try {
+            // Operations are executed immediately on the simulation thread
+            final Executor operationQueue = new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    runnable.run();
+                }
+            };
+            this.receiver = new ConcreteBLEReceiver(new PoweredOn(), null, new ConcreteBLEDatabase(), new Transmitter(parameters.transmitterSupported),
+                    this, this, operationQueue, new BLEDeviceFilter());
+        } finally {
+            BLESensorConfiguration.concurrentConnections = concurrentConnections;
+        }
+        for (int i = 0; i < parameters.phones; i++) {
+            final BLEDeviceOperatingSystem operatingSystem = (random.nextDouble() < parameters.iosFraction ? BLEDeviceOperatingSystem.ios : BLEDeviceOperatingSystem.android);
+            final boolean background = (operatingSystem == BLEDeviceOperatingSystem.ios && random.nextDouble() < parameters.iosBackgroundFraction);
+            final boolean writeBundle = random.nextDouble() < parameters.writeBundleFraction;
+            final Phone phone = new Phone(i, operatingSystem, background, writeBundle, parameters.rssiMean + random.nextGaussian() * parameters.rssiStandardDeviation);
+            phone.scanRecord = scanRecord(phone);
+            rotate(phone);
+            phone.rotateAt = (long) (random.nextDouble() * parameters.addressRotationMillis);
+            phones.add(phone);
+        }
+        // Scan loop is ticked every second, as by BLETimer
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                receiver.scanLoop().bleTimer(now);
+                schedule(this, TimeInterval.seconds(1).millis());
+            }
+        }, TimeInterval.seconds(1).millis());
+    }
+
+    /// Run simulation for duration in virtual time, returns cumulative result. Debug logging
+    /// is suppressed while running, as every scan result and GATT event is logged.
+    public Result run(final long durationMillis) {
+        final BLEConnectionPolicy connectionPolicy = BLESensorConfiguration.connectionPolicy;
+        final SensorLoggerLevel logLevel = BLESensorConfiguration.logLevel;
+        BLESensorConfiguration.connectionPolicy = parameters.connectionPolicy;
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.fault;
+        try {
+            advance(now + durationMillis);
+        } finally {
+            BLESensorConfiguration.connectionPolicy = connectionPolicy;
+            BLESensorConfiguration.logLevel = logLevel;
+        }
+        return new Result(this);
+    }
+
+    /// Scan record of phone, Android phones advertise sensor service and pseudo device address,
+    /// iOS phones advertise Apple manufacturer data, and sensor service in foreground only.
+    private Data scanRecord(final Phone phone) {
+        final Data scanRecord = new Data();
+        if (!phone.background) {
+            scanRecord.append(new Data(new byte[]{17, 0x07}));
+            scanRecord.append(uuid(BLESensorConfiguration.serviceUUID));
+        }
+        if (phone.operatingSystem == BLEDeviceOperatingSystem.android) {
+            final byte[] pseudoDeviceAddress = new byte[6];
+            random.nextBytes(pseudoDeviceAddress);
+            scanRecord.append(manufacturerData(BLESensorConfiguration.manufacturerIdForSensor, pseudoDeviceAddress));
+        } else {
+            final byte[] appleData = new byte[]{0x10, 0x05, 0x0B, 0x1C, 0, 0, 0};
+            appleData[4] = (byte) random.nextInt();
+            appleData[5] = (byte) random.nextInt();
+            appleData[6] = (byte) random.nextInt();
+            scanRecord.append(manufacturerData(BLESensorConfiguration.manufacturerIdForApple, appleData));
+        }
+        return scanRecord;
+    }
+
+    /// Service UUID in little endian byte order
+    private static Data uuid(final UUID uuid) {
+        final byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (uuid.getLeastSignificantBits() >> (8 * i));
+            bytes[8 + i] = (byte) (uuid.getMostSignificantBits() >> (8 * i));
+        }
+        return new Data(bytes);
+    }
+
+    /// Manufacturer data segment, with manufacturer identifier in little endian byte order
+    private static Data manufacturerData(final int manufacturer, final byte[] data) {
+        final byte[] segment = new byte[data.length + 4];
+        segment[0] = (byte) (data.length + 3);
+        segment[1] = (byte) 0xFF;
+        segment[2] = (byte) manufacturer;
+        segment[3] = (byte) (manufacturer >> 8);
+        System.arraycopy(data, 0, segment, 4, data.length);
+        return new Data(segment);
+    }
+
+    /// Assign new address to phone, as the device will be discovered as a new device.
+    private void rotate(final Phone phone) {
+        if (phone.address != null) {
+            phoneByAddress.remove(phone.address);
+        }
+        phone.address = new TargetIdentifier("SIM-" + phone.index + "-" + (addresses++));
+        phoneByAddress.put(phone.address, phone);
+        phone.rotateAt = now + parameters.addressRotationMillis / 2 + (long) (random.nextDouble() * parameters.addressRotationMillis);
+    }
+
+    /// Process events up to and including time, then move virtual clock to time.
+    private void advance(final long time) {
+        while (!events.isEmpty() && events.peek().time <= time) {
+            step();
+        }
+        now = Math.max(now, time);
+    }
+
+    private void step() {
+        final Event event = events.poll();
+        now = Math.max(now, event.time);
+        if (!event.cancelled) {
+            event.action.run();
+        }
+    }
+
+    // MARK:- BLEScheduler
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public Task schedule(final Runnable runnable, final long delayMillis) {
+        final Event event = new Event(now + delayMillis, sequence++, runnable);
+        events.add(event);
+        return event;
+    }
+
+    // MARK:- BLERadio
+
+    @Override
+    public void add(final BLERadioDelegate delegate) {
+        delegates.add(delegate);
+    }
+
+    /// Each phone in range is discovered once per scan
+    @Override
+    public boolean startScan() {
+        scanning = true;
+        final long scan = ++this.scan;
+        for (final Phone phone : phones) {
+            if (now >= phone.rotateAt) {
+                rotate(phone);
+            }
+            phone.rssi = Math.max(-100, Math.min(-30, phone.rssi + (phone.rssiMean - phone.rssi) * 0.1 + random.nextGaussian() * parameters.rssiStep));
+            if (phone.rssi < parameters.rssiThreshold) {
+                continue;
+            }
+            final BLEScanResult scanResult = new BLEScanResult(phone.address, null, (int) phone.rssi, phone.scanRecord);
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!scanning || scan != BLERadioSimulator.this.scan) {
+                        return;
+                    }
+                    for (final BLERadioDelegate delegate : delegates) {
+                        delegate.radioDidScan(scanResult);
+                    }
+                }
+            }, (long) (random.nextDouble() * parameters.advertLatencyMillis));
+        }
+        return true;
+    }
+
+    @Override
+    public void stopScan() {
+        scanning = false;
+        scan++;
+    }
+
+    @Override
+    public Object connect(final BLEDevice device) {
+        final Phone phone = phoneByAddress.get(device.identifier);
+        if (phone == null) {
+            return null;
+        }
+        connectAttempts++;
+        final Connection connection = new Connection("connection-" + (connections++), device, phone, now);
+        final long meanLatency = (phone.operatingSystem == BLEDeviceOperatingSystem.ios ? parameters.iosConnectLatencyMillis : parameters.androidConnectLatencyMillis);
+        final long latency = meanLatency / 2 + (long) (random.nextDouble() * meanLatency);
+        final boolean fail = random.nextDouble() < parameters.connectFailureRate;
+        if (random.nextDouble() < parameters.connectHangRate) {
+            // No outcome is reported, pipeline must time out
+            return connection;
+        }
+        callback(connection, new Runnable() {
+            @Override
+            public void run() {
+                // Connection fails if address has rotated since discovery
+                if (fail || !device.identifier.equals(phone.address)) {
+                    connectFailures++;
+                    disconnected(connection, false);
+                    return;
+                }
+                connection.connected = true;
+                for (final BLERadioDelegate delegate : delegates) {
+                    delegate.radioDidConnect(device, connection);
+                }
+            }
+        }, latency);
+        return connection;
+    }
+
+    @Override
+    public void disconnect(final Object handle) {
+        final Connection connection = (Connection) handle;
+        callback(connection, new Runnable() {
+            @Override
+            public void run() {
+                if (connection.connected) {
+                    completed++;
+                }
+                disconnected(connection, true);
+            }
+        }, parameters.gattLatencyMillis);
+    }
+
+    @Override
+    public void close(final BLEDevice device, final Object handle) {
+        final Connection connection = (Connection) handle;
+        if (!connection.closed) {
+            connection.closed = true;
+            connectionBusyMillis += (now - connection.startedAt);
+            signalDataAssembler.remove(connection.identifier);
+            // Connection closed by pipeline before disconnection was reported
+            if (!connection.disconnected) {
+                timeouts++;
+            }
+        }
+    }
+
+    @Override
+    public boolean requestMtu(final Object handle, final int mtu) {
+        final Connection connection = (Connection) handle;
+        callback(connection, new Runnable() {
+            @Override
+            public void run() {
+                for (final BLERadioDelegate delegate : delegates) {
+                    delegate.radioDidChangeMtu(connection.device, connection, Math.min(mtu, parameters.mtu), true);
+                }
+            }
+        }, parameters.gattLatencyMillis);
+        return true;
+    }
+
+    @Override
+    public boolean discoverServices(final Object handle) {
+        final Connection connection = (Connection) handle;
+        final Set<UUID> signalDescriptors = new HashSet<>();
+        if (connection.phone.writeBundle) {
+            signalDescriptors.add(BLESensorConfiguration.signalCharacteristicBundleDescriptorUUID);
+        }
+        final List<Characteristic> characteristics = new ArrayList<>(2);
+        characteristics.add(new Characteristic(connection.phone.operatingSystem == BLEDeviceOperatingSystem.ios ?
+                BLESensorConfiguration.iosSignalCharacteristicUUID : BLESensorConfiguration.androidSignalCharacteristicUUID, signalDescriptors));
+        characteristics.add(new Characteristic(BLESensorConfiguration.payloadCharacteristicUUID, Collections.<UUID>emptySet()));
+        callback(connection, new Runnable() {
+            @Override
+            public void run() {
+                for (final BLERadioDelegate delegate : delegates) {
+                    delegate.radioDidDiscoverServices(connection.device, connection, characteristics);
+                }
+            }
+        }, parameters.gattLatencyMillis);
+        return true;
+    }
+
+    @Override
+    public boolean readCharacteristic(final Object handle, final UUID characteristic) {
+        final Connection connection = (Connection) handle;
+        if (!characteristic.equals(BLESensorConfiguration.payloadCharacteristicUUID)) {
+            return false;
+        }
+        callback(connection, new Runnable() {
+            @Override
+            public void run() {
+                final Phone phone = connection.phone;
+                payloadReads++;
+                if (!phone.acquired) {
+                    phone.acquired = true;
+                    payloadsAcquired++;
+                    timeToFirstPayloadMillis += now;
+                }
+                for (final BLERadioDelegate delegate : delegates) {
+                    delegate.radioDidRead(connection.device, connection, characteristic, phone.payloadData.value, true);
+                }
+            }
+        }, parameters.readLatencyMillis);
+        return true;
+    }
+
+    @Override
+    public boolean writeCharacteristic(final Object handle, final UUID characteristic, final byte[] value) {
+        final Connection connection = (Connection) handle;
+        if (!characteristic.equals(BLESensorConfiguration.iosSignalCharacteristicUUID) && !characteristic.equals(BLESensorConfiguration.androidSignalCharacteristicUUID)) {
+            return false;
+        }
+        callback(connection, new Runnable() {
+            @Override
+            public void run() {
+                final Data signalData = signalDataAssembler.append(connection.identifier, value);
+                if (signalData != null) {
+                    signalWrites(signalData);
+                }
+                for (final BLERadioDelegate delegate : delegates) {
+                    delegate.radioDidWrite(connection.device, connection, characteristic, true);
+                }
+            }
+        }, parameters.gattLatencyMillis);
+        return true;
+    }
+
+    /// Count complete signal characteristic write received by phone
+    private void signalWrites(final Data signalData) {
+        signalWrites++;
+        switch (SignalCharacteristicData.detect(signalData)) {
+            case payloadSharing:
+                payloadSharingWrites++;
+                break;
+            case bundle: {
+                bundleWrites++;
+                final List<Data> bundles = SignalCharacteristicData.decodeWriteBundle(signalData);
+                if (bundles != null) {
+                    for (final Data bundle : bundles) {
+                        if (SignalCharacteristicData.detect(bundle) == SignalCharacteristicDataType.payloadSharing) {
+                            payloadSharingWrites++;
+                        }
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    /// Schedule callback for connection, callbacks are not delivered once the connection has
+    /// been closed, e.g. after connect timeout, or has been disconnected.
+    private void callback(final Connection connection, final Runnable runnable, final long delayMillis) {
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (connection.closed || connection.disconnected) {
+                    return;
+                }
+                runnable.run();
+            }
+        }, delayMillis);
+    }
+
+    private void disconnected(final Connection connection, final boolean success) {
+        connection.disconnected = true;
+        for (final BLERadioDelegate delegate : delegates) {
+            delegate.radioDidDisconnect(connection.device, connection, success);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BLERadioSimulatorTests {
+
+    private static BLERadioSimulator.Result simulate(final BLERadioSimulator.Parameters parameters, final long durationMillis) {
+        return new BLERadioSimulator(parameters).run(durationMillis);
+    }
+
+    @Test
+    public void testDeterministic() throws Exception {
+        final BLERadioSimulator.Parameters parameters = new BLERadioSimulator.Parameters();
+        parameters.phones = 50;
+        parameters.seed = 7;
+        parameters.connectionPolicy = new ScanOrderConnectionPolicy();
+        final BLERadioSimulator.Result result1 = simulate(parameters, TimeInterval.minutes(10).millis());
+        final BLERadioSimulator.Result result2 = simulate(parameters, TimeInterval.minutes(10).millis());
+        assertEquals(result1.toString(), result2.toString());
+    }
+
+    @Test
+    public void testSmallCrowd() throws Exception {
+        final BLERadioSimulator.Parameters parameters = new BLERadioSimulator.Parameters();
+        parameters.phones = 10;
+        parameters.rssiThreshold = -200;
+        // Devices are ignored after connection failure for longer than the simulation in wall clock time
+        parameters.connectFailureRate = 0;
+        final BLERadioSimulator.Result result = simulate(parameters, TimeInterval.minutes(5).millis());
+        assertEquals(10, result.payloadsAcquired);
+        assertTrue(result.connectAttempts >= result.payloadReads);
+        assertTrue(result.connectionUtilization > 0 && result.connectionUtilization <= 1);
+    }
+
+    @Test
+    public void testTimeouts() throws Exception {
+        final BLERadioSimulator.Parameters parameters = new BLERadioSimulator.Parameters();
+        parameters.phones = 20;
+        parameters.rssiThreshold = -200;
+        parameters.connectFailureRate = 0;
+        parameters.connectHangRate = 0.5;
+        final BLERadioSimulator.Result result = simulate(parameters, TimeInterval.minutes(10).millis());
+        // Hung connections are closed by connect timeout in virtual time, releasing
+        // permits for retries, thus all payloads are eventually acquired
+        assertTrue(result.timeouts > 0);
+        // Connections still in progress at the end are not accounted for
+        assertTrue(result.completed + result.connectFailures + result.timeouts <= result.connectAttempts);
+        assertTrue(result.completed + result.connectFailures + result.timeouts + parameters.concurrentConnections >= result.connectAttempts);
+        assertEquals(20, result.payloadsAcquired);
+    }
+
+    @Test
+    public void testWrites() throws Exception {
+        final BLERadioSimulator.Parameters parameters = new BLERadioSimulator.Parameters();
+        parameters.phones = 20;
+        parameters.rssiThreshold = -200;
+        parameters.connectFailureRate = 0;
+        parameters.connectHangRate = 0;
+        parameters.transmitterSupported = false;
+        final BLERadioSimulator.Result result = simulate(parameters, TimeInterval.minutes(5).millis());
+        // Receiver that cannot transmit writes payload and RSSI to every phone, combined
+        // into one write bundle for phones that accept bundles, and shares payloads with iOS
+        assertEquals(20, result.payloadsAcquired);
+        assertTrue(result.bundleWrites > 0);
+        assertTrue(result.signalWrites > result.bundleWrites);
+        assertTrue(result.payloadSharingWrites > 0);
+        assertEquals(result.connectAttempts, result.completed);
+    }
+
+    @Test
+    public void testVirtualClock() throws Exception {
+        final BLERadioSimulator.Parameters parameters = new BLERadioSimulator.Parameters();
+        parameters.phones = 200;
+        parameters.connectionPolicy = new ValueBasedConnectionPolicy();
+        final BLERadioSimulator.Result result = simulate(parameters, TimeInterval.minutes(10).millis());
+        // Connection scheduler measures cycles in virtual time, thus new payloads per second
+        // is bounded by concurrent connections over the minimum connect and read latency
+        final double minimumLatencySeconds = (parameters.androidConnectLatencyMillis / 2 + parameters.readLatencyMillis) / 1000d;
+        assertTrue(result.newPayloadsPerSecond.count() > 0);
+        assertTrue(result.newPayloadsPerSecond.mean() > 0);
+        assertTrue(result.newPayloadsPerSecond.max() <= parameters.concurrentConnections / minimumLatencySeconds);
+    }
+
+    /// Payload acquisition rate, connection utilization and signal writes of the receiver for
+    /// crowds of 10 to 10,000 phones.
+    /// Benchmark takes minutes to run, thus it is excluded from the unit tests.
+    @Ignore
+    @Test
+    public void testCrowdBenchmark() throws Exception {
+        for (final int phones : new int[]{10, 100, 1000, 10000}) {
+            for (final BLEConnectionPolicy connectionPolicy : new BLEConnectionPolicy[]{new ScanOrderConnectionPolicy(), new ValueBasedConnectionPolicy()}) {
+                final BLERadioSimulator.Parameters parameters = new BLERadioSimulator.Parameters();
+                parameters.phones = phones;
+                parameters.connectionPolicy = connectionPolicy;
+                final long startTime = System.nanoTime();
+                final BLERadioSimulator.Result result = simulate(parameters, TimeInterval.minutes(30).millis());
+                final long elapsed = (System.nanoTime() - startTime) / 1000000;
+                System.err.println("crowd (policy=" + connectionPolicy.name() + ",result=" + result + ",wallClock=" + elapsed + "ms)");
+            }
+        }
+    }
+}
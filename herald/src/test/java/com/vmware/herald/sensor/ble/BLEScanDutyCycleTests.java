@@ -0,0 +1,65 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BLEScanDutyCycleTests {
+
+    /// Run one scan cycle with given discovery and processing time
+    private static long cycle(final BLEScanDutyCycle dutyCycle, long now, final int discovered, final int newDevices, final long processMillis, final boolean backlog) {
+        dutyCycle.scanStarted(now);
+        now += dutyCycle.scanOnMillis();
+        dutyCycle.scanStopped(now);
+        now += dutyCycle.scanRestMillis();
+        dutyCycle.processStarted(now);
+        dutyCycle.discovered(discovered, newDevices);
+        now += processMillis;
+        dutyCycle.processed(now, backlog);
+        return now + dutyCycle.scanOffMillis();
+    }
+
+    @Test
+    public void testFixed() throws Exception {
+        BLESensorConfiguration.scanDutyCycleMode = BLEScanDutyCycleMode.fixed;
+        try {
+            final BLEScanDutyCycle dutyCycle = new BLEScanDutyCycle();
+            long now = 0;
+            for (int i=0; i<10; i++) {
+                now = cycle(dutyCycle, now, 0, 0, 100, false);
+            }
+            assertEquals(BLEScanDutyCycle.defaultScanOnMillis, dutyCycle.scanOnMillis());
+            assertEquals(BLEScanDutyCycle.defaultProcessMillis, dutyCycle.processMillis());
+            assertEquals(BLEScanDutyCycle.defaultScanOffMillis, dutyCycle.scanOffMillis());
+            assertEquals(10, dutyCycle.cycles());
+        } finally {
+            BLESensorConfiguration.scanDutyCycleMode = BLEScanDutyCycleMode.adaptive;
+        }
+    }
+
+    @Test
+    public void testAdaptive() throws Exception {
+        final BLEScanDutyCycle dutyCycle = new BLEScanDutyCycle();
+        long now = 0;
+        // Empty environment backs off up to latency budget, within battery budget
+        for (int i=0; i<20; i++) {
+            now = cycle(dutyCycle, now, 0, 0, 100, false);
+        }
+        assertEquals(BLESensorConfiguration.scanDutyCycleLatencyBudget.millis(), dutyCycle.scanOffMillis());
+        assertTrue(dutyCycle.scanOnMillis() < BLEScanDutyCycle.defaultScanOnMillis);
+        // Crowded environment with many new devices scans for longer, and returns to minimum off time
+        for (int i=0; i<5; i++) {
+            now = cycle(dutyCycle, now, 50, 40, 30000, true);
+        }
+        assertEquals(BLEScanDutyCycle.defaultScanOffMillis, dutyCycle.scanOffMillis());
+        assertTrue(dutyCycle.scanOnMillis() > BLEScanDutyCycle.defaultScanOnMillis);
+        assertEquals(BLEScanDutyCycle.defaultProcessMillis, dutyCycle.processMillis());
+        assertEquals(5, dutyCycle.backlogCycles());
+        assertTrue(dutyCycle.scanDutyCycle().max() <= BLESensorConfiguration.scanDutyCycleBatteryBudget);
+    }
+}
@@ -0,0 +1,83 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.ImmediateSendData;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadSharingData;
+import com.vmware.herald.sensor.datatype.RSSI;
+import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BLESignalDataAssemblerTests {
+
+    @Test
+    public void testSignalDataLength() throws Exception {
+        final Data payload = SignalCharacteristicData.encodeWritePayload(new PayloadData((byte) 1, 300));
+        assertEquals(303, SignalCharacteristicData.signalDataLength(payload.value, payload.value.length));
+        // Header incomplete
+        assertEquals(0, SignalCharacteristicData.signalDataLength(payload.value, 2));
+        assertEquals(303, SignalCharacteristicData.signalDataLength(payload.value, 3));
+        final Data payloadSharing = SignalCharacteristicData.encodeWritePayloadSharing(new PayloadSharingData(new RSSI(-10), new Data((byte) 2, 40)));
+        assertEquals(0, SignalCharacteristicData.signalDataLength(payloadSharing.value, 4));
+        assertEquals(45, SignalCharacteristicData.signalDataLength(payloadSharing.value, 5));
+        assertEquals(3, SignalCharacteristicData.signalDataLength(SignalCharacteristicData.encodeWriteRssi(new RSSI(-1)).value, 1));
+        assertEquals(-1, SignalCharacteristicData.signalDataLength(new byte[]{99, 0, 0}, 3));
+    }
+
+    @Test
+    public void testSingleFragment() throws Exception {
+        final BLESignalDataAssembler assembler = new BLESignalDataAssembler(2, 64);
+        final Data rssi = SignalCharacteristicData.encodeWriteRssi(new RSSI(-50));
+        // Handed off without copying
+        assertSame(rssi.value, assembler.append("a", rssi.value).value);
+        assertEquals(0, assembler.pending());
+    }
+
+    @Test
+    public void testFragments() throws Exception {
+        final BLESignalDataAssembler assembler = new BLESignalDataAssembler(2, 64);
+        final Data immediateSend = SignalCharacteristicData.encodeImmediateSend(new ImmediateSendData(new Data((byte) 3, 200)));
+        final byte[][] fragments = fragment(immediateSend.value, 20);
+        // Header spans fragments
+        assertNull(assembler.append("a", Arrays.copyOf(fragments[0], 2)));
+        assertNull(assembler.append("a", Arrays.copyOfRange(fragments[0], 2, 20)));
+        // Interleaved centrals are reassembled independently
+        final Data payload = SignalCharacteristicData.encodeWritePayload(new PayloadData((byte) 4, 30));
+        final byte[][] payloadFragments = fragment(payload.value, 20);
+        assertNull(assembler.append("b", payloadFragments[0]));
+        Data data = null;
+        for (int i = 1; i < fragments.length; i++) {
+            data = assembler.append("a", fragments[i]);
+            if (i < fragments.length - 1) {
+                assertNull(data);
+            }
+        }
+        assertArrayEquals(immediateSend.value, data.value);
+        assertArrayEquals(payload.value, assembler.append("b", payloadFragments[1]).value);
+        assertEquals(0, assembler.pending());
+        // Partial data is discarded on disconnect
+        assertNull(assembler.append("c", payloadFragments[0]));
+        assembler.remove("c");
+        assertArrayEquals(payload.value, assembler.append("c", payload.value).value);
+    }
+
+    private static byte[][] fragment(final byte[] value, final int size) {
+        final byte[][] fragments = new byte[(value.length + size - 1) / size][];
+        for (int i = 0; i < fragments.length; i++) {
+            fragments[i] = Arrays.copyOfRange(value, i * size, Math.min(value.length, (i + 1) * size));
+        }
+        return fragments;
+    }
+}
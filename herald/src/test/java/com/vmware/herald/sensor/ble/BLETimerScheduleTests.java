@@ -0,0 +1,129 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BLETimerScheduleTests {
+    private final static BLETimerDelegate delegate = new BLETimerDelegate() {
+        @Override
+        public void bleTimer(long currentTimeMillis) {
+        }
+    };
+
+    @Test
+    public void testPeriod() throws Exception {
+        final BLETimerSchedule schedule = new BLETimerSchedule();
+        final BLETimerSchedule.Entry fast = schedule.add(delegate, 1000, 1000, 0);
+        final BLETimerSchedule.Entry slow = schedule.add(delegate, 5000, 5000, 0);
+        assertEquals(1000, schedule.next());
+        assertTrue(schedule.due(999).isEmpty());
+        int fastTicks = 0, slowTicks = 0;
+        for (long now = 1000; now <= 10000; now += 1000) {
+            for (final BLETimerSchedule.Tick tick : schedule.due(now)) {
+                if (tick.entry == fast) {
+                    fastTicks++;
+                } else {
+                    slowTicks++;
+                }
+            }
+        }
+        assertEquals(10, fastTicks);
+        assertEquals(2, slowTicks);
+        assertEquals(11000, schedule.next());
+    }
+
+    @Test
+    public void testDriftCompensation() throws Exception {
+        final BLETimerSchedule schedule = new BLETimerSchedule();
+        final BLETimerSchedule.Entry entry = schedule.add(delegate, 1000, 200, 0);
+        // Late tick does not delay subsequent ticks
+        List<BLETimerSchedule.Tick> ticks = schedule.due(1300);
+        assertEquals(1, ticks.size());
+        assertEquals(1000, ticks.get(0).due);
+        entry.executed(ticks.get(0).due, 1300);
+        assertEquals(2000, schedule.next());
+        ticks = schedule.due(2000);
+        entry.executed(ticks.get(0).due, 2000);
+        assertEquals(1, entry.missedDeadlines());
+        assertEquals(150, entry.jitter.mean(), 0);
+        // Missed ticks are skipped, remaining aligned to period
+        ticks = schedule.due(5500);
+        assertEquals(1, ticks.size());
+        assertSame(entry, ticks.get(0).entry);
+        assertEquals(3000, ticks.get(0).due);
+        assertEquals(2, entry.skipped());
+        assertEquals(6000, schedule.next());
+    }
+
+    @Test
+    public void testOverrun() throws Exception {
+        final BLETimerSchedule schedule = new BLETimerSchedule();
+        final BLETimerSchedule.Entry entry = schedule.add(delegate, 1000, 500, 0);
+        assertTrue(entry.claim());
+        // Tick is skipped while previous tick is still executing
+        assertFalse(entry.claim());
+        assertEquals(1, entry.skipped());
+        assertFalse(entry.completed(1500));
+        assertEquals(1, entry.overruns());
+        assertTrue(entry.claim());
+        assertTrue(entry.completed(10));
+        assertEquals(2, entry.executionTime.count());
+        assertEquals(1500, entry.executionTime.max(), 0);
+    }
+
+    @Test
+    public void testWakeLockReleasedByDefault() throws Exception {
+        final long scanWindow = BLEScanDutyCycle.defaultScanOnMillis;
+        // Periodic ticks every second hold wake lock throughout scan window
+        assertEquals(0, released(sensorSchedule(false), scanWindow));
+        // Ticks on next state change release wake lock throughout scan window
+        final BLETimerSchedule schedule = sensorSchedule(true);
+        assertTrue(schedule.idle(0, BLESensorConfiguration.timerWakeLockThreshold));
+        assertEquals(scanWindow, released(schedule, scanWindow));
+        // Wake lock is held at all times if threshold is never
+        assertFalse(schedule.idle(0, TimeInterval.never));
+    }
+
+    /// Scan and advert loops, payload cache refresh and database snapshot, as registered by sensor,
+    /// at start of scan window with advert started. Loops are ticked every second, or on their
+    /// next state change, i.e. end of scan window and advert refresh.
+    private static BLETimerSchedule sensorSchedule(final boolean onStateChange) {
+        final BLETimerSchedule schedule = new BLETimerSchedule();
+        final BLETimerSchedule.Entry scanLoop = schedule.add(delegate, 1000, 1000, 0);
+        final BLETimerSchedule.Entry advertLoop = schedule.add(delegate, 1000, 1000, 0);
+        schedule.add(delegate, 5000, 10000, 0);
+        schedule.add(delegate, 10000, 60000, 0);
+        if (onStateChange) {
+            schedule.reschedule(scanLoop, BLEScanDutyCycle.defaultScanOnMillis);
+            schedule.reschedule(advertLoop, BLESensorConfiguration.advertRefreshTimeInterval.millis());
+        }
+        return schedule;
+    }
+
+    /// Time wake lock is released until time, by running timer loop over schedule from time 0
+    private static long released(final BLETimerSchedule schedule, final long until) {
+        long released = 0;
+        long now = 0;
+        while (now < until) {
+            schedule.due(now);
+            final long next = Math.min(schedule.next(), until);
+            if (schedule.idle(now, BLESensorConfiguration.timerWakeLockThreshold)) {
+                released += next - now;
+            }
+            now = next;
+        }
+        return released;
+    }
+}
@@ -0,0 +1,452 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadSharingData;
+import com.vmware.herald.sensor.datatype.RSSI;
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcreteBLEDatabaseTests {
+
+    @Test
+    public void testDevicePayloadDataIndex() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final PayloadData payloadData1 = new PayloadData((byte) 1, 23);
+        final PayloadData payloadData2 = new PayloadData((byte) 2, 23);
+        // Same payload, same device
+        final BLEDevice device1 = database.device(payloadData1);
+        assertEquals(device1, database.device(new PayloadData((byte) 1, 23)));
+        assertEquals(1, database.devices().size());
+        // Different payload, different device
+        final BLEDevice device2 = database.device(payloadData2);
+        assertNotEquals(device1, device2);
+        assertEquals(2, database.devices().size());
+        // Payload update is reflected in lookup
+        device2.payloadData(new PayloadData((byte) 3, 23));
+        assertEquals(device2, database.device(new PayloadData((byte) 3, 23)));
+        assertNotEquals(device2, database.device(payloadData2));
+        assertEquals(3, database.devices().size());
+        // Deleted device is removed from lookup
+        database.delete(device1.identifier);
+        assertNotEquals(device1, database.device(payloadData1));
+    }
+
+    @Test
+    public void testExpiryQueue() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device1 = database.device(new PayloadData((byte) 1, 23));
+        final BLEDevice device2 = database.device(new PayloadData((byte) 2, 23));
+        final Map<BLEDevice, Date> timestamps = new HashMap<>();
+        timestamps.put(device1, new Date(1000));
+        timestamps.put(device2, new Date(2000));
+        final BLEDeviceExpiryQueue queue = new BLEDeviceExpiryQueue() {
+            @Override
+            protected Date timestamp(BLEDevice device) {
+                return timestamps.get(device);
+            }
+        };
+        queue.add(device1);
+        queue.add(device2);
+        queue.add(device2);
+        assertEquals(2, queue.size());
+        assertTrue(queue.takeExpired(1000).isEmpty());
+        // Updated device is re-queued and not expired
+        timestamps.put(device1, new Date(3000));
+        assertTrue(queue.takeExpired(1500).isEmpty());
+        assertEquals(2, queue.size());
+        final List<BLEDevice> expired = queue.takeExpired(2500);
+        assertEquals(1, expired.size());
+        assertEquals(device2, expired.get(0));
+        // Expired device is only reported once
+        assertTrue(queue.takeExpired(2500).isEmpty());
+        assertEquals(1, queue.size());
+        // Untracked device is dropped
+        timestamps.remove(device1);
+        assertTrue(queue.takeExpired(4000).isEmpty());
+        assertEquals(0, queue.size());
+        // Nothing has been connected
+        assertTrue(database.takeDevicesConnectedFor(new TimeInterval(0)).isEmpty());
+    }
+
+    @Test
+    public void testPayloadSharingData() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice peer = database.device(new PayloadData((byte) 0, 23));
+        peer.operatingSystem(BLEDeviceOperatingSystem.ios);
+        // No RSSI for peer, nothing to share
+        assertEquals(0, database.payloadSharingData(peer).data.value.length);
+        peer.rssi(new RSSI(-50));
+        // Peer is not shared with itself
+        assertEquals(0, database.payloadSharingData(peer).data.value.length);
+        // Android devices are not shared
+        final BLEDevice android = database.device(new PayloadData((byte) 1, 23));
+        android.operatingSystem(BLEDeviceOperatingSystem.android);
+        assertEquals(0, database.payloadSharingData(peer).data.value.length);
+        // iOS and receive only devices are shared
+        final BLEDevice ios = database.device(new PayloadData((byte) 2, 23));
+        ios.operatingSystem(BLEDeviceOperatingSystem.ios);
+        android.receiveOnly(true);
+        final PayloadSharingData payloadSharingData = database.payloadSharingData(peer);
+        assertEquals(-50, payloadSharingData.rssi.value);
+        assertEquals(46, payloadSharingData.data.value.length);
+        // Most recently updated first
+        assertEquals(1, payloadSharingData.data.value[0]);
+        assertEquals(2, payloadSharingData.data.value[23]);
+        // Cached data is reused for peers until membership changes
+        final BLEDevice androidPeer = database.device(new PayloadData((byte) 3, 23));
+        androidPeer.operatingSystem(BLEDeviceOperatingSystem.android);
+        androidPeer.rssi(new RSSI(-60));
+        final PayloadSharingData androidPeerPayloadSharingData = database.payloadSharingData(androidPeer);
+        assertEquals(69, androidPeerPayloadSharingData.data.value.length);
+        assertSame(androidPeerPayloadSharingData.data, database.payloadSharingData(androidPeer).data);
+        database.delete(ios.identifier);
+        assertEquals(23, database.payloadSharingData(peer).data.value.length);
+    }
+
+    @Test
+    public void testPayloadSharingDataCrowd() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        // 30 iOS devices, only 22 payloads fit in transfer limit
+        final List<BLEDevice> devices = new ArrayList<>();
+        for (int i=0; i<30; i++) {
+            final BLEDevice device = database.device(new PayloadData((byte) i, 23));
+            device.operatingSystem(BLEDeviceOperatingSystem.ios);
+            device.rssi(new RSSI(-50));
+            devices.add(device);
+        }
+        final BLEDevice androidPeer = database.device(new PayloadData((byte) 100, 23));
+        androidPeer.operatingSystem(BLEDeviceOperatingSystem.android);
+        androidPeer.rssi(new RSSI(-60));
+        // Prebuilt data is reused for peers when crowded
+        final PayloadSharingData shared = database.payloadSharingData(androidPeer);
+        assertEquals(22 * 23, shared.data.value.length);
+        assertSame(shared.data, database.payloadSharingData(androidPeer).data);
+        // Peer in shared data gets own payload replaced by spare
+        final BLEDevice peer = devices.get(29);
+        final PayloadSharingData peerShared = database.payloadSharingData(peer);
+        assertEquals(22 * 23, peerShared.data.value.length);
+        for (int i=0; i<peerShared.data.value.length; i+=23) {
+            assertNotEquals((byte) 29, peerShared.data.value[i]);
+        }
+        assertEquals(7, peerShared.data.value[21 * 23]);
+    }
+
+    @Test
+    public void testEventBus() throws Exception {
+        final List<BLEDatabaseEvent> received = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Queue<BLEDatabaseDelegate> delegates = new ConcurrentLinkedQueue<>();
+        delegates.add(new BLEDatabaseBatchDelegate() {
+            @Override
+            public void bleDatabaseDidNotify(List<BLEDatabaseEvent> events) {
+                received.addAll(events);
+                latch.countDown();
+            }
+
+            @Override
+            public void bleDatabaseDidCreate(BLEDevice device) {
+            }
+
+            @Override
+            public void bleDatabaseDidUpdate(BLEDevice device, BLEDeviceAttribute attribute) {
+            }
+
+            @Override
+            public void bleDatabaseDidDelete(BLEDevice device) {
+            }
+        });
+        final BLEDatabaseEventBus eventBus = new BLEDatabaseEventBus(delegates, 50, 3);
+        final BLEDevice device = new BLEDevice(new TargetIdentifier(), null);
+        eventBus.publish(BLEDatabaseEventType.create, device, null);
+        for (int i=0; i<10; i++) {
+            eventBus.publish(BLEDatabaseEventType.update, device, BLEDeviceAttribute.rssi);
+        }
+        eventBus.publish(BLEDatabaseEventType.update, device, BLEDeviceAttribute.txPower);
+        // Buffer is full, measurements are dropped, everything else is held in overflow
+        final BLEDevice other = new BLEDevice(new TargetIdentifier(), null);
+        eventBus.publish(BLEDatabaseEventType.update, other, BLEDeviceAttribute.rssi);
+        eventBus.publish(BLEDatabaseEventType.create, other, null);
+        eventBus.publish(BLEDatabaseEventType.update, other, BLEDeviceAttribute.payloadData);
+        eventBus.publish(BLEDatabaseEventType.update, other, BLEDeviceAttribute.payloadData);
+        eventBus.publish(BLEDatabaseEventType.delete, device, null);
+        assertEquals(6, eventBus.queueDepth());
+        assertEquals(10, eventBus.coalesced());
+        assertEquals(1, eventBus.dropped());
+        assertEquals(3, eventBus.overflowed());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(6, received.size());
+        assertEquals(BLEDatabaseEventType.create, received.get(0).type);
+        assertEquals(BLEDeviceAttribute.rssi, received.get(1).attribute);
+        assertEquals(BLEDeviceAttribute.txPower, received.get(2).attribute);
+        assertEquals(BLEDatabaseEventType.create, received.get(3).type);
+        assertSame(other, received.get(4).device);
+        assertEquals(BLEDeviceAttribute.payloadData, received.get(4).attribute);
+        assertEquals(BLEDatabaseEventType.delete, received.get(5).type);
+        assertEquals(0, eventBus.queueDepth());
+        assertEquals(6, eventBus.dispatched());
+    }
+
+    @Test
+    public void testEventBusPayloadDataDelivery() throws Exception {
+        final List<BLEDevice> didRead = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Queue<BLEDatabaseDelegate> delegates = new ConcurrentLinkedQueue<>();
+        delegates.add(new BLEDatabaseDelegate() {
+            @Override
+            public void bleDatabaseDidCreate(BLEDevice device) {
+            }
+
+            @Override
+            public void bleDatabaseDidUpdate(BLEDevice device, BLEDeviceAttribute attribute) {
+                if (attribute == BLEDeviceAttribute.payloadData) {
+                    didRead.add(device);
+                    latch.countDown();
+                }
+            }
+
+            @Override
+            public void bleDatabaseDidDelete(BLEDevice device) {
+            }
+        });
+        final BLEDatabaseEventBus eventBus = new BLEDatabaseEventBus(delegates, 50, 16);
+        // Fill buffer with measurements from a crowd
+        for (int i=0; i<32; i++) {
+            eventBus.publish(BLEDatabaseEventType.update, new BLEDevice(new TargetIdentifier(), null), BLEDeviceAttribute.rssi);
+        }
+        final BLEDevice device = new BLEDevice(new TargetIdentifier(), null);
+        eventBus.publish(BLEDatabaseEventType.update, device, BLEDeviceAttribute.payloadData);
+        assertEquals(16, eventBus.dropped());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, didRead.size());
+        assertSame(device, didRead.get(0));
+    }
+
+    @Test
+    public void testEventBusBounded() throws Exception {
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch didRead = new CountDownLatch(200);
+        final Queue<BLEDatabaseDelegate> delegates = new ConcurrentLinkedQueue<>();
+        delegates.add(new BLEDatabaseDelegate() {
+            @Override
+            public void bleDatabaseDidCreate(BLEDevice device) {
+                // Stalled delegate
+                stalled.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+            }
+
+            @Override
+            public void bleDatabaseDidUpdate(BLEDevice device, BLEDeviceAttribute attribute) {
+                if (attribute == BLEDeviceAttribute.payloadData) {
+                    didRead.countDown();
+                }
+            }
+
+            @Override
+            public void bleDatabaseDidDelete(BLEDevice device) {
+            }
+        });
+        final BLEDatabaseEventBus eventBus = new BLEDatabaseEventBus(delegates, 10, 16);
+        // Flood with create and payload events while delegate is stalled
+        final Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i=0; i<200; i++) {
+                    final BLEDevice device = new BLEDevice(new TargetIdentifier(), null);
+                    eventBus.publish(BLEDatabaseEventType.create, device, null);
+                    eventBus.publish(BLEDatabaseEventType.update, device, BLEDeviceAttribute.payloadData);
+                }
+            }
+        });
+        publisher.start();
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+        for (int i=0; i<500 && eventBus.blocked() == 0; i++) {
+            Thread.sleep(10);
+        }
+        // Publisher is blocked, rather than growing overflow without limit
+        assertTrue(eventBus.blocked() > 0);
+        assertTrue(publisher.isAlive());
+        assertTrue(eventBus.queueDepth() <= 32);
+        assertTrue(eventBus.maxQueueDepth() <= 32);
+        // All events are delivered once delegate resumes
+        release.countDown();
+        publisher.join(5000);
+        assertFalse(publisher.isAlive());
+        assertTrue(didRead.await(5, TimeUnit.SECONDS));
+        assertEquals(0, eventBus.dropped());
+        assertTrue(eventBus.maxQueueDepth() <= 32);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final File file = File.createTempFile("ble_devices", ".bin");
+        file.deleteOnExit();
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice ios = database.device(new PayloadData((byte) 1, 23));
+        ios.operatingSystem(BLEDeviceOperatingSystem.ios);
+        final BLEDevice ignored = database.device(new PayloadData((byte) 2, 23));
+        ignored.operatingSystem(BLEDeviceOperatingSystem.ignore);
+        final BLEDevice stale = new BLEDevice(new TargetIdentifier(), database, new Date(new Date().getTime() - TimeInterval.minutes(60).millis()),
+                null, BLEDeviceOperatingSystem.android, new PayloadData((byte) 3, 23), null, null, null, 0);
+        final List<BLEDevice> devices = database.devices();
+        devices.add(stale);
+        new BLEDatabaseSnapshot(file).write(devices);
+
+        final ConcreteBLEDatabase restoredDatabase = new ConcreteBLEDatabase();
+        final List<BLEDevice> created = new ArrayList<>();
+        final List<BLEDevice> didRead = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(2);
+        restoredDatabase.add(new BLEDatabaseDelegate() {
+            @Override
+            public void bleDatabaseDidCreate(BLEDevice device) {
+                created.add(device);
+                latch.countDown();
+            }
+
+            @Override
+            public void bleDatabaseDidUpdate(BLEDevice device, BLEDeviceAttribute attribute) {
+                if (attribute == BLEDeviceAttribute.payloadData) {
+                    didRead.add(device);
+                }
+            }
+
+            @Override
+            public void bleDatabaseDidDelete(BLEDevice device) {
+            }
+        });
+        restoredDatabase.restore(new BLEDatabaseSnapshot(file));
+        assertEquals(2, restoredDatabase.devices().size());
+        // Restored devices are published as created, without reporting old payloads as read
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, created.size());
+        assertEquals(0, didRead.size());
+        final BLEDevice restoredIos = restoredDatabase.device(ios.identifier);
+        assertEquals(BLEDeviceOperatingSystem.ios, restoredIos.operatingSystem());
+        assertEquals(ios.payloadData(), restoredIos.payloadData());
+        assertEquals(ios.lastPayloadDataUpdate(), restoredIos.lastPayloadDataUpdate());
+        assertSame(restoredIos, restoredDatabase.device(ios.payloadData()));
+        final BLEDevice restoredIgnored = restoredDatabase.device(ignored.identifier);
+        assertTrue(restoredIgnored.ignore());
+        assertEquals(1, restoredIgnored.ignoreRequestCount());
+        assertNull(restoredDatabase.device(stale.identifier));
+    }
+
+    @Test
+    public void testDeviceStateTransition() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device = database.device(new PayloadData((byte) 1, 23));
+        assertTrue(device.state(BLEDeviceState.disconnected, BLEDeviceState.connecting));
+        assertFalse(device.state(BLEDeviceState.disconnected, BLEDeviceState.connecting));
+        assertTrue(device.state(BLEDeviceState.connecting, BLEDeviceState.connected));
+        assertEquals(BLEDeviceState.connected, device.state());
+        assertTrue(device.lastConnectedAt() != null);
+
+        // Concurrent updates are not lost
+        final long version = device.record().version();
+        final Thread[] threads = new Thread[4];
+        for (int i=0; i<threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j=0; j<1000; j++) {
+                        device.registerDiscovery();
+                        device.operatingSystem(BLEDeviceOperatingSystem.ignore);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(version + 8000, device.record().version());
+        assertEquals(4000, device.ignoreRequestCount());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        BLESensorConfiguration.deviceTableCapacity = 10;
+        try {
+            final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+            final List<BLEDevice> devices = new ArrayList<>();
+            for (int i=0; i<10; i++) {
+                devices.add(database.device(new PayloadData((byte) i, 23)));
+            }
+            // Devices 0-4 have been connected, device 5 is still connected
+            for (int i=0; i<=5; i++) {
+                devices.get(i).state(BLEDeviceState.connected);
+                if (i < 5) {
+                    devices.get(i).state(BLEDeviceState.disconnected);
+                }
+            }
+            // Device 7 has the weakest signal
+            devices.get(6).rssi(new RSSI(-50));
+            devices.get(7).rssi(new RSSI(-90));
+            devices.get(8).rssi(new RSSI(-60));
+            devices.get(9).rssi(new RSSI(-60));
+            database.device(new PayloadData((byte) 10, 23));
+            assertEquals(10, database.devices().size());
+            assertNull(database.device(devices.get(7).identifier));
+            assertSame(devices.get(6), database.device(devices.get(6).identifier));
+            final BLEDatabaseFootprint footprint = database.footprint();
+            assertEquals(10, footprint.devices);
+            assertEquals(1, footprint.evictions);
+            assertEquals(1, footprint.evictionRuns);
+            // Connected device is never evicted
+            for (int i=11; i<30; i++) {
+                database.device(new PayloadData((byte) i, 23));
+            }
+            assertEquals(10, database.devices().size());
+            assertSame(devices.get(5), database.device(devices.get(5).identifier));
+
+            // Concurrent inserts do not exceed capacity
+            final Thread[] threads = new Thread[4];
+            for (int i=0; i<threads.length; i++) {
+                final int thread = i;
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j=0; j<100; j++) {
+                            database.device(new PayloadData((byte) thread, 1000 + j));
+                        }
+                    }
+                });
+                threads[i].start();
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(10, database.devices().size());
+            assertSame(devices.get(5), database.device(devices.get(5).identifier));
+        } finally {
+            BLESensorConfiguration.deviceTableCapacity = null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.datatype;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ByteSliceTests {
+
+    @Test
+    public void testSlice() throws Exception {
+        final byte[] array = new byte[]{0, 1, 2, 3, 4, 5, 6, 7};
+        final ByteSlice slice = ByteSlice.wrap(array).slice(2, 4);
+        assertEquals(4, slice.length());
+        assertEquals(2, slice.get(0));
+        assertEquals(5, slice.get(3));
+        assertArrayEquals(new byte[]{2, 3, 4, 5}, slice.toByteArray());
+        assertEquals("02030405", slice.hexEncodedString());
+
+        // Slices share backing array
+        final ByteSlice subslice = slice.slice(1);
+        assertArrayEquals(new byte[]{3, 4, 5}, subslice.toByteArray());
+        array[3] = 9;
+        assertEquals(9, subslice.get(0));
+
+        // Out of range
+        assertNull(slice.slice(5));
+        assertNull(slice.slice(2, 3));
+        assertNull(ByteSlice.wrap(array, 6, 3));
+        assertEquals(0, slice.slice(4).length());
+
+        // Content equality, consistent with data
+        assertEquals(ByteSlice.wrap(new byte[]{9, 4}), subslice.slice(0, 2));
+        assertNotEquals(ByteSlice.wrap(new byte[]{9, 4, 6}), subslice);
+        assertEquals(Arrays.hashCode(new byte[]{9, 4, 5}), subslice.hashCode());
+        assertEquals(new Data(new byte[]{9, 4, 5}), subslice.data());
+    }
+
+    @Test
+    public void testInt16() throws Exception {
+        final ByteSlice slice = ByteSlice.wrap(new byte[]{0, (byte) 0xBD, (byte) 0xFF, 0x34, 0x12});
+        assertEquals(-67, slice.int16(1));
+        assertEquals(0x1234, slice.int16(3));
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        final ByteSlice.Builder builder = new ByteSlice.Builder(8);
+        builder.append((byte) 1).appendInt16(-67).append(new Data(new byte[]{2, 3})).append((byte) 0, 3);
+        assertEquals(8, builder.length());
+        final byte[] value = builder.toByteArray();
+        assertArrayEquals(new byte[]{1, (byte) 0xBD, (byte) 0xFF, 2, 3, 0, 0, 0}, value);
+
+        // Exactly filled buffer is handed off as data
+        final ByteSlice.Builder exact = new ByteSlice.Builder(3);
+        exact.append(ByteSlice.wrap(value).slice(3, 2)).append((byte) 4);
+        final Data data = exact.data();
+        assertArrayEquals(new byte[]{2, 3, 4}, data.value);
+
+        // Slice as data is always a copy, even when spanning entire array
+        final ByteSlice built = ByteSlice.of(data);
+        final Data copy = built.data();
+        assertEquals(data, copy);
+        assertNotSame(data.value, copy.value);
+        copy.value[0] = 9;
+        assertEquals(2, built.get(0));
+
+        // Builder grows beyond capacity and trims on build
+        final ByteSlice.Builder grown = new ByteSlice.Builder(1);
+        grown.append(new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, grown.toByteArray());
+        final ByteSlice.Builder trimmed = new ByteSlice.Builder(4);
+        trimmed.append((byte) 1);
+        assertArrayEquals(new byte[]{1}, trimmed.toByteArray());
+    }
+
+    @Test
+    public void testBuilderBuilt() throws Exception {
+        final ByteSlice.Builder builder = new ByteSlice.Builder(1);
+        builder.append((byte) 1);
+        final ByteSlice slice = builder.build();
+        // Built data cannot be modified via builder
+        try {
+            builder.append((byte) 2);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        assertEquals(ByteSlice.wrap(new byte[]{1}), slice);
+    }
+}
@@ -0,0 +1,45 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: MIT
+//
+
+package com.vmware.herald.sensor.datatype;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SignalCharacteristicDataTests {
+
+    @Test
+    public void testWriteBundle() throws Exception {
+        final PayloadData payloadData = new PayloadData(new byte[]{1, 2, 3, 4, 5});
+        final RSSI rssi = new RSSI(-67);
+        final PayloadSharingData payloadSharingData = new PayloadSharingData(new RSSI(-80), new Data(new byte[]{6, 7, 8}));
+        final List<Data> bundles = new ArrayList<>();
+        bundles.add(SignalCharacteristicData.encodeWritePayload(payloadData));
+        bundles.add(SignalCharacteristicData.encodeWriteRssi(rssi));
+        bundles.add(SignalCharacteristicData.encodeWritePayloadSharing(payloadSharingData));
+        final Data data = SignalCharacteristicData.encodeWriteBundle(bundles);
+        assertEquals(SignalCharacteristicDataType.bundle, SignalCharacteristicData.detect(data));
+
+        final List<Data> decoded = SignalCharacteristicData.decodeWriteBundle(data);
+        assertNotNull(decoded);
+        assertEquals(3, decoded.size());
+        assertEquals(payloadData, SignalCharacteristicData.decodeWritePayload(decoded.get(0)));
+        assertEquals(rssi.value, SignalCharacteristicData.decodeWriteRSSI(decoded.get(1)).value);
+        final PayloadSharingData decodedPayloadSharingData = SignalCharacteristicData.decodeWritePayloadSharing(decoded.get(2));
+        assertEquals(payloadSharingData.rssi.value, decodedPayloadSharingData.rssi.value);
+        assertEquals(payloadSharingData.data, decodedPayloadSharingData.data);
+
+        // Incomplete bundle, e.g. waiting for more fragments
+        assertNull(SignalCharacteristicData.decodeWriteBundle(data.subdata(0, data.value.length - 1)));
+        // Single action writes are unaffected
+        assertNull(SignalCharacteristicData.decodeWriteBundle(bundles.get(0)));
+        assertEquals(SignalCharacteristicDataType.payload, SignalCharacteristicData.detect(bundles.get(0)));
+    }
+}